@@ -0,0 +1,699 @@
+package monger.history;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import monger.model.ChangeEvent;
+import monger.model.ChangeListener;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import monger.model.TimeEstimate;
+import monger.persistence.PersistenceException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An append-only log of every change to tasks' statuses and estimates, for velocity and burndown.
+ *
+ * The file starts with a four-byte magic number, followed by records, each introduced by a tag byte. A task's
+ * identifier is written once, the first time it appears, and numbered in order of appearance; each transition
+ * then gives the time as a (zigzag-encoded, variable-length) delta in milliseconds from the previous one, the
+ * task's number as a variable-length integer, and the new value's ordinal in a byte, so most take five to seven
+ * bytes. Transitions to the value already logged for a task are not recorded.
+ *
+ * Queries stream through the file, keeping only a few bytes of state per task, so they work over years of
+ * history without building any objects for it.
+ *
+ * Several processes may append to the same log: each holds a lock on the file while appending, and first reads
+ * whatever the others have appended since, so task numbers and the last values logged stay consistent.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class HistoryLog implements ChangeListener, AutoCloseable {
+	private static final Logger LOGGER = Logger.getLogger(HistoryLog.class.getName());
+	private static final byte[] MAGIC = {'M', 'H', 'L', 0};
+	private static final int DEFINE = 0;
+	private static final int STATUS = 1;
+	private static final int ESTIMATE = 2;
+	private static final byte UNKNOWN = -1;
+
+	/**
+	 * A number of quarter-hours of work on a day.
+	 */
+	public record DailyTotal(@NotNull LocalDate day, int quarterHours) {}
+
+	private final @NotNull Path file;
+	private final @NotNull Clock clock;
+	private final @NotNull FileChannel channel;
+	/**
+	 * Whether the log was opened for appending.
+	 */
+	private final boolean writable;
+	private final @NotNull OutputStream out;
+	private final @NotNull Map<TaskIdentifier, Integer> taskNumbers = new HashMap<>();
+	/**
+	 * The last status and estimate logged for each task, by number.
+	 */
+	private byte[] statuses = new byte[64];
+	private byte[] estimates = new byte[64];
+	private long lastTime = 0L;
+	/**
+	 * How much of the file the task numbers, the last values, and the last time reflect.
+	 */
+	private long end = 0L;
+	private final @NotNull List<TaskDatabase> attached = new CopyOnWriteArrayList<>();
+
+	private HistoryLog(final @NotNull Path file, final @NotNull Clock clock, final @NotNull FileChannel channel,
+					   final boolean writable) {
+		this.file = file;
+		this.clock = clock;
+		this.channel = channel;
+		this.writable = writable;
+		out = writable ? new BufferedOutputStream(Channels.newOutputStream(channel)) :
+					  OutputStream.nullOutputStream();
+	}
+
+	/**
+	 * Open a log for appending, creating it if it does not exist, using the system clock.
+	 */
+	public static @NotNull HistoryLog open(final @NotNull Path file) throws PersistenceException {
+		return open(file, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Open a log for appending, creating it if it does not exist. If the last record was only partly written, it
+	 * is discarded.
+	 *
+	 * @param clock the source of timestamps for new records, and of the time zone for queries
+	 */
+	public static @NotNull HistoryLog open(final @NotNull Path file, final @NotNull Clock clock)
+			throws PersistenceException {
+		try {
+			final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+			final HistoryLog retval = new HistoryLog(file, clock, channel, true);
+			try {
+				retval.locked(() -> {});
+			} catch (final PersistenceException except) {
+				channel.close();
+				throw except;
+			}
+			return retval;
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to open history log " + file, except);
+		}
+	}
+
+	/**
+	 * Open an existing log only to query it, using the system clock.
+	 */
+	public static @NotNull HistoryLog openReadOnly(final @NotNull Path file) throws PersistenceException {
+		return openReadOnly(file, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Open an existing log only to query it. Nothing is written to the file, not even to discard a partly-written
+	 * last record, which queries ignore anyway, so this works without write access to it.
+	 *
+	 * @param clock the source of the time zone and of today's date for queries
+	 */
+	public static @NotNull HistoryLog openReadOnly(final @NotNull Path file, final @NotNull Clock clock)
+			throws PersistenceException {
+		try {
+			return new HistoryLog(file, clock, FileChannel.open(file, StandardOpenOption.READ), false);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to open history log " + file, except);
+		}
+	}
+
+	/**
+	 * Some appends to make while holding the lock.
+	 */
+	@FunctionalInterface
+	private interface Appends {
+		void run() throws PersistenceException;
+	}
+
+	/**
+	 * Append to the log while holding a lock on the file, so other processes' appends don't interleave with ours,
+	 * having first caught up with whatever they appended since we last looked.
+	 */
+	@SuppressWarnings("try")
+	private void locked(final @NotNull Appends appends) throws PersistenceException {
+		if (!writable) {
+			throw new IllegalStateException("History log was opened read-only");
+		}
+		try (final FileLock lock = channel.lock()) {
+			catchUp();
+			appends.run();
+			out.flush();
+			end = channel.position();
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to append to history log " + file, except);
+		}
+	}
+
+	/**
+	 * Read what has been appended since we last looked, discarding a last record that was only partly written,
+	 * and get ready to append after it. This must be called with the file locked.
+	 */
+	private void catchUp() throws IOException, PersistenceException {
+		final long size = channel.size();
+		if (size < end) {
+			throw new PersistenceException("History log " + file + " was truncated");
+		} else if (size == 0L) {
+			out.write(MAGIC);
+			out.flush();
+			end = MAGIC.length;
+		} else if (size > end) {
+			final long valid = scan(new Recovery(), end);
+			if (valid < size) {
+				channel.truncate(valid);
+			}
+			end = valid;
+		}
+		channel.position(end);
+	}
+
+	/**
+	 * Record the current status and estimate of every task in the database, where they differ from what was
+	 * last logged, and then follow its changes.
+	 */
+	public void attach(final @NotNull TaskDatabase tasks) throws PersistenceException {
+		synchronized (this) {
+			final Instant now = clock.instant();
+			locked(() -> {
+				for (final Task task : tasks.getTasks()) {
+					append(now, task.getIdentifier(), STATUS, task.getStatus().ordinal());
+					append(now, task.getIdentifier(), ESTIMATE, task.getEstimate().ordinal());
+				}
+			});
+		}
+		tasks.addChangeListener(this);
+		attached.add(tasks);
+	}
+
+	/**
+	 * Changes are logged as they are committed, so they have the time they were made rather than the time they
+	 * happened to be delivered.
+	 */
+	@Override
+	public void changesCommitted(final @NotNull List<@NotNull ChangeEvent> events) {
+		try {
+			synchronized (this) {
+				final Instant now = clock.instant();
+				locked(() -> {
+					for (final ChangeEvent event : events) {
+						switch (event) {
+							case ChangeEvent.TaskAdded(Task task) -> {
+								append(now, task.getIdentifier(), STATUS, task.getStatus().ordinal());
+								append(now, task.getIdentifier(), ESTIMATE, task.getEstimate().ordinal());
+							}
+							case ChangeEvent.TaskChanged(Task task, Set<ChangeEvent.Field> fields) -> {
+								if (fields.contains(ChangeEvent.Field.Status)) {
+									append(now, task.getIdentifier(), STATUS, task.getStatus().ordinal());
+								}
+								if (fields.contains(ChangeEvent.Field.Estimate)) {
+									append(now, task.getIdentifier(), ESTIMATE, task.getEstimate().ordinal());
+								}
+							}
+							default -> {
+								// Nothing else is logged.
+							}
+						}
+					}
+				});
+			}
+		} catch (final PersistenceException except) {
+			LOGGER.log(Level.WARNING, "Failed to record task history", except);
+		}
+	}
+
+	@Override
+	public void changesMade(final @NotNull List<@NotNull ChangeEvent> events) {
+		// Already logged when they were committed.
+	}
+
+	/**
+	 * Record that a task's status changed now.
+	 */
+	public synchronized void record(final @NotNull TaskIdentifier task, final @NotNull TaskStatus status)
+			throws PersistenceException {
+		locked(() -> append(clock.instant(), task, STATUS, status.ordinal()));
+	}
+
+	/**
+	 * Record that a task's estimate changed now.
+	 */
+	public synchronized void record(final @NotNull TaskIdentifier task, final @NotNull TimeEstimate estimate)
+			throws PersistenceException {
+		locked(() -> append(clock.instant(), task, ESTIMATE, estimate.ordinal()));
+	}
+
+	private void append(final @NotNull Instant time, final @NotNull TaskIdentifier task, final int kind,
+						final int value) throws PersistenceException {
+		try {
+			Integer number = taskNumbers.get(task);
+			if (Objects.isNull(number)) {
+				out.write(DEFINE);
+				writeString(task.provider());
+				writeString(task.identifier());
+				number = define(task);
+			}
+			final byte[] values = kind == STATUS ? statuses : estimates;
+			if (values[number] == value) {
+				return;
+			}
+			values[number] = (byte) value;
+			final long millis = time.toEpochMilli();
+			out.write(kind);
+			final long delta = millis - lastTime;
+			writeVarLong((delta << 1) ^ (delta >> 63));
+			writeVarLong(number);
+			out.write(value);
+			lastTime = millis;
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to append to history log " + file, except);
+		}
+	}
+
+	private int define(final @NotNull TaskIdentifier task) {
+		final int number = taskNumbers.size();
+		taskNumbers.put(task, number);
+		if (number == statuses.length) {
+			statuses = Arrays.copyOf(statuses, number * 2);
+			estimates = Arrays.copyOf(estimates, number * 2);
+		}
+		statuses[number] = UNKNOWN;
+		estimates[number] = UNKNOWN;
+		return number;
+	}
+
+	private void writeString(final @NotNull String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.write((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Stop following the attached databases and close the file.
+	 */
+	@Override
+	public void close() throws PersistenceException {
+		for (final TaskDatabase tasks : attached) {
+			tasks.removeChangeListener(this);
+		}
+		synchronized (this) {
+			try (channel) {
+				out.flush();
+			} catch (final IOException except) {
+				throw new PersistenceException("Failed to close history log " + file, except);
+			}
+		}
+	}
+
+	/**
+	 * What a scan of the log tells its caller about.
+	 */
+	private interface Visitor {
+		/**
+		 * @param number the task's number, in order of first appearance
+		 */
+		void define(int number, @NotNull TaskIdentifier task);
+
+		/**
+		 * @param millis when, in milliseconds since the epoch
+		 * @param status true for a change of status, false for a change of estimate
+		 * @param value the ordinal of the new value
+		 */
+		void transition(long millis, int number, boolean status, int value);
+	}
+
+	/**
+	 * Reads the log when reopening it, to learn the task numbers, the last values logged, and the last time.
+	 */
+	private final class Recovery implements Visitor {
+		@Override
+		public void define(final int number, final @NotNull TaskIdentifier task) {
+			HistoryLog.this.define(task);
+		}
+
+		@Override
+		public void transition(final long millis, final int number, final boolean status, final int value) {
+			(status ? statuses : estimates)[number] = (byte) value;
+			lastTime = millis;
+		}
+	}
+
+	/**
+	 * A stream that counts how far into it we have read.
+	 */
+	private static final class CountingInput {
+		private final @NotNull InputStream in;
+		private long position = 0;
+
+		CountingInput(final @NotNull InputStream in) {
+			this.in = in;
+		}
+
+		int read() throws IOException {
+			final int retval = in.read();
+			if (retval >= 0) {
+				position++;
+			}
+			return retval;
+		}
+
+		/**
+		 * @return the value, or -1 if the input ended first
+		 */
+		long readVarLong() throws IOException {
+			long retval = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				final int b = read();
+				if (b < 0) {
+					return -1;
+				}
+				retval |= (long) (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return retval;
+				}
+			}
+			throw new IOException("Malformed number");
+		}
+	}
+
+	/**
+	 * Read the whole log, from the file (so this does not see records not yet flushed).
+	 *
+	 * @return the length of the log up to the end of the last complete record
+	 */
+	private long scan(final @NotNull Visitor visitor) throws PersistenceException {
+		return scan(visitor, 0L);
+	}
+
+	/**
+	 * Read the log from the file, starting at the given position. Anywhere but the start, this carries on from the
+	 * task numbers and time this log has already read, so is only for {@link Recovery}.
+	 *
+	 * @return the length of the log up to the end of the last complete record
+	 */
+	private long scan(final @NotNull Visitor visitor, final long from) throws PersistenceException {
+		try (final InputStream raw = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+			final CountingInput in = new CountingInput(raw);
+			int defined;
+			long time;
+			if (from == 0L) {
+				final byte[] magic = new byte[MAGIC.length];
+				for (int i = 0; i < magic.length; i++) {
+					final int b = in.read();
+					if (b < 0) {
+						break;
+					}
+					magic[i] = (byte) b;
+				}
+				if (!Arrays.equals(magic, MAGIC)) {
+					throw new PersistenceException(file + " is not a history log");
+				}
+				defined = 0;
+				time = 0L;
+			} else {
+				raw.skipNBytes(from);
+				in.position = from;
+				defined = taskNumbers.size();
+				time = lastTime;
+			}
+			long valid = in.position;
+			while (true) {
+				final int tag = in.read();
+				if (tag < 0) {
+					return valid;
+				} else if (tag == DEFINE) {
+					final String provider = readString(in);
+					final String identifier = Objects.isNull(provider) ? null : readString(in);
+					if (Objects.isNull(identifier)) {
+						return valid;
+					}
+					visitor.define(defined, new TaskIdentifier(provider, identifier));
+					defined++;
+				} else if (tag == STATUS || tag == ESTIMATE) {
+					final long delta = in.readVarLong();
+					final long number = delta < 0 ? -1 : in.readVarLong();
+					final int value = number < 0 ? -1 : in.read();
+					if (value < 0) {
+						return valid;
+					} else if (number >= defined || value >= (tag == STATUS ? TaskStatus.values().length :
+																	   TimeEstimate.values().length)) {
+						throw new PersistenceException("Corrupt record in history log " + file);
+					}
+					time += (delta >>> 1) ^ -(delta & 1);
+					visitor.transition(time, (int) number, tag == STATUS, value);
+				} else {
+					throw new PersistenceException("Unknown record in history log " + file);
+				}
+				valid = in.position;
+			}
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to read history log " + file, except);
+		}
+	}
+
+	private static @Nullable String readString(final @NotNull CountingInput in) throws IOException {
+		final long length = in.readVarLong();
+		if (length < 0) {
+			return null;
+		}
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(length, 256));
+		for (long i = 0; i < length; i++) {
+			final int b = in.read();
+			if (b < 0) {
+				return null;
+			}
+			bytes.write(b);
+		}
+		return bytes.toString(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * How much a task counts towards velocity and burndown: unestimated tasks and those too big to budget count
+	 * for nothing.
+	 */
+	private static int budget(final int estimate) {
+		if (estimate < 0) {
+			return 0;
+		}
+		final TimeEstimate value = TimeEstimate.values()[estimate];
+		return value == TimeEstimate.Epic || value == TimeEstimate.Unestimated ? 0 : value.getBudget();
+	}
+
+	private static int[] grow(final int[] array, final int index) {
+		return index < array.length ? array : Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+	}
+
+	private static byte[] grow(final byte[] array, final int index) {
+		if (index < array.length) {
+			return array;
+		}
+		final byte[] retval = Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+		Arrays.fill(retval, array.length, retval.length, UNKNOWN);
+		return retval;
+	}
+
+	/**
+	 * Rolling velocity: for each day in a range, the quarter-hours of estimated work completed in the window of
+	 * days ending with it. A task counts on the day it was completed, at its estimate then; if it is reopened by
+	 * the end of the range, that credit is taken back from the day it was completed, so it never counts.
+	 *
+	 * @param from the first day to report
+	 * @param to the last day to report
+	 * @param window how many days each total covers
+	 */
+	public @NotNull List<DailyTotal> velocity(final @NotNull LocalDate from, final @NotNull LocalDate to,
+											  final int window) throws PersistenceException {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must be at least one day");
+		} else if (to.isBefore(from)) {
+			throw new IllegalArgumentException("Range ends before it starts");
+		}
+		final ZoneId zone = clock.getZone();
+		final LocalDate first = from.minusDays(window - 1);
+		final int days = Math.toIntExact(ChronoUnit.DAYS.between(first, to) + 1);
+		final int[] completed = new int[days];
+		scan(new Visitor() {
+			private byte[] statuses = new byte[0];
+			private byte[] estimates = new byte[0];
+			/**
+			 * What each completed task was credited with, for if it is reopened; nothing if it was completed
+			 * outside the range.
+			 */
+			private int[] credits = new int[0];
+			/**
+			 * The day each credited task was credited on.
+			 */
+			private int[] creditDays = new int[0];
+
+			@Override
+			public void define(final int number, final @NotNull TaskIdentifier task) {
+				statuses = grow(statuses, number);
+				estimates = grow(estimates, number);
+				credits = grow(credits, number);
+				creditDays = grow(creditDays, number);
+			}
+
+			@Override
+			public void transition(final long millis, final int number, final boolean status, final int value) {
+				if (!status) {
+					estimates[number] = (byte) value;
+					return;
+				}
+				final boolean wasDone = statuses[number] == TaskStatus.Completed.ordinal();
+				final boolean isDone = value == TaskStatus.Completed.ordinal();
+				statuses[number] = (byte) value;
+				if (wasDone == isDone) {
+					return;
+				}
+				final long day = ChronoUnit.DAYS.between(first, Instant.ofEpochMilli(millis).atZone(zone).toLocalDate());
+				final boolean inRange = day >= 0 && day < days;
+				if (isDone) {
+					credits[number] = inRange ? budget(estimates[number]) : 0;
+					if (inRange) {
+						creditDays[number] = (int) day;
+						completed[(int) day] += credits[number];
+					}
+				} else if (day < days) {
+					// Reopened: take back whatever it was credited with, on the day it was credited.
+					completed[creditDays[number]] -= credits[number];
+					credits[number] = 0;
+				}
+			}
+		});
+		final List<DailyTotal> retval = new ArrayList<>();
+		int total = 0;
+		for (int i = 0; i < days; i++) {
+			total += completed[i];
+			if (i >= window) {
+				total -= completed[i - window];
+			}
+			if (i >= window - 1) {
+				retval.add(new DailyTotal(first.plusDays(i), total));
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Burndown: for each day of an iteration up to today, the quarter-hours of estimated work not yet completed
+	 * among the given tasks at the end of that day.
+	 *
+	 * @param iteration an iteration, which must have start and end dates
+	 * @param tasks the tasks in it
+	 */
+	public @NotNull List<DailyTotal> burndown(final @NotNull Iteration iteration,
+											  final @NotNull Collection<TaskIdentifier> tasks)
+			throws PersistenceException {
+		final LocalDate start = iteration.getStartDate();
+		final LocalDate end = iteration.getEndDate();
+		if (Objects.isNull(start) || Objects.isNull(end)) {
+			throw new IllegalArgumentException("Cannot chart an iteration without dates");
+		}
+		final ZoneId zone = clock.getZone();
+		final LocalDate today = LocalDate.now(clock);
+		final LocalDate last = end.isAfter(today) ? today : end;
+		final Set<TaskIdentifier> members = new HashSet<>(tasks);
+		final List<DailyTotal> retval = new ArrayList<>();
+		if (last.isBefore(start)) {
+			return retval;
+		}
+		final class Chart implements Visitor {
+			private boolean[] isMember = new boolean[0];
+			private byte[] statuses = new byte[0];
+			private byte[] estimates = new byte[0];
+			private int remaining = 0;
+			/**
+			 * The first day not yet reported.
+			 */
+			private LocalDate current = start;
+
+			private int contribution(final int number) {
+				return statuses[number] == TaskStatus.Completed.ordinal() ? 0 : budget(estimates[number]);
+			}
+
+			@Override
+			public void define(final int number, final @NotNull TaskIdentifier task) {
+				if (number >= isMember.length) {
+					isMember = Arrays.copyOf(isMember, Math.max(number + 1, isMember.length * 2));
+				}
+				statuses = grow(statuses, number);
+				estimates = grow(estimates, number);
+				isMember[number] = members.contains(task);
+			}
+
+			@Override
+			public void transition(final long millis, final int number, final boolean status, final int value) {
+				if (!isMember[number]) {
+					return;
+				}
+				final LocalDate day = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+				while (current.isBefore(day) && !current.isAfter(last)) {
+					retval.add(new DailyTotal(current, remaining));
+					current = current.plusDays(1);
+				}
+				remaining -= contribution(number);
+				(status ? statuses : estimates)[number] = (byte) value;
+				remaining += contribution(number);
+			}
+
+			/**
+			 * Report the days after the last change.
+			 */
+			void finish() {
+				while (!current.isAfter(last)) {
+					retval.add(new DailyTotal(current, remaining));
+					current = current.plusDays(1);
+				}
+			}
+		}
+		final Chart chart = new Chart();
+		scan(chart);
+		chart.finish();
+		return retval;
+	}
+}
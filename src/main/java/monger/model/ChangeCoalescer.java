@@ -0,0 +1,152 @@
+package monger.model;
+
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import monger.model.ChangeEvent.DateAssigned;
+import monger.model.ChangeEvent.IterationAdded;
+import monger.model.ChangeEvent.IterationAssigned;
+import monger.model.ChangeEvent.IterationChanged;
+import monger.model.ChangeEvent.IterationRemoved;
+import monger.model.ChangeEvent.TaskAdded;
+import monger.model.ChangeEvent.TaskChanged;
+import monger.model.ChangeEvent.TaskRemoved;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Collects the events of one transaction, merging those about the same task or iteration: field changes are
+ * combined, later assignments replace earlier ones, and changes to something added in the same transaction are
+ * dropped, since the addition already reports its current state, as are changes to something later removed. A
+ * removal followed by an addition is kept as both, in that order, since the removal also cleared assignments.
+ *
+ * @author Jonathan Lovelace
+ */
+final class ChangeCoalescer {
+	private static final Logger LOGGER = Logger.getLogger(ChangeCoalescer.class.getName());
+
+	/**
+	 * How long a database's delivery thread waits for more events before it exits.
+	 */
+	private static final long IDLE_SECONDS = 5L;
+
+	private record Key(@NotNull Class<? extends ChangeEvent> kind, @NotNull Object subject) {}
+
+	private final @NotNull Map<Key, ChangeEvent> events = new LinkedHashMap<>();
+
+	void add(final @NotNull ChangeEvent event) {
+		switch (event) {
+			case TaskAdded(Task task) -> {
+				events.remove(new Key(TaskChanged.class, task.getIdentifier()));
+				events.put(new Key(TaskAdded.class, task.getIdentifier()), event);
+			}
+			case TaskChanged(Task task, Set<ChangeEvent.Field> fields) -> {
+				if (!events.containsKey(new Key(TaskAdded.class, task.getIdentifier()))) {
+					events.merge(new Key(TaskChanged.class, task.getIdentifier()), event, (first, second) -> {
+						final Set<ChangeEvent.Field> union = EnumSet.copyOf(((TaskChanged) first).fields());
+						union.addAll(fields);
+						return new TaskChanged(task, union);
+					});
+				}
+			}
+			case TaskRemoved(TaskIdentifier task) -> {
+				events.remove(new Key(TaskAdded.class, task));
+				events.remove(new Key(TaskChanged.class, task));
+				events.remove(new Key(IterationAssigned.class, task));
+				events.remove(new Key(DateAssigned.class, task));
+				events.put(new Key(TaskRemoved.class, task), event);
+			}
+			case IterationAdded(Iteration iteration) -> {
+				events.remove(new Key(IterationChanged.class, iteration.getId()));
+				events.put(new Key(IterationAdded.class, iteration.getId()), event);
+			}
+			case IterationRemoved(UUID iteration) -> {
+				events.remove(new Key(IterationAdded.class, iteration));
+				events.remove(new Key(IterationChanged.class, iteration));
+				events.put(new Key(IterationRemoved.class, iteration), event);
+			}
+			case IterationChanged(UUID iteration) -> {
+				if (!events.containsKey(new Key(IterationAdded.class, iteration))) {
+					events.put(new Key(IterationChanged.class, iteration), event);
+				}
+			}
+			case IterationAssigned assigned -> events.put(new Key(IterationAssigned.class, assigned.task()), event);
+			case DateAssigned assigned -> events.put(new Key(DateAssigned.class, assigned.task()), event);
+		}
+	}
+
+	private static @NotNull ChangeEvent snapshot(final @NotNull ChangeEvent event) {
+		return switch (event) {
+			case TaskAdded(Task task) -> new TaskAdded(task.copy());
+			case TaskChanged(Task task, Set<ChangeEvent.Field> fields) -> new TaskChanged(task.copy(), fields);
+			case IterationAdded(Iteration iteration) -> new IterationAdded(new Iteration(iteration.getId(),
+				iteration.getName(), iteration.getStartDate(), iteration.getEndDate()));
+			case TaskRemoved removed -> removed;
+			case IterationChanged changed -> changed;
+			case IterationRemoved removed -> removed;
+			case IterationAssigned assigned -> assigned;
+			case DateAssigned assigned -> assigned;
+		};
+	}
+
+	boolean isEmpty() {
+		return events.isEmpty();
+	}
+
+	/**
+	 * Create the executor a database delivers its events on: at most one thread, so each listener sees them in
+	 * order, which is started only when there is something to deliver and exits when idle, so that a database
+	 * nobody listens to costs no thread, and one database's slow listener does not hold up another's.
+	 */
+	static @NotNull ExecutorService newDeliveryExecutor() {
+		return new ThreadPoolExecutor(0, 1, IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+			Thread.ofPlatform().daemon().name("change-events").factory());
+	}
+
+	/**
+	 * Wait until everything already handed to a delivery executor has been delivered.
+	 */
+	static void awaitDelivery(final @NotNull ExecutorService delivery) throws InterruptedException {
+		try {
+			delivery.submit(() -> {}).get();
+		} catch (final ExecutionException except) {
+			throw new IllegalStateException("Delivery thread failed", except);
+		}
+	}
+
+	/**
+	 * Deliver the collected events to the listeners on a delivery executor. This is called on the thread changing
+	 * the database, which is where the tasks and iterations in the events are copied, so that listeners see them
+	 * as they were at the end of the transaction and never touch the live objects from another thread, and where
+	 * they are first {@link ChangeListener#changesCommitted committed}.
+	 */
+	void deliver(final @NotNull List<ChangeListener> listeners, final @NotNull ExecutorService delivery) {
+		final List<ChangeEvent> batch = events.values().stream().map(ChangeCoalescer::snapshot).toList();
+		final List<ChangeListener> recipients = List.copyOf(listeners);
+		for (final ChangeListener listener : recipients) {
+			try {
+				listener.changesCommitted(batch);
+			} catch (final RuntimeException except) {
+				LOGGER.log(Level.WARNING, "Change listener failed", except);
+			}
+		}
+		delivery.execute(() -> {
+			for (final ChangeListener listener : recipients) {
+				try {
+					listener.changesMade(batch);
+				} catch (final RuntimeException except) {
+					LOGGER.log(Level.WARNING, "Change listener failed", except);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,80 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.UUID;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A change to a {@link TaskDatabase}, as reported to its {@link ChangeListener listeners}. Events are delivered on
+ * another thread, after the change; events that carry a task or iteration carry a copy of it as it was at the end
+ * of the transaction, so listeners can read it safely however the database has changed since.
+ *
+ * @author Jonathan Lovelace
+ */
+public sealed interface ChangeEvent {
+	/**
+	 * The fields of a task that can change.
+	 */
+	enum Field {
+		Name, Description, Estimate, UpstreamURL, Status
+	}
+
+	/**
+	 * A task was added, or replaced one with the same identifier.
+	 */
+	record TaskAdded(@NotNull Task task) implements ChangeEvent {}
+
+	/**
+	 * A task was removed, after being taken out of its iteration.
+	 */
+	record TaskRemoved(@NotNull TaskIdentifier task) implements ChangeEvent {}
+
+	/**
+	 * Some of a task's fields changed.
+	 */
+	record TaskChanged(@NotNull Task task, @NotNull Set<@NotNull Field> fields) implements ChangeEvent {
+		public TaskChanged {
+			fields = Collections.unmodifiableSet(EnumSet.copyOf(fields));
+		}
+	}
+
+	/**
+	 * An iteration was added, or replaced one with the same ID.
+	 */
+	record IterationAdded(@NotNull Iteration iteration) implements ChangeEvent {}
+
+	/**
+	 * An iteration was removed, after every task in it was taken out of it.
+	 */
+	record IterationRemoved(@NotNull UUID iteration) implements ChangeEvent {}
+
+	/**
+	 * An iteration's name or dates changed.
+	 */
+	record IterationChanged(@NotNull UUID iteration) implements ChangeEvent {}
+
+	/**
+	 * A task was assigned to an iteration.
+	 *
+	 * @param iteration the iteration, or null if the task was taken out of its iteration
+	 */
+	record IterationAssigned(@NotNull TaskIdentifier task, @Nullable UUID iteration) implements ChangeEvent {}
+
+	/**
+	 * A task was scheduled, or unscheduled.
+	 *
+	 * @param date the first day it is scheduled for, or null if it was unscheduled
+	 * @param end the last day it is scheduled for, the same as the first for a one-day task, or null if it was
+	 *            unscheduled
+	 */
+	record DateAssigned(@NotNull TaskIdentifier task, @Nullable LocalDate date, @Nullable LocalDate end)
+		implements ChangeEvent {
+		public DateAssigned(final @NotNull TaskIdentifier task, final @NotNull LocalDate date) {
+			this(task, date, date);
+		}
+	}
+}
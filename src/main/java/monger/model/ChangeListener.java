@@ -0,0 +1,32 @@
+package monger.model;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Something that wants to know what changed in a {@link TaskDatabase}, to keep a view or index up to date without
+ * rebuilding it.
+ *
+ * @author Jonathan Lovelace
+ */
+@FunctionalInterface
+public interface ChangeListener {
+	/**
+	 * Called, on the database's event-delivery thread and never concurrently, once for each transaction.
+	 *
+	 * @param events what changed, coalesced so there is at most one event of each kind per task or iteration,
+	 *               in the order each first happened
+	 */
+	void changesMade(@NotNull List<@NotNull ChangeEvent> events);
+
+	/**
+	 * Called on the thread that made the changes, as each transaction ends and before the same events are handed
+	 * to {@link #changesMade}, for a listener that must know when they were made, not just what they were. This
+	 * holds up whoever is changing the database, so it must be quick. By default it does nothing.
+	 *
+	 * @param events what changed, as for {@link #changesMade}
+	 */
+	default void changesCommitted(final @NotNull List<@NotNull ChangeEvent> events) {
+		// Most listeners only need to know what changed.
+	}
+}
@@ -0,0 +1,482 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Field-level comparison and three-way merging of task databases. Both join the databases on task identifier and
+ * iteration ID through their hash indexes, so they take time linear in the size of the databases, and they skip
+ * the field-by-field comparison of tasks whose {@link Task#getFingerprint fingerprints} match.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class DatabaseDiff {
+	private DatabaseDiff() {
+		// Don't instantiate.
+	}
+
+	/**
+	 * A difference between two databases.
+	 */
+	public sealed interface Change {}
+
+	public record IterationAdded(@NotNull Iteration iteration) implements Change {}
+
+	public record IterationRemoved(@NotNull Iteration iteration) implements Change {}
+
+	/**
+	 * An iteration's name or dates differ.
+	 */
+	public record IterationChanged(@NotNull Iteration before, @NotNull Iteration after) implements Change {}
+
+	/**
+	 * A task is only in the second database. Its assignment and date, if any, are reported separately.
+	 */
+	public record TaskAdded(@NotNull Task task) implements Change {}
+
+	public record TaskRemoved(@NotNull Task task) implements Change {}
+
+	public record FieldChanged(@NotNull TaskIdentifier task, ChangeEvent.@NotNull Field field, @NotNull Object before,
+							   @NotNull Object after) implements Change {}
+
+	public record AssignmentChanged(@NotNull TaskIdentifier task, @Nullable UUID before, @Nullable UUID after)
+		implements Change {}
+
+	/**
+	 * The date a task is scheduled for, or the first day if it is scheduled over several, differs.
+	 */
+	public record DateChanged(@NotNull TaskIdentifier task, @Nullable LocalDate before, @Nullable LocalDate after)
+		implements Change {}
+
+	/**
+	 * The last day a task is scheduled for differs.
+	 */
+	public record EndDateChanged(@NotNull TaskIdentifier task, @Nullable LocalDate before, @Nullable LocalDate after)
+		implements Change {}
+
+	/**
+	 * Something both sides of a merge changed differently.
+	 *
+	 * @param subject the task identifier or iteration ID concerned
+	 * @param aspect what about it was changed: a field name, "existence", "iteration", "date", "end date", or, for
+	 *               an iteration, "start", "end", or "dates" if the two ends merged separately don't fit together;
+	 *               or, from a three-way {@link #update(TaskDatabase, TaskDatabase, TaskDatabase) update},
+	 *               "rejected"
+	 * @param base its value in the base version
+	 * @param ours its value in our version, which the merge kept unless it was invalid
+	 * @param theirs its value in their version
+	 */
+	public record Conflict(@NotNull Object subject, @NotNull String aspect, @Nullable Object base,
+						   @Nullable Object ours, @Nullable Object theirs) {}
+
+	/**
+	 * @param merged the merged database
+	 * @param conflicts what could not be merged automatically, in the order found
+	 */
+	public record MergeResult(@NotNull TaskDatabase merged, @NotNull List<Conflict> conflicts) {}
+
+	/**
+	 * @return the value of one of a task's fields
+	 */
+	public static @NotNull Object getField(final @NotNull Task task, final ChangeEvent.@NotNull Field field) {
+		return switch (field) {
+			case Name -> task.getName();
+			case Description -> task.getDescription();
+			case Estimate -> task.getEstimate();
+			case UpstreamURL -> task.getUpstreamURL();
+			case Status -> task.getStatus();
+		};
+	}
+
+	private static @Nullable UUID iterationOf(final @NotNull TaskDatabase tasks, final @NotNull TaskIdentifier id) {
+		final Iteration iteration = tasks.getIteration(id);
+		return Objects.isNull(iteration) ? null : iteration.getId();
+	}
+
+	/**
+	 * Report every difference between two databases, one at a time, as it is found: iteration changes first,
+	 * then task changes, in the order of the first database's tasks followed by those only in the second.
+	 *
+	 * @param from the earlier version
+	 * @param to the later version
+	 * @param out what to report differences to
+	 */
+	public static void diff(final @NotNull TaskDatabase from, final @NotNull TaskDatabase to,
+							final @NotNull Consumer<? super Change> out) {
+		for (final Iteration before : from.getIterations()) {
+			final Iteration after = to.getIterationById(before.getId());
+			if (Objects.isNull(after)) {
+				out.accept(new IterationRemoved(before));
+			} else if (!before.equals(after)) {
+				out.accept(new IterationChanged(before, after));
+			}
+		}
+		for (final Iteration after : to.getIterations()) {
+			if (Objects.isNull(from.getIterationById(after.getId()))) {
+				out.accept(new IterationAdded(after));
+			}
+		}
+		for (final Task before : from.getTasks()) {
+			final TaskIdentifier id = before.getIdentifier();
+			final Task after = to.getTask(id);
+			if (Objects.isNull(after)) {
+				out.accept(new TaskRemoved(before));
+				continue;
+			}
+			if (before.getFingerprint() != after.getFingerprint()) {
+				for (final ChangeEvent.Field field : ChangeEvent.Field.values()) {
+					final Object old = getField(before, field);
+					final Object current = getField(after, field);
+					if (!old.equals(current)) {
+						out.accept(new FieldChanged(id, field, old, current));
+					}
+				}
+			}
+			placement(from, to, id, out);
+		}
+		for (final Task after : to.getTasks()) {
+			if (Objects.isNull(from.getTask(after.getIdentifier()))) {
+				out.accept(new TaskAdded(after));
+				placement(from, to, after.getIdentifier(), out);
+			}
+		}
+	}
+
+	/**
+	 * Bring a database up to date with another, in place, by making only the changes that differ between them, in
+	 * one {@link TaskDatabase#inTransaction transaction}, so that anything following the target's changes sees
+	 * them together. Iterations whose name or dates differ are replaced rather than changed, since they are sorted
+	 * by their dates. Nothing is shared with the source afterwards.
+	 *
+	 * @param target the database to change
+	 * @param source the version to bring it up to date with
+	 * @return the changes that the target rejected, and so were not made
+	 */
+	public static @NotNull List<Change> update(final @NotNull TaskDatabase target,
+											   final @NotNull TaskDatabase source) {
+		if (target.getDigest() == source.getDigest() && target.equals(source)) {
+			return List.of();
+		}
+		final List<Change> changes = new ArrayList<>();
+		diff(target, source, changes::add);
+		final List<Change> skipped = new ArrayList<>();
+		target.inTransaction(() -> {
+			for (final Change change : changes) {
+				try {
+					apply(target, source, change);
+				} catch (final IllegalArgumentException | IllegalStateException except) {
+					skipped.add(change);
+				}
+			}
+		});
+		return Collections.unmodifiableList(skipped);
+	}
+
+	/**
+	 * Bring a database up to date with a later version of what it was derived from, in place, keeping the changes
+	 * made to it since: the three are {@link #merge merged}, with the target as ours, and the target is then
+	 * {@link #update(TaskDatabase, TaskDatabase) updated} to the result, so only what the later version changed is
+	 * changed in the target.
+	 *
+	 * @param target the database to change
+	 * @param base the version it was derived from
+	 * @param source the later version
+	 * @return the conflicts between the target's changes and the later version's, as {@link #merge} reports them,
+	 * followed by any change the target rejected, as a conflict whose aspect is "rejected" and whose theirs is the
+	 * change
+	 */
+	public static @NotNull List<Conflict> update(final @NotNull TaskDatabase target,
+												 final @NotNull TaskDatabase base,
+												 final @NotNull TaskDatabase source) {
+		final MergeResult result = merge(base, target, source);
+		final List<Conflict> retval = new ArrayList<>(result.conflicts());
+		for (final Change change : update(target, result.merged())) {
+			retval.add(new Conflict(subject(change), "rejected", null, null, change));
+		}
+		return Collections.unmodifiableList(retval);
+	}
+
+	/**
+	 * @return the task identifier or iteration ID a change is about
+	 */
+	private static @NotNull Object subject(final @NotNull Change change) {
+		return switch (change) {
+			case IterationAdded(Iteration iteration) -> iteration.getId();
+			case IterationRemoved(Iteration iteration) -> iteration.getId();
+			case IterationChanged(Iteration before, Iteration after) -> before.getId();
+			case TaskAdded(Task task) -> task.getIdentifier();
+			case TaskRemoved(Task task) -> task.getIdentifier();
+			case FieldChanged changed -> changed.task();
+			case AssignmentChanged changed -> changed.task();
+			case DateChanged changed -> changed.task();
+			case EndDateChanged changed -> changed.task();
+		};
+	}
+
+	private static void apply(final @NotNull TaskDatabase target, final @NotNull TaskDatabase source,
+							  final @NotNull Change change) {
+		switch (change) {
+			case IterationAdded(Iteration iteration) -> target.addIteration(new Iteration(iteration.getId(),
+				iteration.getName(), iteration.getStartDate(), iteration.getEndDate()));
+			case IterationRemoved(Iteration iteration) -> target.removeIteration(iteration.getId());
+			case IterationChanged(Iteration before, Iteration after) -> target.addIteration(
+				new Iteration(after.getId(), after.getName(), after.getStartDate(), after.getEndDate()));
+			case TaskAdded(Task task) -> target.addTask(task.copy());
+			case TaskRemoved(Task task) -> target.removeTask(task.getIdentifier());
+			case FieldChanged(TaskIdentifier id, ChangeEvent.Field field, Object before, Object after) -> {
+				final Task live = Objects.requireNonNull(target.getTask(id));
+				switch (field) {
+					case Name -> live.setName((String) after);
+					case Description -> live.setDescription((String) after);
+					case Estimate -> live.setEstimate((TimeEstimate) after);
+					case UpstreamURL -> live.setUpstreamURL((String) after);
+					case Status -> live.setStatus((TaskStatus) after);
+				}
+			}
+			case AssignmentChanged(TaskIdentifier id, UUID before, UUID after) -> {
+				if (Objects.isNull(after)) {
+					target.unassign(id);
+				} else {
+					target.assignToIteration(id, after);
+				}
+			}
+			case DateChanged(TaskIdentifier id, LocalDate before, LocalDate after) -> schedule(target, source, id);
+			case EndDateChanged(TaskIdentifier id, LocalDate before, LocalDate after) -> schedule(target, source, id);
+		}
+	}
+
+	/**
+	 * Schedule a task as the source has it; a change to its date and to its end date both come here, and the
+	 * second finds nothing left to do.
+	 */
+	private static void schedule(final @NotNull TaskDatabase target, final @NotNull TaskDatabase source,
+								 final @NotNull TaskIdentifier id) {
+		final LocalDate date = source.getAssignedDate(id);
+		final LocalDate end = source.getAssignedEndDate(id);
+		if (Objects.isNull(date) || Objects.isNull(end)) {
+			target.clearDate(id);
+		} else if (!date.equals(target.getAssignedDate(id)) || !end.equals(target.getAssignedEndDate(id))) {
+			target.assignToDates(id, date, end);
+		}
+	}
+
+	/**
+	 * Report changes to a task's iteration and date.
+	 */
+	private static void placement(final @NotNull TaskDatabase from, final @NotNull TaskDatabase to,
+								  final @NotNull TaskIdentifier id, final @NotNull Consumer<? super Change> out) {
+		final UUID oldIteration = iterationOf(from, id);
+		final UUID newIteration = iterationOf(to, id);
+		if (!Objects.equals(oldIteration, newIteration)) {
+			out.accept(new AssignmentChanged(id, oldIteration, newIteration));
+		}
+		final LocalDate oldDate = from.getAssignedDate(id);
+		final LocalDate newDate = to.getAssignedDate(id);
+		if (!Objects.equals(oldDate, newDate)) {
+			out.accept(new DateChanged(id, oldDate, newDate));
+		}
+		final LocalDate oldEnd = from.getAssignedEndDate(id);
+		final LocalDate newEnd = to.getAssignedEndDate(id);
+		// A one-day task's end date moves with its date, which is reported already.
+		if (!Objects.equals(oldEnd, newEnd) && (!Objects.equals(oldEnd, oldDate) || !Objects.equals(newEnd, newDate))) {
+			out.accept(new EndDateChanged(id, oldEnd, newEnd));
+		}
+	}
+
+	/**
+	 * Merges one value: if only one side changed it from the base, that side wins; if both changed it
+	 * differently, ours wins and the conflict is recorded.
+	 */
+	private static <T> @Nullable T merge(final @NotNull Object subject, final @NotNull String aspect,
+										 final @Nullable T base, final @Nullable T ours, final @Nullable T theirs,
+										 final @NotNull List<Conflict> conflicts) {
+		if (Objects.equals(ours, theirs) || Objects.equals(theirs, base)) {
+			return ours;
+		} else if (Objects.equals(ours, base)) {
+			return theirs;
+		} else {
+			conflicts.add(new Conflict(subject, aspect, base, ours, theirs));
+			return ours;
+		}
+	}
+
+	/**
+	 * Decide whether something survives the merge when it may have been deleted on one side.
+	 *
+	 * @param oursChanged whether our version differs from the base, if both exist
+	 * @param theirsChanged whether their version differs from the base, if both exist
+	 * @return which version to start from: ours, theirs, or null if it is deleted
+	 */
+	private static <T> @Nullable T survivor(final @NotNull Object subject, final @Nullable T base,
+											final @Nullable T ours, final @Nullable T theirs,
+											final boolean oursChanged, final boolean theirsChanged,
+											final @NotNull List<Conflict> conflicts) {
+		if (Objects.nonNull(ours) && Objects.nonNull(theirs)) {
+			return ours;
+		} else if (Objects.isNull(base)) {
+			return Objects.isNull(ours) ? theirs : ours;
+		} else if (Objects.isNull(ours) && Objects.isNull(theirs)) {
+			return null;
+		} else if (Objects.isNull(ours)) {
+			if (theirsChanged) {
+				conflicts.add(new Conflict(subject, "existence", "present", "deleted", "changed"));
+				return theirs;
+			}
+			return null;
+		} else {
+			if (oursChanged) {
+				conflicts.add(new Conflict(subject, "existence", "present", "changed", "deleted"));
+				return ours;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Merge two versions of a database, each derived from a common base. Changes made on only one side are kept;
+	 * where both sides changed the same field, assignment, or date differently, ours is kept and a conflict is
+	 * reported, as it is when one side deleted what the other changed, in which case the changed version is kept.
+	 * The merged database shares no tasks or iterations with the inputs.
+	 */
+	public static @NotNull MergeResult merge(final @NotNull TaskDatabase base, final @NotNull TaskDatabase ours,
+											 final @NotNull TaskDatabase theirs) {
+		final List<Conflict> conflicts = new ArrayList<>();
+		final TaskBatch batch = new TaskBatch();
+		final Map<UUID, Iteration> iterations = new LinkedHashMap<>();
+		for (final TaskDatabase side : List.of(base, ours, theirs)) {
+			for (final Iteration iteration : side.getIterations()) {
+				iterations.putIfAbsent(iteration.getId(), null);
+			}
+		}
+		for (final UUID id : iterations.keySet()) {
+			final Iteration merged = mergeIteration(id, base.getIterationById(id), ours.getIterationById(id),
+				theirs.getIterationById(id), conflicts);
+			iterations.put(id, merged);
+			if (Objects.nonNull(merged)) {
+				batch.addIteration(merged);
+			}
+		}
+		final Map<TaskIdentifier, Boolean> seen = new LinkedHashMap<>();
+		for (final TaskDatabase side : List.of(base, ours, theirs)) {
+			for (final Task task : side.getTasks()) {
+				if (Objects.isNull(seen.putIfAbsent(task.getIdentifier(), Boolean.TRUE))) {
+					mergeTask(task.getIdentifier(), base, ours, theirs, iterations, batch, conflicts);
+				}
+			}
+		}
+		final TaskDatabase merged = new TaskDatabase();
+		merged.apply(batch);
+		return new MergeResult(merged, Collections.unmodifiableList(conflicts));
+	}
+
+	private static @Nullable Iteration mergeIteration(final @NotNull UUID id, final @Nullable Iteration base,
+													  final @Nullable Iteration ours,
+													  final @Nullable Iteration theirs,
+													  final @NotNull List<Conflict> conflicts) {
+		final Iteration start = survivor(id, base, ours, theirs, !Objects.equals(base, ours),
+			!Objects.equals(base, theirs), conflicts);
+		if (Objects.isNull(start)) {
+			return null;
+		}
+		// A side missing it (having deleted what the other changed) counts as unchanged.
+		final Iteration original = Objects.requireNonNullElse(base, start);
+		final Iteration left = Objects.requireNonNullElse(ours, original);
+		final Iteration right = Objects.requireNonNullElse(theirs, original);
+		final boolean added = Objects.isNull(base);
+		final String name =
+			merge(id, "name", added ? null : original.getName(), left.getName(), right.getName(), conflicts);
+		final LocalDate startDate = merge(id, "start", added ? null : original.getStartDate(), left.getStartDate(),
+			right.getStartDate(), conflicts);
+		final LocalDate endDate =
+			merge(id, "end", added ? null : original.getEndDate(), left.getEndDate(), right.getEndDate(), conflicts);
+		// One side moving the start past where the other moved the end leaves no valid iteration; keep our dates.
+		if (Objects.isNull(startDate) ? Objects.nonNull(endDate) :
+					Objects.nonNull(endDate) && !endDate.isAfter(startDate)) {
+			conflicts.add(new Conflict(id, "dates", null, "%s to %s".formatted(left.getStartDate(), left.getEndDate()),
+				"%s to %s".formatted(startDate, endDate)));
+			return new Iteration(id, name, left.getStartDate(), left.getEndDate());
+		}
+		return new Iteration(id, name, startDate, endDate);
+	}
+
+	private static void mergeTask(final @NotNull TaskIdentifier id, final @NotNull TaskDatabase base,
+								  final @NotNull TaskDatabase ours, final @NotNull TaskDatabase theirs,
+								  final @NotNull Map<UUID, Iteration> iterations, final @NotNull TaskBatch batch,
+								  final @NotNull List<Conflict> conflicts) {
+		final Task baseTask = base.getTask(id);
+		final Task ourTask = ours.getTask(id);
+		final Task theirTask = theirs.getTask(id);
+		final Task start = survivor(id, baseTask, ourTask, theirTask,
+			isChanged(id, base, baseTask, ours, ourTask), isChanged(id, base, baseTask, theirs, theirTask),
+			conflicts);
+		if (Objects.isNull(start)) {
+			return;
+		}
+		// A side missing the task (having deleted what the other changed) counts as unchanged.
+		final Task original = Objects.requireNonNullElse(baseTask, start);
+		final TaskDatabase originalSide = Objects.isNull(baseTask) ? (Objects.isNull(ourTask) ? theirs : ours) : base;
+		final Task left = Objects.requireNonNullElse(ourTask, original);
+		final TaskDatabase leftSide = Objects.isNull(ourTask) ? originalSide : ours;
+		final Task right = Objects.requireNonNullElse(theirTask, original);
+		final TaskDatabase rightSide = Objects.isNull(theirTask) ? originalSide : theirs;
+		final boolean added = Objects.isNull(baseTask);
+
+		final Object[] values = new Object[ChangeEvent.Field.values().length];
+		for (final ChangeEvent.Field field : ChangeEvent.Field.values()) {
+			values[field.ordinal()] = left.getFingerprint() == right.getFingerprint() ? getField(left, field) :
+				merge(id, field.name(), added ? null : getField(original, field), getField(left, field),
+					getField(right, field), conflicts);
+		}
+		final Task task = new Task(id, (String) values[ChangeEvent.Field.Name.ordinal()],
+			(String) values[ChangeEvent.Field.Description.ordinal()]);
+		task.setEstimate((TimeEstimate) values[ChangeEvent.Field.Estimate.ordinal()]);
+		task.setUpstreamURL((String) values[ChangeEvent.Field.UpstreamURL.ordinal()]);
+		task.setStatus((TaskStatus) values[ChangeEvent.Field.Status.ordinal()]);
+		batch.addTask(task);
+
+		final UUID iteration = merge(id, "iteration", added ? null : iterationOf(originalSide, id),
+			iterationOf(leftSide, id), iterationOf(rightSide, id), conflicts);
+		final LocalDate date = merge(id, "date", added ? null : originalSide.getAssignedDate(id),
+			leftSide.getAssignedDate(id), rightSide.getAssignedDate(id), conflicts);
+		final LocalDate end = merge(id, "end date", added ? null : originalSide.getAssignedEndDate(id),
+			leftSide.getAssignedEndDate(id), rightSide.getAssignedEndDate(id), conflicts);
+		final Iteration target = Objects.isNull(iteration) ? null : iterations.get(iteration);
+		if (Objects.nonNull(iteration) && Objects.isNull(target)) {
+			conflicts.add(new Conflict(id, "iteration", null, iteration, "deleted"));
+			return;
+		} else if (Objects.nonNull(target)) {
+			batch.assignToIteration(id, iteration);
+		}
+		if (Objects.nonNull(date)) {
+			// The end date is null only if the date was too, on the side it came from.
+			final LocalDate last = Objects.isNull(end) || end.isBefore(date) ? date : end;
+			if (Objects.nonNull(target) && target.containsDate(date) && target.containsDate(last)) {
+				batch.assignToDates(id, date, last);
+			} else {
+				conflicts.add(new Conflict(id, "date", null, date, "outside the merged iteration"));
+			}
+		}
+	}
+
+	/**
+	 * @return whether a side's version of a task, if it has one, differs from the base's in any way
+	 */
+	private static boolean isChanged(final @NotNull TaskIdentifier id, final @NotNull TaskDatabase base,
+									 final @Nullable Task baseTask, final @NotNull TaskDatabase side,
+									 final @Nullable Task sideTask) {
+		return Objects.nonNull(baseTask) && Objects.nonNull(sideTask) &&
+					   (baseTask.getFingerprint() != sideTask.getFingerprint() ||
+								!Objects.equals(iterationOf(base, id), iterationOf(side, id)) ||
+								!Objects.equals(base.getAssignedDate(id), side.getAssignedDate(id)) ||
+								!Objects.equals(base.getAssignedEndDate(id), side.getAssignedEndDate(id)));
+	}
+}
@@ -0,0 +1,238 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The quarter-hours of work scheduled for each day of an iteration, kept up to date by its {@link TaskDatabase} as
+ * tasks are scheduled and re-estimated. A task scheduled over several days has its
+ * {@link TimeEstimate#getBudget budget} spread evenly across them, any remainder going to the earliest days;
+ * tasks that are {@link TimeEstimate#Unestimated unestimated} or {@link TimeEstimate#Epic too big to budget}
+ * count for nothing.
+ *
+ * The days are the leaves of a segment tree holding the sum and the maximum of each range, with pending additions
+ * kept lazily at the highest node they cover in full, so scheduling a task and asking for the load of any range
+ * of days, its busiest day, or the first day over a given capacity all take O(log d) time for an iteration of d
+ * days, however many tasks it holds.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class DayLoad {
+	/**
+	 * What a task has added to the load: its first and last days, as offsets from the iteration's start, and its
+	 * budget.
+	 */
+	private record Span(int first, int last, int budget) {}
+
+	private final @NotNull LocalDate start;
+	private final @NotNull LocalDate end;
+	private final int days;
+	/**
+	 * The number of leaves, a power of two. Node i's children are 2i and 2i+1, and it covers a power-of-two range
+	 * of days; padding days past the end are never given any load, and count as having less than none.
+	 */
+	private final int size;
+	private final long[] sum;
+	private final int[] max;
+	/**
+	 * What is still to be added to each day under a node, already counted in the node itself but not its children.
+	 */
+	private final int[] pending;
+	private final @NotNull Map<TaskIdentifier, Span> spans = new HashMap<>();
+
+	DayLoad(final @NotNull LocalDate start, final @NotNull LocalDate end) {
+		this.start = start;
+		this.end = end;
+		days = Math.toIntExact(ChronoUnit.DAYS.between(start, end) + 1);
+		size = Integer.highestOneBit(Math.max(1, days - 1)) << 1;
+		sum = new long[2 * size];
+		max = new int[2 * size];
+		pending = new int[2 * size];
+		Arrays.fill(max, size + days, 2 * size, Integer.MIN_VALUE);
+		for (int i = size - 1; i > 0; i--) {
+			max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+		}
+	}
+
+	/**
+	 * @return how much a task counts towards the load
+	 */
+	static int budget(final @NotNull TimeEstimate estimate) {
+		return estimate == TimeEstimate.Unestimated || estimate == TimeEstimate.Epic ? 0 : estimate.getBudget();
+	}
+
+	private int offset(final @NotNull LocalDate date) {
+		return Math.toIntExact(ChronoUnit.DAYS.between(start, date));
+	}
+
+	/**
+	 * Set what a task contributes, replacing anything it contributed before. Any days outside the iteration
+	 * (possible only if the iteration's dates have changed) are dropped, along with their share of the budget.
+	 */
+	void put(final @NotNull TaskIdentifier task, final @NotNull LocalDate first, final @NotNull LocalDate last,
+			 final @NotNull TimeEstimate estimate) {
+		remove(task);
+		final Span span = new Span(offset(first), offset(last), budget(estimate));
+		if (span.budget() != 0) {
+			spans.put(task, span);
+			spread(span, 1);
+		}
+	}
+
+	/**
+	 * Remove whatever a task contributes.
+	 */
+	void remove(final @NotNull TaskIdentifier task) {
+		final Span span = spans.remove(task);
+		if (Objects.nonNull(span)) {
+			spread(span, -1);
+		}
+	}
+
+	private void spread(final @NotNull Span span, final int sign) {
+		final int length = span.last() - span.first() + 1;
+		final int share = span.budget() / length;
+		final int extra = span.first() + span.budget() % length;
+		add(span.first(), extra - 1, sign * (share + 1));
+		add(extra, span.last(), sign * share);
+	}
+
+	private void add(final int first, final int last, final int amount) {
+		final int from = Math.max(first, 0);
+		final int to = Math.min(last, days - 1);
+		if (from <= to && amount != 0) {
+			add(1, 0, size - 1, from, to, amount);
+		}
+	}
+
+	private void add(final int node, final int low, final int high, final int from, final int to, final int amount) {
+		if (from <= low && high <= to) {
+			apply(node, high - low + 1, amount);
+			return;
+		}
+		push(node, high - low + 1);
+		final int middle = (low + high) >>> 1;
+		if (from <= middle) {
+			add(2 * node, low, middle, from, to, amount);
+		}
+		if (to > middle) {
+			add(2 * node + 1, middle + 1, high, from, to, amount);
+		}
+		sum[node] = sum[2 * node] + sum[2 * node + 1];
+		max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+	}
+
+	/**
+	 * Add to every day under a node. Additions are clipped to the real days, so this never reaches a node with
+	 * any padding under it.
+	 */
+	private void apply(final int node, final int width, final int amount) {
+		sum[node] += (long) amount * width;
+		max[node] += amount;
+		pending[node] += amount;
+	}
+
+	private void push(final int node, final int width) {
+		if (pending[node] != 0) {
+			apply(2 * node, width / 2, pending[node]);
+			apply(2 * node + 1, width / 2, pending[node]);
+			pending[node] = 0;
+		}
+	}
+
+	private long sum(final int node, final int low, final int high, final int from, final int to) {
+		if (from <= low && high <= to) {
+			return sum[node];
+		}
+		push(node, high - low + 1);
+		final int middle = (low + high) >>> 1;
+		return (from <= middle ? sum(2 * node, low, middle, from, to) : 0) +
+					   (to > middle ? sum(2 * node + 1, middle + 1, high, from, to) : 0);
+	}
+
+	private int max(final int node, final int low, final int high, final int from, final int to) {
+		if (from <= low && high <= to) {
+			return max[node];
+		}
+		push(node, high - low + 1);
+		final int middle = (low + high) >>> 1;
+		return Math.max(from <= middle ? max(2 * node, low, middle, from, to) : Integer.MIN_VALUE,
+			to > middle ? max(2 * node + 1, middle + 1, high, from, to) : Integer.MIN_VALUE);
+	}
+
+	private void checkRange(final @NotNull LocalDate from, final @NotNull LocalDate to) {
+		if (from.isBefore(start) || to.isAfter(end)) {
+			throw new IllegalArgumentException("Dates not within the iteration");
+		} else if (to.isBefore(from)) {
+			throw new IllegalArgumentException("Range ends before it starts");
+		}
+	}
+
+	/**
+	 * @return the iteration's first day
+	 */
+	public @NotNull LocalDate getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the iteration's last day
+	 */
+	public @NotNull LocalDate getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the quarter-hours of work scheduled for a day of the iteration
+	 */
+	public int getLoad(final @NotNull LocalDate day) {
+		checkRange(day, day);
+		return max(1, 0, size - 1, offset(day), offset(day));
+	}
+
+	/**
+	 * @return the quarter-hours of work scheduled for a range of days of the iteration, inclusive
+	 */
+	public long getLoad(final @NotNull LocalDate from, final @NotNull LocalDate to) {
+		checkRange(from, to);
+		return sum(1, 0, size - 1, offset(from), offset(to));
+	}
+
+	/**
+	 * @return the most quarter-hours of work scheduled for any one day in a range of days of the iteration
+	 */
+	public int getPeak(final @NotNull LocalDate from, final @NotNull LocalDate to) {
+		checkRange(from, to);
+		return max(1, 0, size - 1, offset(from), offset(to));
+	}
+
+	/**
+	 * @return whether any day of the iteration has more than the given quarter-hours of work
+	 */
+	public boolean isOverCapacity(final int capacity) {
+		return max[1] > capacity;
+	}
+
+	/**
+	 * @return the first day of the iteration with more than the given quarter-hours of work, if any
+	 */
+	public @Nullable LocalDate getFirstOverCapacity(final int capacity) {
+		if (max[1] <= capacity) {
+			return null;
+		}
+		int node = 1;
+		int width = size;
+		while (node < size) {
+			push(node, width);
+			node = max[2 * node] > capacity ? 2 * node : 2 * node + 1;
+			width /= 2;
+		}
+		return start.plusDays(node - size);
+	}
+}
@@ -0,0 +1,428 @@
+package monger.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Which tasks must be completed before which others.
+ *
+ * Tasks are numbered densely as they first appear, and edges are kept in parallel primitive arrays, each threaded
+ * onto a doubly-linked list of its prerequisite's outgoing edges and another of its dependent's incoming edges,
+ * and found by their ends' numbers in a primitive hash table, so that millions of edges cost a few dozen bytes
+ * each and no objects, and finding or removing one takes constant time however many edges its ends have.
+ * Removed edges' slots are reused.
+ *
+ * The graph is kept acyclic, and in topological order, as edges are added, following Pearce and Kelly: every task
+ * has a rank, lower for tasks that must come first. An edge that already agrees with the ranks costs nothing more
+ * to add; otherwise only the tasks ranked between its ends are searched, both to find any cycle it would close
+ * and to re-rank the tasks it puts out of order. Tasks first seen as a prerequisite are ranked before every other
+ * task, and those first seen as a dependent after, so building a graph in either direction rarely needs re-ranking.
+ *
+ * Dependencies are not yet saved with the database.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class DependencyGraph {
+	private static final int NONE = -1;
+
+	/**
+	 * The longest chain of dependent tasks, in order, and the quarter-hours they are estimated to take in all.
+	 */
+	public record CriticalPath(long quarterHours, @NotNull List<TaskIdentifier> tasks) {}
+
+	private final @NotNull Map<TaskIdentifier, Integer> numbers = new HashMap<>();
+	private final @NotNull List<TaskIdentifier> identifiers = new ArrayList<>();
+	private int[] rank = new int[16];
+	private int[] firstOut = new int[16];
+	private int[] firstIn = new int[16];
+	/**
+	 * For the searches in {@link #addDependency}: the search in which each task was last visited.
+	 */
+	private int[] visited = new int[16];
+	private int search = 0;
+	private int lowestRank = 0;
+	private int highestRank = -1;
+
+	private int[] from = new int[16];
+	private int[] to = new int[16];
+	private int[] nextOut = new int[16];
+	private int[] previousOut = new int[16];
+	private int[] nextIn = new int[16];
+	private int[] previousIn = new int[16];
+	/**
+	 * Each live edge's slot, by {@link #edgeKey its ends}.
+	 */
+	private final @NotNull LongIntMap edgesByEnds = new LongIntMap();
+	/**
+	 * How many edge slots have been used; those below this but not live are on the free list, through
+	 * {@link #nextOut}.
+	 */
+	private int edgeSlots = 0;
+	private int freeEdge = NONE;
+	private int edges = 0;
+
+	/**
+	 * A growable list of ints, for the searches.
+	 */
+	private static final class IntList {
+		private int[] data = new int[16];
+		private int size = 0;
+
+		void add(final int value) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size] = value;
+			size++;
+		}
+
+		int pop() {
+			size--;
+			return data[size];
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+
+	private final @NotNull IntList stack = new IntList();
+	private final @NotNull IntList forward = new IntList();
+	private final @NotNull IntList backward = new IntList();
+
+	/**
+	 * @return the task's number, assigning one if it has none
+	 * @param early whether a new task should be ranked before all others, rather than after
+	 */
+	private int number(final @NotNull TaskIdentifier task, final boolean early) {
+		final Integer existing = numbers.get(task);
+		if (Objects.nonNull(existing)) {
+			return existing;
+		}
+		final int retval = identifiers.size();
+		if (retval == rank.length) {
+			final int capacity = retval * 2;
+			rank = Arrays.copyOf(rank, capacity);
+			firstOut = Arrays.copyOf(firstOut, capacity);
+			firstIn = Arrays.copyOf(firstIn, capacity);
+			visited = Arrays.copyOf(visited, capacity);
+		}
+		identifiers.add(task);
+		numbers.put(task, retval);
+		if (early) {
+			lowestRank--;
+			rank[retval] = lowestRank;
+		} else {
+			highestRank++;
+			rank[retval] = highestRank;
+		}
+		firstOut[retval] = NONE;
+		firstIn[retval] = NONE;
+		visited[retval] = 0;
+		return retval;
+	}
+
+	private static long edgeKey(final int prerequisite, final int dependent) {
+		return ((long) prerequisite << 32) | dependent;
+	}
+
+	private int findEdge(final int prerequisite, final int dependent) {
+		final int edge = edgesByEnds.get(edgeKey(prerequisite, dependent));
+		return edge == LongIntMap.ABSENT ? NONE : edge;
+	}
+
+	/**
+	 * Record that one task cannot be done until another is completed.
+	 *
+	 * @return false if the dependency was already recorded
+	 * @throws IllegalArgumentException if the prerequisite already depends, directly or indirectly, on the
+	 *                                  dependent task
+	 */
+	public boolean addDependency(final @NotNull TaskIdentifier dependent, final @NotNull TaskIdentifier prerequisite) {
+		if (dependent.equals(prerequisite)) {
+			throw new IllegalArgumentException("A task cannot depend on itself");
+		}
+		final int source = number(prerequisite, true);
+		final int target = number(dependent, false);
+		if (findEdge(source, target) != NONE) {
+			return false;
+		}
+		if (rank[target] < rank[source]) {
+			reorder(source, target);
+		}
+		final int edge;
+		if (freeEdge == NONE) {
+			edge = edgeSlots;
+			edgeSlots++;
+			if (edge == from.length) {
+				final int capacity = edge * 2;
+				from = Arrays.copyOf(from, capacity);
+				to = Arrays.copyOf(to, capacity);
+				nextOut = Arrays.copyOf(nextOut, capacity);
+				previousOut = Arrays.copyOf(previousOut, capacity);
+				nextIn = Arrays.copyOf(nextIn, capacity);
+				previousIn = Arrays.copyOf(previousIn, capacity);
+			}
+		} else {
+			edge = freeEdge;
+			freeEdge = nextOut[edge];
+		}
+		from[edge] = source;
+		to[edge] = target;
+		nextOut[edge] = firstOut[source];
+		previousOut[edge] = NONE;
+		if (firstOut[source] != NONE) {
+			previousOut[firstOut[source]] = edge;
+		}
+		firstOut[source] = edge;
+		nextIn[edge] = firstIn[target];
+		previousIn[edge] = NONE;
+		if (firstIn[target] != NONE) {
+			previousIn[firstIn[target]] = edge;
+		}
+		firstIn[target] = edge;
+		edgesByEnds.put(edgeKey(source, target), edge);
+		edges++;
+		return true;
+	}
+
+	/**
+	 * Re-rank the tasks so that the source of a new edge comes before its target, whose rank is now lower.
+	 *
+	 * @throws IllegalArgumentException if the new edge would close a cycle
+	 */
+	private void reorder(final int source, final int target) {
+		final int lower = rank[target];
+		final int upper = rank[source];
+		search++;
+		// Everything reachable from the target that is ranked no later than the source ...
+		forward.clear();
+		stack.clear();
+		stack.add(target);
+		visited[target] = search;
+		while (stack.size > 0) {
+			final int task = stack.pop();
+			forward.add(task);
+			for (int edge = firstOut[task]; edge != NONE; edge = nextOut[edge]) {
+				final int next = to[edge];
+				if (next == source) {
+					throw new IllegalArgumentException("%s already depends on %s".formatted(
+						identifiers.get(source), identifiers.get(target)));
+				} else if (visited[next] != search && rank[next] < upper) {
+					visited[next] = search;
+					stack.add(next);
+				}
+			}
+		}
+		// ... and everything the source depends on that is ranked later than the target ...
+		backward.clear();
+		stack.add(source);
+		visited[source] = search;
+		while (stack.size > 0) {
+			final int task = stack.pop();
+			backward.add(task);
+			for (int edge = firstIn[task]; edge != NONE; edge = nextIn[edge]) {
+				final int next = from[edge];
+				if (visited[next] != search && rank[next] > lower) {
+					visited[next] = search;
+					stack.add(next);
+				}
+			}
+		}
+		// ... take the same ranks between them, with the latter all before the former.
+		final long[] sorted = new long[forward.size + backward.size];
+		final int[] ranks = new int[sorted.length];
+		for (int i = 0; i < backward.size; i++) {
+			sorted[i] = byRank(backward.data[i]);
+		}
+		Arrays.sort(sorted, 0, backward.size);
+		for (int i = 0; i < forward.size; i++) {
+			sorted[backward.size + i] = byRank(forward.data[i]);
+		}
+		Arrays.sort(sorted, backward.size, sorted.length);
+		for (int i = 0; i < sorted.length; i++) {
+			ranks[i] = (int) (sorted[i] >> 32);
+		}
+		Arrays.sort(ranks);
+		for (int i = 0; i < sorted.length; i++) {
+			rank[(int) sorted[i]] = ranks[i];
+		}
+	}
+
+	/**
+	 * @return the task's number, in a key that sorts by its rank
+	 */
+	private long byRank(final int task) {
+		return ((long) rank[task] << 32) | task;
+	}
+
+	/**
+	 * @return false if there was no such dependency
+	 */
+	public boolean removeDependency(final @NotNull TaskIdentifier dependent,
+									final @NotNull TaskIdentifier prerequisite) {
+		final Integer source = numbers.get(prerequisite);
+		final Integer target = numbers.get(dependent);
+		if (Objects.isNull(source) || Objects.isNull(target)) {
+			return false;
+		}
+		final int edge = findEdge(source, target);
+		if (edge == NONE) {
+			return false;
+		}
+		if (previousOut[edge] == NONE) {
+			firstOut[source] = nextOut[edge];
+		} else {
+			nextOut[previousOut[edge]] = nextOut[edge];
+		}
+		if (nextOut[edge] != NONE) {
+			previousOut[nextOut[edge]] = previousOut[edge];
+		}
+		if (previousIn[edge] == NONE) {
+			firstIn[target] = nextIn[edge];
+		} else {
+			nextIn[previousIn[edge]] = nextIn[edge];
+		}
+		if (nextIn[edge] != NONE) {
+			previousIn[nextIn[edge]] = previousIn[edge];
+		}
+		edgesByEnds.remove(edgeKey(source, target));
+		nextOut[edge] = freeEdge;
+		freeEdge = edge;
+		edges--;
+		return true;
+	}
+
+	/**
+	 * @return the tasks that must be completed before the given one
+	 */
+	public @NotNull List<TaskIdentifier> getPrerequisites(final @NotNull TaskIdentifier task) {
+		final Integer number = numbers.get(task);
+		final List<TaskIdentifier> retval = new ArrayList<>();
+		if (Objects.nonNull(number)) {
+			for (int edge = firstIn[number]; edge != NONE; edge = nextIn[edge]) {
+				retval.add(identifiers.get(from[edge]));
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @return the tasks that cannot be done until the given one is completed
+	 */
+	public @NotNull List<TaskIdentifier> getDependents(final @NotNull TaskIdentifier task) {
+		final Integer number = numbers.get(task);
+		final List<TaskIdentifier> retval = new ArrayList<>();
+		if (Objects.nonNull(number)) {
+			for (int edge = firstOut[number]; edge != NONE; edge = nextOut[edge]) {
+				retval.add(identifiers.get(to[edge]));
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @return how many dependencies there are
+	 */
+	public int size() {
+		return edges;
+	}
+
+	/**
+	 * @return the numbers of every task that has (or had) any dependency, each after all its prerequisites
+	 */
+	private int[] order() {
+		final int count = identifiers.size();
+		final long[] sorted = new long[count];
+		for (int i = 0; i < count; i++) {
+			sorted[i] = byRank(i);
+		}
+		Arrays.sort(sorted);
+		final int[] retval = new int[count];
+		for (int i = 0; i < count; i++) {
+			retval[i] = (int) sorted[i];
+		}
+		return retval;
+	}
+
+	/**
+	 * @return every task that has (or had) any dependency, each after all the tasks it depends on
+	 */
+	public @NotNull List<TaskIdentifier> topologicalOrder() {
+		final List<TaskIdentifier> retval = new ArrayList<>(identifiers.size());
+		for (final int task : order()) {
+			retval.add(identifiers.get(task));
+		}
+		return retval;
+	}
+
+	/**
+	 * How much a task counts towards the critical path: unestimated tasks and those too big to budget count for
+	 * nothing.
+	 */
+	private static int budget(final @NotNull TimeEstimate estimate) {
+		return estimate == TimeEstimate.Epic || estimate == TimeEstimate.Unestimated ? 0 : estimate.getBudget();
+	}
+
+	/**
+	 * Find the chain of dependencies estimated to take the longest, counting every task in it whether or not it
+	 * is completed. Tasks not in the database count for nothing.
+	 */
+	public @NotNull CriticalPath criticalPath(final @NotNull TaskDatabase tasks) {
+		final int count = identifiers.size();
+		final long[] length = new long[count];
+		final int[] previous = new int[count];
+		int end = NONE;
+		for (final int task : order()) {
+			long longest = 0;
+			previous[task] = NONE;
+			for (int edge = firstIn[task]; edge != NONE; edge = nextIn[edge]) {
+				if (previous[task] == NONE || length[from[edge]] > longest) {
+					longest = length[from[edge]];
+					previous[task] = from[edge];
+				}
+			}
+			final Task found = tasks.getTask(identifiers.get(task));
+			length[task] = longest + (Objects.isNull(found) ? 0 : budget(found.getEstimate()));
+			if (end == NONE || length[task] > length[end]) {
+				end = task;
+			}
+		}
+		final List<TaskIdentifier> path = new ArrayList<>();
+		for (int task = end; task != NONE; task = previous[task]) {
+			path.add(identifiers.get(task));
+		}
+		return new CriticalPath(end == NONE ? 0 : length[end], path.reversed());
+	}
+
+	/**
+	 * @return the tasks not yet completed that depend directly on any task not yet completed, in topological
+	 * order; a prerequisite not in the database counts as not completed
+	 */
+	public @NotNull List<TaskIdentifier> blocked(final @NotNull TaskDatabase tasks) {
+		final int count = identifiers.size();
+		final boolean[] completed = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			final Task task = tasks.getTask(identifiers.get(i));
+			completed[i] = Objects.nonNull(task) && task.getStatus() == TaskStatus.Completed;
+		}
+		final List<TaskIdentifier> retval = new ArrayList<>();
+		for (final int task : order()) {
+			if (completed[task]) {
+				continue;
+			}
+			for (int edge = firstIn[task]; edge != NONE; edge = nextIn[edge]) {
+				if (!completed[from[edge]]) {
+					retval.add(identifiers.get(task));
+					break;
+				}
+			}
+		}
+		return retval;
+	}
+}
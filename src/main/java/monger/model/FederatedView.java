@@ -0,0 +1,104 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A read-only view of several task databases, such as one per team, as one. Each task is qualified by the database
+ * it came from, so tasks with the same identifier in different databases are all kept, each with its own
+ * iteration and date; lookups by identifier alone return all of them, in the order the databases were given.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class FederatedView {
+	/**
+	 * A task, and the database it came from.
+	 *
+	 * @param source the name of the database
+	 */
+	public record Entry(@NotNull String source, @NotNull Task task) {}
+
+	private final @NotNull Map<String, TaskDatabase> databases;
+	private final @NotNull List<Entry> entries = new ArrayList<>();
+	private final @NotNull Map<TaskIdentifier, List<Entry>> byIdentifier = new HashMap<>();
+
+	/**
+	 * @param databases the databases, by name, in order of precedence
+	 */
+	public FederatedView(final @NotNull Map<String, TaskDatabase> databases) {
+		this.databases = Collections.unmodifiableMap(new LinkedHashMap<>(databases));
+		for (final Map.Entry<String, TaskDatabase> database : this.databases.entrySet()) {
+			for (final Task task : database.getValue().getTasks()) {
+				final Entry entry = new Entry(database.getKey(), task);
+				entries.add(entry);
+				byIdentifier.computeIfAbsent(task.getIdentifier(), k -> new ArrayList<>(1)).add(entry);
+			}
+		}
+	}
+
+	/**
+	 * @return a view of a single database
+	 */
+	public static @NotNull FederatedView of(final @NotNull String name, final @NotNull TaskDatabase database) {
+		return new FederatedView(Map.of(name, database));
+	}
+
+	/**
+	 * @return the names of the databases, in order of precedence
+	 */
+	public @NotNull Set<String> getSources() {
+		return databases.keySet();
+	}
+
+	/**
+	 * @return the database with the given name, if any
+	 */
+	public @Nullable TaskDatabase getDatabase(final @NotNull String source) {
+		return databases.get(source);
+	}
+
+	/**
+	 * @return every task in every database
+	 */
+	public @NotNull Iterable<Entry> getTasks() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * @return the tasks with the given identifier, from every database that has one
+	 */
+	public @NotNull List<Entry> getTasks(final @NotNull TaskIdentifier identifier) {
+		return Collections.unmodifiableList(byIdentifier.getOrDefault(identifier, List.of()));
+	}
+
+	/**
+	 * @return whether more than one database has a task with the given identifier
+	 */
+	public boolean isColliding(final @NotNull TaskIdentifier identifier) {
+		return getTasks(identifier).size() > 1;
+	}
+
+	/**
+	 * @return the iteration the task is assigned to in its database, if any
+	 */
+	public @Nullable Iteration getIteration(final @NotNull Entry entry) {
+		return Objects.requireNonNull(databases.get(entry.source())).getIteration(entry.task().getIdentifier());
+	}
+
+	/**
+	 * @return the date the task is scheduled for in its database, if any
+	 */
+	public @Nullable LocalDate getAssignedDate(final @NotNull Entry entry) {
+		return Objects.requireNonNull(databases.get(entry.source()))
+					   .getAssignedDate(entry.task().getIdentifier());
+	}
+}
@@ -0,0 +1,63 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.UUID;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Helpers for the 64-bit content fingerprints of model objects. Fingerprints of equal objects are always equal;
+ * fingerprints of unequal objects are very probably unequal, so comparing them rules out most mismatches in O(1).
+ */
+public final class Fingerprint {
+	private Fingerprint() {
+		// Don't instantiate.
+	}
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * @return the FNV-1a hash of a string's characters, mixed; nulls have a fingerprint distinct from all strings'
+	 */
+	public static long of(final @Nullable String string) {
+		if (Objects.isNull(string)) {
+			return 0x9e3779b97f4a7c15L;
+		}
+		long h = FNV_OFFSET;
+		final int length = string.length();
+		for (int i = 0; i < length; i++) {
+			h ^= string.charAt(i);
+			h *= FNV_PRIME;
+		}
+		return mix(h);
+	}
+
+	public static long of(final @Nullable LocalDate date) {
+		return Objects.isNull(date) ? 0x632be59bd9b4e019L : mix(date.toEpochDay());
+	}
+
+	public static long of(final UUID id) {
+		return combine(id.getMostSignificantBits(), id.getLeastSignificantBits());
+	}
+
+	/**
+	 * Spread the bits of a value (this is the finalizer from MurmurHash3).
+	 */
+	public static long mix(final long value) {
+		long h = value;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Combine two fingerprints in an order-dependent way.
+	 */
+	public static long combine(final long first, final long second) {
+		return mix(first * 31 + second);
+	}
+}
@@ -0,0 +1,9 @@
+package monger.model;
+
+/**
+ * Something that wants to know when a mutable model object's content fingerprint changes.
+ */
+@FunctionalInterface
+interface FingerprintListener {
+	void fingerprintChanged(long oldFingerprint, long newFingerprint);
+}
@@ -0,0 +1,116 @@
+package monger.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A source of unique IDs for purely-local tasks. Each thread reserves a block of IDs at a time from a shared
+ * counter with a single atomic add, then hands them out from that block without any synchronization, so threads
+ * creating tasks in bulk neither collide nor contend. The price is that IDs are not dense: each thread that ever
+ * asks for an ID may leave up to a block's worth unused.
+ *
+ * The "high-water mark" is the lowest ID not yet reserved by any thread; persisting it and starting a later
+ * generator from it guarantees no ID is ever handed out twice.
+ */
+public final class IDGenerator {
+	/**
+	 * How many IDs each thread reserves at a time by default.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	/**
+	 * The lowest ID not yet reserved.
+	 */
+	private final @NotNull AtomicLong highWater;
+
+	private final int blockSize;
+
+	/**
+	 * Each thread's current block: the next ID to hand out, and the end (exclusive) of the block.
+	 */
+	private final @NotNull ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]);
+
+	/**
+	 * @param highWater the lowest ID that may be handed out
+	 * @param blockSize how many IDs each thread reserves at a time
+	 */
+	public IDGenerator(final long highWater, final int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+		this.highWater = new AtomicLong(highWater);
+		this.blockSize = blockSize;
+	}
+
+	public IDGenerator(final long highWater) {
+		this(highWater, DEFAULT_BLOCK_SIZE);
+	}
+
+	public IDGenerator() {
+		this(0L);
+	}
+
+	/**
+	 * @return an ID that no other call to this method on this generator, or on any generator started from a
+	 * high-water mark taken after this call, will return
+	 */
+	public long getId() {
+		final long[] current = block.get();
+		if (current[0] < current[1]) {
+			return current[0]++;
+		}
+		final long start = highWater.getAndAdd(blockSize);
+		current[0] = start + 1;
+		current[1] = start + blockSize;
+		return start;
+	}
+
+	/**
+	 * Make sure that no ID at or below the given one will be reserved from now on; for use with IDs loaded from
+	 * storage. This does not affect blocks threads have already reserved, so it should be called before any IDs
+	 * are generated.
+	 *
+	 * @param id an ID already in use
+	 */
+	public void register(final long id) {
+		highWater.accumulateAndGet(id + 1, Math::max);
+	}
+
+	/**
+	 * @return the lowest ID not yet reserved by any thread
+	 */
+	public long getHighWaterMark() {
+		return highWater.get();
+	}
+
+	/**
+	 * Write the high-water mark to a file, replacing it atomically if it already exists.
+	 *
+	 * @param file where to store it
+	 */
+	public void save(final @NotNull Path file) throws IOException {
+		final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.writeString(temp, Long.toString(getHighWaterMark()), StandardCharsets.UTF_8);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param file a file written by {@link #save}, which need not exist yet
+	 * @return a generator starting from the high-water mark stored in it, or from 0 if it does not exist
+	 */
+	public static @NotNull IDGenerator load(final @NotNull Path file) throws IOException {
+		try {
+			return new IDGenerator(Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim()));
+		} catch (final NoSuchFileException except) {
+			return new IDGenerator();
+		} catch (final NumberFormatException except) {
+			throw new IOException("Malformed ID high-water mark in " + file, except);
+		}
+	}
+}
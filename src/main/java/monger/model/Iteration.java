@@ -4,6 +4,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -35,6 +37,11 @@ public class Iteration implements Comparable<Iteration> {
 	 */
 	private @Nullable LocalDate endDate;
 
+	/**
+	 * Those who want to know when the fingerprint changes (the databases containing this iteration).
+	 */
+	private final @NotNull List<@NotNull FingerprintListener> listeners = new ArrayList<>(1);
+
 	private static void checkInvariant(final @Nullable LocalDate startDate, final @Nullable LocalDate endDate) {
 		if (Objects.isNull(startDate)) {
 			if (!Objects.isNull(endDate)) {
@@ -76,7 +83,9 @@ public class Iteration implements Comparable<Iteration> {
 	 * @param name A human-readable name for the iteration.
 	 */
 	public void setName(@Nullable String name) {
+		final long old = getFingerprint();
 		this.name = name;
+		changed(old);
 	}
 
 	/**
@@ -91,7 +100,9 @@ public class Iteration implements Comparable<Iteration> {
 	 */
 	public void setStartDate(@Nullable LocalDate startDate) {
 		checkInvariant(startDate, endDate);
+		final long old = getFingerprint();
 		this.startDate = startDate;
+		changed(old);
 	}
 
 	/**
@@ -106,7 +117,39 @@ public class Iteration implements Comparable<Iteration> {
 	 */
 	public void setEndDate(@Nullable LocalDate endDate) {
 		checkInvariant(startDate, endDate);
+		final long old = getFingerprint();
 		this.endDate = endDate;
+		changed(old);
+	}
+
+	/**
+	 * Iterations are small, so unlike {@link Task#getFingerprint} this is not cached.
+	 *
+	 * @return a 64-bit digest of all the iteration's fields; equal iterations have equal fingerprints
+	 */
+	public long getFingerprint() {
+		long retval = Fingerprint.combine(Fingerprint.of(id), Fingerprint.of(name));
+		retval = Fingerprint.combine(retval, Fingerprint.of(startDate));
+		return Fingerprint.combine(retval, Fingerprint.of(endDate));
+	}
+
+	private void changed(final long old) {
+		if (!listeners.isEmpty()) {
+			final long current = getFingerprint();
+			if (current != old) {
+				for (final FingerprintListener listener : listeners) {
+					listener.fingerprintChanged(old, current);
+				}
+			}
+		}
+	}
+
+	void addListener(final @NotNull FingerprintListener listener) {
+		listeners.add(listener);
+	}
+
+	void removeListener(final @NotNull FingerprintListener listener) {
+		listeners.remove(listener);
 	}
 
 	public Iteration(final @NotNull UUID id, final @Nullable String name) {
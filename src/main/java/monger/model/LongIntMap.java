@@ -0,0 +1,126 @@
+package monger.model;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive {@code long} keys to non-negative {@code int} values, using open addressing with linear
+ * probing so that nothing is boxed. Not thread-safe.
+ */
+final class LongIntMap {
+	/**
+	 * What is returned for a key with no value.
+	 */
+	static final int ABSENT = -1;
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	/**
+	 * Values. A slot is empty if and only if its value is {@link #ABSENT}.
+	 */
+	private int[] values;
+	private int size = 0;
+	/**
+	 * {@link #keys}.length - 1; the capacity is always a power of two.
+	 */
+	private int mask;
+
+	LongIntMap() {
+		keys = new long[MIN_CAPACITY];
+		values = emptyValues(MIN_CAPACITY);
+		mask = MIN_CAPACITY - 1;
+	}
+
+	private static int[] emptyValues(final int capacity) {
+		final int[] retval = new int[capacity];
+		Arrays.fill(retval, ABSENT);
+		return retval;
+	}
+
+	private static int hash(final long key) {
+		return (int) Fingerprint.mix(key);
+	}
+
+	/**
+	 * @return the slot holding the key, or the empty slot where it would go
+	 */
+	private int slot(final long key) {
+		int i = hash(key) & mask;
+		while (values[i] != ABSENT && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the value stored under that key, or {@link #ABSENT}
+	 */
+	int get(final long key) {
+		return values[slot(key)];
+	}
+
+	/**
+	 * @param value the value to store, which must not be negative
+	 * @return the value previously stored under that key, or {@link #ABSENT}
+	 */
+	int put(final long key, final int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Values must not be negative");
+		}
+		final int i = slot(key);
+		final int previous = values[i];
+		keys[i] = key;
+		values[i] = value;
+		if (previous == ABSENT) {
+			size++;
+			if (size * 4 > keys.length * 3) {
+				resize(keys.length * 2);
+			}
+		}
+		return previous;
+	}
+
+	/**
+	 * @return the value that was stored under that key, or {@link #ABSENT}
+	 */
+	int remove(final long key) {
+		int i = slot(key);
+		final int previous = values[i];
+		if (previous == ABSENT) {
+			return ABSENT;
+		}
+		size--;
+		// Backward-shift deletion, as in LongTaskMap.
+		int next = (i + 1) & mask;
+		while (values[next] != ABSENT) {
+			final int home = hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - i) & mask)) {
+				keys[i] = keys[next];
+				values[i] = values[next];
+				i = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[i] = ABSENT;
+		return previous;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void resize(final int capacity) {
+		final long[] oldKeys = keys;
+		final int[] oldValues = values;
+		keys = new long[capacity];
+		values = emptyValues(capacity);
+		mask = capacity - 1;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != ABSENT) {
+				final int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
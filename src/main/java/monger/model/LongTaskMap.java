@@ -0,0 +1,151 @@
+package monger.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A map from primitive {@code long} IDs to tasks, using open addressing with linear probing so that keys are never
+ * boxed. Not thread-safe.
+ */
+final class LongTaskMap {
+	/**
+	 * A callback for {@link #forEach}.
+	 */
+	@FunctionalInterface
+	interface Visitor {
+		void accept(long id, @NotNull Task task);
+	}
+
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Keys. A slot is empty if and only if its entry in {@link #values} is null.
+	 */
+	private long[] keys;
+	private @Nullable Task[] values;
+	private int size = 0;
+	/**
+	 * {@link #keys}.length - 1; the capacity is always a power of two.
+	 */
+	private int mask;
+
+	LongTaskMap() {
+		keys = new long[MIN_CAPACITY];
+		values = new Task[MIN_CAPACITY];
+		mask = MIN_CAPACITY - 1;
+	}
+
+	/**
+	 * Spread the bits of a key (this is the finalizer from MurmurHash3), since IDs are frequently sequential.
+	 */
+	private static int hash(final long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	/**
+	 * @return the slot holding the key, or the empty slot where it would go
+	 */
+	private int slot(final long key) {
+		int i = hash(key) & mask;
+		while (Objects.nonNull(values[i]) && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	@Nullable Task get(final long key) {
+		return values[slot(key)];
+	}
+
+	boolean containsKey(final long key) {
+		return Objects.nonNull(get(key));
+	}
+
+	/**
+	 * @return the task previously stored under that key, if any
+	 */
+	@Nullable Task put(final long key, final @NotNull Task value) {
+		final int i = slot(key);
+		final Task previous = values[i];
+		keys[i] = key;
+		values[i] = value;
+		if (Objects.isNull(previous)) {
+			size++;
+			if (size * 4 > keys.length * 3) {
+				resize(keys.length * 2);
+			}
+		}
+		return previous;
+	}
+
+	/**
+	 * @return the task that was stored under that key, if any
+	 */
+	@Nullable Task remove(final long key) {
+		int i = slot(key);
+		final Task previous = values[i];
+		if (Objects.isNull(previous)) {
+			return null;
+		}
+		size--;
+		// Backward-shift deletion: move later entries in the probe run into the gap, so no tombstones are needed.
+		int next = (i + 1) & mask;
+		while (Objects.nonNull(values[next])) {
+			final int home = hash(keys[next]) & mask;
+			// Move the entry if its home slot is not cyclically within (i, next].
+			if (((next - home) & mask) >= ((next - i) & mask)) {
+				keys[i] = keys[next];
+				values[i] = values[next];
+				i = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[i] = null;
+		return previous;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void forEach(final @NotNull Visitor visitor) {
+		for (int i = 0; i < values.length; i++) {
+			final Task value = values[i];
+			if (Objects.nonNull(value)) {
+				visitor.accept(keys[i], value);
+			}
+		}
+	}
+
+	/**
+	 * The stream is a view, and must not be used after the map is modified.
+	 */
+	@NotNull Stream<@NotNull Task> values() {
+		return Arrays.stream(values).filter(Objects::nonNull);
+	}
+
+	private void resize(final int capacity) {
+		final long[] oldKeys = keys;
+		final Task[] oldValues = values;
+		keys = new long[capacity];
+		values = new Task[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < oldValues.length; i++) {
+			final Task value = oldValues[i];
+			if (Objects.nonNull(value)) {
+				final int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = value;
+			}
+		}
+	}
+}
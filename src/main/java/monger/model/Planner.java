@@ -0,0 +1,169 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Automatically schedules unscheduled tasks into the days of an iteration, so that no day's total
+ * {@link TimeEstimate#getBudget budget} exceeds a given capacity.
+ *
+ * This is first-fit-decreasing bin packing: the candidates are bucketed by budget (there are only a dozen
+ * possible values, so this is a counting sort, not a comparison sort) and taken largest first, and each goes on
+ * the earliest day with room for it. The earliest such day is found in a max-tree of each day's remaining
+ * capacity, so planning n tasks over d days takes O(n log d) time.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class Planner {
+	private Planner() {
+		// Don't instantiate.
+	}
+
+	/**
+	 * The outcome of planning.
+	 *
+	 * @param iteration the iteration tasks were planned into
+	 * @param assignments the day each task that fit was planned for, largest tasks first
+	 * @param unplaced the tasks that did not fit
+	 */
+	public record Plan(@NotNull Iteration iteration, @NotNull Map<TaskIdentifier, LocalDate> assignments,
+					   @NotNull List<TaskIdentifier> unplaced) {
+		public Plan {
+			assignments = Collections.unmodifiableMap(assignments);
+			unplaced = Collections.unmodifiableList(unplaced);
+		}
+
+		/**
+		 * Assign every planned task to the iteration and its day, all at once.
+		 */
+		public void applyTo(final @NotNull TaskDatabase tasks) {
+			final TaskBatch batch = new TaskBatch();
+			for (final Map.Entry<TaskIdentifier, LocalDate> entry : assignments.entrySet()) {
+				batch.assignToIteration(entry.getKey(), iteration.getId());
+				batch.assignToDate(entry.getKey(), entry.getValue());
+			}
+			tasks.apply(batch);
+		}
+	}
+
+	/**
+	 * @param estimate a time estimate
+	 * @return whether tasks with it can be planned
+	 */
+	private static boolean isPlannable(final @NotNull TimeEstimate estimate) {
+		return estimate != TimeEstimate.Unestimated && estimate != TimeEstimate.Epic;
+	}
+
+	/**
+	 * Plan the database's {@link TaskStatus#Unscheduled unscheduled} tasks that have no date yet and are either
+	 * in the given iteration or in none, skipping those that are {@link TimeEstimate#Unestimated unestimated} or
+	 * {@link TimeEstimate#Epic too big to budget}. Tasks already scheduled in the iteration count against their
+	 * days' capacity, as in its {@link TaskDatabase#getLoad load}.
+	 *
+	 * @param tasks the database
+	 * @param iteration an iteration in it, which must have start and end dates
+	 * @param capacity how many quarter-hours of work may be planned for each day
+	 * @return the plan, which has not yet been applied
+	 */
+	public static @NotNull Plan plan(final @NotNull TaskDatabase tasks, final @NotNull Iteration iteration,
+									 final int capacity) {
+		final LocalDate start = iteration.getStartDate();
+		final LocalDate end = iteration.getEndDate();
+		if (Objects.isNull(start) || Objects.isNull(end)) {
+			throw new IllegalArgumentException("Cannot plan into an iteration without dates");
+		} else if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative");
+		}
+		final int days = Math.toIntExact(ChronoUnit.DAYS.between(start, end) + 1);
+		final DayLoad load = tasks.getLoad(iteration);
+		final int[] remaining = new int[days];
+		for (int i = 0; i < days; i++) {
+			remaining[i] = capacity - load.getLoad(start.plusDays(i));
+		}
+		final TimeEstimate[] estimates = TimeEstimate.values();
+		final List<List<TaskIdentifier>> buckets = new ArrayList<>(estimates.length);
+		for (int i = 0; i < estimates.length; i++) {
+			buckets.add(new ArrayList<>());
+		}
+		for (final Task task : tasks.getTasks()) {
+			final TaskIdentifier id = task.getIdentifier();
+			final Iteration current = tasks.getIteration(id);
+			final boolean inIteration = Objects.nonNull(current) && current.getId().equals(iteration.getId());
+			if (Objects.isNull(tasks.getAssignedDate(id)) && task.getStatus() == TaskStatus.Unscheduled &&
+						isPlannable(task.getEstimate()) && (Objects.isNull(current) || inIteration)) {
+				buckets.get(task.getEstimate().ordinal()).add(id);
+			}
+		}
+		final DayTree tree = new DayTree(remaining);
+		final Map<TaskIdentifier, LocalDate> assignments = new LinkedHashMap<>();
+		final List<TaskIdentifier> unplaced = new ArrayList<>();
+		// Estimates are declared in increasing order of budget.
+		for (int i = estimates.length - 1; i >= 0; i--) {
+			final int budget = estimates[i].getBudget();
+			for (final TaskIdentifier id : buckets.get(i)) {
+				final int day = tree.firstFit(budget);
+				if (day < 0) {
+					unplaced.add(id);
+				} else {
+					tree.use(day, budget);
+					assignments.put(id, start.plusDays(day));
+				}
+			}
+		}
+		return new Plan(iteration, assignments, unplaced);
+	}
+
+	/**
+	 * A max-segment-tree over each day's remaining capacity.
+	 */
+	private static final class DayTree {
+		/**
+		 * The number of leaves, a power of two.
+		 */
+		private final int size;
+		/**
+		 * Node i's children are 2i and 2i+1; the leaves start at {@link #size}. Padding leaves have no room.
+		 */
+		private final int[] max;
+
+		DayTree(final int[] remaining) {
+			size = Integer.highestOneBit(Math.max(1, remaining.length - 1)) << 1;
+			max = new int[2 * size];
+			Arrays.fill(max, Integer.MIN_VALUE);
+			System.arraycopy(remaining, 0, max, size, remaining.length);
+			for (int i = size - 1; i > 0; i--) {
+				max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+			}
+		}
+
+		/**
+		 * @return the earliest day with at least the given room, or -1 if none
+		 */
+		int firstFit(final int budget) {
+			if (max[1] < budget) {
+				return -1;
+			}
+			int node = 1;
+			while (node < size) {
+				node = max[2 * node] >= budget ? 2 * node : 2 * node + 1;
+			}
+			return node - size;
+		}
+
+		void use(final int day, final int budget) {
+			int node = day + size;
+			max[node] -= budget;
+			for (node /= 2; node > 0; node /= 2) {
+				max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+			}
+		}
+	}
+}
@@ -10,16 +10,19 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * A set of tasks that make up a single schedule.
+ * A set of tasks that make up a single schedule, keyed by locally-generated IDs. Safe for use by multiple threads.
  */
 public class Project {
 	private static final @NotNull Logger LOGGER = Logger.getLogger(Project.class.getName());
 
 	@NotNull
-	private IDGenerator idg;
+	private volatile IDGenerator idg;
 
+	/**
+	 * Guarded by itself.
+	 */
 	@NotNull
-	private final Map<@NotNull Long, @NotNull Task> tasks = new HashMap<>();
+	private final LongTaskMap tasks = new LongTaskMap();
 
 	public Project(final @NotNull IDGenerator idg) {
 		this.idg = idg;
@@ -43,11 +46,13 @@ public class Project {
 	 * @return the task with that ID, or null if none present
 	 */
 	public final @Nullable Task getTask(final long id) {
-		return tasks.get(id);
+		synchronized (tasks) {
+			return tasks.get(id);
+		}
 	}
 
 	/**
-	 * Generate an ID for a task.
+	 * Generate an ID for a task. This does not lock, so many threads can create tasks at once.
 	 * @return the next suitable ID number.
 	 */
 	public final long generateID() {
@@ -59,23 +64,43 @@ public class Project {
 	 *
 	 * TODO: How to handle ID collisions? Overwrite, throw, or what?
 	 *
+	 * @param id the task's ID, usually from {@link #generateID}
 	 * @param task the task to add
 	 */
-	public final void addTask(final @NotNull Task task) {
-		tasks.put(task.getId(), task);
+	public final void addTask(final long id, final @NotNull Task task) {
+		synchronized (tasks) {
+			tasks.put(id, task);
+		}
+	}
+
+	/**
+	 * @return how many tasks are in the project
+	 */
+	public final int getTaskCount() {
+		synchronized (tasks) {
+			return tasks.size();
+		}
 	}
 
 	/**
-	 * @return all tasks in the project
+	 * @return all tasks in the project, by ID, as of when this is called
+	 * @deprecated this boxes every key; use {@link #getTask}, {@link #getTaskCount}, or {@link #streamTasks}
 	 */
+	@Deprecated
 	public @NotNull Map<@NotNull Long, @NotNull Task> getTasks() {
-		return Collections.unmodifiableMap(tasks);
+		final Map<Long, Task> retval = new HashMap<>();
+		synchronized (tasks) {
+			tasks.forEach(retval::put);
+		}
+		return Collections.unmodifiableMap(retval);
 	}
 
 	/**
-	 * @return a stream of all tasks in the project.
+	 * @return a stream of all tasks in the project, as of when this is called.
 	 */
 	public @NotNull Stream<@NotNull Task> streamTasks() {
-		return tasks.values().stream();
+		synchronized (tasks) {
+			return tasks.values().toList().stream();
+		}
 	}
 }
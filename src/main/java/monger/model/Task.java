@@ -2,13 +2,16 @@ package monger.model;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.Supplier;
 import org.jetbrains.annotations.Nullable;
 
 /**
  * A task in the system. TODO: Convert to interface?
  *
- * TODO: List of dependencies/blockers?
+ * Dependencies between tasks are kept in a {@link DependencyGraph}.
  *
  * @author Jonathan Lovelace
  */
@@ -18,9 +21,17 @@ public class Task {
 	 */
 	private @NotNull String name;
 	/**
-	 * A longer description of the task.
+	 * A longer description of the task. Null if it has not been loaded from {@link #descriptionLoader} yet.
 	 */
-	private @NotNull String description = "";
+	private @Nullable String description = "";
+	/**
+	 * If the description is still on disk, how to load it on first access. Null once {@link #description} is set.
+	 */
+	private @Nullable Supplier<@NotNull String> descriptionLoader = null;
+	/**
+	 * The fingerprint of the description, kept even when the description itself is not in memory.
+	 */
+	private long descriptionFingerprint = Fingerprint.of("");
 	/**
 	 * How much time this task is estimated to take.
 	 */
@@ -39,6 +50,16 @@ public class Task {
 	 */
 	private final @NotNull TaskIdentifier identifier;
 
+	/**
+	 * The content fingerprint of the task, or 0 if it needs to be recomputed.
+	 */
+	private long fingerprint = 0L;
+
+	/**
+	 * Those who want to know when the fingerprint changes (the databases containing this task).
+	 */
+	private final @NotNull List<@NotNull TaskListener> listeners = new ArrayList<>(1);
+
 	/**
 	 * Main constructor.
 	 *
@@ -61,6 +82,7 @@ public class Task {
 		this.identifier = identifier;
 		this.name = name;
 		this.description = description;
+		descriptionFingerprint = Fingerprint.of(description);
 	}
 
 	/**
@@ -78,10 +100,35 @@ public class Task {
 	}
 
 	/**
+	 * If the description is not yet loaded, this reads it (through the loader's cache, if any) without retaining it.
+	 *
 	 * @return a fuller description of the task
 	 */
 	public @NotNull String getDescription() {
-		return description;
+		final String retval = description;
+		if (Objects.isNull(retval)) {
+			return Objects.requireNonNull(descriptionLoader).get();
+		} else {
+			return retval;
+		}
+	}
+
+	/**
+	 * @return whether the description is held in memory rather than being loaded on demand
+	 */
+	public boolean isDescriptionLoaded() {
+		return Objects.nonNull(description);
+	}
+
+	/**
+	 * Load the description, if it was deferred, and keep it in memory from now on. Callers about to overwrite the
+	 * file a description is being lazily read from must call this first.
+	 */
+	public void loadDescription() {
+		if (Objects.isNull(description)) {
+			description = Objects.requireNonNull(descriptionLoader).get();
+			descriptionLoader = null;
+		}
 	}
 
 	/**
@@ -109,35 +156,123 @@ public class Task {
 	 * @param name the new brief description for the task
 	 */
 	public void setName(final @NotNull String name) {
+		final long old = getFingerprint();
 		this.name = name;
+		changed(old, ChangeEvent.Field.Name);
 	}
 
 	/**
 	 * @param description the new full description of the task
 	 */
 	public void setDescription(final @NotNull String description) {
+		final long old = getFingerprint();
 		this.description = description;
+		descriptionLoader = null;
+		descriptionFingerprint = Fingerprint.of(description);
+		changed(old, ChangeEvent.Field.Description);
+	}
+
+	/**
+	 * Defer loading the description until it is first needed.
+	 *
+	 * @param loader how to get the full description of the task when it is asked for
+	 * @param fingerprint the {@link Fingerprint#of(String) fingerprint} of the description the loader will return
+	 */
+	public void setLazyDescription(final @NotNull Supplier<@NotNull String> loader, final long fingerprint) {
+		final long old = getFingerprint();
+		description = null;
+		descriptionLoader = loader;
+		descriptionFingerprint = fingerprint;
+		changed(old, ChangeEvent.Field.Description);
 	}
 
 	/**
 	 * @param estimate the new time estimate for the task
 	 */
 	public void setEstimate(final @NotNull TimeEstimate estimate) {
+		final long old = getFingerprint();
 		this.estimate = estimate;
+		changed(old, ChangeEvent.Field.Estimate);
 	}
 
 	/**
 	 * @param upstream the new upstream URL for the task
 	 */
 	public void setUpstreamURL(final @NotNull String upstream) {
+		final long old = getFingerprint();
 		upstreamURL = upstream;
+		changed(old, ChangeEvent.Field.UpstreamURL);
 	}
 
 	/**
 	 * @param status the new status for the task
 	 */
 	public void setStatus(final @NotNull TaskStatus status) {
+		final long old = getFingerprint();
 		this.status = status;
+		changed(old, ChangeEvent.Field.Status);
+	}
+
+	/**
+	 * A 64-bit digest of all the task's fields, which is cheap to get and never requires loading a deferred
+	 * description. Equal tasks have equal fingerprints.
+	 *
+	 * @return the task's content fingerprint
+	 */
+	public long getFingerprint() {
+		long retval = fingerprint;
+		if (retval == 0L) {
+			retval = Fingerprint.combine(identifier.getFingerprint(), Fingerprint.of(name));
+			retval = Fingerprint.combine(retval, descriptionFingerprint);
+			retval = Fingerprint.combine(retval, estimate.ordinal());
+			retval = Fingerprint.combine(retval, Fingerprint.of(upstreamURL));
+			retval = Fingerprint.combine(retval, status.ordinal());
+			if (retval == 0L) {
+				retval = 1L;
+			}
+			fingerprint = retval;
+		}
+		return retval;
+	}
+
+	/**
+	 * Recompute the fingerprint after a mutation and tell any listeners.
+	 *
+	 * @param old the fingerprint before the mutation
+	 * @param field the field that was changed
+	 */
+	private void changed(final long old, final ChangeEvent.@NotNull Field field) {
+		fingerprint = 0L;
+		if (!listeners.isEmpty()) {
+			final long current = getFingerprint();
+			if (current != old) {
+				for (final TaskListener listener : listeners) {
+					listener.taskChanged(this, field, old, current);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a copy of this task, without its listeners; a description not yet loaded is left to the same loader
+	 */
+	public @NotNull Task copy() {
+		final Task retval = new Task(identifier, name);
+		retval.description = description;
+		retval.descriptionLoader = descriptionLoader;
+		retval.descriptionFingerprint = descriptionFingerprint;
+		retval.estimate = estimate;
+		retval.upstreamURL = upstreamURL;
+		retval.status = status;
+		return retval;
+	}
+
+	void addListener(final @NotNull TaskListener listener) {
+		listeners.add(listener);
+	}
+
+	void removeListener(final @NotNull TaskListener listener) {
+		listeners.remove(listener);
 	}
 
 	/**
@@ -146,9 +281,11 @@ public class Task {
 	 */
 	@Override
 	public boolean equals(final @Nullable Object obj) {
-		if (obj instanceof Task) {
+		if (obj instanceof Task && getFingerprint() != ((Task) obj).getFingerprint()) {
+			return false;
+		} else if (obj instanceof Task) {
 			return Objects.equals(identifier, ((Task) obj).identifier) && Objects.equals(name, ((Task) obj).name) &&
-					   Objects.equals(description, ((Task) obj).getDescription()) &&
+					   Objects.equals(getDescription(), ((Task) obj).getDescription()) &&
 					   Objects.equals(estimate, ((Task) obj).estimate) &&
 					   Objects.equals(upstreamURL, ((Task) obj).upstreamURL) &&
 					   Objects.equals(status, ((Task) obj).status);
@@ -163,6 +300,6 @@ public class Task {
 	 */
 	@Override
 	public int hashCode() {
-		return Objects.hash(identifier, name, description, estimate, upstreamURL, status);
+		return Long.hashCode(getFingerprint());
 	}
 }
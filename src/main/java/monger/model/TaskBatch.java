@@ -0,0 +1,74 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A set of changes to be made to a {@link TaskDatabase} all at once, by {@link TaskDatabase#apply}. The changes
+ * take effect in the order they were added, so a batch may, for example, add a task and then assign it to an
+ * iteration the same batch adds.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class TaskBatch {
+	sealed interface Change permits AddIteration, AddTask, AssignIteration, AssignDate {}
+
+	record AddIteration(@NotNull Iteration iteration) implements Change {}
+
+	record AddTask(@NotNull Task task) implements Change {}
+
+	record AssignIteration(@NotNull TaskIdentifier task, @NotNull UUID iteration) implements Change {}
+
+	/**
+	 * @param date the first day the task is scheduled for
+	 * @param end the last day it is scheduled for, the same as the first for a one-day task
+	 */
+	record AssignDate(@NotNull TaskIdentifier task, @NotNull LocalDate date, @NotNull LocalDate end)
+		implements Change {}
+
+	private final @NotNull List<Change> changes = new ArrayList<>();
+
+	public @NotNull TaskBatch addIteration(final @NotNull Iteration iteration) {
+		changes.add(new AddIteration(iteration));
+		return this;
+	}
+
+	public @NotNull TaskBatch addTask(final @NotNull Task task) {
+		changes.add(new AddTask(task));
+		return this;
+	}
+
+	public @NotNull TaskBatch assignToIteration(final @NotNull TaskIdentifier task, final @NotNull UUID iteration) {
+		changes.add(new AssignIteration(task, iteration));
+		return this;
+	}
+
+	public @NotNull TaskBatch assignToDate(final @NotNull TaskIdentifier task, final @NotNull LocalDate date) {
+		changes.add(new AssignDate(task, date, date));
+		return this;
+	}
+
+	/**
+	 * Schedule a task over a range of days, inclusive.
+	 */
+	public @NotNull TaskBatch assignToDates(final @NotNull TaskIdentifier task, final @NotNull LocalDate start,
+											final @NotNull LocalDate end) {
+		changes.add(new AssignDate(task, start, end));
+		return this;
+	}
+
+	/**
+	 * @return how many changes the batch holds
+	 */
+	public int size() {
+		return changes.size();
+	}
+
+	@NotNull List<Change> getChanges() {
+		return Collections.unmodifiableList(changes);
+	}
+}
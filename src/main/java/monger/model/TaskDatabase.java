@@ -2,14 +2,18 @@ package monger.model;
 
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -23,20 +27,240 @@ public class TaskDatabase {
 	 * All iterations known.
 	 */
 	private final Set<Iteration> iterations = new TreeSet<>();
+	/**
+	 * An index of {@link #iterations} by ID.
+	 */
+	private final Map<UUID, Iteration> iterationsById = new HashMap<>();
 	/**
 	 * All tasks known.
 	 */
-	private final Map<TaskIdentifier, Task> tasks = new HashMap<>();
+	private final TaskStore tasks;
 	/**
 	 * Mappings from tasks to iterations. TODO: We want a MultiMap from iterations to tasks!
 	 */
 	private final Map<TaskIdentifier, Iteration> taskIterations = new HashMap<>();
 
 	/**
-	 * Dates within an iteration that tasks are scheduled. TODO: What about multi-day tasks?
+	 * Dates within an iteration that tasks are scheduled; for multi-day tasks, the first day.
 	 */
 	private final Map<TaskIdentifier, LocalDate> taskDates = new HashMap<>();
 
+	/**
+	 * The last day of each task scheduled over more than one day.
+	 */
+	private final Map<TaskIdentifier, LocalDate> taskEndDates = new HashMap<>();
+
+	/**
+	 * Per-day load of those iterations anyone has asked about, kept up to date from then on.
+	 */
+	private final Map<UUID, DayLoad> loads = new HashMap<>();
+
+	/**
+	 * A digest of the entire contents, kept up to date on every mutation: the sum of a mixed fingerprint for each
+	 * task, iteration, iteration assignment, and date assignment. Because it is a sum it can be updated in O(1) as
+	 * any one of those is added, removed, or changed, and it does not depend on iteration order.
+	 */
+	private long digest = 0L;
+
+	// Salts so that, e.g., a task and an iteration with colliding fingerprints don't cancel out.
+	private static final long TASK_SALT = 0x1b873593L;
+	private static final long ITERATION_SALT = 0xcc9e2d51L;
+	private static final long ASSIGNMENT_SALT = 0xe6546b64L;
+	private static final long DATE_SALT = 0x85ebca6bL;
+	private static final long END_DATE_SALT = 0xc2b2ae35L;
+
+	private final TaskListener taskListener = this::taskChanged;
+
+	/**
+	 * What each iteration in the database tells us about changes to it, by ID, so it can be detached when the
+	 * iteration is replaced.
+	 */
+	private final Map<UUID, FingerprintListener> iterationListeners = new HashMap<>();
+
+	/**
+	 * Those to tell about changes.
+	 */
+	private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * How many {@link #inTransaction transactions} we are nested in.
+	 */
+	private int transactionDepth = 0;
+
+	/**
+	 * The events of the current transaction, if there are any and anyone is listening.
+	 */
+	private @Nullable ChangeCoalescer pending = null;
+
+	/**
+	 * Where this database's events are delivered, one transaction at a time.
+	 */
+	private final ExecutorService delivery = ChangeCoalescer.newDeliveryExecutor();
+
+	/**
+	 * The default store, which keeps every task in memory.
+	 */
+	private static final class MemoryStore implements TaskStore {
+		private final Map<TaskIdentifier, Task> tasks = new HashMap<>();
+
+		@Override
+		public @Nullable Task get(final @NotNull TaskIdentifier identifier) {
+			return tasks.get(identifier);
+		}
+
+		@Override
+		public @Nullable Task put(final @NotNull Task task) {
+			return tasks.put(task.getIdentifier(), task);
+		}
+
+		@Override
+		public boolean remove(final @NotNull TaskIdentifier identifier) {
+			return tasks.remove(identifier) != null;
+		}
+
+		@Override
+		public boolean contains(final @NotNull TaskIdentifier identifier) {
+			return tasks.containsKey(identifier);
+		}
+
+		@Override
+		public int size() {
+			return tasks.size();
+		}
+
+		@Override
+		public @NotNull Iterable<Task> tasks() {
+			return Collections.unmodifiableCollection(tasks.values());
+		}
+
+		@Override
+		public String toString() {
+			return tasks.toString();
+		}
+	}
+
+	/**
+	 * A database keeping everything in memory.
+	 */
+	public TaskDatabase() {
+		this(new MemoryStore());
+	}
+
+	/**
+	 * A database keeping its tasks in the given store, which must be empty. Iterations and assignments are still
+	 * kept in memory; they are far fewer and smaller than the tasks themselves.
+	 */
+	public TaskDatabase(final @NotNull TaskStore store) {
+		if (store.size() != 0) {
+			throw new IllegalArgumentException("Store must start empty");
+		}
+		tasks = store;
+		store.setLoadHook(task -> task.addListener(taskListener));
+	}
+
+	/**
+	 * @return whether every task is kept in memory, rather than in a store that may hold only some at a time
+	 */
+	public boolean isInMemory() {
+		return tasks instanceof MemoryStore;
+	}
+
+	private void taskChanged(final Task task, final ChangeEvent.Field field, final long oldFingerprint,
+							 final long newFingerprint) {
+		tasks.changed(task);
+		digest += Fingerprint.mix(newFingerprint ^ TASK_SALT) - Fingerprint.mix(oldFingerprint ^ TASK_SALT);
+		if (field == ChangeEvent.Field.Estimate) {
+			updateLoad(task.getIdentifier(), null);
+		}
+		if (isObserved()) {
+			record(new ChangeEvent.TaskChanged(task, EnumSet.of(field)));
+		}
+	}
+
+	private static long assignmentTerm(final TaskIdentifier task, final Iteration iteration) {
+		return Fingerprint.mix(Fingerprint.combine(task.getFingerprint(), Fingerprint.of(iteration.getId())) ^
+			ASSIGNMENT_SALT);
+	}
+
+	private static long dateTerm(final TaskIdentifier task, final LocalDate date) {
+		return Fingerprint.mix(Fingerprint.combine(task.getFingerprint(), Fingerprint.of(date)) ^ DATE_SALT);
+	}
+
+	private static long endDateTerm(final TaskIdentifier task, final LocalDate date) {
+		return Fingerprint.mix(Fingerprint.combine(task.getFingerprint(), Fingerprint.of(date)) ^ END_DATE_SALT);
+	}
+
+	/**
+	 * Start telling a listener about changes. Each transaction's changes are coalesced and delivered together, on
+	 * another thread; outside {@link #inTransaction}, each mutation (including changing a field of a task in this
+	 * database) is its own transaction, and {@link #apply} makes its batch one transaction.
+	 */
+	public void addChangeListener(final @NotNull ChangeListener listener) {
+		changeListeners.add(listener);
+	}
+
+	public void removeChangeListener(final @NotNull ChangeListener listener) {
+		changeListeners.remove(listener);
+	}
+
+	/**
+	 * Wait until every change made so far, outside any transaction still open, has been delivered to listeners.
+	 */
+	public void awaitChangeDelivery() throws InterruptedException {
+		ChangeCoalescer.awaitDelivery(delivery);
+	}
+
+	/**
+	 * Make a series of changes, to this database or the tasks and iterations in it, as one transaction, so
+	 * {@link ChangeListener listeners} are told about them together.
+	 */
+	public void inTransaction(final @NotNull Runnable changes) {
+		transactionDepth++;
+		try {
+			changes.run();
+		} finally {
+			endTransaction();
+		}
+	}
+
+	private void endTransaction() {
+		transactionDepth--;
+		if (transactionDepth == 0 && pending != null) {
+			final ChangeCoalescer events = pending;
+			pending = null;
+			if (!events.isEmpty()) {
+				events.deliver(changeListeners, delivery);
+			}
+		}
+	}
+
+	private boolean isObserved() {
+		return !changeListeners.isEmpty();
+	}
+
+	private void record(final @NotNull ChangeEvent event) {
+		if (pending == null) {
+			pending = new ChangeCoalescer();
+		}
+		pending.add(event);
+		if (transactionDepth == 0) {
+			final ChangeCoalescer events = pending;
+			pending = null;
+			events.deliver(changeListeners, delivery);
+		}
+	}
+
+	/**
+	 * A 64-bit digest of the whole database's contents, maintained incrementally so this is O(1). Equal databases
+	 * have equal digests, so if two digests differ the databases certainly do; if the digest has not changed, it
+	 * is all but certain that the contents have not either.
+	 *
+	 * @return the content digest
+	 */
+	public long getDigest() {
+		return digest;
+	}
+
 	/**
 	 * If multiple iterations overlap, we pick the one with the earliest start date; if there's a tie there, we
 	 * pick the one with the earliest end date; if there's a tie there, we pick the one with the alphabetically first
@@ -48,6 +272,14 @@ public class TaskDatabase {
 		return iterations.stream().filter(iteration -> iteration.containsDate(date)).findFirst().orElse(null);
 	}
 
+	/**
+	 * @param id an iteration's ID
+	 * @return the iteration with that ID, if any
+	 */
+	public @Nullable Iteration getIterationById(final @NotNull UUID id) {
+		return iterationsById.get(id);
+	}
+
 	/**
 	 * @return a stream of all the iterations
 	 */
@@ -59,74 +291,497 @@ public class TaskDatabase {
 	 * @return a stream of all tasks
 	 */
 	public Iterable<Task> getTasks() {
-		return Collections.unmodifiableCollection(tasks.values());
+		return tasks.tasks();
+	}
+
+	/**
+	 * @param identifier a task's identifier
+	 * @return the task with that identifier, if any
+	 */
+	public @Nullable Task getTask(final @NotNull TaskIdentifier identifier) {
+		return tasks.get(identifier);
 	}
 
 	protected void setTasks(List<Task> tasks) {
 		for (Task task : tasks) {
-			this.tasks.put(task.getIdentifier(), task);
+			addTask(task);
 		}
 	}
 
 	/**
 	 * TODO: Should we just return task IDs?
 	 * @param iteration an iteration
-	 * @return all the tasks it contains, sorted by their scheduled date (unscheduled tasks first)
+	 * @return all the tasks it contains, sorted by their scheduled date (unscheduled tasks first); each is only
+	 * fetched from the store as it is reached
 	 */
 	public Iterable<Task> getTasksInIteration(final @NotNull Iteration iteration) {
+		final List<TaskIdentifier> members = membersOf(iteration).sorted(byDate()).toList();
+		return () -> members.stream().map(tasks::get).filter(Objects::nonNull).iterator();
+	}
+
+	/**
+	 * @param iteration an iteration
+	 * @param limit the most tasks to return
+	 * @return the first tasks it contains, in the same order as {@link #getTasksInIteration(Iteration)}; these are
+	 * chosen without sorting all of them
+	 */
+	public List<Task> getTasksInIteration(final @NotNull Iteration iteration, final int limit) {
+		return TopK.smallest(membersOf(iteration)::iterator, byDate(), limit).stream().map(tasks::get)
+				   .filter(Objects::nonNull).toList();
+	}
+
+	private Stream<TaskIdentifier> membersOf(final @NotNull Iteration iteration) {
 		return taskIterations.entrySet().stream()
 			.filter(e -> Objects.equals(iteration.getId(), e.getValue().getId()))
-			.map(Map.Entry::getKey).sorted(Comparator.nullsFirst(Comparator.comparing(taskDates::get,
-				Comparator.naturalOrder())))
-			.map(tasks::get)
-			.filter(Objects::nonNull)
-			.toList();
+			.map(Map.Entry::getKey);
+	}
+
+	/**
+	 * @return an order of tasks by scheduled date, unscheduled tasks first, and then by identifier, so that the
+	 * order, and so which tasks make a limited list, does not depend on the order tasks are stored in
+	 */
+	private Comparator<TaskIdentifier> byDate() {
+		return Comparator.<TaskIdentifier, LocalDate>comparing(taskDates::get,
+					   Comparator.nullsFirst(Comparator.naturalOrder()))
+				   .thenComparing(TaskIdentifier::provider).thenComparing(TaskIdentifier::identifier);
 	}
 
 	public void addTask(final Task task) {
-		tasks.put(task.getIdentifier(), task);
+		taskAdded(task, tasks.put(task));
+	}
+
+	/**
+	 * Bring everything but the store up to date with a task having been put into it.
+	 *
+	 * @param previous the task it replaced in the store, if any
+	 */
+	private void taskAdded(final Task task, final @Nullable Task previous) {
+		if (previous != null) {
+			previous.removeListener(taskListener);
+			digest -= Fingerprint.mix(previous.getFingerprint() ^ TASK_SALT);
+		}
+		task.addListener(taskListener);
+		digest += Fingerprint.mix(task.getFingerprint() ^ TASK_SALT);
+		updateLoad(task.getIdentifier(), null);
+		if (isObserved()) {
+			record(new ChangeEvent.TaskAdded(task));
+		}
+	}
+
+	/**
+	 * Remove a task, taking it out of its iteration first.
+	 *
+	 * @return whether there was such a task
+	 */
+	public boolean removeTask(final @NotNull TaskIdentifier identifier) {
+		final Task task = tasks.get(identifier);
+		if (task == null) {
+			return false;
+		}
+		transactionDepth++;
+		try {
+			unassign(identifier);
+			tasks.remove(identifier);
+			task.removeListener(taskListener);
+			digest -= Fingerprint.mix(task.getFingerprint() ^ TASK_SALT);
+			if (isObserved()) {
+				record(new ChangeEvent.TaskRemoved(identifier));
+			}
+		} finally {
+			endTransaction();
+		}
+		return true;
 	}
 
 	public void assignToIteration(final TaskIdentifier task, final UUID iterationId) {
-		final Optional<Iteration> iteration =
-			iterations.stream().filter(i -> Objects.equals(iterationId, i.getId()))
-				.findAny();
-		if (iteration.isPresent()) {
-			assignToIteration(task, iteration.get());
+		final Iteration iteration = iterationsById.get(iterationId);
+		if (iteration != null) {
+			assignToIteration(task, iteration);
 		} else {
 			throw new IllegalArgumentException("Unknown iteration");
 		}
 	}
 
 	public void assignToIteration(final TaskIdentifier task, final Iteration iteration) {
-		if (!tasks.containsKey(task)) {
+		if (!tasks.contains(task)) {
 			throw new IllegalArgumentException("Unknown task");
 		} else if (iterations.contains(iteration)) {
-			taskIterations.put(task, iteration);
+			putAssignment(task, iteration);
 		} else {
 			throw new IllegalArgumentException("Unknown iteration");
 		}
 	}
 
 	public void assignToDate(final TaskIdentifier task, final LocalDate date) {
+		assignToDates(task, date, date);
+	}
+
+	/**
+	 * Schedule a task over a range of days, inclusive, within its iteration. Its budget is spread across them in
+	 * the iteration's {@link #getLoad load}.
+	 */
+	public void assignToDates(final TaskIdentifier task, final LocalDate start, final LocalDate end) {
 		Iteration iteration = taskIterations.get(task);
-		if (!tasks.containsKey(task)) {
+		if (!tasks.contains(task)) {
 			throw new IllegalArgumentException("Unknown task");
 		} else if (iteration == null) {
 			throw new IllegalStateException("Task not assigned to an iteration");
-		} else if (iteration.containsDate(date)) {
-			taskDates.put(task, date);
+		} else if (end.isBefore(start)) {
+			throw new IllegalArgumentException("Date range ends before it starts");
+		} else if (iteration.containsDate(start) && iteration.containsDate(end)) {
+			putDate(task, start, end);
 		} else {
 			throw new IllegalArgumentException("Date not within task's iteration");
 		}
 	}
 
+	/**
+	 * Take a task out of its iteration, if it is in one, and so unschedule it too.
+	 */
+	public void unassign(final TaskIdentifier task) {
+		transactionDepth++;
+		try {
+			clearDate(task);
+			final Iteration previous = taskIterations.remove(task);
+			if (previous != null) {
+				digest -= assignmentTerm(task, previous);
+				updateLoad(task, previous);
+				if (isObserved()) {
+					record(new ChangeEvent.IterationAssigned(task, null));
+				}
+			}
+		} finally {
+			endTransaction();
+		}
+	}
+
+	/**
+	 * Unschedule a task, leaving it in its iteration.
+	 */
+	public void clearDate(final TaskIdentifier task) {
+		final LocalDate previous = taskDates.remove(task);
+		if (previous != null) {
+			digest -= dateTerm(task, previous);
+			final LocalDate previousEnd = taskEndDates.remove(task);
+			if (previousEnd != null) {
+				digest -= endDateTerm(task, previousEnd);
+			}
+			updateLoad(task, null);
+			if (isObserved()) {
+				record(new ChangeEvent.DateAssigned(task, null, null));
+			}
+		}
+	}
+
+	private void putAssignment(final TaskIdentifier task, final Iteration iteration) {
+		final Iteration previous = taskIterations.put(task, iteration);
+		if (previous != null) {
+			digest -= assignmentTerm(task, previous);
+		}
+		digest += assignmentTerm(task, iteration);
+		updateLoad(task, previous);
+		if (isObserved()) {
+			record(new ChangeEvent.IterationAssigned(task, iteration.getId()));
+		}
+	}
+
+	private void putDate(final TaskIdentifier task, final LocalDate date, final LocalDate end) {
+		final LocalDate previous = taskDates.put(task, date);
+		if (previous != null) {
+			digest -= dateTerm(task, previous);
+		}
+		digest += dateTerm(task, date);
+		final LocalDate previousEnd = end.equals(date) ? taskEndDates.remove(task) : taskEndDates.put(task, end);
+		if (previousEnd != null) {
+			digest -= endDateTerm(task, previousEnd);
+		}
+		if (!end.equals(date)) {
+			digest += endDateTerm(task, end);
+		}
+		updateLoad(task, null);
+		if (isObserved()) {
+			record(new ChangeEvent.DateAssigned(task, date, end));
+		}
+	}
+
+	/**
+	 * Bring a task's contribution to any per-day loads up to date.
+	 *
+	 * @param previous the iteration the task was just moved out of, if any
+	 */
+	private void updateLoad(final TaskIdentifier task, final @Nullable Iteration previous) {
+		if (loads.isEmpty()) {
+			return;
+		}
+		if (previous != null && loads.containsKey(previous.getId())) {
+			loads.get(previous.getId()).remove(task);
+		}
+		final Iteration iteration = taskIterations.get(task);
+		final DayLoad load = iteration == null ? null : loads.get(iteration.getId());
+		if (load != null) {
+			final LocalDate date = taskDates.get(task);
+			final Task current = tasks.get(task);
+			if (date == null || current == null) {
+				load.remove(task);
+			} else {
+				load.put(task, date, getAssignedEndDate(task), current.getEstimate());
+			}
+		}
+	}
+
+	/**
+	 * The per-day load of an iteration. The first call for each iteration builds it, in time linear in the
+	 * number of tasks; from then on it is kept up to date as tasks are scheduled and re-estimated, until the
+	 * iteration's dates change.
+	 *
+	 * @param iteration an iteration in this database, which must have start and end dates
+	 */
+	public @NotNull DayLoad getLoad(final @NotNull Iteration iteration) {
+		final LocalDate start = iteration.getStartDate();
+		final LocalDate end = iteration.getEndDate();
+		if (!iterations.contains(iteration)) {
+			throw new IllegalArgumentException("Unknown iteration");
+		} else if (start == null || end == null) {
+			throw new IllegalArgumentException("Iteration has no dates");
+		}
+		final DayLoad existing = loads.get(iteration.getId());
+		if (existing != null) {
+			return existing;
+		}
+		final DayLoad retval = new DayLoad(start, end);
+		for (final Map.Entry<TaskIdentifier, Iteration> entry : taskIterations.entrySet()) {
+			final LocalDate date = taskDates.get(entry.getKey());
+			final Task task = tasks.get(entry.getKey());
+			if (entry.getValue().getId().equals(iteration.getId()) && date != null && task != null) {
+				retval.put(entry.getKey(), date, getAssignedEndDate(entry.getKey()), task.getEstimate());
+			}
+		}
+		loads.put(iteration.getId(), retval);
+		return retval;
+	}
+
+	/**
+	 * Make every change in a batch, or none of them. The whole batch is validated in one pass, against the
+	 * database's indexes plus what the batch itself adds, before anything is changed; this is much cheaper for
+	 * bulk changes than calling {@link #addTask}, {@link #assignToIteration}, and {@link #assignToDate} for each.
+	 *
+	 * @throws IllegalArgumentException if a change refers to an unknown task or iteration, or schedules a task
+	 * on a date outside its iteration
+	 * @throws IllegalStateException if a change schedules a task not assigned to any iteration
+	 */
+	public void apply(final @NotNull TaskBatch batch) {
+		final Map<UUID, Iteration> addedIterations = new HashMap<>();
+		final Set<TaskIdentifier> addedTasks = new HashSet<>();
+		final Map<TaskIdentifier, UUID> assigned = new HashMap<>();
+		final List<TaskBatch.Change> changes = batch.getChanges();
+		final Iteration[] resolved = new Iteration[changes.size()];
+		for (int i = 0; i < resolved.length; i++) {
+			switch (changes.get(i)) {
+				case TaskBatch.AddIteration(Iteration iteration) -> addedIterations.put(iteration.getId(), iteration);
+				case TaskBatch.AddTask(Task task) -> addedTasks.add(task.getIdentifier());
+				case TaskBatch.AssignIteration(TaskIdentifier task, UUID id) -> {
+					if (!tasks.contains(task) && !addedTasks.contains(task)) {
+						throw new IllegalArgumentException("Unknown task");
+					}
+					final Iteration iteration = addedIterations.containsKey(id) ? addedIterations.get(id) :
+														iterationsById.get(id);
+					if (iteration == null) {
+						throw new IllegalArgumentException("Unknown iteration");
+					}
+					assigned.put(task, id);
+					resolved[i] = iteration;
+				}
+				case TaskBatch.AssignDate(TaskIdentifier task, LocalDate date, LocalDate end) -> {
+					// As of this point in the batch, allowing for iterations it replaces.
+					final Iteration current = taskIterations.get(task);
+					final UUID id = assigned.containsKey(task) ? assigned.get(task) :
+											current == null ? null : current.getId();
+					final Iteration iteration = id == null ? null : addedIterations.getOrDefault(id,
+						iterationsById.get(id));
+					if (!tasks.contains(task) && !addedTasks.contains(task)) {
+						throw new IllegalArgumentException("Unknown task");
+					} else if (iteration == null) {
+						throw new IllegalStateException("Task not assigned to an iteration");
+					} else if (end.isBefore(date)) {
+						throw new IllegalArgumentException("Date range ends before it starts");
+					} else if (!iteration.containsDate(date) || !iteration.containsDate(end)) {
+						throw new IllegalArgumentException("Date not within task's iteration");
+					}
+				}
+			}
+		}
+		// The store is the only part that can fail (if it keeps tasks on disk), so it is changed first; if it
+		// fails, it is put back as it was, and the rest has not been touched.
+		final Map<TaskIdentifier, Task> replaced = new HashMap<>();
+		final Set<TaskIdentifier> stored = new HashSet<>();
+		try {
+			for (final TaskBatch.Change change : changes) {
+				if (change instanceof TaskBatch.AddTask(Task task)) {
+					final Task previous = tasks.put(task);
+					if (stored.add(task.getIdentifier()) && previous != null) {
+						replaced.put(task.getIdentifier(), previous);
+					}
+				}
+			}
+		} catch (final RuntimeException except) {
+			for (final TaskIdentifier task : stored) {
+				try {
+					tasks.remove(task);
+					if (replaced.containsKey(task)) {
+						tasks.put(replaced.get(task));
+					}
+				} catch (final RuntimeException suppressed) {
+					except.addSuppressed(suppressed);
+				}
+			}
+			throw except;
+		}
+		// Loads touched by the batch are rebuilt when next asked for, rather than updated here, since updating
+		// them reads tasks back from the store.
+		for (int i = 0; i < resolved.length; i++) {
+			final TaskIdentifier task = switch (changes.get(i)) {
+				case TaskBatch.AddIteration(Iteration iteration) -> {
+					loads.remove(iteration.getId());
+					yield null;
+				}
+				case TaskBatch.AddTask(Task added) -> added.getIdentifier();
+				case TaskBatch.AssignIteration(TaskIdentifier moved, UUID id) -> {
+					loads.remove(id);
+					yield moved;
+				}
+				case TaskBatch.AssignDate(TaskIdentifier scheduled, LocalDate date, LocalDate end) -> scheduled;
+			};
+			final Iteration current = task == null ? null : taskIterations.get(task);
+			if (current != null) {
+				loads.remove(current.getId());
+			}
+		}
+		final Map<TaskIdentifier, Task> installed = new HashMap<>(replaced);
+		transactionDepth++;
+		try {
+			for (int i = 0; i < resolved.length; i++) {
+				switch (changes.get(i)) {
+					case TaskBatch.AddIteration(Iteration iteration) -> addIteration(iteration);
+					case TaskBatch.AddTask(Task task) -> taskAdded(task, installed.put(task.getIdentifier(), task));
+					case TaskBatch.AssignIteration(TaskIdentifier task, UUID id) -> putAssignment(task, resolved[i]);
+					case TaskBatch.AssignDate(TaskIdentifier task, LocalDate date, LocalDate end) ->
+						putDate(task, date, end);
+				}
+			}
+		} finally {
+			endTransaction();
+		}
+	}
+
+	/**
+	 * Copy the whole database, sharing nothing mutable with it, so that the copy can be read on another thread (for
+	 * example, to save it) while this one goes on being changed. Every task is copied into memory, whatever store
+	 * this database uses.
+	 *
+	 * This may be called from a thread other than the one changing the database, but then the copy may be
+	 * inconsistent, or this may throw, if changes are made while it runs; compare the copy's {@link #getDigest
+	 * digest} with this one's afterwards to find out.
+	 */
+	public @NotNull TaskDatabase copy() {
+		final TaskBatch batch = new TaskBatch();
+		for (final Iteration iteration : List.copyOf(iterations)) {
+			batch.addIteration(new Iteration(iteration.getId(), iteration.getName(), iteration.getStartDate(),
+				iteration.getEndDate()));
+		}
+		for (final Task task : tasks.tasks()) {
+			final TaskIdentifier identifier = task.getIdentifier();
+			batch.addTask(task.copy());
+			final Iteration iteration = taskIterations.get(identifier);
+			final LocalDate date = taskDates.get(identifier);
+			if (iteration != null) {
+				batch.assignToIteration(identifier, iteration.getId());
+				if (date != null) {
+					batch.assignToDates(identifier, date,
+						Objects.requireNonNullElse(taskEndDates.get(identifier), date));
+				}
+			}
+		}
+		final TaskDatabase retval = new TaskDatabase();
+		retval.apply(batch);
+		return retval;
+	}
+
+	/**
+	 * @return the date the task is scheduled for, or the first day if it is scheduled over several, if any
+	 */
 	public @Nullable LocalDate getAssignedDate(final TaskIdentifier task) {
 		return taskDates.get(task);
 	}
 
+	/**
+	 * @return the last day the task is scheduled for, the same as {@link #getAssignedDate} unless it is
+	 * scheduled over several, if any
+	 */
+	public @Nullable LocalDate getAssignedEndDate(final TaskIdentifier task) {
+		final LocalDate end = taskEndDates.get(task);
+		return end == null ? taskDates.get(task) : end;
+	}
+
+	/**
+	 * Add an iteration, or replace the one with the same ID; tasks assigned to that one are then assigned to this
+	 * one, on the same dates.
+	 */
 	public void addIteration(final Iteration iteration) {
+		final Iteration previous = iterationsById.get(iteration.getId());
+		if (previous == iteration) {
+			return;
+		} else if (previous != null) {
+			// Identity, since the old one may have changed since it was sorted into the set.
+			iterations.removeIf(existing -> existing == previous);
+			previous.removeListener(iterationListeners.remove(previous.getId()));
+			digest -= Fingerprint.mix(previous.getFingerprint() ^ ITERATION_SALT);
+			loads.remove(previous.getId());
+			taskIterations.replaceAll((task, assigned) -> assigned == previous ? iteration : assigned);
+		}
 		iterations.add(iteration);
+		iterationsById.put(iteration.getId(), iteration);
+		final FingerprintListener listener = (oldFingerprint, newFingerprint) -> {
+			digest += Fingerprint.mix(newFingerprint ^ ITERATION_SALT) -
+						  Fingerprint.mix(oldFingerprint ^ ITERATION_SALT);
+			loads.remove(iteration.getId());
+			if (isObserved()) {
+				record(new ChangeEvent.IterationChanged(iteration.getId()));
+			}
+		};
+		iterationListeners.put(iteration.getId(), listener);
+		iteration.addListener(listener);
+		digest += Fingerprint.mix(iteration.getFingerprint() ^ ITERATION_SALT);
+		if (isObserved()) {
+			record(new ChangeEvent.IterationAdded(iteration));
+		}
+	}
+
+	/**
+	 * Remove an iteration, taking every task in it out of it first.
+	 *
+	 * @return whether there was such an iteration
+	 */
+	public boolean removeIteration(final @NotNull UUID id) {
+		final Iteration iteration = iterationsById.get(id);
+		if (iteration == null) {
+			return false;
+		}
+		transactionDepth++;
+		try {
+			membersOf(iteration).toList().forEach(this::unassign);
+			// Identity, since it may have changed since it was sorted into the set.
+			iterations.removeIf(existing -> existing == iteration);
+			iterationsById.remove(id);
+			iteration.removeListener(iterationListeners.remove(id));
+			digest -= Fingerprint.mix(iteration.getFingerprint() ^ ITERATION_SALT);
+			loads.remove(id);
+			if (isObserved()) {
+				record(new ChangeEvent.IterationRemoved(id));
+			}
+		} finally {
+			endTransaction();
+		}
+		return true;
 	}
 
 	@Override
@@ -134,18 +789,32 @@ public class TaskDatabase {
 		if (this == o) {
 			return true;
 		} else if (o instanceof TaskDatabase that) {
-			return Objects.equals(iterations, that.iterations) &&
-					   Objects.equals(tasks, that.tasks) &&
+			return digest == that.digest &&
+					   Objects.equals(iterations, that.iterations) &&
+					   sameTasks(that) &&
 					   Objects.equals(taskIterations, that.taskIterations) &&
-					   Objects.equals(taskDates, that.taskDates);
+					   Objects.equals(taskDates, that.taskDates) &&
+					   Objects.equals(taskEndDates, that.taskEndDates);
 		} else {
 			return false;
 		}
 	}
 
+	private boolean sameTasks(final TaskDatabase that) {
+		if (tasks.size() != that.tasks.size()) {
+			return false;
+		}
+		for (final Task task : tasks.tasks()) {
+			if (!task.equals(that.tasks.get(task.getIdentifier()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public int hashCode() {
-		return Objects.hash(iterations, tasks, taskIterations, taskDates);
+		return Long.hashCode(digest);
 	}
 
 	@Override
@@ -154,7 +823,8 @@ public class TaskDatabase {
 				   "\titerations=" + iterations +
 				   "\n\ttasks=" + tasks +
 				   "\n\ttaskIterations=" + taskIterations +
-				   "\n\ttaskDates=" + taskDates;
+				   "\n\ttaskDates=" + taskDates +
+				   "\n\ttaskEndDates=" + taskEndDates;
 	}
 
 	/**
@@ -14,6 +14,13 @@ public record TaskIdentifier(@NotNull String provider, @NotNull String identifie
 		}
 	}
 
+	/**
+	 * @return a 64-bit content fingerprint of this identifier
+	 */
+	public long getFingerprint() {
+		return Fingerprint.combine(Fingerprint.of(provider), Fingerprint.of(identifier));
+	}
+
 	@Override
 	public String toString() {
 		return provider.isBlank() ? identifier.trim() :
@@ -0,0 +1,11 @@
+package monger.model;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Something that wants to know when one of a task's fields, and so its content fingerprint, changes.
+ */
+@FunctionalInterface
+interface TaskListener {
+	void taskChanged(@NotNull Task task, @NotNull ChangeEvent.Field field, long oldFingerprint, long newFingerprint);
+}
@@ -0,0 +1,61 @@
+package monger.model;
+
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Where a {@link TaskDatabase} keeps its tasks, by identifier. The default keeps them all in a hash map; others
+ * may keep them on disk and only some in memory at a time, in which case the same task may be handed out as
+ * different objects over time, but must never be as two at once, since the database follows changes to each.
+ *
+ * @author Jonathan Lovelace
+ */
+public interface TaskStore {
+	/**
+	 * @return the task with the given identifier, if any
+	 */
+	@Nullable Task get(@NotNull TaskIdentifier identifier);
+
+	/**
+	 * Store a task, replacing any with the same identifier. If this fails, it must leave the store as it was.
+	 *
+	 * @return the task it replaced, if any
+	 */
+	@Nullable Task put(@NotNull Task task);
+
+	/**
+	 * Forget a task. This must not need to read or write storage, so that it can be used (with {@link #put} of a
+	 * task not in the store, which then need not read anything either) to undo changes to the store.
+	 *
+	 * @return whether there was a task with that identifier
+	 */
+	boolean remove(@NotNull TaskIdentifier identifier);
+
+	boolean contains(@NotNull TaskIdentifier identifier);
+
+	/**
+	 * @return how many tasks there are
+	 */
+	int size();
+
+	/**
+	 * @return every task, one at a time; a store on disk should read them as they are reached, not all at once
+	 */
+	@NotNull Iterable<Task> tasks();
+
+	/**
+	 * Told when one of the store's tasks has been changed, so a store that writes tasks back can note that this one
+	 * needs writing.
+	 */
+	default void changed(final @NotNull Task task) {
+		// Nothing to do for a store that keeps everything in memory.
+	}
+
+	/**
+	 * Set what to do with each task read back from storage, before it is handed out.
+	 */
+	default void setLoadHook(final @NotNull Consumer<@NotNull Task> hook) {
+		// A store that keeps everything in memory never reads anything back.
+	}
+}
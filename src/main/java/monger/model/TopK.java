@@ -0,0 +1,47 @@
+package monger.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Choosing the first few items in some order without sorting them all. A heap holds the smallest items seen so
+ * far, largest on top, and never more than are wanted, so choosing k of n items takes O(n log k) time and O(k)
+ * space rather than the O(n log n) time and O(n) space of a full sort.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class TopK {
+	private TopK() {
+		// Don't instantiate.
+	}
+
+	/**
+	 * @param items the items to choose from
+	 * @param order the order to choose in
+	 * @param count how many to choose
+	 * @return the first {@code count} items in that order, or all of them if there are fewer, in that order
+	 */
+	public static <T> @NotNull List<T> smallest(final @NotNull Iterable<? extends T> items,
+												final @NotNull Comparator<? super T> order, final int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Cannot choose fewer than no items");
+		} else if (count == 0) {
+			return List.of();
+		}
+		final PriorityQueue<T> heap = new PriorityQueue<>(Math.min(count, 1024), order.reversed());
+		for (final T item : items) {
+			if (heap.size() < count) {
+				heap.add(item);
+			} else if (order.compare(item, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(item);
+			}
+		}
+		final List<T> retval = new ArrayList<>(heap);
+		retval.sort(order);
+		return retval;
+	}
+}
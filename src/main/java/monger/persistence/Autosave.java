@@ -0,0 +1,260 @@
+package monger.persistence;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import monger.model.ChangeEvent;
+import monger.model.ChangeListener;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Saves a database to a file in the background, shortly after it changes. Changes are noticed through the
+ * database's {@link ChangeListener change events}; a burst of changes is saved once, after a quiet period with no
+ * further changes, or after ten quiet periods if the changes never stop.
+ *
+ * Saving never reads the database itself, which only the thread changing it may do. Instead this keeps a
+ * {@link TaskDatabase#copy copy} of it, brought up to date on that thread as each transaction is
+ * {@link ChangeListener#changesCommitted committed}, and the saving thread writes a copy of that, taken under a
+ * lock that only holds up changes for as long as copying it in memory takes. Failures are logged, and the changes
+ * are tried again by the next save; that includes finding that someone else has written
+ * the file since the database was read from it, which keeps failing until the database is brought up to date with
+ * the file, for example by a {@link TaskDatabaseWatcher}.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class Autosave implements ChangeListener, AutoCloseable {
+	private static final @NotNull Logger LOGGER = Logger.getLogger(Autosave.class.getName());
+	private static final int MAX_QUIET_PERIODS = 10;
+
+	private final @NotNull TaskDatabase tasks;
+	/**
+	 * A copy of the database as of the last transaction committed.
+	 */
+	private final @NotNull TaskDatabase mirror;
+	private final @NotNull Path file;
+	private final long quietNanos;
+	private final @NotNull ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+		Thread.ofPlatform().daemon().name("autosave").factory());
+	/**
+	 * The next save, if one is scheduled.
+	 */
+	private @Nullable ScheduledFuture<?> scheduled = null;
+	/**
+	 * When the earliest change not yet saved was noticed, by {@link System#nanoTime}, if there is one.
+	 */
+	private long firstUnsaved = 0L;
+	private boolean dirty = false;
+	/**
+	 * The digest of what was last saved. Only used on the saving thread.
+	 */
+	private long savedDigest;
+	private int saveCount = 0;
+
+	/**
+	 * Start saving a database. It is taken to be already saved as it is now. This must be called on the thread
+	 * that changes the database.
+	 *
+	 * @param tasks the database
+	 * @param file where to save it
+	 * @param quietPeriod how long to wait after a change for more before saving
+	 */
+	public Autosave(final @NotNull TaskDatabase tasks, final @NotNull Path file, final @NotNull Duration quietPeriod) {
+		if (quietPeriod.isNegative()) {
+			throw new IllegalArgumentException("Quiet period cannot be negative");
+		}
+		this.tasks = tasks;
+		this.file = file;
+		quietNanos = quietPeriod.toNanos();
+		mirror = tasks.copy();
+		savedDigest = tasks.getDigest();
+		tasks.addChangeListener(this);
+	}
+
+	/**
+	 * Bring the mirror up to date with what the events say changed, reading the current state from the database,
+	 * since this is called on the thread changing it.
+	 */
+	@Override
+	public synchronized void changesCommitted(final @NotNull List<@NotNull ChangeEvent> events) {
+		final Set<TaskIdentifier> changed = new LinkedHashSet<>();
+		for (final ChangeEvent event : events) {
+			switch (event) {
+				case ChangeEvent.IterationAdded(Iteration iteration) -> mirrorIteration(iteration.getId());
+				case ChangeEvent.IterationChanged(UUID iteration) -> mirrorIteration(iteration);
+				case ChangeEvent.IterationRemoved(UUID iteration) -> mirrorIteration(iteration);
+				case ChangeEvent.TaskAdded(Task task) -> changed.add(task.getIdentifier());
+				case ChangeEvent.TaskRemoved(TaskIdentifier task) -> changed.add(task);
+				case ChangeEvent.TaskChanged changedTask -> changed.add(changedTask.task().getIdentifier());
+				case ChangeEvent.IterationAssigned assigned -> changed.add(assigned.task());
+				case ChangeEvent.DateAssigned assigned -> changed.add(assigned.task());
+			}
+		}
+		// After the iterations, which tasks may have been assigned to.
+		changed.forEach(this::mirrorTask);
+		final long now = System.nanoTime();
+		if (!dirty) {
+			dirty = true;
+			firstUnsaved = now;
+		}
+		schedule(now);
+	}
+
+	private void mirrorIteration(final @NotNull UUID id) {
+		final Iteration iteration = tasks.getIterationById(id);
+		if (Objects.isNull(iteration)) {
+			mirror.removeIteration(id);
+		} else {
+			mirror.addIteration(new Iteration(id, iteration.getName(), iteration.getStartDate(),
+				iteration.getEndDate()));
+		}
+	}
+
+	private void mirrorTask(final @NotNull TaskIdentifier id) {
+		final Task task = tasks.getTask(id);
+		if (Objects.isNull(task)) {
+			mirror.removeTask(id);
+			return;
+		}
+		mirror.addTask(task.copy());
+		final Iteration iteration = tasks.getIteration(id);
+		final LocalDate date = tasks.getAssignedDate(id);
+		mirror.clearDate(id);
+		if (Objects.isNull(iteration)) {
+			mirror.unassign(id);
+		} else {
+			mirror.assignToIteration(id, iteration.getId());
+			if (Objects.nonNull(date)) {
+				mirror.assignToDates(id, date, Objects.requireNonNull(tasks.getAssignedEndDate(id)));
+			}
+		}
+	}
+
+	@Override
+	public void changesMade(final @NotNull List<@NotNull ChangeEvent> events) {
+		// Already mirrored, and the save scheduled, as they were committed.
+	}
+
+	/**
+	 * (Re)schedule the next save for a quiet period from now, unless that would put the oldest unsaved change too
+	 * far in the past.
+	 */
+	private synchronized void schedule(final long now) {
+		final long deadline = firstUnsaved + MAX_QUIET_PERIODS * quietNanos;
+		if (Objects.nonNull(scheduled)) {
+			if (now + quietNanos > deadline) {
+				return;
+			}
+			scheduled.cancel(false);
+		}
+		if (!executor.isShutdown()) {
+			scheduled = executor.schedule(this::saveInBackground, Math.min(quietNanos, deadline - now),
+				TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void saveInBackground() {
+		synchronized (this) {
+			scheduled = null;
+		}
+		try {
+			save();
+		} catch (final PersistenceException except) {
+			LOGGER.log(Level.WARNING, "Failed to save " + file, except);
+		}
+	}
+
+	/**
+	 * Save, on the saving thread, if there are any unsaved changes.
+	 */
+	private void save() throws PersistenceException {
+		final TaskDatabase snapshot;
+		synchronized (this) {
+			if (!dirty) {
+				return;
+			}
+			snapshot = mirror.copy();
+			// Changes committed from now on are after the copy, so they will need another save.
+			dirty = false;
+		}
+		final long digest = snapshot.getDigest();
+		if (digest != savedDigest) {
+			try {
+				PersistenceHelper.writeToFile(file, snapshot, tasks);
+			} catch (final PersistenceException except) {
+				synchronized (this) {
+					dirty = true;
+				}
+				throw except;
+			}
+			savedDigest = digest;
+			synchronized (this) {
+				saveCount++;
+			}
+		}
+	}
+
+	/**
+	 * Save any unsaved changes now, and wait for that to finish.
+	 *
+	 * @throws PersistenceException if saving fails
+	 */
+	public void flush() throws PersistenceException {
+		try {
+			executor.submit(() -> {
+				synchronized (this) {
+					if (Objects.nonNull(scheduled)) {
+						scheduled.cancel(false);
+						scheduled = null;
+					}
+				}
+				save();
+				return null;
+			}).get();
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new PersistenceException("Interrupted saving " + file, except);
+		} catch (final ExecutionException except) {
+			if (except.getCause() instanceof final PersistenceException cause) {
+				throw cause;
+			}
+			throw new PersistenceException("Failed to save " + file, except.getCause());
+		}
+	}
+
+	/**
+	 * @return how many times the database has been written
+	 */
+	public synchronized int getSaveCount() {
+		return saveCount;
+	}
+
+	/**
+	 * Stop watching the database and {@link #flush} any unsaved changes.
+	 */
+	@Override
+	public void close() throws PersistenceException {
+		tasks.removeChangeListener(this);
+		try {
+			flush();
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package monger.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The ways a database file may be compressed, chosen by its filename.
+ *
+ * @author Jonathan Lovelace
+ */
+enum Compression {
+	/**
+	 * Not compressed at all.
+	 */
+	None(".xml"),
+	/**
+	 * A single gzip stream, compressed in parallel by {@link ParallelGzipOutputStream}.
+	 */
+	Gzip(".xml.gz"),
+	/**
+	 * A series of independent gzip members, as in BGZF.
+	 */
+	BlockGzip(".xml.bgz");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The filename suffix for an XML file compressed this way.
+	 */
+	private final @NotNull String suffix;
+
+	Compression(final @NotNull String suffix) {
+		this.suffix = suffix;
+	}
+
+	/**
+	 * @param file a filename
+	 * @return how an XML file with that name is compressed, or null if it is not the name of an XML file
+	 */
+	static @Nullable Compression forFile(final @NotNull Path file) {
+		final Path name = file.getFileName();
+		if (name == null) {
+			return null;
+		}
+		final String string = name.toString();
+		for (final Compression compression : values()) {
+			if (string.endsWith(compression.suffix)) {
+				return compression;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param file an existing file
+	 * @return how it is compressed, judging by its name or, if that doesn't say, by its first bytes
+	 */
+	static @NotNull Compression detect(final @NotNull Path file) throws IOException {
+		final Compression byName = forFile(file);
+		if (byName != null) {
+			return byName;
+		}
+		try (final InputStream in = Files.newInputStream(file)) {
+			final byte[] magic = in.readNBytes(2);
+			return magic.length == 2 && magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b ? Gzip : None;
+		}
+	}
+
+	/**
+	 * @return a stream of the file's uncompressed contents; for compressed files, it inflates them on a
+	 * background thread ahead of the reader
+	 */
+	@NotNull InputStream openInput(final @NotNull Path file) throws IOException {
+		final InputStream raw = Files.newInputStream(file);
+		if (this == None) {
+			return raw;
+		}
+		try {
+			// GZIPInputStream reads concatenated members, so it handles both compressed forms.
+			return new ReadAheadInputStream(new GZIPInputStream(new BufferedInputStream(raw, BUFFER_SIZE),
+				BUFFER_SIZE));
+		} catch (final IOException except) {
+			raw.close();
+			throw except;
+		}
+	}
+
+	/**
+	 * @return a stream that writes, compressing as necessary, to the file
+	 */
+	@NotNull OutputStream openOutput(final @NotNull Path file) throws IOException {
+		final OutputStream raw = Files.newOutputStream(file);
+		if (this == None) {
+			return raw;
+		}
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		return new ParallelGzipOutputStream(new BufferedOutputStream(raw, BUFFER_SIZE), pool,
+			pool.getParallelism(), this == BlockGzip);
+	}
+}
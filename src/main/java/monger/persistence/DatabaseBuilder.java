@@ -0,0 +1,68 @@
+package monger.persistence;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskBatch;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link TaskRecordSink} that collects records into a {@link TaskDatabase}, which it builds in one
+ * {@link TaskBatch batch} once they have all arrived. A later record for a task or iteration replaces the earlier
+ * one entirely, including (for a task) its iteration and dates.
+ */
+final class DatabaseBuilder implements TaskRecordSink {
+	/**
+	 * A task's record.
+	 */
+	private record TaskRecord(@NotNull Task task, @Nullable UUID iteration, @Nullable LocalDate date,
+							  @Nullable LocalDate end) {}
+
+	private final @NotNull Map<UUID, Iteration> iterations = new LinkedHashMap<>();
+	private final @NotNull Map<TaskIdentifier, TaskRecord> tasks = new LinkedHashMap<>();
+
+	@Override
+	public void iteration(final @NotNull Iteration iteration) {
+		iterations.put(iteration.getId(), iteration);
+	}
+
+	@Override
+	public void task(final @NotNull Task task, final @Nullable UUID iteration, final @Nullable LocalDate date,
+					 final @Nullable LocalDate end) {
+		tasks.put(task.getIdentifier(), new TaskRecord(task, iteration, date, end));
+	}
+
+	@Override
+	public void close() {
+		// Nothing to do.
+	}
+
+	public @NotNull TaskDatabase getDatabase() throws PersistenceException {
+		final TaskBatch batch = new TaskBatch();
+		iterations.values().forEach(batch::addIteration);
+		for (final TaskRecord task : tasks.values()) {
+			final TaskIdentifier id = task.task().getIdentifier();
+			batch.addTask(task.task());
+			if (Objects.nonNull(task.iteration())) {
+				batch.assignToIteration(id, task.iteration());
+			}
+			if (Objects.nonNull(task.date())) {
+				batch.assignToDates(id, task.date(), Objects.requireNonNullElse(task.end(), task.date()));
+			}
+		}
+		final TaskDatabase retval = new TaskDatabase();
+		try {
+			retval.apply(batch);
+		} catch (final IllegalArgumentException | IllegalStateException except) {
+			throw new PersistenceException("Inconsistent records", except);
+		}
+		return retval;
+	}
+}
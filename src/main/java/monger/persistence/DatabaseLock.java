@@ -0,0 +1,239 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A shared (for reading) or exclusive (for writing) lock on a database file, held on a hidden sidecar file next
+ * to it (or, for a {@link ShardedStore sharded} database, next to its manifest), so that it is unaffected by the
+ * database file being replaced. The sidecar also holds the file's
+ * revision, a counter that each write through {@link PersistenceHelper} increments, so a writer can tell whether
+ * anyone else has written the file since it was read.
+ *
+ * File locks are held on behalf of the whole process, so within this process the locks on each file are also
+ * kept in a read-write lock, and the shared file lock is taken by the first reader and released by the last.
+ *
+ * A reader that cannot create or write the sidecar, as in a read-only directory, opens it read-only instead; if
+ * it does not exist there either, the file has never been written through a lock, and the reader goes without a
+ * file lock.
+ *
+ * @author Jonathan Lovelace
+ */
+final class DatabaseLock implements AutoCloseable {
+	/**
+	 * The state of the locks on one file within this process.
+	 */
+	private static final class Holder {
+		private final @NotNull ReentrantReadWriteLock local = new ReentrantReadWriteLock(true);
+		private int readers = 0;
+		/**
+		 * The sidecar, while the file lock is held, unless a reader could not open it.
+		 */
+		private @Nullable FileChannel channel = null;
+		private @Nullable FileLock lock = null;
+	}
+
+	private static final @NotNull Map<Path, Holder> HOLDERS = new ConcurrentHashMap<>();
+
+	private final @NotNull Path file;
+	private final @NotNull Holder holder;
+	private final boolean shared;
+	private boolean open = true;
+
+	private DatabaseLock(final @NotNull Path file, final @NotNull Holder holder, final boolean shared) {
+		this.file = file;
+		this.holder = holder;
+		this.shared = shared;
+	}
+
+	/**
+	 * @return the sidecar file for a database file; for a sharded database, that of its manifest, so it is inside
+	 * the directory
+	 */
+	static @NotNull Path lockFile(final @NotNull Path file) {
+		final Path locked = Files.isDirectory(file) ? ShardedStore.manifest(file) : file;
+		return locked.resolveSibling("." + locked.getFileName() + ".lock");
+	}
+
+	/**
+	 * Wait for, and take, a shared lock on a database file.
+	 */
+	static @NotNull DatabaseLock shared(final @NotNull Path file) throws PersistenceException {
+		return acquire(file, true);
+	}
+
+	/**
+	 * Wait for, and take, an exclusive lock on a database file.
+	 */
+	static @NotNull DatabaseLock exclusive(final @NotNull Path file) throws PersistenceException {
+		return acquire(file, false);
+	}
+
+	/**
+	 * A shared lock on one file and an exclusive lock on another, released together.
+	 */
+	record Pair(@NotNull DatabaseLock shared, @NotNull DatabaseLock exclusive) implements AutoCloseable {
+		@Override
+		public void close() throws PersistenceException {
+			try {
+				exclusive.close();
+			} finally {
+				shared.close();
+			}
+		}
+	}
+
+	/**
+	 * Wait for, and take, a shared lock on one file and an exclusive lock on another. They are taken in the order of
+	 * their sidecars' paths, so two callers locking the same two files the other way round, in this process or
+	 * another, cannot deadlock.
+	 */
+	static @NotNull Pair sharedAndExclusive(final @NotNull Path shared, final @NotNull Path exclusive)
+			throws PersistenceException {
+		final boolean sharedFirst = lockFile(shared.toAbsolutePath().normalize())
+										.compareTo(lockFile(exclusive.toAbsolutePath().normalize())) < 0;
+		final DatabaseLock first = sharedFirst ? shared(shared) : exclusive(exclusive);
+		try {
+			final DatabaseLock second = sharedFirst ? exclusive(exclusive) : shared(shared);
+			return sharedFirst ? new Pair(first, second) : new Pair(second, first);
+		} catch (final PersistenceException | RuntimeException except) {
+			first.close();
+			throw except;
+		}
+	}
+
+	private static @NotNull DatabaseLock acquire(final @NotNull Path file, final boolean shared)
+			throws PersistenceException {
+		final Path normalized = file.toAbsolutePath().normalize();
+		final Holder holder = HOLDERS.computeIfAbsent(normalized, f -> new Holder());
+		final Lock local = shared ? holder.local.readLock() : holder.local.writeLock();
+		local.lock();
+		try {
+			synchronized (holder) {
+				if (!shared || holder.readers == 0) {
+					final FileChannel channel = openSidecar(normalized, shared);
+					if (Objects.nonNull(channel)) {
+						try {
+							holder.lock = channel.lock(0L, Long.MAX_VALUE, shared);
+						} catch (final IOException | RuntimeException except) {
+							channel.close();
+							throw except;
+						}
+						holder.channel = channel;
+					}
+				}
+				if (shared) {
+					holder.readers++;
+				}
+			}
+		} catch (final IOException except) {
+			local.unlock();
+			throw new PersistenceException("Failed to lock " + file, except);
+		}
+		return new DatabaseLock(normalized, holder, shared);
+	}
+
+	/**
+	 * @return the sidecar, opened for reading and, unless that is impossible for a reader, writing; or null if a
+	 * reader could not create it
+	 */
+	private static @Nullable FileChannel openSidecar(final @NotNull Path file, final boolean shared)
+			throws IOException {
+		final Path sidecar = lockFile(file);
+		try {
+			return FileChannel.open(sidecar, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		} catch (final FileSystemException | ReadOnlyFileSystemException except) {
+			// Denied, or a read-only file system, which is reported with no more specific type.
+			if (!shared) {
+				throw except;
+			}
+		}
+		try {
+			return FileChannel.open(sidecar, StandardOpenOption.READ);
+		} catch (final NoSuchFileException except) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the file's revision, 0 if it has never been written through a lock
+	 */
+	long getRevision() throws PersistenceException {
+		final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+		final FileChannel channel = holder.channel;
+		if (Objects.isNull(channel)) {
+			return 0L;
+		}
+		try {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, buffer.position()) < 0) {
+					return 0L;
+				}
+			}
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to read revision of " + file, except);
+		}
+		return buffer.flip().getLong();
+	}
+
+	/**
+	 * Record the file's new revision; only the holder of an exclusive lock may do this.
+	 */
+	void setRevision(final long revision) throws PersistenceException {
+		if (shared) {
+			throw new IllegalStateException("Revision changed under a shared lock");
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(revision).flip();
+		try {
+			final FileChannel channel = Objects.requireNonNull(holder.channel);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, buffer.position());
+			}
+			channel.force(false);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to write revision of " + file, except);
+		}
+	}
+
+	@Override
+	public void close() throws PersistenceException {
+		if (!open) {
+			return;
+		}
+		open = false;
+		try {
+			synchronized (holder) {
+				if ((!shared || --holder.readers == 0) && Objects.nonNull(holder.channel)) {
+					final FileChannel channel = holder.channel;
+					try {
+						Objects.requireNonNull(holder.lock).release();
+					} finally {
+						holder.channel = null;
+						holder.lock = null;
+						channel.close();
+					}
+				}
+			}
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to unlock " + file, except);
+		} finally {
+			(shared ? holder.local.readLock() : holder.local.writeLock()).unlock();
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package monger.persistence;
+
+import com.google.common.collect.MapMaker;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import monger.model.Fingerprint;
+import monger.model.Task;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import monger.model.TaskStore;
+import monger.model.TimeEstimate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link TaskStore} for databases too large to hold in memory. Tasks are kept as records in a scratch file,
+ * with only an index from each identifier to its record's offset in memory, plus a bounded number of recently used
+ * tasks. Descriptions are not read from a record until they are asked for.
+ *
+ * Tasks that have been changed are written back, as a new record at the end of the file, when they are evicted or
+ * the store is {@link #flush flushed}; old records are never overwritten, so a lazily-loaded description stays
+ * valid until the store is closed, and the file only grows. A task evicted from the cache, or handed out while
+ * {@link #tasks iterating}, is handed out again as the same object for as long as anyone holds on to it, so there
+ * is never more than one copy of a task in use, and a change to any of them is a change to the task.
+ *
+ * The scratch file is deleted when the store is closed.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class DiskTaskStore implements TaskStore, AutoCloseable {
+	private static final @NotNull Logger LOGGER = Logger.getLogger(DiskTaskStore.class.getName());
+	private static final long NOT_WRITTEN = -1L;
+
+	/**
+	 * A task in the cache, and whether it has changed since it was last written.
+	 */
+	private static final class Entry {
+		private final @NotNull Task task;
+		private boolean dirty;
+
+		Entry(final @NotNull Task task, final boolean dirty) {
+			this.task = task;
+			this.dirty = dirty;
+		}
+	}
+
+	private final @NotNull FileChannel channel;
+	/**
+	 * The dense index of each task, in the order they were first added.
+	 */
+	private final @NotNull Map<TaskIdentifier, Integer> index = new HashMap<>();
+	private final @NotNull List<TaskIdentifier> identifiers = new ArrayList<>();
+	/**
+	 * Where each task's latest record starts, by dense index.
+	 */
+	private long[] offsets = new long[16];
+	/**
+	 * Where the next record will be written.
+	 */
+	private long end = 0L;
+	/**
+	 * Recently used tasks, least recently used first.
+	 */
+	private final @NotNull LinkedHashMap<TaskIdentifier, Entry> cache;
+	/**
+	 * Every task handed out, in the cache or not, weakly held so that one still in use is handed out again rather
+	 * than read afresh. A task not in the cache is one whose changes have all been written back.
+	 */
+	private final @NotNull ConcurrentMap<TaskIdentifier, Task> inUse = new MapMaker().weakValues().makeMap();
+	private @NotNull Consumer<@NotNull Task> loadHook = task -> {};
+
+	/**
+	 * @param file the scratch file, which is created if necessary, emptied, and deleted when the store is closed
+	 * @param capacity the most tasks to keep in memory at once
+	 */
+	public DiskTaskStore(final @NotNull Path file, final int capacity) throws PersistenceException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Cache must hold at least one task");
+		}
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to create " + file, except);
+		}
+		cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<TaskIdentifier, Entry> eldest) {
+				if (size() <= capacity) {
+					return false;
+				}
+				if (eldest.getValue().dirty) {
+					try {
+						write(eldest.getValue().task);
+					} catch (final UncheckedIOException except) {
+						// Keep it in memory rather than lose it, so that storing a task only fails before it
+						// changes anything; the next flush reports the failure.
+						LOGGER.log(Level.WARNING, "Failed to write evicted task to scratch file", except);
+						return false;
+					}
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param capacity the most tasks to keep in memory at once
+	 * @return a store in a new scratch file in the default temporary-file directory
+	 */
+	public static @NotNull DiskTaskStore temporary(final int capacity) throws PersistenceException {
+		final Path file;
+		try {
+			file = Files.createTempFile("monger", ".tasks");
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to create scratch file", except);
+		}
+		return new DiskTaskStore(file, capacity);
+	}
+
+	@Override
+	public synchronized void setLoadHook(final @NotNull Consumer<@NotNull Task> hook) {
+		loadHook = hook;
+	}
+
+	@Override
+	public synchronized @Nullable Task get(final @NotNull TaskIdentifier identifier) {
+		final Entry cached = cache.get(identifier);
+		if (Objects.nonNull(cached)) {
+			return cached.task;
+		}
+		final Integer position = index.get(identifier);
+		if (Objects.isNull(position)) {
+			return null;
+		}
+		final Task retval = load(identifier, offsets[position]);
+		cache.put(identifier, new Entry(retval, false));
+		return retval;
+	}
+
+	/**
+	 * @return the copy of the task already in use, if there is one, or else a fresh one read from the given record
+	 */
+	private @NotNull Task load(final @NotNull TaskIdentifier identifier, final long offset) {
+		final Task existing = inUse.get(identifier);
+		if (Objects.nonNull(existing)) {
+			return existing;
+		}
+		final Task retval = read(offset);
+		inUse.put(identifier, retval);
+		return retval;
+	}
+
+	@Override
+	public synchronized @Nullable Task put(final @NotNull Task task) {
+		final TaskIdentifier identifier = task.getIdentifier();
+		final Task previous = get(identifier);
+		if (Objects.isNull(previous)) {
+			if (identifiers.size() == offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+			index.put(identifier, identifiers.size());
+			offsets[identifiers.size()] = NOT_WRITTEN;
+			identifiers.add(identifier);
+		}
+		cache.put(identifier, new Entry(task, true));
+		inUse.put(identifier, task);
+		return previous;
+	}
+
+	@Override
+	public synchronized boolean remove(final @NotNull TaskIdentifier identifier) {
+		final Integer position = index.remove(identifier);
+		if (Objects.isNull(position)) {
+			return false;
+		}
+		cache.remove(identifier);
+		inUse.remove(identifier);
+		// Keep the dense indexes dense by moving the last task into the gap; its record stays where it is.
+		final int last = identifiers.size() - 1;
+		if (position != last) {
+			final TaskIdentifier moved = identifiers.get(last);
+			identifiers.set(position, moved);
+			offsets[position] = offsets[last];
+			index.put(moved, position);
+		}
+		identifiers.remove(last);
+		return true;
+	}
+
+	@Override
+	public synchronized boolean contains(final @NotNull TaskIdentifier identifier) {
+		return index.containsKey(identifier);
+	}
+
+	@Override
+	public synchronized int size() {
+		return identifiers.size();
+	}
+
+	@Override
+	public synchronized void changed(final @NotNull Task task) {
+		final Entry cached = cache.get(task.getIdentifier());
+		if (Objects.nonNull(cached) && cached.task == task) {
+			cached.dirty = true;
+		} else if (index.containsKey(task.getIdentifier())) {
+			cache.put(task.getIdentifier(), new Entry(task, true));
+		}
+	}
+
+	/**
+	 * Tasks not in the cache are read as they are reached, and not added to it, so a full scan neither needs the
+	 * whole database in memory nor pushes out the tasks in use. The store should not have tasks added while this
+	 * is in progress.
+	 */
+	@Override
+	public @NotNull Iterable<Task> tasks() {
+		return () -> new Iterator<>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size();
+			}
+
+			@Override
+			public Task next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				synchronized (DiskTaskStore.this) {
+					final TaskIdentifier identifier = identifiers.get(next);
+					final Entry cached = cache.get(identifier);
+					final long offset = offsets[next];
+					next++;
+					return Objects.isNull(cached) ? load(identifier, offset) : cached.task;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Write every changed task in the cache to the file.
+	 */
+	public synchronized void flush() {
+		for (final Entry entry : cache.values()) {
+			if (entry.dirty) {
+				write(entry.task);
+				entry.dirty = false;
+			}
+		}
+	}
+
+	/**
+	 * @return how many tasks are in memory
+	 */
+	public synchronized int getCachedCount() {
+		return cache.size();
+	}
+
+	/**
+	 * Close and delete the scratch file. Descriptions not yet loaded can no longer be read afterwards.
+	 */
+	@Override
+	public synchronized void close() throws PersistenceException {
+		cache.clear();
+		inUse.clear();
+		try {
+			channel.close();
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to close scratch file", except);
+		}
+	}
+
+	private static void writeString(final @NotNull DataOutputStream out, final @NotNull String string)
+			throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static @NotNull String readString(final @NotNull ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Append a task's record to the file, and point the index at it. A record is its length, then the task's
+	 * identifier, name, upstream URL, estimate, status, and description fingerprint, and lastly its description.
+	 */
+	private void write(final @NotNull Task task) {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (final DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeInt(0); // The length, filled in below
+				writeString(out, task.getIdentifier().provider());
+				writeString(out, task.getIdentifier().identifier());
+				writeString(out, task.getName());
+				writeString(out, task.getUpstreamURL());
+				out.writeByte(task.getEstimate().ordinal());
+				out.writeByte(task.getStatus().ordinal());
+				final String description = task.getDescription();
+				out.writeLong(Fingerprint.of(description));
+				writeString(out, description);
+			}
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			buffer.putInt(0, buffer.capacity() - Integer.BYTES);
+			final long offset = end;
+			while (buffer.hasRemaining()) {
+				end += channel.write(buffer, end);
+			}
+			offsets[index.get(task.getIdentifier())] = offset;
+		} catch (final IOException except) {
+			throw new UncheckedIOException("Failed to write to scratch file", except);
+		}
+	}
+
+	private @NotNull ByteBuffer read(final long offset, final int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("Scratch file truncated");
+			}
+		}
+		return buffer.flip();
+	}
+
+	/**
+	 * Read a task from the record at the given offset, leaving its description in the file.
+	 */
+	private @NotNull Task read(final long offset) {
+		try {
+			final int length = read(offset, Integer.BYTES).getInt();
+			final ByteBuffer buffer = read(offset + Integer.BYTES, length);
+			final Task retval = new Task(new TaskIdentifier(readString(buffer), readString(buffer)),
+				readString(buffer));
+			retval.setUpstreamURL(readString(buffer));
+			retval.setEstimate(TimeEstimate.values()[buffer.get()]);
+			retval.setStatus(TaskStatus.values()[buffer.get()]);
+			final long fingerprint = buffer.getLong();
+			final int descriptionLength = buffer.getInt();
+			final long descriptionOffset = offset + Integer.BYTES + buffer.position();
+			retval.setLazyDescription(() -> readDescription(descriptionOffset, descriptionLength), fingerprint);
+			loadHook.accept(retval);
+			return retval;
+		} catch (final IOException except) {
+			throw new UncheckedIOException("Failed to read from scratch file", except);
+		}
+	}
+
+	private synchronized @NotNull String readDescription(final long offset, final int length) {
+		try {
+			return StandardCharsets.UTF_8.decode(read(offset, length)).toString();
+		} catch (final IOException except) {
+			throw new UncheckedIOException("Failed to read from scratch file", except);
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The registry of {@link TaskFormat storage formats}, discovered through {@link ServiceLoader}.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class FormatRegistry {
+	private FormatRegistry() {
+		// Don't instantiate.
+	}
+
+	/**
+	 * How much of a file to look at when sniffing its format.
+	 */
+	private static final int SNIFF_LENGTH = 1024;
+
+	/**
+	 * The built-in formats come first, even if the service configuration file is missing from the classpath.
+	 */
+	private static final class Holder {
+		private static final List<TaskFormat> FORMATS = Stream.concat(Stream.of(new XmlFormat()),
+			ServiceLoader.load(TaskFormat.class).stream().map(ServiceLoader.Provider::get)
+				.filter(f -> !(f instanceof XmlFormat))).toList();
+	}
+
+	/**
+	 * @return all known formats
+	 */
+	public static @NotNull List<@NotNull TaskFormat> getFormats() {
+		return Holder.FORMATS;
+	}
+
+	/**
+	 * @param name a format's name
+	 * @return the format with that name, if any
+	 */
+	public static @NotNull Optional<TaskFormat> byName(final @NotNull String name) {
+		return getFormats().stream().filter(f -> f.getName().equalsIgnoreCase(name)).findFirst();
+	}
+
+	/**
+	 * @return the format whose suffix, of those matching the filename, is longest, if any
+	 */
+	private static @Nullable TaskFormat bySuffix(final @NotNull Path file) {
+		final Path name = file.getFileName();
+		if (Objects.isNull(name)) {
+			return null;
+		}
+		final String string = name.toString();
+		TaskFormat retval = null;
+		int longest = 0;
+		for (final TaskFormat format : getFormats()) {
+			for (final String suffix : format.getSuffixes()) {
+				if (string.endsWith(suffix) && suffix.length() > longest) {
+					retval = format;
+					longest = suffix.length();
+				}
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @return the first bytes of the file, decompressed if it is gzipped
+	 */
+	private static byte @NotNull [] header(final @NotNull Path file) throws IOException {
+		try (final InputStream raw = Files.newInputStream(file)) {
+			final byte[] start = raw.readNBytes(SNIFF_LENGTH);
+			if (start.length >= 2 && start[0] == (byte) 0x1f && start[1] == (byte) 0x8b) {
+				try (final InputStream gzipped = new GZIPInputStream(Files.newInputStream(file))) {
+					return gzipped.readNBytes(SNIFF_LENGTH);
+				}
+			} else {
+				return start;
+			}
+		}
+	}
+
+	/**
+	 * Choose the format to read an existing file with, by sniffing its contents or, if no format recognizes them,
+	 * by its name.
+	 */
+	public static @NotNull TaskFormat forReading(final @NotNull Path file) throws PersistenceException {
+		final byte[] header;
+		try {
+			header = header(file);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to read " + file, except);
+		}
+		final TaskFormat bySuffix = bySuffix(file);
+		if (Objects.nonNull(bySuffix) && bySuffix.sniff(header)) {
+			return bySuffix;
+		}
+		for (final TaskFormat format : getFormats()) {
+			if (format.sniff(header)) {
+				return format;
+			}
+		}
+		if (Objects.nonNull(bySuffix)) {
+			return bySuffix;
+		}
+		throw new PersistenceException("Unknown file type");
+	}
+
+	/**
+	 * Choose the format to write a file in, by its name.
+	 */
+	public static @NotNull TaskFormat forWriting(final @NotNull Path file) throws PersistenceException {
+		return Optional.ofNullable(bySuffix(file))
+			.orElseThrow(() -> new PersistenceException("Unknown file type"));
+	}
+
+	/**
+	 * Copy a database from one file to another, possibly in a different format, one record at a time. If both
+	 * formats stream, this runs in memory proportional to the number of iterations, not tasks. If either is a
+	 * {@link ShardedStore sharded} directory, the whole database is read first.
+	 *
+	 * The copy is written to a temporary file next to the destination, under an exclusive lock on the destination,
+	 * and moved into place only once complete, so that a failure partway leaves the destination as it was. The
+	 * source is read under a shared lock; the two are taken in a fixed order, so converting two files into each
+	 * other at once cannot deadlock.
+	 *
+	 * @param source the file to read
+	 * @param destination the file to write
+	 */
+	public static void convert(final @NotNull Path source, final @NotNull Path destination)
+			throws PersistenceException {
+		if (source.toAbsolutePath().normalize().equals(destination.toAbsolutePath().normalize())) {
+			throw new PersistenceException("Cannot convert a database into itself");
+		}
+		if (Files.isDirectory(source) || Files.isDirectory(destination)) {
+			try (final DatabaseLock.Pair locks = DatabaseLock.sharedAndExclusive(source, destination)) {
+				final DatabaseLock lock = locks.exclusive();
+				final TaskDatabase tasks = Files.isDirectory(source) ? ShardedStore.open(source).read() :
+												   forReading(source).createReader().readTasks(source);
+				if (Files.isDirectory(destination)) {
+					ShardedStore.open(destination).write(tasks);
+					lock.setRevision(lock.getRevision() + 1);
+				} else {
+					replace(destination, lock, temp -> forWriting(destination).createWriter().writeTasks(temp, tasks));
+				}
+			}
+			return;
+		}
+		final ITasksReader reader = forReading(source).createReader();
+		final TaskFormat format = forWriting(destination);
+		// The source's lock is held only to keep writers out.
+		try (final DatabaseLock.Pair locks = DatabaseLock.sharedAndExclusive(source, destination)) {
+			replace(destination, locks.exclusive(), temp -> {
+				try (final TaskRecordSink sink = new ValidatingSink(format.createWriter().openRecords(temp))) {
+					reader.readRecords(source, sink);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writing a database to a given file.
+	 */
+	@FunctionalInterface
+	interface FileWrite {
+		void writeTo(@NotNull Path file) throws PersistenceException;
+	}
+
+	/**
+	 * Write a file by writing a temporary file beside it and then moving that into its place, and bump its
+	 * revision. The temporary file's name ends with the destination's, so formats and compression chosen by suffix
+	 * are the same. A failure partway leaves the destination as it was.
+	 *
+	 * @param lock an exclusive lock on the destination
+	 */
+	static void replace(final @NotNull Path destination, final @NotNull DatabaseLock lock,
+								final @NotNull FileWrite write) throws PersistenceException {
+		final Path temp = destination.resolveSibling(".replace-%x.%s".formatted(System.nanoTime(),
+			destination.getFileName()));
+		try {
+			write.writeTo(temp);
+			Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to replace " + destination, except);
+		} finally {
+			try {
+				Files.deleteIfExists(temp);
+			} catch (final IOException ignored) {
+				// Nothing more we can do.
+			}
+		}
+		lock.setRevision(lock.getRevision() + 1);
+	}
+
+	/**
+	 * Passes records through, checking that tasks only refer to iterations already seen and dates within them,
+	 * as {@link monger.model.TaskDatabase} would.
+	 */
+	private static final class ValidatingSink implements TaskRecordSink {
+		private final @NotNull TaskRecordSink wrapped;
+		private final @NotNull Map<UUID, Iteration> iterations = new HashMap<>();
+
+		ValidatingSink(final @NotNull TaskRecordSink wrapped) {
+			this.wrapped = wrapped;
+		}
+
+		@Override
+		public void iteration(final @NotNull Iteration iteration) throws PersistenceException {
+			iterations.put(iteration.getId(), iteration);
+			wrapped.iteration(iteration);
+		}
+
+		@Override
+		public void task(final @NotNull Task task, final @Nullable UUID iteration, final @Nullable LocalDate date,
+						 final @Nullable LocalDate end) throws PersistenceException {
+			final Iteration actual = Objects.isNull(iteration) ? null : iterations.get(iteration);
+			if (Objects.nonNull(iteration) && Objects.isNull(actual)) {
+				throw new PersistenceException("Task %s in unknown iteration".formatted(task.getIdentifier()));
+			} else if (Objects.nonNull(date) && (Objects.isNull(actual) || !actual.containsDate(date) ||
+								(Objects.nonNull(end) && (end.isBefore(date) || !actual.containsDate(end))))) {
+				throw new PersistenceException("Task %s scheduled outside its iteration"
+													   .formatted(task.getIdentifier()));
+			}
+			wrapped.task(task, iteration, date, end);
+		}
+
+		@Override
+		public void close() throws PersistenceException {
+			wrapped.close();
+		}
+	}
+}
@@ -11,4 +11,13 @@ import java.nio.file.Path;
 public interface ITasksReader {
 	TaskDatabase readTasks(Path file) throws PersistenceException;
 	TaskDatabase readTasksFromString(String xml) throws PersistenceException;
+
+	/**
+	 * Pass the records stored in a file to a sink one at a time, without closing it. Implementations that can
+	 * should override this to stream, so the whole database need not fit in memory; the default reads it all
+	 * first.
+	 */
+	default void readRecords(final Path file, final TaskRecordSink sink) throws PersistenceException {
+		TaskRecordSink.emit(readTasks(file), sink);
+	}
 }
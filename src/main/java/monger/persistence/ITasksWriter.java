@@ -1,6 +1,10 @@
 package monger.persistence;
 
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
 import monger.model.TaskDatabase;
 
 /**
@@ -10,4 +14,29 @@ import monger.model.TaskDatabase;
 public interface ITasksWriter {
 	void writeTasks(Path file, TaskDatabase tasks) throws PersistenceException;
 	String writeTasksToString(TaskDatabase tasks) throws PersistenceException;
+
+	/**
+	 * Start writing records to a file one at a time; they are all written by the time the sink is closed.
+	 * Implementations that can should override this to stream; the default collects the records into a
+	 * database and writes it on close.
+	 */
+	default TaskRecordSink openRecords(final Path file) throws PersistenceException {
+		final DatabaseBuilder builder = new DatabaseBuilder();
+		return new TaskRecordSink() {
+			@Override
+			public void iteration(final Iteration iteration) {
+				builder.iteration(iteration);
+			}
+
+			@Override
+			public void task(final Task task, final UUID iteration, final LocalDate date, final LocalDate end) {
+				builder.task(task, iteration, date, end);
+			}
+
+			@Override
+			public void close() throws PersistenceException {
+				writeTasks(file, builder.getDatabase());
+			}
+		};
+	}
 }
@@ -0,0 +1,343 @@
+package monger.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import monger.model.TimeEstimate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A parser for single lines of our JSON Lines format. Since every record is a flat object whose values are all
+ * strings or null, rather than a general JSON parser this works directly on UTF-8 bytes, matches keys against our
+ * fixed vocabulary without decoding them, and only builds strings for values. An instance reuses its buffers and
+ * is not thread-safe.
+ *
+ * @author Jonathan Lovelace
+ */
+final class JsonLineParser {
+	/**
+	 * The records a line may hold.
+	 */
+	sealed interface ParsedRecord permits Header, IterationRecord, TaskRecord {}
+
+	/**
+	 * The header line that starts every file.
+	 */
+	record Header(@NotNull String version) implements ParsedRecord {}
+
+	record IterationRecord(@NotNull Iteration iteration) implements ParsedRecord {}
+
+	/**
+	 * @param end for a task scheduled over several days, the last
+	 */
+	record TaskRecord(@NotNull Task task, @Nullable UUID iteration, @Nullable LocalDate date,
+					  @Nullable LocalDate end) implements ParsedRecord {}
+
+	/**
+	 * Every key we know. Unknown keys are ignored.
+	 */
+	static final String[] KEYS = {"type", "version", "id", "name", "start", "end", "provider", "identifier",
+		"description", "estimate", "upstream", "status", "iteration", "date"};
+	private static final int TYPE = 0;
+	private static final int VERSION = 1;
+	private static final int ID = 2;
+	private static final int NAME = 3;
+	private static final int START = 4;
+	private static final int END = 5;
+	private static final int PROVIDER = 6;
+	private static final int IDENTIFIER = 7;
+	private static final int DESCRIPTION = 8;
+	private static final int ESTIMATE = 9;
+	private static final int UPSTREAM = 10;
+	private static final int STATUS = 11;
+	private static final int ITERATION = 12;
+	private static final int DATE = 13;
+	private static final byte[][] KEY_BYTES =
+		Arrays.stream(KEYS).map(k -> k.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+
+	/**
+	 * The values of the line being parsed, indexed like {@link #KEYS}.
+	 */
+	private final @Nullable String[] values = new String[KEYS.length];
+	/**
+	 * Scratch space for unescaping strings.
+	 */
+	private byte[] scratch = new byte[256];
+
+	private ByteBuffer buffer;
+	private int position;
+	private int limit;
+	/**
+	 * Where in the file {@link #buffer} starts, for error messages.
+	 */
+	private long base;
+
+	/**
+	 * @param buffer the data
+	 * @param start where the line starts
+	 * @param end where the line ends (exclusive)
+	 * @param base the position in the file at which the buffer starts, for error messages
+	 * @return the record on the line, or null if it is blank
+	 */
+	@Nullable ParsedRecord parse(final @NotNull ByteBuffer buffer, final int start, final int end, final long base)
+			throws PersistenceException {
+		this.buffer = buffer;
+		this.base = base;
+		position = start;
+		limit = end;
+		skipWhitespace();
+		if (position == limit) {
+			return null;
+		}
+		Arrays.fill(values, null);
+		expect('{');
+		skipWhitespace();
+		if (peek() == '}') {
+			position++;
+		} else {
+			while (true) {
+				skipWhitespace();
+				expect('"');
+				final int key = readKey();
+				skipWhitespace();
+				expect(':');
+				skipWhitespace();
+				final String value = readValue();
+				if (key >= 0) {
+					values[key] = value;
+				}
+				skipWhitespace();
+				final byte next = next();
+				if (next == '}') {
+					break;
+				} else if (next != ',') {
+					throw error("Expected ',' or '}'");
+				}
+			}
+		}
+		skipWhitespace();
+		if (position != limit) {
+			throw error("Trailing data after record");
+		}
+		return toRecord();
+	}
+
+	private @NotNull ParsedRecord toRecord() throws PersistenceException {
+		final String type = Objects.requireNonNullElse(values[TYPE], "");
+		try {
+			return switch (type) {
+				case "monger" -> new Header(required(VERSION));
+				case "iteration" -> new IterationRecord(new Iteration(UUID.fromString(required(ID)), values[NAME],
+					date(values[START]), date(values[END])));
+				case "task" -> {
+					final Task task = new Task(new TaskIdentifier(Objects.requireNonNullElse(values[PROVIDER], ""),
+						required(IDENTIFIER)), required(NAME));
+					if (Objects.nonNull(values[DESCRIPTION])) {
+						task.setDescription(values[DESCRIPTION]);
+					}
+					if (Objects.nonNull(values[ESTIMATE])) {
+						task.setEstimate(TimeEstimate.valueOf(values[ESTIMATE]));
+					}
+					if (Objects.nonNull(values[UPSTREAM])) {
+						task.setUpstreamURL(values[UPSTREAM]);
+					}
+					if (Objects.nonNull(values[STATUS])) {
+						task.setStatus(TaskStatus.valueOf(values[STATUS]));
+					}
+					yield new TaskRecord(task, Objects.isNull(values[ITERATION]) ? null :
+						UUID.fromString(values[ITERATION]), date(values[DATE]), date(values[END]));
+				}
+				default -> throw error("Unknown record type '%s'".formatted(type));
+			};
+		} catch (final IllegalArgumentException | DateTimeParseException except) {
+			throw new PersistenceException("Record field failed to parse at byte %d".formatted(base + position),
+				except);
+		}
+	}
+
+	private @NotNull String required(final int key) throws PersistenceException {
+		final String retval = values[key];
+		if (Objects.isNull(retval) || retval.isBlank()) {
+			throw error("Missing or empty '%s'".formatted(KEYS[key]));
+		}
+		return retval;
+	}
+
+	private static @Nullable LocalDate date(final @Nullable String value) {
+		return Objects.isNull(value) ? null : LocalDate.parse(value);
+	}
+
+	private @NotNull PersistenceException error(final @NotNull String message) {
+		return new PersistenceException("%s at byte %d".formatted(message, base + position));
+	}
+
+	private byte peek() throws PersistenceException {
+		if (position >= limit) {
+			throw error("Unexpected end of line");
+		}
+		return buffer.get(position);
+	}
+
+	private byte next() throws PersistenceException {
+		final byte retval = peek();
+		position++;
+		return retval;
+	}
+
+	private void expect(final char expected) throws PersistenceException {
+		if (next() != expected) {
+			throw error("Expected '%c'".formatted(expected));
+		}
+	}
+
+	private void skipWhitespace() {
+		while (position < limit) {
+			final byte b = buffer.get(position);
+			if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+				position++;
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Read a key, just after its opening quote, without decoding it unless it contains escapes.
+	 *
+	 * @return its index in {@link #KEYS}, or -1 if it is not one we know
+	 */
+	private int readKey() throws PersistenceException {
+		final int start = position;
+		while (true) {
+			final byte b = next();
+			if (b == '"') {
+				break;
+			} else if (b == '\\') {
+				position = start;
+				final String key = readString();
+				return Arrays.asList(KEYS).indexOf(key);
+			}
+		}
+		final int length = position - 1 - start;
+		outer:
+		for (int i = 0; i < KEY_BYTES.length; i++) {
+			final byte[] key = KEY_BYTES[i];
+			if (key.length == length) {
+				for (int j = 0; j < length; j++) {
+					if (buffer.get(start + j) != key[j]) {
+						continue outer;
+					}
+				}
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private @Nullable String readValue() throws PersistenceException {
+		final byte b = next();
+		if (b == '"') {
+			return readString();
+		} else if (b == 'n' && position + 3 <= limit && buffer.get(position) == 'u' &&
+						   buffer.get(position + 1) == 'l' && buffer.get(position + 2) == 'l') {
+			position += 3;
+			return null;
+		} else {
+			throw error("Expected a string or null");
+		}
+	}
+
+	/**
+	 * Read a string, just after its opening quote.
+	 */
+	private @NotNull String readString() throws PersistenceException {
+		int length = 0;
+		while (true) {
+			final byte b = next();
+			if (b == '"') {
+				return new String(scratch, 0, length, StandardCharsets.UTF_8);
+			}
+			if (length + 4 > scratch.length) {
+				scratch = Arrays.copyOf(scratch, scratch.length * 2);
+			}
+			if (b == '\\') {
+				final byte escaped = next();
+				switch (escaped) {
+					case '"', '\\', '/' -> scratch[length++] = escaped;
+					case 'b' -> scratch[length++] = '\b';
+					case 'f' -> scratch[length++] = '\f';
+					case 'n' -> scratch[length++] = '\n';
+					case 'r' -> scratch[length++] = '\r';
+					case 't' -> scratch[length++] = '\t';
+					case 'u' -> {
+						int codePoint = readHex();
+						if (Character.isHighSurrogate((char) codePoint) && position + 6 <= limit &&
+									buffer.get(position) == '\\' && buffer.get(position + 1) == 'u') {
+							position += 2;
+							final int low = readHex();
+							if (Character.isLowSurrogate((char) low)) {
+								codePoint = Character.toCodePoint((char) codePoint, (char) low);
+							} else {
+								throw error("Invalid surrogate pair");
+							}
+						}
+						length = encode(codePoint, length);
+					}
+					default -> throw error("Invalid escape");
+				}
+			} else if ((b & 0xff) < 0x20) {
+				throw error("Unescaped control character in string");
+			} else {
+				scratch[length++] = b;
+			}
+		}
+	}
+
+	private int readHex() throws PersistenceException {
+		int retval = 0;
+		for (int i = 0; i < 4; i++) {
+			final int digit = Character.digit(next(), 16);
+			if (digit < 0) {
+				throw error("Invalid \\u escape");
+			}
+			retval = retval * 16 + digit;
+		}
+		return retval;
+	}
+
+	/**
+	 * Write a code point into {@link #scratch} as UTF-8.
+	 *
+	 * @return the new length
+	 */
+	private int encode(final int codePoint, final int length) {
+		if (codePoint < 0x80) {
+			scratch[length] = (byte) codePoint;
+			return length + 1;
+		} else if (codePoint < 0x800) {
+			scratch[length] = (byte) (0xc0 | (codePoint >> 6));
+			scratch[length + 1] = (byte) (0x80 | (codePoint & 0x3f));
+			return length + 2;
+		} else if (codePoint < 0x10000) {
+			scratch[length] = (byte) (0xe0 | (codePoint >> 12));
+			scratch[length + 1] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+			scratch[length + 2] = (byte) (0x80 | (codePoint & 0x3f));
+			return length + 3;
+		} else {
+			scratch[length] = (byte) (0xf0 | (codePoint >> 18));
+			scratch[length + 1] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+			scratch[length + 2] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+			scratch[length + 3] = (byte) (0x80 | (codePoint & 0x3f));
+			return length + 4;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package monger.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Our JSON Lines format, one record per line.
+ */
+public final class JsonLinesFormat implements TaskFormat {
+	@Override
+	public @NotNull String getName() {
+		return "jsonl";
+	}
+
+	@Override
+	public @NotNull List<@NotNull String> getSuffixes() {
+		return List.of(".jsonl");
+	}
+
+	/**
+	 * Every file starts with our header line.
+	 */
+	@Override
+	public boolean sniff(final byte @NotNull [] header) {
+		return new String(header, StandardCharsets.UTF_8).stripLeading().startsWith(JsonLinesWriter.HEADER);
+	}
+
+	@Override
+	public @NotNull ITasksReader createReader() {
+		return new JsonLinesReader();
+	}
+
+	@Override
+	public @NotNull ITasksWriter createWriter() {
+		return new JsonLinesWriter();
+	}
+}
@@ -0,0 +1,186 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import monger.model.TaskDatabase;
+import monger.persistence.JsonLineParser.Header;
+import monger.persistence.JsonLineParser.IterationRecord;
+import monger.persistence.JsonLineParser.ParsedRecord;
+import monger.persistence.JsonLineParser.TaskRecord;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads our JSON Lines format. Since every record is on its own line, the file is mapped a window at a time, each
+ * window is split at line boundaries into one chunk per core, and the chunks are parsed in parallel; the records
+ * are then passed on in file order, so that records appended later override earlier ones.
+ *
+ * @author Jonathan Lovelace
+ */
+public class JsonLinesReader implements ITasksReader {
+	/**
+	 * How much of the file to map and parse at once.
+	 */
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+	/**
+	 * Chunks smaller than this aren't worth handing to another thread.
+	 */
+	private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+	@Override
+	public TaskDatabase readTasks(final Path file) throws PersistenceException {
+		final DatabaseBuilder builder = new DatabaseBuilder();
+		readRecords(file, builder);
+		return builder.getDatabase();
+	}
+
+	@Override
+	public TaskDatabase readTasksFromString(final String data) throws PersistenceException {
+		final DatabaseBuilder builder = new DatabaseBuilder();
+		final ByteBuffer buffer = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+		emit(parseWindow(buffer, buffer.limit(), 0), builder, true);
+		return builder.getDatabase();
+	}
+
+	@Override
+	public void readRecords(final Path file, final TaskRecordSink sink) throws PersistenceException {
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size == 0) {
+				throw new PersistenceException("Empty file");
+			}
+			long position = 0;
+			int window = WINDOW_SIZE;
+			while (position < size) {
+				final int length = (int) Math.min(window, size - position);
+				final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				final int end = position + length == size ? length : lastLineEnd(buffer, length);
+				if (end == 0) {
+					// A single line longer than the window.
+					window = Math.multiplyExact(window, 2);
+					continue;
+				}
+				emit(parseWindow(buffer, end, position), sink, position == 0);
+				position += end;
+			}
+		} catch (final IOException | ArithmeticException except) {
+			throw new PersistenceException("Failed to read " + file, except);
+		}
+	}
+
+	/**
+	 * @return the position just past the last newline in the buffer, or 0 if there is none
+	 */
+	private static int lastLineEnd(final @NotNull ByteBuffer buffer, final int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the position just past the first newline at or after start, or end if there is none
+	 */
+	private static int nextLineStart(final @NotNull ByteBuffer buffer, final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * The records parsed from one chunk, or the error that stopped it.
+	 */
+	private record Chunk(@NotNull List<ParsedRecord> records, @Nullable PersistenceException error) {}
+
+	/**
+	 * Split the first {@code end} bytes of a buffer, which must end at a line boundary, into chunks and parse them
+	 * in parallel.
+	 *
+	 * @param base the position in the file at which the buffer starts
+	 * @return the chunks, in order
+	 */
+	private static @NotNull List<Chunk> parseWindow(final @NotNull ByteBuffer buffer, final int end,
+													final long base) {
+		final int count = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), end / MIN_CHUNK_SIZE));
+		final int[] bounds = new int[count + 1];
+		for (int i = 1; i < count; i++) {
+			bounds[i] = nextLineStart(buffer, Math.max(bounds[i - 1], (int) ((long) end * i / count)), end);
+		}
+		bounds[count] = end;
+		final IntStream chunks = IntStream.range(0, count);
+		return (count > 1 ? chunks.parallel() : chunks)
+			.mapToObj(i -> parseChunk(buffer, bounds[i], bounds[i + 1], base)).toList();
+	}
+
+	private static @NotNull Chunk parseChunk(final @NotNull ByteBuffer buffer, final int start, final int end,
+											 final long base) {
+		final JsonLineParser parser = new JsonLineParser();
+		final List<ParsedRecord> records = new ArrayList<>();
+		int lineStart = start;
+		try {
+			while (lineStart < end) {
+				final int lineEnd = nextLineStart(buffer, lineStart, end);
+				final ParsedRecord record = parser.parse(buffer, lineStart, lineEnd, base);
+				if (Objects.nonNull(record)) {
+					records.add(record);
+				}
+				lineStart = lineEnd;
+			}
+			return new Chunk(records, null);
+		} catch (final PersistenceException except) {
+			return new Chunk(records, except);
+		}
+	}
+
+	/**
+	 * Pass parsed records on to a sink, in order.
+	 *
+	 * @param first whether these chunks start the file, which must begin with a header
+	 */
+	private static void emit(final @NotNull List<Chunk> chunks, final @NotNull TaskRecordSink sink,
+							 final boolean first) throws PersistenceException {
+		boolean needHeader = first;
+		for (final Chunk chunk : chunks) {
+			for (final ParsedRecord record : chunk.records()) {
+				if (needHeader && !(record instanceof Header)) {
+					throw new PersistenceException("Missing header line");
+				}
+				needHeader = false;
+				try {
+					switch (record) {
+						case Header(String version) when !"0".equals(version) ->
+							throw new PersistenceException("Unsupported version " + version);
+						case Header header -> {
+							// Concatenated files have several headers; that's fine.
+						}
+						case IterationRecord(var iteration) -> sink.iteration(iteration);
+						case TaskRecord(var task, var iteration, var date, var end) ->
+							sink.task(task, iteration, date, end);
+					}
+				} catch (final IllegalArgumentException | IllegalStateException except) {
+					throw new PersistenceException("Invalid record", except);
+				}
+			}
+			if (Objects.nonNull(chunk.error())) {
+				throw chunk.error();
+			}
+		}
+		if (needHeader) {
+			throw new PersistenceException("Missing header line");
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package monger.persistence;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes our JSON Lines format: a header line, then one flat object per iteration or task. Because each record
+ * stands alone, new records can be {@link #appendRecords appended} to an existing file without rewriting it; when
+ * read back, a later record for a task or iteration replaces the earlier one entirely. In particular, a task's
+ * later record without an iteration or a date takes it out of its iteration or unschedules it.
+ *
+ * @author Jonathan Lovelace
+ */
+public class JsonLinesWriter implements ITasksWriter {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	static final String HEADER = "{\"type\":\"monger\",\"version\":\"0\"}";
+
+	@Override
+	public void writeTasks(final Path file, final TaskDatabase tasks) throws PersistenceException {
+		try (TaskRecordSink sink = openRecords(file)) {
+			TaskRecordSink.emit(tasks, sink);
+		}
+	}
+
+	@Override
+	public String writeTasksToString(final TaskDatabase tasks) throws PersistenceException {
+		final StringWriter buffer = new StringWriter();
+		try (TaskRecordSink sink = new LineWriter(buffer, true)) {
+			TaskRecordSink.emit(tasks, sink);
+		}
+		return buffer.toString();
+	}
+
+	@Override
+	public TaskRecordSink openRecords(final Path file) throws PersistenceException {
+		return new LineWriter(open(file), true);
+	}
+
+	/**
+	 * Start appending records to a file, creating it if it does not exist.
+	 */
+	public TaskRecordSink appendRecords(final Path file) throws PersistenceException {
+		final boolean empty;
+		try {
+			empty = !Files.exists(file) || Files.size(file) == 0;
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to read " + file, except);
+		}
+		return new LineWriter(open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+			StandardOpenOption.WRITE), empty);
+	}
+
+	private static Writer open(final Path file, final OpenOption... options) throws PersistenceException {
+		try {
+			return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file, options),
+				StandardCharsets.UTF_8), BUFFER_SIZE);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to open " + file, except);
+		}
+	}
+
+	/**
+	 * Writes each record as a line as it comes.
+	 */
+	private static final class LineWriter implements TaskRecordSink {
+		private final @NotNull Writer out;
+		/**
+		 * Whether the record being written has had a field written yet.
+		 */
+		private boolean started = false;
+
+		/**
+		 * @param header whether to start with a header line
+		 */
+		LineWriter(final @NotNull Writer out, final boolean header) throws PersistenceException {
+			this.out = out;
+			if (header) {
+				try {
+					out.write(HEADER);
+					out.write('\n');
+				} catch (final IOException except) {
+					throw new PersistenceException("Failed to serialize to JSON", except);
+				}
+			}
+		}
+
+		@Override
+		public void iteration(final @NotNull Iteration iteration) throws PersistenceException {
+			try {
+				field("type", "iteration");
+				field("id", iteration.getId().toString());
+				field("name", iteration.getName());
+				field("start", date(iteration.getStartDate()));
+				field("end", date(iteration.getEndDate()));
+				endRecord();
+			} catch (final IOException except) {
+				throw new PersistenceException("Failed to serialize to JSON", except);
+			}
+		}
+
+		@Override
+		public void task(final @NotNull Task task, final @Nullable UUID iteration, final @Nullable LocalDate date,
+						 final @Nullable LocalDate end) throws PersistenceException {
+			try {
+				field("type", "task");
+				field("provider", task.getIdentifier().provider());
+				field("identifier", task.getIdentifier().identifier());
+				field("name", task.getName());
+				field("description", task.getDescription());
+				field("estimate", task.getEstimate().toString());
+				field("upstream", task.getUpstreamURL());
+				field("status", task.getStatus().toString());
+				field("iteration", Objects.isNull(iteration) ? null : iteration.toString());
+				field("date", date(date));
+				field("end", Objects.equals(date, end) ? null : date(end));
+				endRecord();
+			} catch (final IOException except) {
+				throw new PersistenceException("Failed to serialize to JSON", except);
+			}
+		}
+
+		private static @Nullable String date(final @Nullable LocalDate date) {
+			return Objects.isNull(date) ? null : date.toString();
+		}
+
+		/**
+		 * Write a field of the current record, unless its value is null.
+		 */
+		private void field(final @NotNull String key, final @Nullable String value) throws IOException {
+			if (Objects.isNull(value)) {
+				return;
+			}
+			out.write(started ? ',' : '{');
+			started = true;
+			out.write('"');
+			out.write(key);
+			out.write("\":\"");
+			final int length = value.length();
+			for (int i = 0; i < length; i++) {
+				final char ch = value.charAt(i);
+				switch (ch) {
+					case '"' -> out.write("\\\"");
+					case '\\' -> out.write("\\\\");
+					case '\n' -> out.write("\\n");
+					case '\r' -> out.write("\\r");
+					case '\t' -> out.write("\\t");
+					default -> {
+						if (ch < 0x20) {
+							out.write("\\u%04x".formatted((int) ch));
+						} else {
+							out.write(ch);
+						}
+					}
+				}
+			}
+			out.write('"');
+		}
+
+		private void endRecord() throws IOException {
+			out.write("}\n");
+			started = false;
+		}
+
+		@Override
+		public void close() throws PersistenceException {
+			try {
+				out.close();
+			} catch (final IOException except) {
+				throw new PersistenceException("Failed to serialize to JSON", except);
+			}
+		}
+	}
+}
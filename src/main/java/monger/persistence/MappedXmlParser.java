@@ -0,0 +1,606 @@
+package monger.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import monger.model.TimeEstimate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A parser for our XML format that works directly on UTF-8 bytes, comparing tag and attribute names as bytes and
+ * decoding only the values of fields. It understands only what {@link XmlWriter} writes, allowing for whitespace
+ * between tags, empty-element tags, and attributes in any order: the default namespace and a prefix for
+ * attributes declared on the root element, and entity and character references in text. Anything else, such as a
+ * DTD, a comment, CDATA, other namespaces, or unknown tags, and anything the StAX-based {@link XmlReader} would
+ * reject or interpret differently, makes it give up with {@link Fallback}, so the caller can parse the input with
+ * {@link XmlReader} instead.
+ *
+ * @author Jonathan Lovelace
+ */
+final class MappedXmlParser {
+	/**
+	 * Thrown when the input is something this parser does not handle. It has no stack trace, since it is expected.
+	 */
+	static final class Fallback extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		Fallback(final @NotNull String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	private static final byte[] NAMESPACE = XmlWriter.NAMESPACE.getBytes(StandardCharsets.UTF_8);
+	private static final byte[] MONGER = ascii("monger");
+	private static final byte[] ITERATIONS = ascii("iterations");
+	private static final byte[] ITERATION = ascii("iteration");
+	private static final byte[] TASKS = ascii("tasks");
+	private static final byte[] TASK = ascii("task");
+	private static final byte[] TASK_IDENTIFIER = ascii("task-identifier");
+	private static final byte[] NAME = ascii("name");
+	private static final byte[] DESCRIPTION = ascii("description");
+	private static final byte[] ESTIMATE = ascii("estimate");
+	private static final byte[] UPSTREAM = ascii("upstream");
+	private static final byte[] STATUS = ascii("status");
+	private static final byte[] ASSIGNED_DATE = ascii("assigned-date");
+	private static final byte[] ASSIGNED_END_DATE = ascii("assigned-end-date");
+	private static final byte[] XML_DECLARATION = ascii("<?xml");
+	private static final byte[] XMLNS = ascii("xmlns");
+
+	private static final byte[] MONGER_VERSION = ascii("monger-version");
+	private static final byte[][] ITERATION_ATTRIBUTES = {ascii("id"), NAME, ascii("start"), ascii("end")};
+	private static final byte[][] IDENTIFIER_ATTRIBUTES = {ascii("provider"), ascii("identifier")};
+	private static final byte[][] NO_ATTRIBUTES = {};
+	private static final byte[][] TASK_FIELDS =
+		{TASK_IDENTIFIER, NAME, DESCRIPTION, ESTIMATE, UPSTREAM, STATUS, ITERATION, ASSIGNED_DATE, ASSIGNED_END_DATE};
+
+	private static byte @NotNull [] ascii(final @NotNull String string) {
+		return string.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private final @NotNull ByteBuffer input;
+	private final int limit;
+	private int position = 0;
+	/**
+	 * The prefix the root element binds to our namespace, which attributes must use.
+	 */
+	private byte @Nullable [] prefix = null;
+	/**
+	 * Where values are copied, and entities expanded, before being decoded.
+	 */
+	private byte[] scratch = new byte[256];
+	/**
+	 * Attribute values of the start tag just read, parallel to the names asked for.
+	 */
+	private final @Nullable String[] values = new String[4];
+	/**
+	 * Whether the start tag just read was an empty-element tag.
+	 */
+	private boolean empty = false;
+
+	MappedXmlParser(final @NotNull ByteBuffer input) {
+		this.input = input;
+		limit = input.limit();
+	}
+
+	/**
+	 * Parse the whole input, passing the records to the sink as they are read.
+	 */
+	void parse(final @NotNull TaskRecordSink sink) throws Fallback, PersistenceException {
+		if (limit >= 3 && byteAt(0) == (byte) 0xef && byteAt(1) == (byte) 0xbb && byteAt(2) == (byte) 0xbf) {
+			position = 3;
+		}
+		if (lookingAt(XML_DECLARATION)) {
+			declaration();
+		}
+		skipWhitespace();
+		rootTag();
+		while (true) {
+			skipWhitespace();
+			if (isEndTag(MONGER)) {
+				endTag(MONGER);
+				break;
+			} else if (isStartTag(ITERATIONS)) {
+				startTag(ITERATIONS, NO_ATTRIBUTES);
+				if (!empty) {
+					iterations(sink);
+				}
+			} else if (isStartTag(TASKS)) {
+				startTag(TASKS, NO_ATTRIBUTES);
+				if (!empty) {
+					tasks(sink);
+				}
+			} else {
+				throw new Fallback("Unexpected content in root element");
+			}
+		}
+		skipWhitespace();
+		if (position != limit) {
+			throw new Fallback("Content after root element");
+		}
+	}
+
+	private byte byteAt(final int index) throws Fallback {
+		if (index >= limit) {
+			throw new Fallback("Unexpected end of input");
+		}
+		return input.get(index);
+	}
+
+	private boolean lookingAt(final byte @NotNull [] literal) {
+		if (limit - position < literal.length) {
+			return false;
+		}
+		for (int i = 0; i < literal.length; i++) {
+			if (input.get(position + i) != literal[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(final byte b) {
+		return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+	}
+
+	private void skipWhitespace() {
+		while (position < limit && isWhitespace(input.get(position))) {
+			position++;
+		}
+	}
+
+	/**
+	 * Skip the XML declaration, accepting only UTF-8 (or unspecified) encodings.
+	 */
+	private void declaration() throws Fallback {
+		final int start = position;
+		while (byteAt(position) != '?' || byteAt(position + 1) != '>') {
+			position++;
+		}
+		final String text = decode(start, position, false).toLowerCase(Locale.ROOT);
+		position += 2;
+		final int encoding = text.indexOf("encoding");
+		if (encoding >= 0 && !text.substring(encoding).matches("encoding\\s*=\\s*[\"']utf-8[\"'].*")) {
+			throw new Fallback("Encoding other than UTF-8");
+		}
+	}
+
+	/**
+	 * @return whether the input at the given position is a name, followed by something that can end a name
+	 */
+	private boolean isName(final int at, final byte @NotNull [] name) {
+		if (limit - at <= name.length) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			if (input.get(at + i) != name[i]) {
+				return false;
+			}
+		}
+		final byte next = input.get(at + name.length);
+		return isWhitespace(next) || next == '>' || next == '/';
+	}
+
+	private boolean isStartTag(final byte @NotNull [] name) throws Fallback {
+		return byteAt(position) == '<' && isName(position + 1, name);
+	}
+
+	private boolean isEndTag(final byte @NotNull [] name) throws Fallback {
+		return byteAt(position) == '<' && byteAt(position + 1) == '/' && isName(position + 2, name);
+	}
+
+	private void endTag(final byte @NotNull [] name) throws Fallback {
+		if (!isEndTag(name)) {
+			throw new Fallback("Expected end tag");
+		}
+		position += name.length + 2;
+		skipWhitespace();
+		if (byteAt(position) != '>') {
+			throw new Fallback("Malformed end tag");
+		}
+		position++;
+	}
+
+	/**
+	 * The root element must declare our namespace as the default and bind a prefix to it, and have the right
+	 * version.
+	 */
+	private void rootTag() throws Fallback {
+		if (!isStartTag(MONGER)) {
+			throw new Fallback("Missing root element");
+		}
+		position += MONGER.length + 1;
+		boolean defaultNamespace = false;
+		// Attributes may come before the declaration of their prefix, so the version is checked afterwards.
+		int versionName = -1;
+		int versionNameEnd = -1;
+		String version = null;
+		while (true) {
+			skipWhitespace();
+			final byte next = byteAt(position);
+			if (next == '>') {
+				position++;
+				break;
+			} else if (next == '/') {
+				throw new Fallback("Empty root element");
+			}
+			final int nameStart = position;
+			final int nameEnd = attributeName();
+			final int valueStart = position;
+			final int valueEnd = attributeValueEnd();
+			if (regionIs(nameStart, nameEnd, XMLNS)) {
+				if (!regionIs(valueStart, valueEnd, NAMESPACE)) {
+					throw new Fallback("Unexpected default namespace");
+				}
+				defaultNamespace = true;
+			} else if (nameEnd - nameStart > XMLNS.length + 1 && regionEquals(nameStart, XMLNS) &&
+							   input.get(nameStart + XMLNS.length) == ':') {
+				if (!regionIs(valueStart, valueEnd, NAMESPACE) || Objects.nonNull(prefix)) {
+					throw new Fallback("Unexpected namespace declaration");
+				}
+				prefix = new byte[nameEnd - nameStart - XMLNS.length - 1];
+				input.get(nameStart + XMLNS.length + 1, prefix);
+			} else if (Objects.isNull(version)) {
+				versionName = nameStart;
+				versionNameEnd = nameEnd;
+				version = decode(valueStart, valueEnd, true);
+			} else {
+				throw new Fallback("Unexpected attribute on root element");
+			}
+			position = valueEnd + 1;
+		}
+		if (!defaultNamespace || Objects.isNull(version) ||
+					!regionIsAttribute(versionName, versionNameEnd, MONGER_VERSION) || !"0".equals(version)) {
+			throw new Fallback("Missing or unexpected namespace declarations or version");
+		}
+	}
+
+	private boolean regionEquals(final int at, final byte @NotNull [] literal) {
+		if (limit - at < literal.length) {
+			return false;
+		}
+		for (int i = 0; i < literal.length; i++) {
+			if (input.get(at + i) != literal[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean regionIs(final int start, final int end, final byte @NotNull [] literal) {
+		return end - start == literal.length && regionEquals(start, literal);
+	}
+
+	/**
+	 * @return whether the name in the given region is our prefix followed by the given local name
+	 */
+	private boolean regionIsAttribute(final int start, final int end, final byte @NotNull [] local) {
+		return Objects.nonNull(prefix) && end - start == prefix.length + 1 + local.length &&
+					   regionEquals(start, prefix) && input.get(start + prefix.length) == ':' &&
+					   regionEquals(start + prefix.length + 1, local);
+	}
+
+	/**
+	 * Read an attribute name and the {@code =} and opening quote after it, leaving the position at the start of
+	 * the value.
+	 *
+	 * @return the end of the name
+	 */
+	private int attributeName() throws Fallback {
+		final int start = position;
+		while (true) {
+			final byte b = byteAt(position);
+			if (b == '=' || isWhitespace(b)) {
+				break;
+			} else if (b == '>' || b == '/' || b == '<' || b == '"' || b == '\'') {
+				throw new Fallback("Malformed attribute");
+			}
+			position++;
+		}
+		final int end = position;
+		if (end == start) {
+			throw new Fallback("Malformed attribute");
+		}
+		skipWhitespace();
+		if (byteAt(position) != '=') {
+			throw new Fallback("Malformed attribute");
+		}
+		position++;
+		skipWhitespace();
+		final byte quote = byteAt(position);
+		if (quote != '"' && quote != '\'') {
+			throw new Fallback("Malformed attribute");
+		}
+		position++;
+		return end;
+	}
+
+	/**
+	 * @return the position of the quote ending the attribute value starting at the current position
+	 */
+	private int attributeValueEnd() throws Fallback {
+		final byte quote = byteAt(position - 1);
+		int end = position;
+		while (true) {
+			final byte b = byteAt(end);
+			if (b == quote) {
+				return end;
+			} else if (b == '<') {
+				throw new Fallback("Malformed attribute value");
+			}
+			end++;
+		}
+	}
+
+	/**
+	 * Read a start tag, whose attributes must all be among those given and use our prefix. Their values, with
+	 * blank ones treated as missing, are left in {@link #values}, and whether the tag is an empty-element tag in
+	 * {@link #empty}.
+	 */
+	private void startTag(final byte @NotNull [] name, final byte @NotNull [] @NotNull [] attributes)
+			throws Fallback {
+		position += name.length + 1;
+		Arrays.fill(values, null);
+		final boolean[] seen = new boolean[attributes.length];
+		while (true) {
+			skipWhitespace();
+			final byte next = byteAt(position);
+			if (next == '>') {
+				position++;
+				empty = false;
+				return;
+			} else if (next == '/') {
+				if (byteAt(position + 1) != '>') {
+					throw new Fallback("Malformed empty-element tag");
+				}
+				position += 2;
+				empty = true;
+				return;
+			}
+			final int nameStart = position;
+			final int nameEnd = attributeName();
+			final int valueEnd = attributeValueEnd();
+			int index = -1;
+			for (int i = 0; i < attributes.length; i++) {
+				if (regionIsAttribute(nameStart, nameEnd, attributes[i])) {
+					index = i;
+					break;
+				}
+			}
+			if (index < 0 || seen[index]) {
+				throw new Fallback("Unexpected or duplicate attribute");
+			}
+			seen[index] = true;
+			final String value = decode(position, valueEnd, true);
+			values[index] = value.isBlank() ? null : value;
+			position = valueEnd + 1;
+		}
+	}
+
+	/**
+	 * Read a tag that contains only text, after the start of its start tag has been matched.
+	 *
+	 * @return its text
+	 */
+	private @NotNull String textElement(final byte @NotNull [] name) throws Fallback {
+		startTag(name, NO_ATTRIBUTES);
+		if (empty) {
+			return "";
+		}
+		final int start = position;
+		while (byteAt(position) != '<') {
+			position++;
+		}
+		final String retval = decode(start, position, false);
+		endTag(name);
+		return retval;
+	}
+
+	private void iterations(final @NotNull TaskRecordSink sink) throws Fallback, PersistenceException {
+		while (true) {
+			skipWhitespace();
+			if (isEndTag(ITERATIONS)) {
+				endTag(ITERATIONS);
+				return;
+			} else if (!isStartTag(ITERATION)) {
+				throw new Fallback("Unexpected content in <iterations>");
+			}
+			startTag(ITERATION, ITERATION_ATTRIBUTES);
+			if (!empty) {
+				skipWhitespace();
+				endTag(ITERATION);
+			}
+			if (Objects.isNull(values[0])) {
+				throw new Fallback("Iteration without ID");
+			}
+			try {
+				sink.iteration(new Iteration(UUID.fromString(values[0]), values[1],
+					Objects.isNull(values[2]) ? null : LocalDate.parse(values[2]),
+					Objects.isNull(values[3]) ? null : LocalDate.parse(values[3])));
+			} catch (final RuntimeException except) {
+				throw new Fallback("Malformed iteration");
+			}
+		}
+	}
+
+	private void tasks(final @NotNull TaskRecordSink sink) throws Fallback, PersistenceException {
+		while (true) {
+			skipWhitespace();
+			if (isEndTag(TASKS)) {
+				endTag(TASKS);
+				return;
+			} else if (!isStartTag(TASK)) {
+				throw new Fallback("Unexpected content in <tasks>");
+			}
+			startTag(TASK, NO_ATTRIBUTES);
+			if (empty) {
+				throw new Fallback("Empty task");
+			}
+			task(sink);
+		}
+	}
+
+	private void task(final @NotNull TaskRecordSink sink) throws Fallback, PersistenceException {
+		final String[] fields = new String[TASK_FIELDS.length];
+		TaskIdentifier id = null;
+		while (true) {
+			skipWhitespace();
+			if (isEndTag(TASK)) {
+				endTag(TASK);
+				break;
+			}
+			int index = -1;
+			for (int i = 0; i < TASK_FIELDS.length; i++) {
+				if (isStartTag(TASK_FIELDS[i])) {
+					index = i;
+					break;
+				}
+			}
+			if (index < 0 || Objects.nonNull(fields[index]) || (index == 0 && Objects.nonNull(id))) {
+				throw new Fallback("Unexpected or duplicate tag in <task>");
+			} else if (index == 0) {
+				startTag(TASK_IDENTIFIER, IDENTIFIER_ATTRIBUTES);
+				if (Objects.isNull(values[0]) || Objects.isNull(values[1])) {
+					throw new Fallback("Incomplete task identifier");
+				}
+				id = new TaskIdentifier(values[0], values[1]);
+				if (!empty) {
+					skipWhitespace();
+					endTag(TASK_IDENTIFIER);
+				}
+			} else {
+				fields[index] = textElement(TASK_FIELDS[index]);
+			}
+		}
+		final String name = fields[1];
+		if (Objects.isNull(id) || Objects.isNull(name) || name.isBlank()) {
+			throw new Fallback("Task without identifier or name");
+		}
+		final Task task = new Task(id, name);
+		final UUID iteration;
+		final LocalDate date;
+		final LocalDate end;
+		try {
+			if (Objects.nonNull(fields[2])) {
+				task.setDescription(fields[2]);
+			}
+			if (Objects.nonNull(fields[3])) {
+				task.setEstimate(TimeEstimate.valueOf(fields[3]));
+			}
+			if (Objects.nonNull(fields[4])) {
+				task.setUpstreamURL(fields[4]);
+			}
+			if (Objects.nonNull(fields[5])) {
+				task.setStatus(TaskStatus.valueOf(fields[5]));
+			}
+			iteration = Objects.isNull(fields[6]) ? null : UUID.fromString(fields[6]);
+			date = Objects.isNull(fields[7]) ? null : LocalDate.parse(fields[7]);
+			end = Objects.isNull(fields[8]) ? null : LocalDate.parse(fields[8]);
+		} catch (final RuntimeException except) {
+			throw new Fallback("Malformed task field");
+		}
+		sink.task(task, iteration, date, end);
+	}
+
+	/**
+	 * Decode text or an attribute value, expanding references and normalizing line ends, and in attributes
+	 * whitespace, as an XML parser would.
+	 */
+	private @NotNull String decode(final int start, final int end, final boolean attribute) throws Fallback {
+		final int length = end - start;
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		input.get(start, scratch, 0, length);
+		boolean simple = true;
+		for (int i = 0; i < length; i++) {
+			final byte b = scratch[i];
+			if (b < 0x20 || b == '&') {
+				// Includes every byte with the high bit set, since bytes are signed.
+				simple = false;
+				break;
+			}
+		}
+		if (simple) {
+			return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+		}
+		int out = 0;
+		for (int i = 0; i < length; i++) {
+			final byte b = scratch[i];
+			if (b == '&') {
+				int semicolon = i + 1;
+				while (semicolon < length && scratch[semicolon] != ';') {
+					semicolon++;
+				}
+				if (semicolon == length) {
+					throw new Fallback("Unterminated reference");
+				}
+				out = expand(i + 1, semicolon, out);
+				i = semicolon;
+			} else if (b == '\r') {
+				if (i + 1 < length && scratch[i + 1] == '\n') {
+					i++;
+				}
+				scratch[out] = (byte) (attribute ? ' ' : '\n');
+				out++;
+			} else if (b >= 0 && b < 0x20 && !isWhitespace(b)) {
+				throw new Fallback("Control character");
+			} else {
+				scratch[out] = attribute && isWhitespace(b) ? (byte) ' ' : b;
+				out++;
+			}
+		}
+		final String retval = new String(scratch, 0, out, StandardCharsets.UTF_8);
+		if (retval.indexOf('\ufffd') >= 0) {
+			throw new Fallback("Malformed UTF-8");
+		}
+		return retval;
+	}
+
+	/**
+	 * Expand the reference whose name is between the given positions in the scratch buffer, writing it as UTF-8
+	 * at the given output position, which is never past the reference's start, so it always fits.
+	 *
+	 * @return the output position after it
+	 */
+	private int expand(final int start, final int end, final int out) throws Fallback {
+		final int codePoint;
+		final String reference = new String(scratch, start, end - start, StandardCharsets.ISO_8859_1);
+		switch (reference) {
+			case "lt" -> codePoint = '<';
+			case "gt" -> codePoint = '>';
+			case "amp" -> codePoint = '&';
+			case "quot" -> codePoint = '"';
+			case "apos" -> codePoint = '\'';
+			default -> {
+				try {
+					if (reference.startsWith("#x")) {
+						codePoint = Integer.parseInt(reference.substring(2), 16);
+					} else if (reference.startsWith("#")) {
+						codePoint = Integer.parseInt(reference.substring(1));
+					} else {
+						throw new Fallback("Unknown entity");
+					}
+				} catch (final NumberFormatException except) {
+					throw new Fallback("Malformed character reference");
+				}
+				if (codePoint < 0x20 && !isWhitespace((byte) codePoint) || codePoint > Character.MAX_CODE_POINT ||
+							(codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) ||
+							codePoint == 0xfffe || codePoint == 0xffff) {
+					throw new Fallback("Invalid character reference");
+				}
+			}
+		}
+		final byte[] encoded = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(encoded, 0, scratch, out, encoded.length);
+		return out + encoded.length;
+	}
+}
@@ -0,0 +1,65 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An XML reader for bulk loads, which memory-maps the file and parses its bytes directly with a parser that
+ * understands only our own schema as {@link XmlWriter} writes it; on anything else, such as a compressed file, a
+ * DTD, or CDATA, it falls back to the general {@link XmlReader}. Descriptions are always read eagerly.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class MappedXmlReader implements ITasksReader {
+	private static final Logger LOGGER = Logger.getLogger(MappedXmlReader.class.getName());
+
+	private final @NotNull XmlReader fallback = new XmlReader();
+
+	@Override
+	public TaskDatabase readTasks(final Path file) throws PersistenceException {
+		final TaskDatabase retval = tryReadTasks(file);
+		return retval == null ? fallback.readTasks(file) : retval;
+	}
+
+	/**
+	 * @return the database, or null if the file must be read the slow way
+	 */
+	private static @Nullable TaskDatabase tryReadTasks(final @NotNull Path file) throws PersistenceException {
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE || Compression.detect(file) != Compression.None) {
+				return null;
+			}
+			return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), file.toString());
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to read " + file, except);
+		}
+	}
+
+	private static @Nullable TaskDatabase parse(final @NotNull ByteBuffer input, final @NotNull String source)
+			throws PersistenceException {
+		final DatabaseBuilder builder = new DatabaseBuilder();
+		try {
+			new MappedXmlParser(input).parse(builder);
+		} catch (final MappedXmlParser.Fallback except) {
+			LOGGER.log(Level.FINE, () -> "Parsing %s with StAX: %s".formatted(source, except.getMessage()));
+			return null;
+		}
+		return builder.getDatabase();
+	}
+
+	@Override
+	public TaskDatabase readTasksFromString(final String xml) throws PersistenceException {
+		final TaskDatabase retval = parse(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)), "string");
+		return retval == null ? fallback.readTasksFromString(xml) : retval;
+	}
+}
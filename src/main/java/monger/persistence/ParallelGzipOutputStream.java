@@ -0,0 +1,226 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A gzip-compressing stream that, like pigz, splits its input into blocks and compresses them in parallel.
+ *
+ * In the default mode each block is primed with the last 32 KiB of the previous block as a preset dictionary and
+ * ended with a sync flush, so the concatenated output is a single ordinary gzip stream compressing nearly as well
+ * as a serial one. In "independent" mode each block is instead written as its own complete gzip member, as in
+ * BGZF; that costs a little compression but lets blocks be found and decompressed separately. Either way, the
+ * output can be read by {@link java.util.zip.GZIPInputStream}.
+ *
+ * @author Jonathan Lovelace
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+	/**
+	 * The default size of each independently-compressed block.
+	 */
+	static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private final @NotNull OutputStream out;
+	private final @NotNull ExecutorService executor;
+	private final int level;
+	private final boolean independent;
+	/**
+	 * How many blocks may be compressing (or compressed but not yet written) at once, to bound memory use.
+	 */
+	private final int maxInFlight;
+	private final @NotNull Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+	/**
+	 * The CRC of all the uncompressed data, which is cheap enough to compute serially.
+	 */
+	private final CRC32 crc = new CRC32();
+	private long totalLength = 0L;
+	private byte[] block;
+	private int blockLength = 0;
+	private byte @NotNull [] dictionary = new byte[0];
+	private boolean closed = false;
+
+	/**
+	 * @param out the stream to write the compressed data to
+	 * @param executor the thread pool on which to compress blocks
+	 * @param parallelism how many blocks to compress at once
+	 * @param independent whether to write each block as an independent gzip member instead of one gzip stream
+	 */
+	ParallelGzipOutputStream(final @NotNull OutputStream out, final @NotNull ExecutorService executor,
+							 final int parallelism, final boolean independent) throws IOException {
+		this.out = out;
+		this.executor = executor;
+		this.independent = independent;
+		level = Deflater.DEFAULT_COMPRESSION;
+		maxInFlight = Math.max(1, parallelism) * 2;
+		block = new byte[DEFAULT_BLOCK_SIZE];
+		if (!independent) {
+			out.write(HEADER);
+		}
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (blockLength == block.length) {
+			submit(false);
+		}
+		block[blockLength] = (byte) b;
+		blockLength++;
+	}
+
+	@Override
+	public void write(final byte @NotNull [] bytes, final int offset, final int length) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		int written = 0;
+		while (written < length) {
+			if (blockLength == block.length) {
+				submit(false);
+			}
+			final int chunk = Math.min(length - written, block.length - blockLength);
+			System.arraycopy(bytes, offset + written, block, blockLength, chunk);
+			blockLength += chunk;
+			written += chunk;
+		}
+	}
+
+	/**
+	 * Hand off the current block to be compressed, waiting for the oldest outstanding block if too many are.
+	 */
+	private void submit(final boolean last) throws IOException {
+		final byte[] data = block;
+		final int length = blockLength;
+		crc.update(data, 0, length);
+		totalLength += length;
+		final byte[] dict = dictionary;
+		if (!independent) {
+			final int dictLength = Math.min(DICTIONARY_SIZE, length);
+			dictionary = Arrays.copyOfRange(data, length - dictLength, length);
+		}
+		inFlight.add(executor.submit(() -> independent ? compressMember(data, length) :
+			compressBlock(data, length, dict, last)));
+		block = new byte[DEFAULT_BLOCK_SIZE];
+		blockLength = 0;
+		while (inFlight.size() >= maxInFlight) {
+			writeOldest();
+		}
+	}
+
+	private void writeOldest() throws IOException {
+		try {
+			out.write(inFlight.remove().get());
+		} catch (final ExecutionException except) {
+			throw new IOException("Block compression failed", except.getCause());
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", except);
+		}
+	}
+
+	/**
+	 * Compress a block as part of a single raw deflate stream.
+	 */
+	private byte[] compressBlock(final byte[] data, final int length, final byte[] dict, final boolean last) {
+		final Deflater deflater = new Deflater(level, true);
+		try {
+			if (dict.length > 0) {
+				deflater.setDictionary(dict);
+			}
+			deflater.setInput(data, 0, length);
+			if (last) {
+				deflater.finish();
+			}
+			return drain(deflater, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH, last, length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Compress a block as an independent gzip member.
+	 */
+	private byte[] compressMember(final byte[] data, final int length) {
+		final Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			final byte[] body = drain(deflater, Deflater.NO_FLUSH, true, length);
+			final CRC32 blockCrc = new CRC32();
+			blockCrc.update(data, 0, length);
+			final byte[] retval = Arrays.copyOf(HEADER, HEADER.length + body.length + 8);
+			System.arraycopy(body, 0, retval, HEADER.length, body.length);
+			writeTrailer(retval, HEADER.length + body.length, blockCrc.getValue(), length);
+			return retval;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] drain(final Deflater deflater, final int flush, final boolean finishing,
+								final int inputLength) {
+		byte[] buffer = new byte[inputLength / 4 + 64];
+		int length = 0;
+		while (true) {
+			if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			length += deflater.deflate(buffer, length, buffer.length - length, flush);
+			if (finishing ? deflater.finished() : (deflater.needsInput() && length < buffer.length)) {
+				return Arrays.copyOf(buffer, length);
+			}
+		}
+	}
+
+	private static void writeTrailer(final byte[] buffer, final int offset, final long crc, final long length) {
+		for (int i = 0; i < 4; i++) {
+			buffer[offset + i] = (byte) (crc >>> (8 * i));
+			buffer[offset + 4 + i] = (byte) (length >>> (8 * i));
+		}
+	}
+
+	/**
+	 * Compressed data only reaches the underlying stream as whole blocks, so this only flushes what is done.
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (!independent || blockLength > 0 || totalLength == 0) {
+				submit(true);
+			}
+			while (!inFlight.isEmpty()) {
+				writeOldest();
+			}
+			if (!independent) {
+				final byte[] trailer = new byte[8];
+				writeTrailer(trailer, 0, crc.getValue(), totalLength);
+				out.write(trailer);
+			}
+		} finally {
+			inFlight.forEach(f -> f.cancel(true));
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package monger.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import monger.model.Fingerprint;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskBatch;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import monger.model.TimeEstimate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A compact binary copy of a parsed database, kept in a hidden "sidecar" file next to it, so that read-only
+ * commands can skip parsing XML when the file has not changed. The cache is keyed on the source file's size,
+ * modification time, and {@link DatabaseLock#getRevision revision}, none of which require reading the file; it is
+ * read through a memory map, and task descriptions are left in the map until they are asked for. No cache is
+ * written next to a file in a directory we cannot write to.
+ *
+ * Cache files are replaced atomically, so a mapping of an old one stays valid after it is replaced.
+ *
+ * @author Jonathan Lovelace
+ */
+final class ParseCache {
+	private static final @NotNull Logger LOGGER = Logger.getLogger(ParseCache.class.getName());
+	private static final int MAGIC = 0x544d4333; // "TMC3"
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private ParseCache() {
+		// Don't instantiate.
+	}
+
+	/**
+	 * What a cache is valid for.
+	 *
+	 * @param size the source file's size
+	 * @param modified the source file's modification time, in nanoseconds (or as fine as the file system keeps it)
+	 * @param revision the source file's revision, which every write through a lock changes
+	 */
+	record Key(long size, long modified, long revision) {
+		/**
+		 * Compute the key for a file, held under a lock.
+		 */
+		static @NotNull Key of(final @NotNull Path file, final @NotNull DatabaseLock lock)
+				throws IOException, PersistenceException {
+			final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return new Key(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+				lock.getRevision());
+		}
+	}
+
+	/**
+	 * @return the sidecar file for a database file
+	 */
+	static @NotNull Path cacheFile(final @NotNull Path file) {
+		return file.resolveSibling("." + file.getFileName() + ".cache");
+	}
+
+	/**
+	 * @param file a database file
+	 * @param key the key for its current contents
+	 * @return the database as cached, or null if there is no valid cache for that key
+	 */
+	static @Nullable TaskDatabase read(final @NotNull Path file, final @NotNull Key key) {
+		final Path cache = cacheFile(file);
+		final MappedByteBuffer buffer;
+		try (final FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (final NoSuchFileException except) {
+			return null;
+		} catch (final IOException except) {
+			LOGGER.log(Level.WARNING, "Failed to open parse cache " + cache, except);
+			return null;
+		}
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getLong() != key.size() || buffer.getLong() != key.modified() ||
+						buffer.getLong() != key.revision()) {
+				return null;
+			}
+			return readDatabase(buffer);
+		} catch (final RuntimeException except) { // e.g. BufferUnderflowException, or invalid data in the model
+			LOGGER.log(Level.WARNING, "Corrupt parse cache " + cache, except);
+			return null;
+		}
+	}
+
+	private static @NotNull TaskDatabase readDatabase(final @NotNull ByteBuffer buffer) {
+		final TaskBatch batch = new TaskBatch();
+		final int iterationCount = buffer.getInt();
+		final List<Iteration> iterations = new ArrayList<>(iterationCount);
+		for (int i = 0; i < iterationCount; i++) {
+			final UUID id = new UUID(buffer.getLong(), buffer.getLong());
+			final String name = readString(buffer);
+			final LocalDate start = readDate(buffer);
+			final LocalDate end = readDate(buffer);
+			final Iteration iteration = new Iteration(id, name, start, end);
+			iterations.add(iteration);
+			batch.addIteration(iteration);
+		}
+		final TimeEstimate[] estimates = TimeEstimate.values();
+		final TaskStatus[] statuses = TaskStatus.values();
+		final int taskCount = buffer.getInt();
+		for (int i = 0; i < taskCount; i++) {
+			final TaskIdentifier id = new TaskIdentifier(Objects.requireNonNull(readString(buffer)),
+				Objects.requireNonNull(readString(buffer)));
+			final Task task = new Task(id, Objects.requireNonNull(readString(buffer)));
+			final long descriptionFingerprint = buffer.getLong();
+			final int descriptionLength = buffer.getInt();
+			final ByteBuffer description = buffer.slice(buffer.position(), descriptionLength);
+			buffer.position(buffer.position() + descriptionLength);
+			task.setLazyDescription(() -> StandardCharsets.UTF_8.decode(description.duplicate()).toString(),
+				descriptionFingerprint);
+			task.setEstimate(estimates[buffer.get()]);
+			task.setUpstreamURL(Objects.requireNonNull(readString(buffer)));
+			task.setStatus(statuses[buffer.get()]);
+			final int iteration = buffer.getInt();
+			final LocalDate date = readDate(buffer);
+			final LocalDate end = readDate(buffer);
+			batch.addTask(task);
+			if (iteration >= 0) {
+				batch.assignToIteration(id, iterations.get(iteration).getId());
+			}
+			if (Objects.nonNull(date)) {
+				batch.assignToDates(id, date, Objects.requireNonNullElse(end, date));
+			}
+		}
+		final TaskDatabase retval = new TaskDatabase();
+		retval.apply(batch);
+		return retval;
+	}
+
+	private static @Nullable String readString(final @NotNull ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static @Nullable LocalDate readDate(final @NotNull ByteBuffer buffer) {
+		final long epochDay = buffer.getLong();
+		return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+	}
+
+	/**
+	 * Write (or replace) the cache for a database file, unless its directory is read-only. Failure is logged but
+	 * otherwise ignored, since the cache is only an optimization.
+	 *
+	 * @param file the database file
+	 * @param key the key for the contents from which the database was read
+	 * @param tasks the database
+	 */
+	static void write(final @NotNull Path file, final @NotNull Key key, final @NotNull TaskDatabase tasks) {
+		final Path cache = cacheFile(file);
+		if (!Files.isWritable(cache.toAbsolutePath().getParent())) {
+			return;
+		}
+		final Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+		try {
+			try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(temp), 64 * 1024))) {
+				out.writeInt(MAGIC);
+				out.writeLong(key.size());
+				out.writeLong(key.modified());
+				out.writeLong(key.revision());
+				writeDatabase(out, tasks);
+			}
+			Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException except) {
+			LOGGER.log(Level.WARNING, "Failed to write parse cache " + cache, except);
+			try {
+				Files.deleteIfExists(temp);
+			} catch (final IOException ignored) {
+				// Nothing more we can do.
+			}
+		}
+	}
+
+	private static void writeDatabase(final @NotNull DataOutputStream out, final @NotNull TaskDatabase tasks)
+			throws IOException {
+		final Map<UUID, Integer> iterationIndexes = new HashMap<>();
+		final List<Iteration> iterations = new ArrayList<>();
+		tasks.getIterations().forEach(iterations::add);
+		out.writeInt(iterations.size());
+		for (final Iteration iteration : iterations) {
+			iterationIndexes.put(iteration.getId(), iterationIndexes.size());
+			out.writeLong(iteration.getId().getMostSignificantBits());
+			out.writeLong(iteration.getId().getLeastSignificantBits());
+			writeString(out, iteration.getName());
+			writeDate(out, iteration.getStartDate());
+			writeDate(out, iteration.getEndDate());
+		}
+		final List<Task> taskList = new ArrayList<>();
+		tasks.getTasks().forEach(taskList::add);
+		out.writeInt(taskList.size());
+		for (final Task task : taskList) {
+			writeString(out, task.getIdentifier().provider());
+			writeString(out, task.getIdentifier().identifier());
+			writeString(out, task.getName());
+			final String descriptionString = task.getDescription();
+			final byte[] description = descriptionString.getBytes(StandardCharsets.UTF_8);
+			out.writeLong(Fingerprint.of(descriptionString));
+			out.writeInt(description.length);
+			out.write(description);
+			out.writeByte(task.getEstimate().ordinal());
+			writeString(out, task.getUpstreamURL());
+			out.writeByte(task.getStatus().ordinal());
+			final Iteration iteration = tasks.getIteration(task.getIdentifier());
+			out.writeInt(Objects.isNull(iteration) ? -1 :
+				iterationIndexes.getOrDefault(iteration.getId(), -1));
+			writeDate(out, tasks.getAssignedDate(task.getIdentifier()));
+			writeDate(out, tasks.getAssignedEndDate(task.getIdentifier()));
+		}
+	}
+
+	private static void writeString(final @NotNull DataOutputStream out, final @Nullable String string)
+			throws IOException {
+		if (Objects.isNull(string)) {
+			out.writeInt(-1);
+		} else {
+			final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static void writeDate(final @NotNull DataOutputStream out, final @Nullable LocalDate date)
+			throws IOException {
+		out.writeLong(Objects.isNull(date) ? NO_DATE : date.toEpochDay());
+	}
+}
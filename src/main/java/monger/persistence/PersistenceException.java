@@ -6,7 +6,9 @@ import org.jetbrains.annotations.NotNull;
  * An exception class for problems in the persistence layer, so we don't have to declare both XML and DB related
  * exceptions on the interfaces.
  */
-public final class PersistenceException extends Exception {
+public class PersistenceException extends Exception {
+	private static final long serialVersionUID = 1L;
+
 	public PersistenceException(final @NotNull String message, final @NotNull Throwable wrapped) {
 		super(message, wrapped);
 	}
@@ -1,10 +1,32 @@
 package monger.persistence;
 
+import com.google.common.collect.MapMaker;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import monger.model.Iteration;
+import monger.model.Task;
 import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
- * Uses the correct implementation to (de)serialize based on filename.
+ * Uses the correct implementation to (de)serialize based on filename or, when reading, contents; see
+ * {@link FormatRegistry}. XML files may be gzip-compressed, either as one stream ({@code .xml.gz}) or as
+ * independent blocks ({@code .xml.bgz}). A directory is a {@link ShardedStore sharded} database.
  *
  * @author Jonathan Lovelace
  */
@@ -12,20 +34,270 @@ public final class PersistenceHelper {
 	private PersistenceHelper() {
 		// Don't instantiate.
 	}
+
+	/**
+	 * What we knew about a database and its file when we last read or wrote it.
+	 *
+	 * @param file the file, or a sharded database's directory, as an absolute path
+	 * @param digest the database's {@link TaskDatabase#getDigest digest} at that time
+	 * @param size the file's size at that time, or for a sharded database its manifest's
+	 * @param modified the file's modification time at that time, or for a sharded database its manifest's
+	 * @param revision the file's {@link DatabaseLock#getRevision revision} at that time
+	 */
+	private record Snapshot(@NotNull Path file, long digest, long size, @NotNull FileTime modified, long revision) {
+		static @NotNull Snapshot of(final @NotNull Path file, final long digest, final long revision)
+				throws IOException {
+			final Path examined = Files.isDirectory(file) ? ShardedStore.manifest(file) : file;
+			final BasicFileAttributes attributes = Files.readAttributes(examined, BasicFileAttributes.class);
+			return new Snapshot(file.toAbsolutePath().normalize(), digest, attributes.size(),
+				attributes.lastModifiedTime(), revision);
+		}
+
+		/**
+		 * @return whether the file is still as it was then, whatever the database's contents
+		 */
+		boolean isCurrent(final @NotNull DatabaseLock lock) throws PersistenceException {
+			try {
+				return equals(of(file, digest, lock.getRevision()));
+			} catch (final IOException except) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Snapshots of databases we have read or written, keyed by identity and weakly held so they don't outlive the
+	 * databases.
+	 */
+	private static final ConcurrentMap<TaskDatabase, Snapshot> SNAPSHOTS = new MapMaker().weakKeys().makeMap();
+
+	private static void remember(final @NotNull Path file, final @NotNull TaskDatabase tasks, final long digest,
+								 final @NotNull DatabaseLock lock) throws PersistenceException {
+		try {
+			SNAPSHOTS.put(tasks, Snapshot.of(file, digest, lock.getRevision()));
+		} catch (final IOException except) {
+			SNAPSHOTS.remove(tasks);
+		}
+	}
+
+	/**
+	 * Take a database to be as up to date with the file as another one that was read from it; used when the
+	 * first has just been brought up to date with the second.
+	 */
+	static void adopt(final @NotNull TaskDatabase from, final @NotNull TaskDatabase to) {
+		final Snapshot snapshot = SNAPSHOTS.get(from);
+		if (Objects.nonNull(snapshot)) {
+			SNAPSHOTS.put(to, snapshot);
+		}
+	}
+
+	/**
+	 * @return whether two databases were last read from, or written to, the same version of the same file
+	 */
+	static boolean isSameVersion(final @NotNull TaskDatabase one, final @NotNull TaskDatabase other) {
+		final Snapshot snapshot = SNAPSHOTS.get(one);
+		return Objects.nonNull(snapshot) && snapshot.equals(SNAPSHOTS.get(other));
+	}
+
+	/**
+	 * If a valid {@link ParseCache parse cache} exists for the file, this reads that instead of parsing the file;
+	 * otherwise, it parses the file and writes a fresh cache. The file is read under a shared lock, so it cannot
+	 * be written meanwhile (except by a process not using these locks), but others can read it at the same time.
+	 * A sharded database is read the same way, but has no parse cache.
+	 */
 	public static TaskDatabase readFromFile(Path file) throws PersistenceException {
-		if (file.endsWith(".xml")) {
-			return new XmlReader().readTasks(file);
-		} else {
-			throw new PersistenceException("Unknown file type");
+		try (final DatabaseLock lock = DatabaseLock.shared(file)) {
+			final TaskDatabase retval = Files.isDirectory(file) ? ShardedStore.open(file).read() :
+												readLocked(file, lock);
+			remember(file, retval, retval.getDigest(), lock);
+			return retval;
+		}
+	}
+
+	/**
+	 * Read only what is needed to work on one iteration: from a sharded database, the iteration's shard and that
+	 * of the tasks in no iteration, and otherwise the whole database. The result can be {@link #writeToFile
+	 * written} back, leaving the other shards alone.
+	 *
+	 * @param iterationName the ID or name of the iteration
+	 */
+	public static @NotNull TaskDatabase readIteration(final @NotNull Path file, final @NotNull String iterationName)
+			throws PersistenceException {
+		if (!Files.isDirectory(file)) {
+			return readFromFile(file);
+		}
+		try (final DatabaseLock lock = DatabaseLock.shared(file)) {
+			final TaskDatabase retval = ShardedStore.open(file).readIteration(iterationName);
+			remember(file, retval, retval.getDigest(), lock);
+			return retval;
 		}
 	}
 
+	private static @NotNull TaskDatabase readLocked(final @NotNull Path file, final @NotNull DatabaseLock lock)
+			throws PersistenceException {
+		final TaskFormat format = FormatRegistry.forReading(file);
+		final ParseCache.Key key;
+		try {
+			key = ParseCache.Key.of(file, lock);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to read " + file, except);
+		}
+		TaskDatabase retval = ParseCache.read(file, key);
+		if (Objects.isNull(retval)) {
+			// Read descriptions eagerly if we can, since writing the cache needs them all anyway ...
+			final ITasksReader reader = format instanceof XmlFormat ? new MappedXmlReader() :
+												format.createReader();
+			retval = reader.readTasks(file);
+			ParseCache.write(file, key, retval);
+			// ... but then return the copy from the cache, whose descriptions stay on disk until needed.
+			retval = Objects.requireNonNullElse(ParseCache.read(file, key), retval);
+		}
+		return retval;
+	}
+
+	/**
+	 * Read a database into a store on disk, for databases too large to hold in memory. Records are added to the
+	 * database one at a time as they are read, rather than in one batch, so that (for formats whose readers stream)
+	 * only the store's cache of tasks is ever held in memory. No {@link ParseCache parse cache} is read or written.
+	 *
+	 * @param store where to keep the tasks, which must be empty; the caller must close it when done with the database
+	 */
+	public static @NotNull TaskDatabase readFromFile(final @NotNull Path file, final @NotNull DiskTaskStore store)
+			throws PersistenceException {
+		if (Files.isDirectory(file)) {
+			throw new PersistenceException("Sharded databases cannot be read into a store on disk");
+		}
+		final TaskDatabase retval = new TaskDatabase(store);
+		try (final DatabaseLock lock = DatabaseLock.shared(file)) {
+			readRecords(file, retval);
+			remember(file, retval, retval.getDigest(), lock);
+		}
+		return retval;
+	}
+
+	private static void readRecords(final @NotNull Path file, final @NotNull TaskDatabase retval)
+			throws PersistenceException {
+		FormatRegistry.forReading(file).createReader().readRecords(file, new TaskRecordSink() {
+			@Override
+			public void iteration(final @NotNull Iteration iteration) {
+				retval.addIteration(iteration);
+			}
+
+			@Override
+			public void task(final @NotNull Task task, final @Nullable UUID iteration, final @Nullable LocalDate date,
+							 final @Nullable LocalDate end) throws PersistenceException {
+				try {
+					// A later record for a task replaces the earlier one entirely.
+					retval.addTask(task);
+					if (Objects.nonNull(iteration)) {
+						retval.assignToIteration(task.getIdentifier(), iteration);
+					} else {
+						retval.unassign(task.getIdentifier());
+					}
+					if (Objects.nonNull(date)) {
+						retval.assignToDates(task.getIdentifier(), date, Objects.requireNonNullElse(end, date));
+					} else {
+						retval.clearDate(task.getIdentifier());
+					}
+				} catch (final IllegalArgumentException | IllegalStateException except) {
+					throw new PersistenceException("Inconsistent records", except);
+				}
+			}
+
+			@Override
+			public void close() {
+				// Nothing to do.
+			}
+		});
+	}
+
+	/**
+	 * Read several databases at once, each on its own virtual thread, so that reading them all takes about as long
+	 * as reading the largest.
+	 *
+	 * @return the databases, in the order the files were given
+	 */
+	public static @NotNull Map<Path, TaskDatabase> readFromFiles(final @NotNull Collection<Path> files)
+			throws PersistenceException {
+		final Map<Path, Future<TaskDatabase>> results = new LinkedHashMap<>();
+		final Map<Path, TaskDatabase> retval = new LinkedHashMap<>();
+		try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (final Path file : files) {
+				results.computeIfAbsent(file, f -> executor.submit(() -> readFromFile(f)));
+			}
+			for (final Map.Entry<Path, Future<TaskDatabase>> result : results.entrySet()) {
+				try {
+					retval.put(result.getKey(), result.getValue().get());
+				} catch (final ExecutionException except) {
+					executor.shutdownNow();
+					if (except.getCause() instanceof final PersistenceException cause) {
+						throw cause;
+					}
+					throw new PersistenceException("Failed to read " + result.getKey(), except.getCause());
+				} catch (final InterruptedException except) {
+					executor.shutdownNow();
+					Thread.currentThread().interrupt();
+					throw new PersistenceException("Interrupted reading " + result.getKey(), except);
+				}
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Write a database to a file under an exclusive lock, which waits for any readers or other writers to finish.
+	 * If the database was last read from or written to this file, and the file has not changed since, but the
+	 * database has not changed either, this does nothing. The file is written beside it and then moved into place,
+	 * so a write that fails partway leaves it as it was. A sharded database is written the same way, shard by
+	 * shard.
+	 *
+	 * @throws StaleDatabaseException if the database was last read from or written to this file, but someone else
+	 * has written the file since, so writing it would lose their changes
+	 */
 	public static void writeToFile(Path file, TaskDatabase tasks)
 			throws PersistenceException {
-		if (file.endsWith(".xml")) {
-			new XmlWriter().writeTasks(file, tasks);
-		} else {
-			throw new PersistenceException("Unknown file type");
+		writeToFile(file, tasks, tasks);
+	}
+
+	/**
+	 * Write a copy of a database, checking the file against the original.
+	 *
+	 * @param contents what to write
+	 * @param owner the database whose last read or write of the file this write follows; the same as the
+	 *              contents, unless those are a copy of it
+	 */
+	static void writeToFile(final @NotNull Path file, final @NotNull TaskDatabase contents,
+							final @NotNull TaskDatabase owner) throws PersistenceException {
+		try (final DatabaseLock lock = DatabaseLock.exclusive(file)) {
+			final @Nullable Snapshot base = SNAPSHOTS.get(owner);
+			if (Objects.nonNull(base) && base.file().equals(file.toAbsolutePath().normalize())) {
+				if (!base.isCurrent(lock)) {
+					throw new StaleDatabaseException(file + " has been written by someone else since it was read");
+				} else if (base.digest() == contents.getDigest()) {
+					return;
+				}
+			}
+			final boolean sharded = Files.isDirectory(file);
+			if (sharded) {
+				ShardedStore.open(file).write(contents);
+				lock.setRevision(lock.getRevision() + 1);
+			} else {
+				// Autosave writes often, so a write that fails partway must not leave a truncated file.
+				final TaskFormat format = FormatRegistry.forWriting(file);
+				FormatRegistry.replace(file, lock, temp -> format.createWriter().writeTasks(temp, contents));
+			}
+			remember(file, owner, contents.getDigest(), lock);
+			if (sharded) {
+				return;
+			} else if (!contents.isInMemory()) {
+				// The cache would be read back entirely into memory, which is what a store on disk is meant to avoid.
+				return;
+			}
+			try {
+				ParseCache.write(file, ParseCache.Key.of(file, lock), contents);
+			} catch (final IOException except) {
+				// The cache is only an optimization; the next read will rebuild it.
+			}
 		}
 	}
 }
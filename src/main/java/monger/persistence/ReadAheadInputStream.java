@@ -0,0 +1,127 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A stream that reads (and so, for a decompressing stream, inflates) its source on a background thread, a few
+ * chunks ahead of its consumer, so that decompression and parsing proceed in parallel.
+ *
+ * @author Jonathan Lovelace
+ */
+final class ReadAheadInputStream extends InputStream {
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int QUEUE_DEPTH = 4;
+	/**
+	 * Marks the end of the source's data (or an error, if {@link #error} is set).
+	 */
+	private static final byte[] END = new byte[0];
+
+	private final @NotNull InputStream source;
+	private final @NotNull BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+	private final @NotNull Thread producer;
+	private volatile @Nullable IOException error = null;
+	private byte @Nullable [] current = null;
+	private int position = 0;
+	private boolean eof = false;
+
+	ReadAheadInputStream(final @NotNull InputStream source) {
+		this.source = source;
+		producer = Thread.ofPlatform().daemon().name("read-ahead").start(this::produce);
+	}
+
+	private void produce() {
+		try {
+			while (true) {
+				final byte[] buffer = new byte[CHUNK_SIZE];
+				final int length = source.readNBytes(buffer, 0, CHUNK_SIZE);
+				if (length > 0) {
+					queue.put(length == CHUNK_SIZE ? buffer : Arrays.copyOf(buffer, length));
+				}
+				if (length < CHUNK_SIZE) {
+					break;
+				}
+			}
+		} catch (final IOException except) {
+			error = except;
+		} catch (final InterruptedException except) {
+			return; // The consumer closed us.
+		}
+		try {
+			queue.put(END);
+		} catch (final InterruptedException ignored) {
+			// The consumer closed us.
+		}
+	}
+
+	/**
+	 * @return whether there is data available in {@link #current}
+	 */
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (current != null && position < current.length) {
+			return true;
+		}
+		try {
+			current = queue.take();
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for read-ahead");
+		}
+		position = 0;
+		if (current == END) {
+			eof = true;
+			final IOException except = error;
+			if (except != null) {
+				throw except;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (fill()) {
+			final int retval = current[position] & 0xff;
+			position++;
+			return retval;
+		} else {
+			return -1;
+		}
+	}
+
+	@Override
+	public int read(final byte @NotNull [] buffer, final int offset, final int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		} else if (fill()) {
+			final int count = Math.min(length, current.length - position);
+			System.arraycopy(current, position, buffer, offset, count);
+			position += count;
+			return count;
+		} else {
+			return -1;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		eof = true;
+		producer.interrupt();
+		try {
+			producer.join();
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+		}
+		source.close();
+	}
+}
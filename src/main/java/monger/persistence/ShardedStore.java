@@ -0,0 +1,529 @@
+package monger.persistence;
+
+import com.google.common.collect.MapMaker;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import monger.model.Fingerprint;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A task database stored as a directory of shards: one XML file per iteration, holding the iteration and the tasks
+ * assigned to it, and one for the tasks assigned to no iteration. A manifest lists each shard with its iteration's
+ * dates and a checksum of its contents, so callers can load only the shards they need, and saving rewrites only
+ * the shards whose contents changed.
+ *
+ * A database loaded from only some shards can be saved back: the shards it was not loaded from are left alone.
+ *
+ * Shards are never overwritten in place: each save writes the shards that changed under new names, then replaces
+ * the manifest, and only then deletes the shards the old manifest listed, so a reader, or a save that fails
+ * partway, always sees a manifest whose shards all exist and match it. {@link PersistenceHelper} also holds the
+ * directory's {@link DatabaseLock lock} while reading or writing, as it does for a database in one file.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class ShardedStore {
+	private static final Logger LOGGER = Logger.getLogger(ShardedStore.class.getName());
+	private static final String MANIFEST = "manifest.xml";
+	private static final String UNASSIGNED = "unassigned";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * A shard, as listed in the manifest.
+	 *
+	 * @param file the shard's filename, within the directory, which changes each time the shard is rewritten
+	 * @param iteration the ID of the shard's iteration, or null for the shard of unassigned tasks
+	 * @param name the iteration's name, if any
+	 * @param start the iteration's start date, if any
+	 * @param end the iteration's end date, if any
+	 * @param checksum a digest of the shard's contents
+	 */
+	public record Shard(@NotNull String file, @Nullable UUID iteration, @Nullable String name,
+						@Nullable LocalDate start, @Nullable LocalDate end, long checksum) {
+		/**
+		 * @return whether this is the shard of an iteration containing the given date
+		 */
+		public boolean contains(final @NotNull LocalDate date) {
+			return Objects.nonNull(start) && Objects.nonNull(end) && !date.isBefore(start) && !date.isAfter(end);
+		}
+	}
+
+	/**
+	 * Which shards of which store each database was loaded from, by {@link #key key}, weakly held so they don't
+	 * outlive the databases.
+	 */
+	private record Origin(@NotNull Path directory, @NotNull Set<String> files) {}
+
+	private static final ConcurrentMap<TaskDatabase, Origin> ORIGINS = new MapMaker().weakKeys().makeMap();
+
+	private final @NotNull Path directory;
+	/**
+	 * The manifest's entries, by {@link #key key}.
+	 */
+	private final @NotNull Map<String, Shard> shards;
+
+	private ShardedStore(final @NotNull Path directory, final @NotNull Map<String, Shard> shards) {
+		this.directory = directory.toAbsolutePath().normalize();
+		this.shards = shards;
+	}
+
+	/**
+	 * Open a sharded database. If the directory has no manifest, the database is empty.
+	 *
+	 * @param directory the directory, which must exist
+	 */
+	public static @NotNull ShardedStore open(final @NotNull Path directory) throws PersistenceException {
+		if (!Files.isDirectory(directory)) {
+			throw new PersistenceException(directory + " is not a directory");
+		}
+		final Path manifest = manifest(directory);
+		if (Files.exists(manifest)) {
+			return new ShardedStore(directory, readManifest(manifest));
+		} else {
+			return new ShardedStore(directory, new LinkedHashMap<>());
+		}
+	}
+
+	/**
+	 * @return the manifest of a sharded database, which exists unless the database has never been written
+	 */
+	static @NotNull Path manifest(final @NotNull Path directory) {
+		return directory.resolve(MANIFEST);
+	}
+
+	/**
+	 * @return whether the given path is a directory holding a sharded database, that is, one with a manifest
+	 */
+	public static boolean isSharded(final @NotNull Path directory) {
+		return Files.isRegularFile(manifest(directory));
+	}
+
+	/**
+	 * @return the shards in the manifest
+	 */
+	public @NotNull Collection<Shard> getShards() {
+		return List.copyOf(shards.values());
+	}
+
+	/**
+	 * @return the whole database
+	 */
+	public @NotNull TaskDatabase read() throws PersistenceException {
+		return read(shard -> true);
+	}
+
+	/**
+	 * @param iterationName the ID or name of an iteration
+	 * @return a database of that iteration and the tasks in it or in no iteration
+	 */
+	public @NotNull TaskDatabase readIteration(final @NotNull String iterationName) throws PersistenceException {
+		return read(shard -> Objects.isNull(shard.iteration()) || iterationName.equals(shard.name()) ||
+									 shard.iteration().toString().equals(iterationName));
+	}
+
+	/**
+	 * Load the chosen shards, in parallel.
+	 *
+	 * @param which which shards to load
+	 * @return a database of the iterations and tasks in those shards
+	 */
+	public @NotNull TaskDatabase read(final @NotNull Predicate<Shard> which) throws PersistenceException {
+		final List<Shard> chosen = shards.values().stream().filter(which).toList();
+		final List<ShardContents> contents = new ArrayList<>(chosen.size());
+		try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			final List<Future<ShardContents>> results = new ArrayList<>(chosen.size());
+			for (final Shard shard : chosen) {
+				results.add(executor.submit(() -> readShard(shard)));
+			}
+			try {
+				for (final Future<ShardContents> result : results) {
+					contents.add(await(result));
+				}
+			} catch (final PersistenceException except) {
+				executor.shutdownNow();
+				throw except;
+			}
+		}
+		final DatabaseBuilder builder = new DatabaseBuilder();
+		// Iterations first, since the unassigned shard may come before them.
+		for (final ShardContents shard : contents) {
+			if (Objects.nonNull(shard.iteration)) {
+				builder.iteration(shard.iteration);
+			}
+		}
+		for (final ShardContents shard : contents) {
+			for (final ShardContents.Entry entry : shard.tasks) {
+				builder.task(entry.task(), Objects.isNull(shard.iteration) ? null : shard.iteration.getId(),
+					entry.date(), entry.end());
+			}
+		}
+		final TaskDatabase retval = builder.getDatabase();
+		final Set<String> keys = new HashSet<>();
+		chosen.forEach(shard -> keys.add(key(shard.iteration())));
+		ORIGINS.put(retval, new Origin(directory, keys));
+		return retval;
+	}
+
+	private @NotNull ShardContents readShard(final @NotNull Shard shard) throws PersistenceException {
+		final ShardContents retval = new ShardContents(shard.file());
+		new XmlReader().readRecords(directory.resolve(shard.file()), retval);
+		if (!Objects.equals(shard.iteration(),
+				Objects.isNull(retval.iteration) ? null : retval.iteration.getId())) {
+			throw new PersistenceException("Shard %s does not hold the iteration the manifest says"
+												   .formatted(shard.file()));
+		} else if (retval.checksum() != shard.checksum()) {
+			throw new PersistenceException("Shard %s does not match its checksum".formatted(shard.file()));
+		}
+		return retval;
+	}
+
+	/**
+	 * Save a database. Shards whose contents are unchanged are not rewritten; changed shards are written to new
+	 * files, the manifest is replaced only once all of them have been written, and the files it no longer lists
+	 * are deleted after that. If the database was loaded from only some of this store's shards, the others are
+	 * kept; otherwise, shards for iterations no longer in the database are deleted.
+	 */
+	public void write(final @NotNull TaskDatabase tasks) throws PersistenceException {
+		final Origin origin = ORIGINS.get(tasks);
+		final Set<String> loaded = Objects.nonNull(origin) && origin.directory().equals(directory) ?
+											   origin.files() : null;
+		final Map<String, ShardContents> contents = new LinkedHashMap<>();
+		for (final Iteration iteration : tasks.getIterations()) {
+			final String key = key(iteration.getId());
+			if (Objects.nonNull(loaded) && shards.containsKey(key) && !loaded.contains(key)) {
+				throw new PersistenceException("Iteration %s was added, but its shard was not loaded"
+													   .formatted(iteration.getId()));
+			}
+			final ShardContents shard = new ShardContents(key);
+			shard.iteration(iteration);
+			contents.put(key, shard);
+		}
+		final String unassignedKey = key(null);
+		final ShardContents unassigned = new ShardContents(unassignedKey);
+		for (final Task task : tasks.getTasks()) {
+			final Iteration iteration = tasks.getIteration(task.getIdentifier());
+			final ShardContents shard = Objects.isNull(iteration) ? unassigned :
+												contents.get(key(iteration.getId()));
+			shard.task(task, null, tasks.getAssignedDate(task.getIdentifier()),
+				tasks.getAssignedEndDate(task.getIdentifier()));
+		}
+		if (Objects.isNull(loaded) || loaded.contains(unassignedKey) || !unassigned.tasks.isEmpty()) {
+			if (Objects.nonNull(loaded) && shards.containsKey(unassignedKey) && !loaded.contains(unassignedKey)) {
+				throw new PersistenceException("Some tasks are in no iteration, but the unassigned shard was not loaded");
+			}
+			contents.put(unassignedKey, unassigned);
+		}
+
+		final Map<String, Shard> updated = new LinkedHashMap<>();
+		if (Objects.nonNull(loaded)) {
+			for (final Map.Entry<String, Shard> entry : shards.entrySet()) {
+				if (!loaded.contains(entry.getKey())) {
+					updated.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		final String suffix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+		final Map<ShardContents, Shard> changed = new LinkedHashMap<>();
+		for (final ShardContents shard : contents.values()) {
+			final Shard previous = shards.get(shard.name);
+			if (Objects.nonNull(previous) && previous.checksum() == shard.checksum() &&
+						Files.exists(directory.resolve(previous.file()))) {
+				updated.put(shard.name, previous);
+			} else {
+				final Shard entry = shard.toShard(shardFile(shard.iteration, suffix));
+				changed.put(shard, entry);
+				updated.put(shard.name, entry);
+			}
+		}
+		if (!updated.equals(shards)) {
+			try {
+				writeShards(changed);
+				writeManifest(updated.values());
+			} catch (final PersistenceException except) {
+				// No manifest lists the new files, so they are of no use to anyone.
+				changed.values().forEach(shard -> deleteQuietly(shard.file()));
+				throw except;
+			}
+			final Set<String> listed = new HashSet<>();
+			updated.values().forEach(shard -> listed.add(shard.file()));
+			for (final Shard shard : shards.values()) {
+				if (!listed.contains(shard.file())) {
+					deleteQuietly(shard.file());
+				}
+			}
+			shards.clear();
+			shards.putAll(updated);
+		}
+		ORIGINS.put(tasks, new Origin(directory, new HashSet<>(contents.keySet())));
+	}
+
+	/**
+	 * @param iteration an iteration's ID, or null for the unassigned tasks
+	 * @return the key identifying that iteration's shard, whatever its current file is called
+	 */
+	private static @NotNull String key(final @Nullable UUID iteration) {
+		return Objects.isNull(iteration) ? UNASSIGNED : iteration.toString();
+	}
+
+	/**
+	 * @param iteration the shard's iteration, or null for the unassigned tasks
+	 * @param suffix distinguishes this write's files from those of any other
+	 */
+	private static @NotNull String shardFile(final @Nullable Iteration iteration, final @NotNull String suffix) {
+		return Objects.isNull(iteration) ? "unassigned-%s.xml".formatted(suffix) :
+					   "iteration-%s-%s.xml".formatted(iteration.getId(), suffix);
+	}
+
+	/**
+	 * Write the given shards to their new files, in parallel.
+	 */
+	private void writeShards(final @NotNull Map<ShardContents, Shard> changed) throws PersistenceException {
+		try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			final List<Future<Void>> results = new ArrayList<>(changed.size());
+			for (final Map.Entry<ShardContents, Shard> entry : changed.entrySet()) {
+				results.add(executor.submit(() -> {
+					writeShard(entry.getKey(), entry.getValue().file());
+					return null;
+				}));
+			}
+			try {
+				for (final Future<Void> result : results) {
+					await(result);
+				}
+			} catch (final PersistenceException except) {
+				executor.shutdownNow();
+				throw except;
+			}
+		}
+	}
+
+	/**
+	 * Delete a shard file that no manifest lists any more. Failing to is harmless, so it is only logged.
+	 */
+	private void deleteQuietly(final @NotNull String file) {
+		try {
+			Files.deleteIfExists(directory.resolve(file));
+		} catch (final IOException except) {
+			LOGGER.log(Level.WARNING, "Failed to delete obsolete shard " + file, except);
+		}
+	}
+
+	/**
+	 * Write to a temporary file and then move it into place, so a failure never leaves a file half-written.
+	 */
+	private void replace(final @NotNull String file, final @NotNull RecordWriter contents)
+			throws PersistenceException {
+		final Path target = directory.resolve(file);
+		final Path temp = directory.resolve(file + TEMP_SUFFIX);
+		try (final TaskRecordSink sink = new XmlWriter().openRecords(temp)) {
+			contents.writeTo(sink);
+		}
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to replace " + target, except);
+		}
+	}
+
+	@FunctionalInterface
+	private interface RecordWriter {
+		void writeTo(@NotNull TaskRecordSink sink) throws PersistenceException;
+	}
+
+	private void writeShard(final @NotNull ShardContents shard, final @NotNull String file)
+			throws PersistenceException {
+		replace(file, sink -> {
+			if (Objects.nonNull(shard.iteration)) {
+				sink.iteration(shard.iteration);
+			}
+			final UUID iteration = Objects.isNull(shard.iteration) ? null : shard.iteration.getId();
+			for (final ShardContents.Entry entry : shard.tasks) {
+				sink.task(entry.task(), iteration, entry.date(), entry.end());
+			}
+		});
+	}
+
+	/**
+	 * The manifest is XML, in our namespace, with an empty {@code shard} tag for each shard.
+	 */
+	private void writeManifest(final @NotNull Collection<Shard> entries) throws PersistenceException {
+		final Path target = manifest(directory);
+		final Path temp = directory.resolve(MANIFEST + TEMP_SUFFIX);
+		try (final XmlEmitter writer = new XmlEmitter(Files.newOutputStream(temp), new byte[4096])) {
+			writer.raw("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			writer.startTag("manifest");
+			writer.raw(" xmlns=\"" + XmlWriter.NAMESPACE + "\" xmlns:tm=\"" + XmlWriter.NAMESPACE + '"');
+			writer.attribute("monger-version", "0");
+			writer.endStartTag();
+			for (final Shard shard : entries) {
+				writer.startTag("shard");
+				writer.attribute("file", shard.file());
+				if (Objects.nonNull(shard.iteration())) {
+					writer.attribute("iteration", shard.iteration().toString());
+				}
+				if (Objects.nonNull(shard.name())) {
+					writer.attribute("name", shard.name());
+				}
+				if (Objects.nonNull(shard.start())) {
+					writer.attribute("start", shard.start());
+				}
+				if (Objects.nonNull(shard.end())) {
+					writer.attribute("end", shard.end());
+				}
+				writer.attribute("checksum", Long.toHexString(shard.checksum()));
+				writer.endStartTag();
+				writer.endTag("shard");
+			}
+			writer.endTag("manifest");
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to write manifest", except);
+		}
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to replace " + target, except);
+		}
+	}
+
+	private static @NotNull Map<String, Shard> readManifest(final @NotNull Path file) throws PersistenceException {
+		final Map<String, Shard> retval = new LinkedHashMap<>();
+		try (final InputStream in = Files.newInputStream(file)) {
+			final XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(in);
+			try {
+				while (reader.hasNext()) {
+					if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+								XmlWriter.NAMESPACE.equals(reader.getNamespaceURI()) &&
+								"shard".equals(reader.getLocalName())) {
+						final String name = reader.getAttributeValue(null, "file");
+						final String checksum = reader.getAttributeValue(null, "checksum");
+						if (Objects.isNull(name) || Objects.isNull(checksum) || name.contains("/") ||
+									name.contains(file.getFileSystem().getSeparator())) {
+							throw new PersistenceException("Invalid shard in manifest");
+						}
+						final String iteration = reader.getAttributeValue(null, "iteration");
+						final String start = reader.getAttributeValue(null, "start");
+						final String end = reader.getAttributeValue(null, "end");
+						final UUID id = Objects.isNull(iteration) ? null : UUID.fromString(iteration);
+						retval.put(key(id), new Shard(name, id,
+							reader.getAttributeValue(null, "name"),
+							Objects.isNull(start) ? null : LocalDate.parse(start),
+							Objects.isNull(end) ? null : LocalDate.parse(end),
+							Long.parseUnsignedLong(checksum, 16)));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (final IOException | XMLStreamException except) {
+			throw new PersistenceException("Failed to read manifest", except);
+		} catch (final IllegalArgumentException | DateTimeParseException except) {
+			throw new PersistenceException("Malformed manifest", except);
+		}
+		return retval;
+	}
+
+	private static <T> T await(final @NotNull Future<T> future) throws PersistenceException {
+		try {
+			return future.get();
+		} catch (final ExecutionException except) {
+			if (except.getCause() instanceof final PersistenceException cause) {
+				throw cause;
+			}
+			throw new PersistenceException("Failed to access shard", except.getCause());
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new PersistenceException("Interrupted accessing shards", except);
+		}
+	}
+
+	/**
+	 * The records in one shard, and their checksum: the sum of a mixed fingerprint for the iteration and for each
+	 * task and its dates, so that it does not depend on their order.
+	 */
+	private static final class ShardContents implements TaskRecordSink {
+		private record Entry(@NotNull Task task, @Nullable LocalDate date, @Nullable LocalDate end) {}
+
+		/**
+		 * What to call the shard in messages, or, when writing, its key.
+		 */
+		private final @NotNull String name;
+		private @Nullable Iteration iteration = null;
+		private final @NotNull List<Entry> tasks = new ArrayList<>();
+		private long checksum = 0L;
+
+		ShardContents(final @NotNull String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void iteration(final @NotNull Iteration iteration) throws PersistenceException {
+			if (Objects.nonNull(this.iteration)) {
+				throw new PersistenceException("Shard %s holds more than one iteration".formatted(name));
+			}
+			this.iteration = iteration;
+			checksum += Fingerprint.mix(iteration.getFingerprint());
+		}
+
+		/**
+		 * The iteration is ignored, since it is the shard's.
+		 */
+		@Override
+		public void task(final @NotNull Task task, final @Nullable UUID iteration, final @Nullable LocalDate date,
+						 final @Nullable LocalDate end) {
+			tasks.add(new Entry(task, date, end));
+			long fingerprint = Fingerprint.combine(task.getFingerprint(), Fingerprint.of(date));
+			// Only multi-day tasks' end dates count, so shards written before there were any still check out.
+			if (Objects.nonNull(end) && !end.equals(date)) {
+				fingerprint = Fingerprint.combine(fingerprint, Fingerprint.of(end));
+			}
+			checksum += Fingerprint.mix(fingerprint);
+		}
+
+		@Override
+		public void close() {
+			// Nothing to do.
+		}
+
+		long checksum() {
+			return checksum;
+		}
+
+		@NotNull Shard toShard(final @NotNull String file) {
+			if (Objects.isNull(iteration)) {
+				return new Shard(file, null, null, null, null, checksum);
+			}
+			return new Shard(file, iteration.getId(), iteration.getName(), iteration.getStartDate(),
+				iteration.getEndDate(), checksum);
+		}
+	}
+}
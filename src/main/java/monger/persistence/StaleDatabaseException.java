@@ -0,0 +1,15 @@
+package monger.persistence;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Thrown when writing a database back to the file it was read from, if someone else has written that file since;
+ * the caller should read it again and redo its changes, or merge them, rather than overwrite the newer data.
+ */
+public final class StaleDatabaseException extends PersistenceException {
+	private static final long serialVersionUID = 1L;
+
+	public StaleDatabaseException(final @NotNull String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,172 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import monger.model.DatabaseDiff;
+import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps a live database up to date with its file as other processes change it. The file's directory is watched
+ * with a {@link WatchService}; once changes to the file have settled, it is read again and only what changed since
+ * it was last read is {@link DatabaseDiff#update(TaskDatabase, TaskDatabase, TaskDatabase) applied} to the live
+ * database, in one transaction, so indexes and caches built on it stay warm, its listeners see each reload as a
+ * single batch of changes, and changes made to it but not yet saved are kept. Unless any of those conflicted with
+ * the file's, the live database is then taken to be based on what was read, so it can be written back without
+ * being rejected as stale. A version of the file the live database itself wrote is not applied again.
+ *
+ * The file is read on the watching thread, but the differences are applied through the given executor, which
+ * should run them on whatever thread otherwise changes the database. A file that cannot be read (for example,
+ * because it is being written) is skipped until it changes again.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class TaskDatabaseWatcher implements AutoCloseable {
+	private static final @NotNull Logger LOGGER = Logger.getLogger(TaskDatabaseWatcher.class.getName());
+	/**
+	 * How long the file must go without changing before it is read.
+	 */
+	private static final long SETTLE_MILLIS = 50L;
+
+	private final @NotNull TaskDatabase tasks;
+	private final @NotNull Path file;
+	private final @NotNull Executor applier;
+	private final @NotNull Consumer<@NotNull List<DatabaseDiff.Conflict>> conflicts;
+	private final @NotNull WatchService watcher;
+	private final @NotNull Thread thread;
+	/**
+	 * The version of the file last read, which both the file's later changes and the live database's are
+	 * changes to. Only used on the applier's thread.
+	 */
+	private @NotNull TaskDatabase base;
+
+	/**
+	 * Start watching a database's file. The file is read now, as the version the live database is based on, so it
+	 * should not have been changed since the live database was read from it.
+	 *
+	 * @param tasks the live database
+	 * @param file its file
+	 * @param applier what to run each update of the database on
+	 * @param conflicts what to tell about changes in the file that conflicted with changes made to the live
+	 *                  database, or that it rejected
+	 */
+	public TaskDatabaseWatcher(final @NotNull TaskDatabase tasks, final @NotNull Path file,
+							   final @NotNull Executor applier,
+							   final @NotNull Consumer<@NotNull List<DatabaseDiff.Conflict>> conflicts)
+			throws PersistenceException {
+		this.tasks = tasks;
+		this.file = file.toAbsolutePath();
+		this.applier = applier;
+		this.conflicts = conflicts;
+		final Path directory = this.file.getParent();
+		try {
+			watcher = directory.getFileSystem().newWatchService();
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to watch " + file, except);
+		}
+		base = PersistenceHelper.readFromFile(this.file);
+		thread = Thread.ofPlatform().daemon().name("database-watcher").start(this::watch);
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				if (isAboutFile(watcher.take())) {
+					// Wait for the writer to finish.
+					WatchKey more = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+					while (Objects.nonNull(more)) {
+						isAboutFile(more);
+						more = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+					}
+					reloadInBackground();
+				}
+			}
+		} catch (final ClosedWatchServiceException | InterruptedException except) {
+			// Closed.
+		}
+	}
+
+	/**
+	 * @return whether any of the key's events may be about the file; the key is reset either way
+	 */
+	private boolean isAboutFile(final @NotNull WatchKey key) {
+		boolean retval = false;
+		for (final WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+				retval = true;
+			}
+		}
+		key.reset();
+		return retval;
+	}
+
+	private void reloadInBackground() {
+		final TaskDatabase fresh;
+		try {
+			fresh = PersistenceHelper.readFromFile(file);
+		} catch (final PersistenceException except) {
+			LOGGER.log(Level.FINE, "Failed to read " + file + "; waiting for it to change again", except);
+			return;
+		}
+		applier.execute(() -> update(fresh));
+	}
+
+	private void update(final @NotNull TaskDatabase fresh) {
+		final List<DatabaseDiff.Conflict> found = apply(fresh);
+		if (!found.isEmpty()) {
+			conflicts.accept(found);
+		}
+	}
+
+	private @NotNull List<DatabaseDiff.Conflict> apply(final @NotNull TaskDatabase fresh) {
+		final TaskDatabase previous = base;
+		base = fresh;
+		if (PersistenceHelper.isSameVersion(fresh, tasks)) {
+			return List.of();
+		}
+		final List<DatabaseDiff.Conflict> retval = DatabaseDiff.update(tasks, previous, fresh);
+		if (retval.isEmpty()) {
+			PersistenceHelper.adopt(fresh, tasks);
+		}
+		return retval;
+	}
+
+	/**
+	 * Read the file and bring the database up to date with it now, on this thread, which must be the one that
+	 * otherwise changes it.
+	 *
+	 * @return the conflicts between the file's changes and the database's
+	 */
+	public @NotNull List<DatabaseDiff.Conflict> reload() throws PersistenceException {
+		return apply(PersistenceHelper.readFromFile(file));
+	}
+
+	/**
+	 * Stop watching, and wait for any read in progress to finish.
+	 */
+	@Override
+	public void close() throws PersistenceException {
+		try {
+			watcher.close();
+			thread.join();
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to stop watching " + file, except);
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new PersistenceException("Interrupted while stopping watching " + file, except);
+		}
+	}
+}
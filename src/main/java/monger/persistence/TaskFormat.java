@@ -0,0 +1,31 @@
+package monger.persistence;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A storage format for task databases. Implementations are discovered by {@link FormatRegistry} through
+ * {@link java.util.ServiceLoader}, so a backend can be added by listing it in
+ * {@code META-INF/services/monger.persistence.TaskFormat}; they must have a public no-argument constructor.
+ */
+public interface TaskFormat {
+	/**
+	 * @return a short name for the format, such as "xml"
+	 */
+	@NotNull String getName();
+
+	/**
+	 * @return the filename suffixes (including the leading dot) this format is used for
+	 */
+	@NotNull List<@NotNull String> getSuffixes();
+
+	/**
+	 * @param header the first bytes of a file (decompressed, if it was gzipped), possibly fewer than asked for
+	 * @return whether the file looks like it is in this format
+	 */
+	boolean sniff(byte @NotNull [] header);
+
+	@NotNull ITasksReader createReader();
+
+	@NotNull ITasksWriter createWriter();
+}
@@ -0,0 +1,57 @@
+package monger.persistence;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A consumer of the records making up a task database, one at a time, so that data can be streamed from a reader
+ * to a writer without ever holding the whole {@link TaskDatabase} in memory. Any iteration a task refers to must be
+ * passed in before that task.
+ */
+public interface TaskRecordSink extends AutoCloseable {
+	void iteration(@NotNull Iteration iteration) throws PersistenceException;
+
+	/**
+	 * @param task a task
+	 * @param iteration the ID of the iteration it is assigned to, if any
+	 * @param date the date within that iteration it is scheduled for, or the first if several, if any
+	 * @param end the last date it is scheduled for, if it is scheduled; this may be null or the same as the
+	 *            first for a one-day task
+	 */
+	void task(@NotNull Task task, @Nullable UUID iteration, @Nullable LocalDate date, @Nullable LocalDate end)
+		throws PersistenceException;
+
+	/**
+	 * Pass in a task scheduled for at most one day.
+	 */
+	default void task(final @NotNull Task task, final @Nullable UUID iteration, final @Nullable LocalDate date)
+			throws PersistenceException {
+		task(task, iteration, date, date);
+	}
+
+	/**
+	 * Finish writing; no records may be passed in after this.
+	 */
+	@Override
+	void close() throws PersistenceException;
+
+	/**
+	 * Pass all the records in a database to a sink, without closing it.
+	 */
+	static void emit(final @NotNull TaskDatabase tasks, final @NotNull TaskRecordSink sink)
+			throws PersistenceException {
+		for (final Iteration iteration : tasks.getIterations()) {
+			sink.iteration(iteration);
+		}
+		for (final Task task : tasks.getTasks()) {
+			final Iteration iteration = tasks.getIteration(task.getIdentifier());
+			sink.task(task, iteration == null ? null : iteration.getId(), tasks.getAssignedDate(task.getIdentifier()),
+				tasks.getAssignedEndDate(task.getIdentifier()));
+		}
+	}
+}
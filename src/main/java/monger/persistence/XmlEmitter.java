@@ -0,0 +1,203 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A minimal XML writer for our fixed schema, which encodes UTF-8 straight into a byte buffer rather than going
+ * through {@link javax.xml.stream.XMLStreamWriter} and a {@link java.io.Writer}. Every element is in the default
+ * namespace and every attribute is written with the {@code tm} prefix, which must both be bound to
+ * {@link XmlWriter#NAMESPACE} on the root element; the caller is responsible for well-formedness.
+ *
+ * @author Jonathan Lovelace
+ */
+final class XmlEmitter implements AutoCloseable {
+	private final @NotNull OutputStream out;
+	private final byte @NotNull [] buffer;
+	private int position = 0;
+
+	/**
+	 * @param out where to write
+	 * @param buffer a buffer to encode into, which may be reused once this emitter is closed
+	 */
+	XmlEmitter(final @NotNull OutputStream out, final byte @NotNull [] buffer) {
+		this.out = out;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Write ASCII markup, which must not need escaping.
+	 */
+	void raw(final @NotNull String markup) throws IOException {
+		final int length = markup.length();
+		for (int i = 0; i < length; i++) {
+			put(markup.charAt(i));
+		}
+	}
+
+	/**
+	 * Write the start of a start tag; it must be finished with {@link #endStartTag}.
+	 */
+	void startTag(final @NotNull String tag) throws IOException {
+		put('<');
+		raw(tag);
+	}
+
+	/**
+	 * Write a {@code tm}-prefixed attribute inside a start tag.
+	 */
+	void attribute(final @NotNull String name, final @NotNull String value) throws IOException {
+		raw(" tm:");
+		raw(name);
+		raw("=\"");
+		escaped(value, true);
+		put('"');
+	}
+
+	/**
+	 * Write a {@code tm}-prefixed attribute whose value is a date inside a start tag.
+	 */
+	void attribute(final @NotNull String name, final @NotNull LocalDate value) throws IOException {
+		raw(" tm:");
+		raw(name);
+		raw("=\"");
+		date(value);
+		put('"');
+	}
+
+	void endStartTag() throws IOException {
+		put('>');
+	}
+
+	void endTag(final @NotNull String tag) throws IOException {
+		put('<');
+		put('/');
+		raw(tag);
+		put('>');
+	}
+
+	/**
+	 * Write character data, escaped.
+	 */
+	void text(final @NotNull String text) throws IOException {
+		escaped(text, false);
+	}
+
+	/**
+	 * Write a date in ISO format without building a string, in the common case of a four-digit year.
+	 */
+	void date(final @NotNull LocalDate date) throws IOException {
+		final int year = date.getYear();
+		if (year < 0 || year > 9999) {
+			raw(date.toString());
+			return;
+		}
+		ensure(10);
+		digits(year / 100);
+		digits(year % 100);
+		buffer[position] = '-';
+		position++;
+		digits(date.getMonthValue());
+		buffer[position] = '-';
+		position++;
+		digits(date.getDayOfMonth());
+	}
+
+	private void digits(final int twoDigits) {
+		buffer[position] = (byte) ('0' + twoDigits / 10);
+		buffer[position + 1] = (byte) ('0' + twoDigits % 10);
+		position += 2;
+	}
+
+	/**
+	 * Write text, escaping markup characters and (so that they survive the reader's normalization) carriage
+	 * returns, plus tabs and newlines in attributes, and encoding as UTF-8, in a single pass.
+	 */
+	private void escaped(final @NotNull String text, final boolean inAttribute) throws IOException {
+		final int length = text.length();
+		for (int i = 0; i < length; i++) {
+			final char ch = text.charAt(i);
+			switch (ch) {
+				case '<' -> raw("&lt;");
+				case '>' -> raw("&gt;");
+				case '&' -> raw("&amp;");
+				case '"' -> {
+					if (inAttribute) {
+						raw("&quot;");
+					} else {
+						put(ch);
+					}
+				}
+				case '\r' -> raw("&#13;");
+				case '\n', '\t' -> {
+					if (inAttribute) {
+						raw(ch == '\n' ? "&#10;" : "&#9;");
+					} else {
+						put(ch);
+					}
+				}
+				default -> {
+					if (ch < 0x80) {
+						put(ch);
+					} else if (ch < 0x800) {
+						ensure(2);
+						buffer[position] = (byte) (0xc0 | (ch >> 6));
+						buffer[position + 1] = (byte) (0x80 | (ch & 0x3f));
+						position += 2;
+					} else if (Character.isHighSurrogate(ch) && i + 1 < length &&
+									   Character.isLowSurrogate(text.charAt(i + 1))) {
+						final int codePoint = Character.toCodePoint(ch, text.charAt(i + 1));
+						i++;
+						ensure(4);
+						buffer[position] = (byte) (0xf0 | (codePoint >> 18));
+						buffer[position + 1] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+						buffer[position + 2] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+						buffer[position + 3] = (byte) (0x80 | (codePoint & 0x3f));
+						position += 4;
+					} else if (Character.isSurrogate(ch)) {
+						put('?'); // Unpaired surrogate; this is what the standard UTF-8 encoder does.
+					} else {
+						ensure(3);
+						buffer[position] = (byte) (0xe0 | (ch >> 12));
+						buffer[position + 1] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+						buffer[position + 2] = (byte) (0x80 | (ch & 0x3f));
+						position += 3;
+					}
+				}
+			}
+		}
+	}
+
+	private void put(final char ascii) throws IOException {
+		if (position == buffer.length) {
+			flushBuffer();
+		}
+		buffer[position] = (byte) ascii;
+		position++;
+	}
+
+	private void ensure(final int space) throws IOException {
+		if (buffer.length - position < space) {
+			flushBuffer();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, position);
+		position = 0;
+	}
+
+	/**
+	 * Write out everything buffered, and close the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package monger.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Our XML format, possibly gzipped.
+ */
+public final class XmlFormat implements TaskFormat {
+	@Override
+	public @NotNull String getName() {
+		return "xml";
+	}
+
+	@Override
+	public @NotNull List<@NotNull String> getSuffixes() {
+		return List.of(".xml", ".xml.gz", ".xml.bgz");
+	}
+
+	/**
+	 * We look for our namespace, which is declared on the root element and so should be near the start.
+	 */
+	@Override
+	public boolean sniff(final byte @NotNull [] header) {
+		final String text = new String(header, StandardCharsets.UTF_8).stripLeading();
+		return text.startsWith("<") && text.contains(XmlWriter.NAMESPACE);
+	}
+
+	@Override
+	public @NotNull ITasksReader createReader() {
+		return new XmlReader();
+	}
+
+	@Override
+	public @NotNull ITasksWriter createWriter() {
+		return new XmlWriter();
+	}
+}
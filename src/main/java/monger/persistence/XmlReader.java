@@ -2,9 +2,9 @@ package monger.persistence;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
@@ -37,20 +37,38 @@ import org.jetbrains.annotations.Nullable;
 public class XmlReader implements ITasksReader {
 	@Override
 	public TaskDatabase readTasks(final Path file) throws PersistenceException {
-		try (final BufferedReader istream = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		final DatabaseBuilder builder = new DatabaseBuilder();
+		readRecords(file, builder);
+		return builder.getDatabase();
+	}
+
+	@Override
+	public void readRecords(final Path file, final TaskRecordSink sink) throws PersistenceException {
+		try (final BufferedReader istream = new BufferedReader(
+				new InputStreamReader(detectCompression(file).openInput(file), StandardCharsets.UTF_8));
 			 	final TypesafeXMLEventReader reader = new TypesafeXMLEventReader(istream)) {
-			return readTasksImpl(new IteratorWrapper<>(reader));
+			readRecordsImpl(new IteratorWrapper<>(reader), sink);
 		} catch (IOException | XMLStreamException except) {
 			throw new PersistenceException("Failed to deserialize from XML", except);
 		}
 	}
 
+	private static Compression detectCompression(final Path file) throws PersistenceException {
+		try {
+			return Compression.detect(file);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to read " + file, except);
+		}
+	}
+
 	@Override
 	public TaskDatabase readTasksFromString(final String xml)
 			throws PersistenceException {
 		try (final BufferedReader istream = new BufferedReader(new StringReader(xml));
 				final TypesafeXMLEventReader reader = new TypesafeXMLEventReader(istream)) {
-			return readTasksImpl(new IteratorWrapper<>(reader));
+			final DatabaseBuilder builder = new DatabaseBuilder();
+			readRecordsImpl(new IteratorWrapper<>(reader), builder);
+			return builder.getDatabase();
 		} catch (IOException | XMLStreamException except) {
 			throw new PersistenceException("Failed to deserialize from XML", except);
 		} catch (RuntimeException except) {
@@ -60,7 +78,7 @@ public class XmlReader implements ITasksReader {
 		}
 	}
 
-	private TaskDatabase readTasksImpl(final Iterable<XMLEvent> input)
+	private void readRecordsImpl(final Iterable<XMLEvent> input, final TaskRecordSink sink)
 			throws PersistenceException {
 		StartElement root = null;
 		for (XMLEvent event : input) {
@@ -74,32 +92,34 @@ public class XmlReader implements ITasksReader {
 		if (Objects.isNull(root)) {
 			throw new PersistenceException("Root tag not found");
 		}
-		final TaskDatabase retval = new TaskDatabase();
 		for (XMLEvent event : input) {
 			if (event instanceof StartElement element &&
 					isInNamespace(element)
 					&& "iterations".equals(element.getName().getLocalPart())) {
-				readIterations(element, input).forEach(retval::addIteration);
+				for (final Iteration iteration : readIterations(element, input)) {
+					sink.iteration(iteration);
+				}
 			} else if (event instanceof StartElement element && isInNamespace(element)
 						   && "tasks".equals(element.getName().getLocalPart())) {
-				readIndivTasks(element, input, retval);
+				readIndivTasks(element, input, sink);
 			} else if (event instanceof StartElement element && isInNamespace(element)) {
 				throw new PersistenceException(
 					"Unexpected tag '%s'; expected 'iterations' or 'tasks'"
 						.formatted(element.getName().getLocalPart()));
 			} else if (event instanceof EndElement element &&
 						   Objects.equals(element.getName(), root.getName())) {
-				return retval;
+				return;
 			}
 		}
 		throw new PersistenceException("Root tag not properly closed");
 	}
 
-	private void readIndivTasks(StartElement element, Iterable<XMLEvent> input, TaskDatabase database) throws PersistenceException {
+	private void readIndivTasks(StartElement element, Iterable<XMLEvent> input, TaskRecordSink sink)
+			throws PersistenceException {
 		for (XMLEvent event : input) {
 			if (event instanceof StartElement child && isInNamespace(child)) {
 				expectTag(child, "task");
-				readSingleTask(child, input, database);
+				readSingleTask(child, input, sink);
 			} else if (event instanceof EndElement child && Objects.equals(element.getName(), child.getName())) {
 				return;
 			}
@@ -107,7 +127,7 @@ public class XmlReader implements ITasksReader {
 		throw new PersistenceException("<tasks> not properly closed");
 	}
 
-	private void readSingleTask(StartElement element, Iterable<XMLEvent> input, TaskDatabase database)
+	private void readSingleTask(StartElement element, Iterable<XMLEvent> input, TaskRecordSink sink)
 		throws PersistenceException {
 		boolean properlyClosed = false;
 		TaskIdentifier id = null;
@@ -118,6 +138,7 @@ public class XmlReader implements ITasksReader {
 		String status = null;
 		String iterationStr = null;
 		String assignedDateStr = null;
+		String assignedEndDateStr = null;
 		for (XMLEvent event : input) {
 			if (event instanceof StartElement child && isInNamespace(child)) {
 				switch (child.getName().getLocalPart()) {
@@ -187,6 +208,14 @@ public class XmlReader implements ITasksReader {
 							assignedDateStr = readTagContents(child, input);
 						}
 					}
+					case "assigned-end-date" -> {
+						if (Objects.nonNull(assignedEndDateStr)) {
+							throw new PersistenceException(
+								"Multiple <assigned-end-date> in a single <task>");
+						} else {
+							assignedEndDateStr = readTagContents(child, input);
+						}
+					}
 				}
 			} else if (event instanceof EndElement child && Objects.equals(
 					element.getName(), child.getName())) {
@@ -208,6 +237,7 @@ public class XmlReader implements ITasksReader {
 		Optional.ofNullable(upstream).ifPresent(task::setUpstreamURL);
 		UUID iteration;
 		LocalDate assignedDate;
+		LocalDate assignedEndDate;
 		try {
 			Optional.ofNullable(estimate).map(TimeEstimate::valueOf)
 				.ifPresent(task::setEstimate);
@@ -217,16 +247,12 @@ public class XmlReader implements ITasksReader {
 							.map(UUID::fromString).orElse(null);
 			assignedDate = Optional.ofNullable(assignedDateStr).map(LocalDate::parse)
 							   .orElse(null);
+			assignedEndDate = Optional.ofNullable(assignedEndDateStr).map(LocalDate::parse)
+								  .orElse(null);
 		} catch (IllegalArgumentException except) {
 			throw new PersistenceException("Task field failed to parse", except);
 		}
-		database.addTask(task);
-		if (Objects.nonNull(iteration)) {
-			database.assignToIteration(id, iteration);
-		}
-		if (Objects.nonNull(assignedDate)) {
-			database.assignToDate(id, assignedDate);
-		}
+		sink.task(task, iteration, assignedDate, assignedEndDate);
 	}
 
 	private String readTagContents(StartElement element, Iterable<XMLEvent> input)
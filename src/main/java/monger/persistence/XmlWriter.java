@@ -1,21 +1,14 @@
 package monger.persistence;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import javax.xml.namespace.NamespaceContext;
-import javax.xml.stream.XMLOutputFactory;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
+import java.util.UUID;
 import monger.model.Iteration;
 import monger.model.Task;
 import monger.model.TaskDatabase;
@@ -23,306 +16,197 @@ import monger.model.TaskIdentifier;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * XML serialization.
+ * XML serialization. Since the schema is fixed, rather than use {@link javax.xml.stream.XMLStreamWriter} we emit
+ * it directly with {@link XmlEmitter}.
  *
  * @author Jonathan Lovelace
  */
 public class XmlWriter implements ITasksWriter {
 	public static final String NAMESPACE = "https://github.com/kingjon3377/TaskMonger";
 
-	private record CloseableXMLStreamWriter(XMLStreamWriter wrapped)
-		implements XMLStreamWriter, AutoCloseable {
+	private static final int BUFFER_SIZE = 64 * 1024;
 
-		@Override
-			public void writeStartElement(final String localName) throws XMLStreamException {
-				wrapped.writeStartElement(localName);
-			}
-
-			@Override
-			public void writeStartElement(final String namespaceURI, final String localName)
-				throws XMLStreamException {
-				wrapped.writeStartElement(namespaceURI, localName);
-			}
-
-			@Override
-			public void writeStartElement(final String prefix, final String localName,
-										  final String namespaceURI)
-				throws XMLStreamException {
-				wrapped.writeStartElement(prefix, localName, namespaceURI);
-			}
-
-			@Override
-			public void writeEmptyElement(final String namespaceURI, final String localName)
-				throws XMLStreamException {
-				wrapped.writeEmptyElement(namespaceURI, localName);
-			}
-
-			@Override
-			public void writeEmptyElement(final String prefix, final String localName,
-										  final String namespaceURI)
-				throws XMLStreamException {
-				wrapped.writeEmptyElement(prefix, localName, namespaceURI);
-			}
-
-			@Override
-			public void writeEmptyElement(final String localName) throws XMLStreamException {
-				wrapped.writeEmptyElement(localName);
-			}
-
-			@Override
-			public void writeEndElement() throws XMLStreamException {
-				wrapped.writeEndElement();
-			}
-
-			@Override
-			public void writeEndDocument() throws XMLStreamException {
-				wrapped.writeEndDocument();
-			}
-
-			@Override
-			public void close() throws XMLStreamException {
-				wrapped.flush();
-				wrapped.close();
-			}
-
-			@Override
-			public void flush() throws XMLStreamException {
-				wrapped.flush();
-			}
-
-			@Override
-			public void writeAttribute(final String localName, final String value)
-				throws XMLStreamException {
-				wrapped.writeAttribute(localName, value);
-			}
-
-			@Override
-			public void writeAttribute(final String prefix, final String namespaceURI,
-									   final String localName,
-									   final String value) throws XMLStreamException {
-				wrapped.writeAttribute(prefix, namespaceURI, localName, value);
-			}
-
-			@Override
-			public void writeAttribute(final String namespaceURI, final String localName,
-									   final String value) throws XMLStreamException {
-				wrapped.writeAttribute(namespaceURI, localName, value);
-			}
-
-			@Override
-			public void writeNamespace(final String prefix, final String namespaceURI)
-				throws XMLStreamException {
-				wrapped.writeNamespace(prefix, namespaceURI);
-			}
-
-			@Override
-			public void writeDefaultNamespace(final String namespaceURI)
-				throws XMLStreamException {
-				wrapped.writeDefaultNamespace(namespaceURI);
-			}
-
-			@Override
-			public void writeComment(final String data) throws XMLStreamException {
-				wrapped.writeComment(data);
-			}
-
-			@Override
-			public void writeProcessingInstruction(final String target)
-				throws XMLStreamException {
-				wrapped.writeProcessingInstruction(target);
-			}
-
-			@Override
-			public void writeProcessingInstruction(final String target, final String data)
-				throws XMLStreamException {
-				wrapped.writeProcessingInstruction(target, data);
-			}
-
-			@Override
-			public void writeCData(final String data) throws XMLStreamException {
-				wrapped.writeCData(data);
-			}
-
-			@Override
-			public void writeDTD(final String dtd) throws XMLStreamException {
-				wrapped.writeDTD(dtd);
-			}
-
-			@Override
-			public void writeEntityRef(final String name) throws XMLStreamException {
-				wrapped.writeEntityRef(name);
-			}
-
-			@Override
-			public void writeStartDocument() throws XMLStreamException {
-				wrapped.writeStartDocument();
-			}
+	/**
+	 * Encoding buffers, reused across saves. A buffer is taken out while in use, so that a write started on the
+	 * same thread during another (say, by a description loader) gets a buffer of its own.
+	 */
+	private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
 
-			@Override
-			public void writeStartDocument(final String version) throws XMLStreamException {
-				wrapped.writeStartDocument(version);
-			}
-
-			@Override
-			public void writeStartDocument(final String encoding, final String version)
-				throws XMLStreamException {
-				wrapped.writeStartDocument(encoding, version);
-			}
-
-			@Override
-			public void writeCharacters(final String text) throws XMLStreamException {
-				wrapped.writeCharacters(text);
-			}
-
-			@Override
-			public void writeCharacters(final char[] text, final int start, final int len)
-				throws XMLStreamException {
-				wrapped.writeCharacters(text, start, len);
-			}
-
-			@Override
-			public String getPrefix(final String uri) throws XMLStreamException {
-				return wrapped.getPrefix(uri);
-			}
-
-			@Override
-			public void setPrefix(final String prefix, final String uri)
-				throws XMLStreamException {
-				wrapped.setPrefix(prefix, uri);
-			}
-
-			@Override
-			public void setDefaultNamespace(final String uri) throws XMLStreamException {
-				wrapped.setDefaultNamespace(uri);
-			}
-
-			@Override
-			public void setNamespaceContext(final NamespaceContext context)
-				throws XMLStreamException {
-				wrapped.setNamespaceContext(context);
-			}
-
-			@Override
-			public NamespaceContext getNamespaceContext() {
-				return wrapped.getNamespaceContext();
-			}
-
-			@Override
-			public Object getProperty(final String name) throws IllegalArgumentException {
-				return wrapped.getProperty(name);
-			}
+	private static byte[] takeBuffer() {
+		final byte[] retval = BUFFERS.get();
+		if (Objects.isNull(retval)) {
+			return new byte[BUFFER_SIZE];
 		}
+		BUFFERS.remove();
+		return retval;
+	}
 
 	@Override
 	public void writeTasks(final Path file, final TaskDatabase tasks) throws PersistenceException {
-		final XMLOutputFactory xof = XMLOutputFactory.newInstance();
-		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
-			 	CloseableXMLStreamWriter xsw = new CloseableXMLStreamWriter(xof.createXMLStreamWriter(writer))) {
-			xsw.setDefaultNamespace(NAMESPACE);
-			writeTasksImpl(xsw, tasks);
-		} catch (final IOException | XMLStreamException except) {
-			throw new PersistenceException("Failed to serialize to XML", except);
+		final byte[] encoding = takeBuffer();
+		try (RecordWriter writer = new RecordWriter(new XmlEmitter(openOutput(file), encoding))) {
+			TaskRecordSink.emit(tasks, writer);
+		} finally {
+			BUFFERS.set(encoding);
 		}
 	}
+
 	@Override
 	public String writeTasksToString(TaskDatabase tasks) throws PersistenceException {
-		final XMLOutputFactory xof = XMLOutputFactory.newInstance();
-		try (StringWriter buffer = new StringWriter();
-			 	BufferedWriter writer = new BufferedWriter(buffer);
-			 	CloseableXMLStreamWriter xsw = new CloseableXMLStreamWriter(
-					 xof.createXMLStreamWriter(writer))) {
-			xsw.setDefaultNamespace(NAMESPACE);
-			writeTasksImpl(xsw, tasks);
-			xsw.flush();
-			return buffer.toString();
-		} catch (IOException | XMLStreamException except) {
-			throw new PersistenceException("Failed to serialize to XML", except);
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final byte[] encoding = takeBuffer();
+		try (RecordWriter writer = new RecordWriter(new XmlEmitter(buffer, encoding))) {
+			TaskRecordSink.emit(tasks, writer);
+		} finally {
+			BUFFERS.set(encoding);
 		}
+		return buffer.toString(StandardCharsets.UTF_8);
 	}
 
-	private static void writeTag(final XMLStreamWriter writer, final String tag)
-			throws XMLStreamException {
-		writer.writeStartElement(NAMESPACE, tag);
+	@Override
+	public TaskRecordSink openRecords(final Path file) throws PersistenceException {
+		return new RecordWriter(new XmlEmitter(openOutput(file), new byte[BUFFER_SIZE]));
 	}
 
-	private static void writeAttribute(final XMLStreamWriter writer, final String name,
+	private static OutputStream openOutput(final Path file) throws PersistenceException {
+		final Compression compression =
+			Optional.ofNullable(Compression.forFile(file)).orElse(Compression.None);
+		try {
+			return compression.openOutput(file);
+		} catch (final IOException except) {
+			throw new PersistenceException("Failed to open " + file, except);
+		}
+	}
+
+	private static void writeAttribute(final XmlEmitter writer, final String name,
 									   final @Nullable String value)
-			throws XMLStreamException {
+			throws IOException {
 		if (Objects.nonNull(value)) {
-			writer.writeAttribute(NAMESPACE, name, value);
+			writer.attribute(name, value);
 		}
 	}
 
-	private static void writeDateAttribute(final XMLStreamWriter writer,
+	private static void writeDateAttribute(final XmlEmitter writer,
 										   final String name,
 										   final @Nullable LocalDate value)
-			throws XMLStreamException {
+			throws IOException {
 		if (Objects.nonNull(value)) {
-			writer.writeAttribute(NAMESPACE, name,
-				value.format(DateTimeFormatter.ISO_DATE));
+			writer.attribute(name, value);
 		}
 	}
-	private static void writeTagWithContents(final XMLStreamWriter writer,
+
+	private static void writeTagWithContents(final XmlEmitter writer,
 											 final String tag, final @Nullable String data)
-			throws XMLStreamException{
+			throws IOException {
 		if (Objects.nonNull(data)) {
-			writeTag(writer, tag);
-			writer.writeCharacters(data);
-			writer.writeEndElement();
+			writer.startTag(tag);
+			writer.endStartTag();
+			writer.text(data);
+			writer.endTag(tag);
 		}
 	}
 
-	private void writeTasksImpl(final XMLStreamWriter writer, final TaskDatabase taskDatabase)
-			throws XMLStreamException {
-		writer.writeStartDocument(StandardCharsets.UTF_8.toString(), "1.0");
-		writer.setPrefix("tm", NAMESPACE);
-		writer.setDefaultNamespace(NAMESPACE);
-		writeTag(writer, "monger");
-		writer.writeDefaultNamespace(NAMESPACE);
-		writer.writeNamespace("tm", NAMESPACE);
-		writeAttribute(writer, "monger-version", "0");
-		final Iterable<Iteration> iterations = taskDatabase.getIterations();
-		// taskIterations value type is String to simplify null-checks later
-		final Map<TaskIdentifier, String> taskIterations = new HashMap<>();
-		if (iterations.iterator().hasNext()) {
-			writeTag(writer, "iterations");
-			for (Iteration iteration : iterations) {
-				writeTag(writer, "iteration");
+	private static void writeDateTag(final XmlEmitter writer, final String tag,
+									 final @Nullable LocalDate data)
+			throws IOException {
+		if (Objects.nonNull(data)) {
+			writer.startTag(tag);
+			writer.endStartTag();
+			writer.date(data);
+			writer.endTag(tag);
+		}
+	}
+
+	/**
+	 * Writes records as they come. If iterations and tasks are interleaved, this starts a new
+	 * {@code <iterations>} or {@code <tasks>} block each time the kind changes, which {@link XmlReader} accepts.
+	 */
+	private static final class RecordWriter implements TaskRecordSink {
+		private final XmlEmitter writer;
+		/**
+		 * The {@code <iterations>} or {@code <tasks>} block we are in, if any.
+		 */
+		private @Nullable String openBlock = null;
+
+		RecordWriter(final XmlEmitter writer) throws PersistenceException {
+			this.writer = writer;
+			try {
+				writer.raw("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+				writer.startTag("monger");
+				writer.raw(" xmlns=\"" + NAMESPACE + "\" xmlns:tm=\"" + NAMESPACE + '"');
+				writeAttribute(writer, "monger-version", "0");
+				writer.endStartTag();
+			} catch (final IOException except) {
+				throw new PersistenceException("Failed to serialize to XML", except);
+			}
+		}
+
+		private void enterBlock(final String block) throws IOException {
+			if (!block.equals(openBlock)) {
+				if (Objects.nonNull(openBlock)) {
+					writer.endTag(openBlock);
+				}
+				writer.startTag(block);
+				writer.endStartTag();
+				openBlock = block;
+			}
+		}
+
+		@Override
+		public void iteration(final Iteration iteration) throws PersistenceException {
+			try {
+				enterBlock("iterations");
+				writer.startTag("iteration");
 				writeAttribute(writer, "id", iteration.getId().toString());
 				writeAttribute(writer, "name", iteration.getName());
 				writeDateAttribute(writer, "start", iteration.getStartDate());
 				writeDateAttribute(writer, "end", iteration.getEndDate());
-				writer.writeEndElement();
-				taskDatabase.getTasksInIteration(iteration)
-					.forEach(t -> taskIterations.put(t.getIdentifier(),
-						iteration.getId().toString()));
+				writer.endStartTag();
+				writer.endTag("iteration");
+			} catch (final IOException except) {
+				throw new PersistenceException("Failed to serialize to XML", except);
 			}
-			writer.writeEndElement();
 		}
-		final Iterable<Task> tasks = taskDatabase.getTasks();
-		if (tasks.iterator().hasNext()) {
-			writeTag(writer, "tasks");
-			for (Task task : tasks) {
-				writeTag(writer, "task");
-				writeTag(writer, "task-identifier");
+
+		@Override
+		public void task(final Task task, final @Nullable UUID iteration, final @Nullable LocalDate date,
+						 final @Nullable LocalDate end) throws PersistenceException {
+			try {
+				enterBlock("tasks");
+				writer.startTag("task");
+				writer.endStartTag();
+				writer.startTag("task-identifier");
 				final TaskIdentifier id = task.getIdentifier();
 				writeAttribute(writer, "provider", id.provider());
 				writeAttribute(writer, "identifier", id.identifier());
-				writer.writeEndElement();
+				writer.endStartTag();
+				writer.endTag("task-identifier");
 				writeTagWithContents(writer, "name", task.getName());
 				writeTagWithContents(writer, "description", task.getDescription());
 				writeTagWithContents(writer, "estimate", task.getEstimate().toString());
 				writeTagWithContents(writer, "upstream", task.getUpstreamURL());
 				writeTagWithContents(writer, "status", task.getStatus().toString());
-				writeTagWithContents(writer, "iteration", taskIterations.get(task.getIdentifier()));
-				writeTagWithContents(writer, "assigned-date",
-					Optional.ofNullable(taskDatabase.getAssignedDate(task.getIdentifier()))
-						.map(d -> d.format(DateTimeFormatter.ISO_DATE)).orElse(null));
-				writer.writeEndElement();
+				writeTagWithContents(writer, "iteration",
+					Optional.ofNullable(iteration).map(UUID::toString).orElse(null));
+				writeDateTag(writer, "assigned-date", date);
+				// Only multi-day tasks have an end date, so files without any can still be read by older versions.
+				writeDateTag(writer, "assigned-end-date", Objects.equals(date, end) ? null : end);
+				writer.endTag("task");
+			} catch (final IOException except) {
+				throw new PersistenceException("Failed to serialize to XML", except);
+			}
+		}
+
+		@Override
+		public void close() throws PersistenceException {
+			try (writer) {
+				if (Objects.nonNull(openBlock)) {
+					writer.endTag(openBlock);
+				}
+				writer.endTag("monger");
+			} catch (final IOException except) {
+				throw new PersistenceException("Failed to serialize to XML", except);
 			}
-			writer.writeEndElement();
 		}
-		writer.writeEndElement();
-		writer.writeEndDocument();
 	}
 }
@@ -0,0 +1,449 @@
+package monger.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import monger.model.ChangeEvent;
+import monger.model.ChangeListener;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An inverted index over the words in task names and descriptions.
+ *
+ * Each term maps to a list of postings, one per task containing it, packed into a {@code long} with the task's
+ * number, its generation, and the term's weight in it (occurrences in the description, plus three times
+ * occurrences in the name). When a task is re-indexed its generation is bumped rather than its old postings
+ * being found and removed; stale postings are skipped, and a term's list is compacted once half of it is stale.
+ * Only the generation's low 16 bits are kept in a posting, so before a task's generation wraps around, every
+ * stale posting is dropped.
+ * Each task also keeps its own sorted term list, for checking single tasks.
+ *
+ * A query matches tasks containing, for every word, a term starting with that word. It scores tasks by
+ * weight times inverse document frequency, enumerating candidates only from the postings of its rarest word.
+ * Those are visited best-first and checked against the other words through their term lists, stopping as soon as
+ * no remaining candidate could displace anything in the top k.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class SearchIndex implements ChangeListener {
+	private static final int NAME_WEIGHT = 3;
+	private static final int MAX_WEIGHT = 0xffff;
+	/**
+	 * A word matching more terms than this uses only those in most tasks.
+	 */
+	private static final int MAX_EXPANSIONS = 256;
+
+	/**
+	 * A search result.
+	 */
+	public record Hit(@NotNull TaskIdentifier task, double score) {}
+
+	private static final class Postings {
+		private final @NotNull String term;
+		private long[] entries = new long[2];
+		private int size = 0;
+		private int stale = 0;
+		/**
+		 * An upper bound on the weight of any live posting.
+		 */
+		private int maxWeight = 0;
+
+		Postings(final @NotNull String term) {
+			this.term = term;
+		}
+
+		void add(final int task, final int generation, final int weight) {
+			if (size == entries.length) {
+				entries = Arrays.copyOf(entries, size * 2);
+			}
+			entries[size] = ((long) task << 32) | ((long) (generation & 0xffff) << 16) | weight;
+			size++;
+			maxWeight = Math.max(maxWeight, weight);
+		}
+
+		int live() {
+			return size - stale;
+		}
+	}
+
+	/**
+	 * A task's terms, in sorted order, and their weights.
+	 */
+	private record Document(@NotNull String @NotNull [] terms, int @NotNull [] weights) {}
+
+	private final @NotNull ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final @NotNull NavigableMap<String, Postings> terms = new TreeMap<>();
+	private final @NotNull Map<TaskIdentifier, Integer> taskNumbers = new HashMap<>();
+	private final @NotNull List<TaskIdentifier> identifiers = new ArrayList<>();
+	/**
+	 * Each task's document, or null for one that was removed.
+	 */
+	private final @NotNull List<Document> documents = new ArrayList<>();
+	/**
+	 * How many tasks were removed.
+	 */
+	private int removed = 0;
+	private int[] generations = new int[16];
+	private static final ThreadLocal<float[]> SCORES = ThreadLocal.withInitial(() -> new float[0]);
+
+	/**
+	 * @return an index of every task in the database
+	 */
+	public static @NotNull SearchIndex build(final @NotNull TaskDatabase tasks) {
+		final SearchIndex retval = new SearchIndex();
+		for (final Task task : tasks.getTasks()) {
+			retval.index(task);
+		}
+		return retval;
+	}
+
+	/**
+	 * @return an index of every task in the database, which {@link TaskDatabase#addChangeListener listens} to it
+	 * and so follows tasks being added and removed and changes to their names and descriptions, shortly after they
+	 * happen
+	 */
+	public static @NotNull SearchIndex attach(final @NotNull TaskDatabase tasks) {
+		final SearchIndex retval = build(tasks);
+		tasks.addChangeListener(retval);
+		return retval;
+	}
+
+	@Override
+	public void changesMade(final @NotNull List<@NotNull ChangeEvent> events) {
+		for (final ChangeEvent event : events) {
+			switch (event) {
+				case ChangeEvent.TaskAdded(Task task) -> index(task);
+				case ChangeEvent.TaskRemoved(TaskIdentifier task) -> remove(task);
+				case ChangeEvent.TaskChanged(Task task, Set<ChangeEvent.Field> fields) -> {
+					if (fields.contains(ChangeEvent.Field.Name) || fields.contains(ChangeEvent.Field.Description)) {
+						index(task);
+					}
+				}
+				default -> {
+					// Nothing else affects the index.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Split text into lower-cased runs of letters and digits.
+	 */
+	static @NotNull List<String> tokenize(final @NotNull String text) {
+		final List<String> retval = new ArrayList<>();
+		final int length = text.length();
+		int start = -1;
+		for (int i = 0; i <= length; i++) {
+			final boolean wordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+			if (wordChar && start < 0) {
+				start = i;
+			} else if (!wordChar && start >= 0) {
+				retval.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return retval;
+	}
+
+	private static void count(final @NotNull Map<String, Integer> counts, final @NotNull String text,
+							  final int weight) {
+		for (final String token : tokenize(text)) {
+			counts.merge(token, weight, (a, b) -> Math.min(MAX_WEIGHT, a + b));
+		}
+	}
+
+	/**
+	 * Add a task to the index, or update it if it is already there.
+	 */
+	public void index(final @NotNull Task task) {
+		final Map<String, Integer> counts = new HashMap<>();
+		count(counts, task.getName(), NAME_WEIGHT);
+		count(counts, task.getDescription(), 1);
+		final String[] words = counts.keySet().toArray(String[]::new);
+		Arrays.sort(words);
+		lock.writeLock().lock();
+		try {
+			final Integer existing = taskNumbers.get(task.getIdentifier());
+			final int number;
+			if (Objects.isNull(existing)) {
+				number = identifiers.size();
+				taskNumbers.put(task.getIdentifier(), number);
+				identifiers.add(task.getIdentifier());
+				documents.add(null);
+				if (number == generations.length) {
+					generations = Arrays.copyOf(generations, number * 2);
+				}
+			} else {
+				number = existing;
+				if (Objects.isNull(documents.get(number))) {
+					removed--;
+				}
+				retire(number);
+			}
+			final int[] weights = new int[words.length];
+			for (int i = 0; i < words.length; i++) {
+				final Postings postings = terms.computeIfAbsent(words[i], Postings::new);
+				words[i] = postings.term; // Share one copy of each term.
+				weights[i] = counts.get(words[i]);
+				postings.add(number, generations[number], weights[i]);
+			}
+			documents.set(number, new Document(words, weights));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Drop a task from the index, if it is in it.
+	 */
+	public void remove(final @NotNull TaskIdentifier identifier) {
+		lock.writeLock().lock();
+		try {
+			final Integer number = taskNumbers.get(identifier);
+			if (Objects.nonNull(number) && Objects.nonNull(documents.get(number))) {
+				retire(number);
+				documents.set(number, null);
+				removed++;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Make a task's postings stale, by bumping its generation.
+	 */
+	private void retire(final int number) {
+		if ((generations[number] & 0xffff) == 0xffff) {
+			// A posting from 65536 generations ago would otherwise look live again.
+			purge(number);
+			generations[number] = 0;
+		} else {
+			generations[number]++;
+			final Document document = documents.get(number);
+			if (Objects.nonNull(document)) {
+				for (final String term : document.terms()) {
+					final Postings postings = terms.get(term);
+					postings.stale++;
+					if (postings.stale * 2 > postings.size) {
+						compact(postings);
+					}
+				}
+			}
+		}
+	}
+
+	private boolean isLive(final long entry) {
+		return (generations[(int) (entry >>> 32)] & 0xffff) == ((int) (entry >>> 16) & 0xffff);
+	}
+
+	/**
+	 * Drop a term's stale postings.
+	 */
+	private void compact(final @NotNull Postings postings) {
+		compact(postings, -1);
+	}
+
+	/**
+	 * Drop every stale posting of every term, and all of one task's postings.
+	 */
+	private void purge(final int task) {
+		for (final Postings postings : List.copyOf(terms.values())) {
+			compact(postings, task);
+		}
+	}
+
+	/**
+	 * Drop a term's stale postings, and any for a given task.
+	 */
+	private void compact(final @NotNull Postings postings, final int dropped) {
+		int kept = 0;
+		int maxWeight = 0;
+		for (int i = 0; i < postings.size; i++) {
+			final long entry = postings.entries[i];
+			if (isLive(entry) && (int) (entry >>> 32) != dropped) {
+				postings.entries[kept] = entry;
+				kept++;
+				maxWeight = Math.max(maxWeight, (int) entry & 0xffff);
+			}
+		}
+		postings.size = kept;
+		postings.stale = 0;
+		postings.maxWeight = maxWeight;
+		if (kept == 0) {
+			terms.remove(postings.term);
+		}
+	}
+
+	/**
+	 * @return how many tasks are indexed
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return identifiers.size() - removed;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * A word of a query, with the terms it matches.
+	 *
+	 * @param maxWeight the sum of the largest weights of every term starting with the word, even those left out
+	 *                  of the matches, since a task's score for a word adds up all its terms starting with it
+	 */
+	private record Word(@NotNull String prefix, @NotNull Collection<Postings> matches, int frequency, double idf,
+						long maxWeight) {
+		/**
+		 * @return the most any task could score for this word
+		 */
+		double maxScore() {
+			return idf * maxWeight;
+		}
+	}
+
+	private @Nullable Word expand(final @NotNull String prefix) {
+		Collection<Postings> matches =
+			terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+		final long maxWeight = matches.stream().mapToLong(p -> p.maxWeight).sum();
+		if (matches.size() > MAX_EXPANSIONS) {
+			matches = matches.stream().sorted(Comparator.comparingInt(Postings::live).reversed())
+						  .limit(MAX_EXPANSIONS).toList();
+		}
+		final int indexed = identifiers.size() - removed;
+		final int frequency = Math.min(indexed, matches.stream().mapToInt(Postings::live).sum());
+		if (frequency == 0) {
+			return null;
+		}
+		return new Word(prefix, matches, frequency, Math.log(1.0 + (double) indexed / frequency), maxWeight);
+	}
+
+	/**
+	 * @return how much a word contributes to a task's score, or 0 if it doesn't match the task
+	 */
+	private static double score(final @NotNull Document document, final @NotNull Word word) {
+		final String[] words = document.terms();
+		int i = Arrays.binarySearch(words, word.prefix());
+		if (i < 0) {
+			i = -i - 1;
+		}
+		int weight = 0;
+		for (; i < words.length && words[i].startsWith(word.prefix()); i++) {
+			weight += document.weights()[i];
+		}
+		return weight * word.idf();
+	}
+
+	/**
+	 * @param query words to look for; each matches any term it is a prefix of
+	 * @param limit the most results to return
+	 * @return the best-scoring tasks matching every word in the query, best first
+	 */
+	public @NotNull List<Hit> search(final @NotNull String query, final int limit) {
+		final List<String> prefixes = List.copyOf(new LinkedHashSet<>(tokenize(query)));
+		if (prefixes.isEmpty() || limit <= 0) {
+			return List.of();
+		}
+		lock.readLock().lock();
+		try {
+			final List<Word> words = new ArrayList<>(prefixes.size());
+			for (final String prefix : prefixes) {
+				final Word word = expand(prefix);
+				if (Objects.isNull(word)) {
+					return List.of();
+				}
+				words.add(word);
+			}
+			words.sort(Comparator.comparingInt(Word::frequency));
+			final Word driver = words.getFirst();
+			final List<Word> others = words.subList(1, words.size());
+			final double othersMax = others.stream().mapToDouble(Word::maxScore).sum();
+			final long[] candidates = candidates(driver);
+			final PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Hit::score));
+			for (int i = candidates.length - 1; i >= 0; i--) {
+				final double driverScore = Float.intBitsToFloat((int) (candidates[i] >>> 32));
+				if (best.size() == limit && driverScore + othersMax <= best.peek().score()) {
+					break;
+				}
+				final int number = (int) candidates[i];
+				final Document document = documents.get(number);
+				double total = driverScore;
+				for (final Word word : others) {
+					final double score = score(document, word);
+					if (score == 0.0) {
+						total = -1;
+						break;
+					}
+					total += score;
+				}
+				if (total > 0 && (best.size() < limit || total > best.peek().score())) {
+					best.add(new Hit(identifiers.get(number), total));
+					if (best.size() > limit) {
+						best.poll();
+					}
+				}
+			}
+			final List<Hit> retval = new ArrayList<>(best);
+			retval.sort(Comparator.comparingDouble(Hit::score).reversed());
+			return retval;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return every task matching the word, packed with its score for it so that they sort in order of score
+	 */
+	private long @NotNull [] candidates(final @NotNull Word word) {
+		float[] scores = SCORES.get();
+		if (scores.length < identifiers.size()) {
+			scores = new float[identifiers.size()];
+			SCORES.set(scores);
+		}
+		int[] touched = new int[Math.min(word.frequency(), 1024)];
+		int count = 0;
+		for (final Postings postings : word.matches()) {
+			for (int i = 0; i < postings.size; i++) {
+				final long entry = postings.entries[i];
+				if (isLive(entry)) {
+					final int number = (int) (entry >>> 32);
+					if (scores[number] == 0.0f) {
+						if (count == touched.length) {
+							touched = Arrays.copyOf(touched, count * 2);
+						}
+						touched[count] = number;
+						count++;
+					}
+					scores[number] += (float) (((int) entry & 0xffff) * word.idf());
+				}
+			}
+		}
+		final long[] retval = new long[count];
+		for (int i = 0; i < count; i++) {
+			final int number = touched[i];
+			// Positive floats' bit patterns sort in the same order as their values.
+			retval[i] = ((long) Float.floatToIntBits(scores[number]) << 32) | number;
+			scores[number] = 0.0f;
+		}
+		Arrays.sort(retval);
+		return retval;
+	}
+}
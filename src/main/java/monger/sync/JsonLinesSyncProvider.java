@@ -0,0 +1,69 @@
+package monger.sync;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import monger.model.Task;
+import monger.persistence.JsonLinesReader;
+import monger.persistence.PersistenceException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A provider that serves pages of tasks in our own {@link JsonLinesReader JSON Lines format}, at
+ * {@code <base>?page=<n>}, with the number of pages in an {@code X-Page-Count} header; for example, another
+ * instance of this program, or a bridge to a tracker that has no adapter of its own.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class JsonLinesSyncProvider implements SyncProvider {
+	private final @NotNull String name;
+	private final @NotNull URI base;
+	private final int maxConcurrency;
+
+	/**
+	 * @param name the provider name of the tasks it serves
+	 * @param base the URI of its first page, without the page parameter
+	 * @param maxConcurrency how many requests may be made to it at once
+	 */
+	public JsonLinesSyncProvider(final @NotNull String name, final @NotNull URI base, final int maxConcurrency) {
+		this.name = name;
+		this.base = base;
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	@Override
+	public @NotNull String getName() {
+		return name;
+	}
+
+	@Override
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	@Override
+	public @NotNull URI getPageURI(final int page) {
+		return URI.create(base + (base.getRawQuery() == null ? "?" : "&") + "page=" + page);
+	}
+
+	@Override
+	public @NotNull SyncPage parsePage(final @NotNull HttpHeaders headers, final byte @NotNull [] body)
+			throws SyncException {
+		final int pageCount;
+		try {
+			pageCount = Integer.parseInt(headers.firstValue("X-Page-Count").orElse("1"));
+		} catch (final NumberFormatException except) {
+			throw new SyncException("Invalid page count from " + name, except);
+		}
+		final List<Task> tasks = new ArrayList<>();
+		try {
+			new JsonLinesReader().readTasksFromString(new String(body, StandardCharsets.UTF_8)).getTasks()
+				.forEach(tasks::add);
+		} catch (final PersistenceException except) {
+			throw new SyncException("Invalid page from " + name, except);
+		}
+		return new SyncPage(tasks, pageCount);
+	}
+}
@@ -0,0 +1,177 @@
+package monger.sync;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Fetches tasks from upstream {@link SyncProvider providers}. Every page is fetched on its own virtual thread, with
+ * no more requests in flight to any one provider than it {@link SyncProvider#getMaxConcurrency allows}. The engine
+ * remembers each page's {@code ETag} and {@code Last-Modified} validators, so that later syncs make conditional
+ * requests and reuse the pages that have not changed.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class SyncEngine {
+	private final @NotNull HttpClient client;
+
+	/**
+	 * A page fetched before, and the validators to ask whether it has changed since.
+	 */
+	private record CachedPage(@Nullable String etag, @Nullable String lastModified, @NotNull SyncPage page) {}
+
+	private final @NotNull Map<URI, CachedPage> cache = new ConcurrentHashMap<>();
+
+	public SyncEngine() {
+		this(HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor())
+				 .followRedirects(HttpClient.Redirect.NORMAL).build());
+	}
+
+	public SyncEngine(final @NotNull HttpClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Fetch every task from the given providers, and apply them to the database in one batch, only once they
+	 * have all been fetched; if anything fails, the database is left untouched.
+	 */
+	public @NotNull SyncResult sync(final @NotNull TaskDatabase tasks,
+									final @NotNull Collection<? extends SyncProvider> providers)
+			throws SyncException {
+		final SyncResult retval = fetch(providers);
+		retval.applyTo(tasks);
+		return retval;
+	}
+
+	/**
+	 * Fetch every task from the given providers.
+	 */
+	public @NotNull SyncResult fetch(final @NotNull Collection<? extends SyncProvider> providers)
+			throws SyncException {
+		final AtomicInteger requests = new AtomicInteger();
+		final AtomicInteger notModified = new AtomicInteger();
+		final List<Task> retval = new ArrayList<>();
+		try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			final List<Future<List<Task>>> results = new ArrayList<>();
+			for (final SyncProvider provider : providers) {
+				results.add(executor.submit(() -> fetchProvider(provider, executor, requests, notModified)));
+			}
+			try {
+				for (final Future<List<Task>> result : results) {
+					retval.addAll(await(result));
+				}
+			} catch (final SyncException except) {
+				executor.shutdownNow();
+				throw except;
+			}
+		}
+		return new SyncResult(retval, requests.get(), notModified.get());
+	}
+
+	private @NotNull List<Task> fetchProvider(final @NotNull SyncProvider provider,
+											  final @NotNull ExecutorService executor,
+											  final @NotNull AtomicInteger requests,
+											  final @NotNull AtomicInteger notModified)
+			throws SyncException {
+		final Semaphore permits = new Semaphore(Math.max(1, provider.getMaxConcurrency()));
+		final SyncPage first = fetchPage(provider, 0, permits, requests, notModified);
+		final List<Future<SyncPage>> rest = new ArrayList<>();
+		for (int page = 1; page < first.pageCount(); page++) {
+			final int number = page;
+			rest.add(executor.submit(() -> fetchPage(provider, number, permits, requests, notModified)));
+		}
+		final List<Task> retval = new ArrayList<>(first.tasks());
+		for (final Future<SyncPage> page : rest) {
+			retval.addAll(await(page).tasks());
+		}
+		for (final Task task : retval) {
+			if (!provider.getName().equals(task.getIdentifier().provider())) {
+				throw new SyncException("Provider %s served task %s belonging to another provider"
+												.formatted(provider.getName(), task.getIdentifier()));
+			}
+		}
+		return retval;
+	}
+
+	private @NotNull SyncPage fetchPage(final @NotNull SyncProvider provider, final int page,
+										final @NotNull Semaphore permits, final @NotNull AtomicInteger requests,
+										final @NotNull AtomicInteger notModified) throws SyncException {
+		final URI uri = provider.getPageURI(page);
+		final HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+		final CachedPage cached = cache.get(uri);
+		if (Objects.nonNull(cached)) {
+			if (Objects.nonNull(cached.etag())) {
+				request.header("If-None-Match", cached.etag());
+			}
+			if (Objects.nonNull(cached.lastModified())) {
+				request.header("If-Modified-Since", cached.lastModified());
+			}
+		}
+		provider.customize(request);
+		final HttpResponse<byte[]> response;
+		try {
+			permits.acquire();
+			try {
+				requests.incrementAndGet();
+				response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+			} finally {
+				permits.release();
+			}
+		} catch (final IOException except) {
+			throw new SyncException("Failed to fetch " + uri, except);
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new SyncException("Interrupted fetching " + uri, except);
+		}
+		if (response.statusCode() == 304 && Objects.nonNull(cached)) {
+			notModified.incrementAndGet();
+			return cached.page();
+		} else if (response.statusCode() == 200) {
+			final HttpHeaders headers = response.headers();
+			final SyncPage retval = provider.parsePage(headers, response.body());
+			final String etag = headers.firstValue("ETag").orElse(null);
+			final String lastModified = headers.firstValue("Last-Modified").orElse(null);
+			if (Objects.nonNull(etag) || Objects.nonNull(lastModified)) {
+				cache.put(uri, new CachedPage(etag, lastModified, retval));
+			} else {
+				cache.remove(uri);
+			}
+			return retval;
+		} else {
+			throw new SyncException("HTTP status %d fetching %s".formatted(response.statusCode(), uri));
+		}
+	}
+
+	private static <T> T await(final @NotNull Future<T> future) throws SyncException {
+		try {
+			return future.get();
+		} catch (final ExecutionException except) {
+			if (except.getCause() instanceof final SyncException cause) {
+				throw cause;
+			}
+			throw new SyncException("Sync failed", except.getCause());
+		} catch (final InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new SyncException("Interrupted during sync", except);
+		}
+	}
+}
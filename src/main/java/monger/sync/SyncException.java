@@ -0,0 +1,18 @@
+package monger.sync;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An exception for problems fetching tasks from upstream.
+ */
+public final class SyncException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public SyncException(final @NotNull String message, final @NotNull Throwable wrapped) {
+		super(message, wrapped);
+	}
+
+	public SyncException(final String message) {
+		super(message);
+	}
+}
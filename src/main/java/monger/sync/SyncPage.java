@@ -0,0 +1,17 @@
+package monger.sync;
+
+import java.util.List;
+import monger.model.Task;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One page of tasks fetched from upstream.
+ *
+ * @param tasks the tasks on the page
+ * @param pageCount how many pages the provider has in all, as of this response
+ */
+public record SyncPage(@NotNull List<@NotNull Task> tasks, int pageCount) {
+	public SyncPage {
+		tasks = List.copyOf(tasks);
+	}
+}
@@ -0,0 +1,48 @@
+package monger.sync;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An adapter for an upstream source of tasks, such as an issue tracker, which serves its tasks over HTTP in
+ * numbered pages. The {@link SyncEngine} handles concurrency and conditional requests; an adapter only has to
+ * say where each page is and how to read it.
+ *
+ * @author Jonathan Lovelace
+ */
+public interface SyncProvider {
+	/**
+	 * @return the name of the provider, which is the {@link monger.model.TaskIdentifier#provider() provider} of
+	 * every task it serves
+	 */
+	@NotNull String getName();
+
+	/**
+	 * @return how many requests may be made to this provider at once
+	 */
+	default int getMaxConcurrency() {
+		return 4;
+	}
+
+	/**
+	 * @param page a page number, starting at 0
+	 * @return where to fetch that page
+	 */
+	@NotNull URI getPageURI(int page);
+
+	/**
+	 * Add anything the provider needs, such as authentication, to a request. By default, does nothing.
+	 */
+	default void customize(final @NotNull HttpRequest.Builder request) {
+		// Nothing by default.
+	}
+
+	/**
+	 * @param headers the headers of a successful response for a page
+	 * @param body its body
+	 * @return the tasks on that page
+	 */
+	@NotNull SyncPage parsePage(@NotNull HttpHeaders headers, byte @NotNull [] body) throws SyncException;
+}
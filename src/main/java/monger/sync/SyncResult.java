@@ -0,0 +1,42 @@
+package monger.sync;
+
+import java.util.List;
+import java.util.Objects;
+import monger.model.Task;
+import monger.model.TaskBatch;
+import monger.model.TaskDatabase;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The outcome of fetching tasks from upstream.
+ *
+ * @param tasks every task fetched
+ * @param requests how many requests were made
+ * @param notModified how many of those found the page unchanged since it was last fetched
+ */
+public record SyncResult(@NotNull List<@NotNull Task> tasks, int requests, int notModified) {
+	public SyncResult {
+		tasks = List.copyOf(tasks);
+	}
+
+	/**
+	 * Apply the fetched tasks to a database in one {@link TaskBatch batch}: each one replaces the local task with
+	 * the same identifier, keeping its iteration and date, or is added if there is none. Tasks that have not
+	 * changed are left alone. Since the engine reuses unchanged pages on later syncs, this adds copies rather than
+	 * the fetched tasks themselves.
+	 *
+	 * @return how many tasks were added or changed
+	 */
+	public int applyTo(final @NotNull TaskDatabase database) {
+		final TaskBatch batch = new TaskBatch();
+		for (final Task task : tasks) {
+			final Task existing = database.getTask(task.getIdentifier());
+			if (Objects.isNull(existing) || existing.getFingerprint() != task.getFingerprint() ||
+						!existing.equals(task)) {
+				batch.addTask(task.copy());
+			}
+		}
+		database.apply(batch);
+		return batch.size();
+	}
+}
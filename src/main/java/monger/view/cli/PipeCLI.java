@@ -3,21 +3,42 @@ package monger.view.cli;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import monger.history.HistoryLog;
+import monger.model.DatabaseDiff;
+import monger.model.FederatedView;
 import monger.model.Iteration;
+import monger.model.Planner;
 import monger.model.Task;
 import monger.model.TaskDatabase;
 import monger.model.TaskIdentifier;
+import monger.model.TopK;
+import monger.persistence.DiskTaskStore;
+import monger.persistence.FormatRegistry;
 import monger.persistence.PersistenceException;
 import monger.persistence.PersistenceHelper;
+import monger.persistence.ShardedStore;
+import monger.persistence.StaleDatabaseException;
+import monger.search.SearchIndex;
 import org.jetbrains.annotations.Nullable;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -30,6 +51,11 @@ import picocli.CommandLine.Parameters;
 @Command(name = "task-monger",
 	description = "Manage a database of tasks programmatically")
 public class PipeCLI implements Runnable {
+	/**
+	 * How many times to redo a change whose database someone else saved in the meantime.
+	 */
+	private static final int MAX_ATTEMPTS = 3;
+
 	@CommandLine.Spec
 	CommandLine.Model.CommandSpec spec;
 
@@ -40,7 +66,7 @@ public class PipeCLI implements Runnable {
 	}
 
 	public static void main(final String... args) {
-		final CommandLine cmd = new CommandLine(new PipeCLI());
+		final CommandLine cmd = new CommandLine(new PipeCLI()).setCaseInsensitiveEnumValuesAllowed(true);
 		if (args.length == 0) {
 			cmd.usage(System.out);
 		} else {
@@ -50,9 +76,19 @@ public class PipeCLI implements Runnable {
 
 	@Command(name = "list-tasks", description = "Print a summary of all tasks")
 	public String listTasks(@Option(names = {"--database"}, required = true,
-		description = "File containing the task database") Path databaseFile,
+		description = "File containing a task database, or a glob matching several; may be repeated")
+							List<String> databases,
 							@Option(names = {"--quiet", "-q"},
 								description = "Omit header row") boolean quiet,
+							@Option(names = {"--sort"},
+								description = "Order to list tasks in: ${COMPLETION-CANDIDATES}; Id if --limit" +
+									" or --after is given, otherwise the order they are stored in") SortKey sort,
+							@Option(names = {"--limit"},
+								description = "The most tasks to print; if there are more, a cursor to pass to" +
+									" --after for the next page is printed, unless --quiet") Integer limit,
+							@Option(names = {"--after"},
+								description = "Only list tasks after this cursor, from the previous page")
+							String after,
 							@Parameters(arity = "0..*", paramLabel = "<task identifier>",
 								description =
 									"The tasks to be displayed, in the format " +
@@ -60,16 +96,314 @@ public class PipeCLI implements Runnable {
 							String[] taskIdentifiers)
 		throws PersistenceException, IOException {
 		List<TaskIdentifier> identifiers = new ArrayList<>();
-		for (String string : taskIdentifiers) {
+		for (String string : Objects.requireNonNullElse(taskIdentifiers, new String[0])) {
 			identifiers.add(new TaskIdentifier("", string.trim()));
 			if (string.chars().filter(ch -> ch == ':').count() == 1L) {
 				String[] split = string.split(":");
 				identifiers.add(new TaskIdentifier(split[0], split[1]));
 			}
 		}
+		Map<String, TaskDatabase> loaded = new LinkedHashMap<>();
+		PersistenceHelper.readFromFiles(expandDatabases(databases))
+			.forEach((file, db) -> loaded.put(file.toString(), db));
+		return listTasks(quiet, new FederatedView(loaded), identifiers, sort, Objects.requireNonNullElse(limit, 0),
+			after);
+	}
+
+	/**
+	 * Expand any glob patterns among the given database paths, each into the files it matches in sorted order.
+	 * Globs match only regular files and sharded database directories, and skip anything hidden, such as lock
+	 * files and caches, or inside a sharded database.
+	 */
+	private List<Path> expandDatabases(List<String> patterns) throws IOException {
+		List<Path> retval = new ArrayList<>();
+		for (String pattern : patterns) {
+			int firstGlob = IntStream.range(0, pattern.length()).filter(i -> "*?[{".indexOf(pattern.charAt(i)) >= 0)
+								.findFirst().orElse(-1);
+			if (firstGlob < 0) {
+				retval.add(Path.of(pattern));
+				continue;
+			}
+			int split = pattern.lastIndexOf('/', firstGlob);
+			Path directory = split < 0 ? Path.of("") : Path.of(pattern.substring(0, split + 1));
+			String glob = pattern.substring(split + 1);
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+			int depth = glob.contains("**") ? Integer.MAX_VALUE :
+				(int) glob.chars().filter(ch -> ch == '/').count() + 1;
+			List<Path> matches;
+			try (Stream<Path> files = Files.walk(directory, depth)) {
+				matches = files.filter(file -> !file.equals(directory) &&
+													   matcher.matches(directory.relativize(file)) &&
+													   isDatabase(directory, file))
+							  .sorted().toList();
+			}
+			if (matches.isEmpty()) {
+				throw new CommandLine.ParameterException(spec.commandLine(), "No databases match " + pattern);
+			}
+			retval.addAll(matches);
+		}
+		return retval;
+	}
+
+	/**
+	 * Whether a file a glob matched, somewhere under the directory the glob is relative to, could be a database.
+	 */
+	private static boolean isDatabase(Path directory, Path file) {
+		for (Path part : directory.relativize(file)) {
+			if (part.toString().startsWith(".")) {
+				return false;
+			}
+		}
+		for (Path parent = file.getParent(); parent != null && !parent.equals(directory);
+			 parent = parent.getParent()) {
+			if (ShardedStore.isSharded(parent)) {
+				return false;
+			}
+		}
+		return Files.isRegularFile(file) || ShardedStore.isSharded(file);
+	}
+
+	@Command(name = "convert",
+		description = "Copy a database to another file, converting between formats as the filenames dictate;" +
+			" an existing directory holds a sharded database")
+	public void convert(@Option(names = {"--from"}, required = true,
+		description = "File containing the task database") Path source,
+						@Option(names = {"--to"}, required = true,
+							description = "File to write the converted database to") Path destination)
+		throws PersistenceException {
+		FormatRegistry.convert(source, destination);
+	}
+
+	@Command(name = "plan",
+		description = "Schedule unscheduled tasks into the days of an iteration, as many as will fit")
+	public String plan(@Option(names = {"--database"}, required = true,
+		description = "File containing the task database") Path databaseFile,
+					   @Option(names = {"--iteration"}, required = true,
+						   description = "The ID or name of the iteration to plan") String iterationName,
+					   @Option(names = {"--capacity"}, defaultValue = "32",
+						   description = "Quarter-hours of work to plan per day") int capacity,
+					   @Option(names = {"--history"},
+						   description = "Task history log to record the saved tasks' statuses and estimates in")
+					   Path historyFile)
+		throws PersistenceException, IOException {
+		// Open the log first, so that if it can't be we don't save a change it misses.
+		try (HistoryLog history = Objects.isNull(historyFile) ? null : HistoryLog.open(historyFile)) {
+			// If someone else saves the database while we plan, plan again on top of their changes.
+			for (int attempt = 1; ; attempt++) {
+				// From a sharded database, only the iteration and the unassigned tasks are needed.
+				TaskDatabase db = PersistenceHelper.readIteration(databaseFile, iterationName);
+				String retval = plan(db, iterationName, capacity);
+				try {
+					PersistenceHelper.writeToFile(databaseFile, db);
+				} catch (StaleDatabaseException except) {
+					if (attempt >= MAX_ATTEMPTS) {
+						throw except;
+					}
+					continue;
+				}
+				// Only what was saved is logged, not what a discarded attempt did.
+				if (Objects.nonNull(history)) {
+					history.attach(db);
+				}
+				return retval;
+			}
+		}
+	}
+
+	/**
+	 * Implementation, split out for automated-test purposes.
+	 */
+	public String plan(TaskDatabase tasks, String iterationName, int capacity) {
+		Iteration iteration = findIteration(tasks, iterationName);
+		Planner.Plan plan = Planner.plan(tasks, iteration, capacity);
+		plan.applyTo(tasks);
+		return "Planned %d tasks; %d did not fit%n".formatted(plan.assignments().size(), plan.unplaced().size());
+	}
+
+	private Iteration findIteration(TaskDatabase tasks, String iterationName) {
+		for (Iteration candidate : tasks.getIterations()) {
+			if (candidate.getId().toString().equals(iterationName) ||
+					iterationName.equals(candidate.getName())) {
+				return candidate;
+			}
+		}
+		throw new CommandLine.ParameterException(spec.commandLine(), "No such iteration");
+	}
+
+	@Command(name = "velocity",
+		description = "Print, for each day, the estimated work completed in the days up to and including it")
+	public String velocity(@Option(names = {"--history"}, required = true,
+		description = "File containing the task history log") Path historyFile,
+						   @Option(names = {"--days"}, defaultValue = "7",
+							   description = "How many days each total covers") int days,
+						   @Option(names = {"--from"},
+							   description = "The first day to print; by default four weeks ago") LocalDate from,
+						   @Option(names = {"--to"},
+							   description = "The last day to print; by default today") LocalDate to)
+		throws PersistenceException {
+		try (HistoryLog history = HistoryLog.openReadOnly(historyFile)) {
+			LocalDate end = Objects.requireNonNullElseGet(to, LocalDate::now);
+			return printTotals(history.velocity(Objects.requireNonNullElse(from, end.minusWeeks(4)), end, days));
+		}
+	}
+
+	@Command(name = "burndown",
+		description = "Print, for each day of an iteration so far, the estimated work in it not yet completed")
+	public String burndown(@Option(names = {"--history"}, required = true,
+		description = "File containing the task history log") Path historyFile,
+						   @Option(names = {"--database"}, required = true,
+							   description = "File containing the task database") Path databaseFile,
+						   @Option(names = {"--iteration"}, required = true,
+							   description = "The ID or name of the iteration") String iterationName)
+		throws PersistenceException, IOException {
 		TaskDatabase db = PersistenceHelper.readFromFile(databaseFile);
-		return listTasks(quiet, db, identifiers);
+		try (HistoryLog history = HistoryLog.openReadOnly(historyFile)) {
+			return burndown(db, history, iterationName);
+		}
+	}
+
+	/**
+	 * Implementation, split out for automated-test purposes.
+	 */
+	public String burndown(TaskDatabase tasks, HistoryLog history, String iterationName)
+		throws PersistenceException {
+		Iteration iteration = findIteration(tasks, iterationName);
+		if (Objects.isNull(iteration.getStartDate()) || Objects.isNull(iteration.getEndDate())) {
+			throw new CommandLine.ParameterException(spec.commandLine(), "Iteration has no dates");
+		}
+		List<TaskIdentifier> members = new ArrayList<>();
+		for (Task task : tasks.getTasksInIteration(iteration)) {
+			members.add(task.getIdentifier());
+		}
+		return printTotals(history.burndown(iteration, members));
+	}
+
+	private static String printTotals(List<HistoryLog.DailyTotal> totals) {
+		StringBuilder retval = new StringBuilder();
+		for (HistoryLog.DailyTotal total : totals) {
+			retval.append("%s %d%n".formatted(total.day(), total.quarterHours()));
+		}
+		return retval.toString();
+	}
+
+	@Command(name = "search", description = "Find tasks whose names or descriptions contain every given word")
+	public String search(@Option(names = {"--database"}, required = true,
+		description = "File containing the task database") Path databaseFile,
+						 @Option(names = {"--limit"}, defaultValue = "10",
+							 description = "The most tasks to print") int limit,
+						 @Option(names = {"--cache-size"},
+							 description = "Keep tasks on disk, holding at most this many in memory") Integer cacheSize,
+						 @Parameters(arity = "1..*", paramLabel = "<word>",
+							 description = "Words to search for; each matches any word it begins") String[] words)
+		throws PersistenceException, IOException {
+		if (Objects.isNull(cacheSize)) {
+			TaskDatabase db = PersistenceHelper.readFromFile(databaseFile);
+			return search(db, String.join(" ", words), limit);
+		}
+		try (DiskTaskStore store = DiskTaskStore.temporary(cacheSize)) {
+			TaskDatabase db = PersistenceHelper.readFromFile(databaseFile, store);
+			return search(db, String.join(" ", words), limit);
+		}
+	}
+
+	/**
+	 * Implementation, split out for automated-test purposes.
+	 */
+	public String search(TaskDatabase tasks, String query, int limit) {
+		StringBuilder retval = new StringBuilder();
+		for (SearchIndex.Hit hit : SearchIndex.build(tasks).search(query, limit)) {
+			retval.append("%s | %s%n".formatted(hit.task(), tasks.getTask(hit.task()).getName()));
+		}
+		return retval.toString();
+	}
+
+	@Command(name = "diff", description = "Print the differences between two databases")
+	public void diff(@Option(names = {"--from"}, required = true,
+		description = "File containing the earlier database") Path from,
+					 @Option(names = {"--to"}, required = true,
+						 description = "File containing the later database") Path to)
+		throws PersistenceException {
+		Map<Path, TaskDatabase> loaded = PersistenceHelper.readFromFiles(List.of(from, to));
+		PrintWriter out = spec.commandLine().getOut();
+		diff(loaded.get(from), loaded.get(to), out);
+		out.flush();
+	}
+
+	/**
+	 * Implementation, split out for automated-test purposes.
+	 *
+	 * @return how many differences there were
+	 */
+	public int diff(TaskDatabase from, TaskDatabase to, PrintWriter out) {
+		int[] count = {0};
+		DatabaseDiff.diff(from, to, change -> {
+			count[0]++;
+			out.println(switch (change) {
+				case DatabaseDiff.IterationAdded(Iteration iteration) ->
+					"+ iteration %s %s".formatted(iteration.getId(), iterationForList(iteration));
+				case DatabaseDiff.IterationRemoved(Iteration iteration) ->
+					"- iteration %s %s".formatted(iteration.getId(), iterationForList(iteration));
+				case DatabaseDiff.IterationChanged(Iteration before, Iteration after) ->
+					"~ iteration %s: %s -> %s".formatted(before.getId(), iterationForList(before),
+						iterationForList(after));
+				case DatabaseDiff.TaskAdded(Task task) ->
+					"+ task %s %s".formatted(task.getIdentifier(), task.getName());
+				case DatabaseDiff.TaskRemoved(Task task) ->
+					"- task %s %s".formatted(task.getIdentifier(), task.getName());
+				case DatabaseDiff.FieldChanged(TaskIdentifier task, var field, Object before, Object after) ->
+					"~ task %s %s: %s -> %s".formatted(task, field, quote(before), quote(after));
+				case DatabaseDiff.AssignmentChanged(TaskIdentifier task, UUID before, UUID after) ->
+					"~ task %s iteration: %s -> %s".formatted(task, quote(before), quote(after));
+				case DatabaseDiff.DateChanged(TaskIdentifier task, LocalDate before, LocalDate after) ->
+					"~ task %s date: %s -> %s".formatted(task, quote(before), quote(after));
+				case DatabaseDiff.EndDateChanged(TaskIdentifier task, LocalDate before, LocalDate after) ->
+					"~ task %s end date: %s -> %s".formatted(task, quote(before), quote(after));
+			});
+		});
+		return count[0];
+	}
+
+	private static String quote(@Nullable Object value) {
+		if (Objects.isNull(value)) {
+			return "<none>";
+		} else if (value instanceof String string) {
+			return '"' + string.replace("\\", "\\\\").replace("\n", "\\n").replace("\"", "\\\"") + '"';
+		} else {
+			return value.toString();
+		}
 	}
+
+	@Command(name = "merge",
+		description = "Merge two databases edited separately from a common base; where both changed the same " +
+						  "thing differently, ours is kept and the conflict printed")
+	public String merge(@Option(names = {"--base"}, required = true,
+		description = "File containing the common base database") Path base,
+						@Option(names = {"--ours"}, required = true,
+							description = "File containing our database") Path ours,
+						@Option(names = {"--theirs"}, required = true,
+							description = "File containing their database") Path theirs,
+						@Option(names = {"--output"}, required = true,
+							description = "File to write the merged database to") Path output)
+		throws PersistenceException {
+		Map<Path, TaskDatabase> loaded = PersistenceHelper.readFromFiles(List.of(base, ours, theirs));
+		DatabaseDiff.MergeResult result = DatabaseDiff.merge(loaded.get(base), loaded.get(ours), loaded.get(theirs));
+		PersistenceHelper.writeToFile(output, result.merged());
+		return merge(result);
+	}
+
+	/**
+	 * Implementation, split out for automated-test purposes.
+	 */
+	public String merge(DatabaseDiff.MergeResult result) {
+		StringBuilder retval = new StringBuilder();
+		for (DatabaseDiff.Conflict conflict : result.conflicts()) {
+			retval.append("! %s %s: base %s, ours %s, theirs %s%n".formatted(conflict.subject(), conflict.aspect(),
+				quote(conflict.base()), quote(conflict.ours()), quote(conflict.theirs())));
+		}
+		retval.append("Merged with %d conflicts%n".formatted(result.conflicts().size()));
+		return retval.toString();
+	}
+
 	private static String iterationForList(@Nullable Iteration iteration) {
 		if (Objects.isNull(iteration)) {
 			return "<none>";
@@ -90,53 +424,215 @@ public class PipeCLI implements Runnable {
 			return name;
 		}
 	}
+
 	/**
 	 * Implementation, split out for automated-test purposes.
 	 */
 	public String listTasks(boolean quiet, TaskDatabase tasks,
 							List<TaskIdentifier> identifiers) throws IOException {
+		return listTasks(quiet, FederatedView.of("", tasks), identifiers);
+	}
+
+	/**
+	 * Implementation, split out for automated-test purposes. If there is more than one database, each task is
+	 * listed with the database it came from, so tasks with the same identifier can be told apart.
+	 */
+	public String listTasks(boolean quiet, FederatedView tasks,
+							List<TaskIdentifier> identifiers) throws IOException {
+		return listTasks(quiet, tasks, identifiers, null, 0, null);
+	}
+
+	/**
+	 * Orders {@code list-tasks} can list tasks in. Ties are broken by database and then identifier, so every task
+	 * has a distinct position.
+	 */
+	public enum SortKey {
+		Id, Name, Date
+	}
+
+	/**
+	 * A task's place in a {@link SortKey sorted} listing, from which a page can be resumed.
+	 *
+	 * @param key the value sorted on, if any; ISO dates sort correctly as strings, and tasks without one come last
+	 */
+	private record Position(@Nullable String key, String source, String identifier) implements Comparable<Position> {
+		private static final Comparator<Position> ORDER =
+			Comparator.comparing(Position::key, Comparator.nullsLast(Comparator.naturalOrder()))
+				.thenComparing(Position::source).thenComparing(Position::identifier);
+
+		@Override
+		public int compareTo(Position other) {
+			return ORDER.compare(this, other);
+		}
+
+		/**
+		 * Each field is written as its length, a colon, and its text, so any text can be in it; a missing key is
+		 * written as a dash instead.
+		 */
+		String toCursor() {
+			StringBuilder encoded = new StringBuilder();
+			if (key == null) {
+				encoded.append('-');
+			} else {
+				appendField(encoded, key);
+			}
+			appendField(encoded, source);
+			appendField(encoded, identifier);
+			return Base64.getUrlEncoder().withoutPadding()
+					   .encodeToString(encoded.toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+		private static void appendField(StringBuilder encoded, String field) {
+			encoded.append(field.length()).append(':').append(field);
+		}
+
+		static Position ofCursor(String cursor) {
+			String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			int[] offset = {0};
+			String key = null;
+			if (decoded.startsWith("-")) {
+				offset[0] = 1;
+			} else {
+				key = readField(decoded, offset);
+			}
+			String source = readField(decoded, offset);
+			String identifier = readField(decoded, offset);
+			if (offset[0] != decoded.length()) {
+				throw new IllegalArgumentException("Malformed cursor");
+			}
+			return new Position(key, source, identifier);
+		}
+
+		/**
+		 * Read a length-prefixed field.
+		 *
+		 * @param offset where it starts, which is moved to just after it
+		 */
+		private static String readField(String decoded, int[] offset) {
+			int colon = decoded.indexOf(':', offset[0]);
+			if (colon < 0) {
+				throw new IllegalArgumentException("Malformed cursor");
+			}
+			int length = Integer.parseInt(decoded, offset[0], colon, 10);
+			if (length < 0 || length > decoded.length() - colon - 1) {
+				throw new IllegalArgumentException("Malformed cursor");
+			}
+			offset[0] = colon + 1 + length;
+			return decoded.substring(colon + 1, offset[0]);
+		}
+	}
+
+	private record Row(FederatedView.Entry entry, Position position) {}
+
+	/**
+	 * Implementation, split out for automated-test purposes. With a sort order, tasks are listed from just after
+	 * the cursor, if any; with a limit as well, the page is chosen with a bounded heap rather than a full sort.
+	 *
+	 * @param sort the order to list in, or null for the order they are stored in
+	 * @param limit the most tasks to list, or 0 for all
+	 * @param after a cursor printed with a previous page, if any
+	 */
+	public String listTasks(boolean quiet, FederatedView tasks, List<TaskIdentifier> identifiers,
+							@Nullable SortKey sort, int limit, @Nullable String after) throws IOException {
+		if (sort == null && (limit > 0 || after != null)) {
+			sort = SortKey.Id;
+		}
+		List<FederatedView.Entry> selected = new ArrayList<>();
+		@Nullable Position next = null;
+		if (sort == null) {
+			for (FederatedView.Entry entry : tasks.getTasks()) {
+				if (identifiers.isEmpty() || identifiers.contains(entry.task().getIdentifier())) {
+					selected.add(entry);
+				}
+			}
+		} else {
+			@Nullable Position start;
+			try {
+				start = after == null ? null : Position.ofCursor(after);
+			} catch (IllegalArgumentException except) {
+				throw new CommandLine.ParameterException(spec.commandLine(), "Invalid cursor " + after);
+			}
+			SortKey key = sort;
+			Stream<Row> candidates = StreamSupport.stream(tasks.getTasks().spliterator(), false)
+				.filter(entry -> identifiers.isEmpty() || identifiers.contains(entry.task().getIdentifier()))
+				.map(entry -> new Row(entry, new Position(switch (key) {
+					case Id -> entry.task().getIdentifier().toString();
+					case Name -> entry.task().getName();
+					case Date -> Optional.ofNullable(tasks.getAssignedDate(entry))
+									 .map(d -> d.format(DateTimeFormatter.ISO_DATE)).orElse(null);
+				}, entry.source(), entry.task().getIdentifier().toString())))
+				.filter(row -> start == null || row.position().compareTo(start) > 0);
+			Comparator<Row> order = Comparator.comparing(Row::position);
+			List<Row> rows;
+			if (limit > 0) {
+				// One more than wanted, to tell whether there is another page.
+				rows = TopK.smallest(candidates::iterator, order, limit + 1);
+				if (rows.size() > limit) {
+					rows = rows.subList(0, limit);
+					next = rows.getLast().position();
+				}
+			} else {
+				rows = candidates.sorted(order).toList();
+			}
+			for (Row row : rows) {
+				selected.add(row.entry());
+			}
+		}
+		boolean federated = tasks.getSources().size() > 1;
 		int[] fieldLengths;
 		// FIXME: Need to include "Iteration" and "Scheduled" [date]
 		if (quiet) {
-			fieldLengths = new int[]{1, 1, 1, 1, 1, 1};
+			fieldLengths = new int[]{1, 1, 1, 1, 1, 1, 1};
+		} else if (federated) {
+			// "Database", "ID", "Name", "Status", "Estimate", "Iteration", "Scheduled"
+			fieldLengths = new int[]{8, 2, 4, 6, 8, 9, 9};
 		} else {
 			// "ID", "Name", "Status", "Estimate", "Description"
 			fieldLengths = new int[]{2, 4, 6, 8, 9, 9};
 		}
 		final List<List<String>> output = new ArrayList<>();
-		for (Task task : tasks.getTasks()) {
-			if (identifiers.isEmpty() || identifiers.contains(task.getIdentifier())) {
-				final List<String> line =
-					List.of(task.getIdentifier().toString(), task.getName(),
-						task.getStatus().toString(), task.getEstimate().toString(),
-						iterationForList(tasks.getIteration(task.getIdentifier())),
-						Optional.ofNullable(tasks.getAssignedDate(task.getIdentifier()))
-							.map(d -> d.format(DateTimeFormatter.ISO_DATE))
-							.orElse("<none>"));
-				for (int i = 0; i < Integer.min(fieldLengths.length, line.size()); i++) {
-					int fieldLength = line.get(i).length();
-					if (fieldLengths[i] < fieldLength) {
-						fieldLengths[i] = fieldLength;
-					}
+		for (FederatedView.Entry entry : selected) {
+			Task task = entry.task();
+			final List<String> line = new ArrayList<>(7);
+			if (federated) {
+				line.add(entry.source());
+			}
+			line.addAll(List.of(task.getIdentifier().toString(), task.getName(),
+					task.getStatus().toString(), task.getEstimate().toString(),
+					iterationForList(tasks.getIteration(entry)),
+					Optional.ofNullable(tasks.getAssignedDate(entry))
+						.map(d -> d.format(DateTimeFormatter.ISO_DATE))
+						.orElse("<none>")));
+			for (int i = 0; i < Integer.min(fieldLengths.length, line.size()); i++) {
+				int fieldLength = line.get(i).length();
+				if (fieldLengths[i] < fieldLength) {
+					fieldLengths[i] = fieldLength;
 				}
-				output.add(line);
 			}
+			output.add(line);
 		}
 		if (output.isEmpty()) {
 			return "";
 		}
-		String format = IntStream.of(fieldLengths)
+		String format = IntStream.of(fieldLengths).limit(output.getFirst().size())
 							.mapToObj("%%-%ds"::formatted)
 							.collect(Collectors.joining(" | "));
 		try (StringWriter retval = new StringWriter();
 			 PrintWriter out = new PrintWriter(retval)) {
 			if (!quiet) {
-				out.println(
-					format.formatted("ID", "Name", "Status", "Estimate", "Iteration", "Scheduled"));
+				List<String> header = new ArrayList<>(List.of("ID", "Name", "Status", "Estimate", "Iteration",
+					"Scheduled"));
+				if (federated) {
+					header.addFirst("Database");
+				}
+				out.println(format.formatted(header.toArray()));
 			}
 			for (List<String> line : output) {
 				out.println(format.formatted(line.toArray()));
 			}
+			if (!quiet && next != null) {
+				out.println("Next page: --after " + next.toCursor());
+			}
 			return retval.toString();
 		}
 	}
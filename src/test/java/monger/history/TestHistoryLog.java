@@ -0,0 +1,155 @@
+package monger.history;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import monger.model.TimeEstimate;
+import monger.persistence.PersistenceException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test the status-history log and the queries over it.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestHistoryLog {
+	/**
+	 * A clock that stays where it is put.
+	 */
+	private static final class TestClock extends Clock {
+		private Instant now;
+
+		TestClock(final Instant now) {
+			this.now = now;
+		}
+
+		void set(final LocalDate day) {
+			now = day.atTime(10, 0).toInstant(ZoneOffset.UTC);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(final ZoneId zone) {
+			throw new UnsupportedOperationException("Test clock is always in UTC");
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+
+	private static List<Integer> totals(final List<HistoryLog.DailyTotal> totals) {
+		return totals.stream().map(HistoryLog.DailyTotal::quarterHours).toList();
+	}
+
+	@Test
+	public void testHistory(@TempDir final Path dir) throws PersistenceException, InterruptedException, IOException {
+		final Path file = dir.resolve("history.log");
+		final LocalDate monday = LocalDate.of(2026, 3, 2);
+		final TestClock clock = new TestClock(Instant.EPOCH);
+		clock.set(monday);
+		final TaskDatabase tasks = new TaskDatabase();
+		final TaskIdentifier one = new TaskIdentifier("testing", "one");
+		final TaskIdentifier two = new TaskIdentifier("testing", "two");
+		final TaskIdentifier other = new TaskIdentifier("testing", "other");
+		for (final TaskIdentifier id : List.of(one, two, other)) {
+			tasks.addTask(new Task(id, "Task " + id.identifier()));
+		}
+		tasks.getTask(one).setEstimate(TimeEstimate.Hour);
+		tasks.getTask(two).setEstimate(TimeEstimate.TwoHours);
+		tasks.getTask(other).setEstimate(TimeEstimate.AllDay);
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "Sprint", monday, monday.plusDays(4));
+		tasks.addIteration(iteration);
+		tasks.awaitChangeDelivery();
+
+		try (final HistoryLog log = HistoryLog.open(file, clock)) {
+			log.attach(tasks);
+			clock.set(monday.plusDays(1));
+			tasks.getTask(one).setStatus(TaskStatus.Completed);
+			tasks.getTask(one).setName("Renamed");
+			// Changes are logged with the time they were made, however late they are delivered.
+			clock.set(monday.plusDays(6));
+		}
+
+		clock.set(monday.plusDays(2));
+		try (final HistoryLog log = HistoryLog.open(file, clock)) {
+			log.record(two, TaskStatus.Completed);
+			final long size = Files.size(file);
+			log.record(two, TaskStatus.Completed);
+			log.record(one, TaskStatus.Completed);
+			assertEquals(size, Files.size(file), "Repeated values, even from before reopening, are not logged");
+		}
+
+		final long size = Files.size(file);
+		Files.write(file, new byte[]{1, (byte) 0x80}, StandardOpenOption.APPEND);
+		clock.set(monday.plusDays(3));
+		try (final HistoryLog log = HistoryLog.open(file, clock)) {
+			assertEquals(size, Files.size(file), "A partly-written record is discarded on opening");
+			log.record(one, TaskStatus.InProgress);
+			assertEquals(List.of(12, 8, 0, 4), totals(log.burndown(iteration, List.of(one, two))),
+				"Burndown counts only unfinished member tasks, up to today");
+			assertEquals(List.of(0, 4, 12), totals(log.velocity(monday, monday.plusDays(2), 2)),
+				"Velocity credits completions");
+			assertEquals(List.of(0, 0, 8, 8), totals(log.velocity(monday, monday.plusDays(3), 2)),
+				"A reopened task's credit is taken back from the day it was completed");
+			assertEquals(List.of(0), totals(log.velocity(monday.plusDays(3), monday.plusDays(3), 1)),
+				"Taking back a credit doesn't push a window past it below zero");
+			assertEquals(List.of(8), totals(log.velocity(monday.plusDays(3), monday.plusDays(3), 7)),
+				"A window covers earlier days");
+		}
+	}
+
+	@Test
+	public void testSharedLog(@TempDir final Path dir) throws PersistenceException, IOException {
+		final Path file = dir.resolve("history.log");
+		final LocalDate monday = LocalDate.of(2026, 3, 2);
+		final TestClock clock = new TestClock(Instant.EPOCH);
+		clock.set(monday);
+		final TaskIdentifier one = new TaskIdentifier("testing", "one");
+		final TaskIdentifier two = new TaskIdentifier("testing", "two");
+		try (final HistoryLog first = HistoryLog.open(file, clock);
+			 final HistoryLog second = HistoryLog.open(file, clock)) {
+			first.record(one, TimeEstimate.Hour);
+			second.record(two, TimeEstimate.TwoHours);
+			final long size = Files.size(file);
+			second.record(one, TimeEstimate.Hour);
+			first.record(two, TimeEstimate.TwoHours);
+			assertEquals(size, Files.size(file), "Each log sees what the other appended");
+			clock.set(monday.plusDays(1));
+			first.record(two, TaskStatus.Completed);
+			second.record(one, TaskStatus.Completed);
+		}
+
+		final long size = Files.size(file);
+		Files.write(file, new byte[]{1, (byte) 0x80}, StandardOpenOption.APPEND);
+		try (final HistoryLog log = HistoryLog.openReadOnly(file, clock)) {
+			assertEquals(List.of(0, 12), totals(log.velocity(monday, monday.plusDays(1), 1)),
+				"Tasks numbered by different writers are told apart");
+			assertThrows(IllegalStateException.class, () -> log.record(one, TaskStatus.InProgress),
+				"A log opened read-only can't be appended to");
+		}
+		assertEquals(size + 2, Files.size(file), "Opening read-only leaves even a partial record alone");
+	}
+}
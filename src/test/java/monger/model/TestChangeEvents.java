@@ -0,0 +1,94 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * Test change events from the task database.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestChangeEvents {
+	@Test
+	public void testCoalescedEvents() throws InterruptedException {
+		final TaskDatabase tasks = new TaskDatabase();
+		final BlockingQueue<List<ChangeEvent>> delivered = new LinkedBlockingQueue<>();
+		final BlockingQueue<Thread> threads = new LinkedBlockingQueue<>();
+		tasks.addChangeListener(events -> {
+			threads.add(Thread.currentThread());
+			delivered.add(events);
+		});
+		final Task task = new Task(new TaskIdentifier("testing", "id"), "name for testing");
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "test iteration",
+			LocalDate.parse("2024-09-08"), LocalDate.parse("2024-09-22"));
+		tasks.apply(new TaskBatch().addIteration(iteration).addTask(task)
+						.assignToIteration(task.getIdentifier(), iteration.getId())
+						.assignToDate(task.getIdentifier(), LocalDate.parse("2024-09-10"))
+						.assignToDate(task.getIdentifier(), LocalDate.parse("2024-09-13")));
+		assertEquals(List.of(new ChangeEvent.IterationAdded(iteration), new ChangeEvent.TaskAdded(task),
+				new ChangeEvent.IterationAssigned(task.getIdentifier(), iteration.getId()),
+				new ChangeEvent.DateAssigned(task.getIdentifier(), LocalDate.parse("2024-09-13"))),
+			delivered.poll(5, TimeUnit.SECONDS), "A batch is delivered as one coalesced transaction");
+		assertNotSame(Thread.currentThread(), threads.take(), "Events are delivered on another thread");
+
+		tasks.inTransaction(() -> {
+			task.setName("new name");
+			task.setStatus(TaskStatus.InProgress);
+			task.setName("newer name");
+		});
+		assertEquals(List.of(new ChangeEvent.TaskChanged(task,
+				EnumSet.of(ChangeEvent.Field.Name, ChangeEvent.Field.Status))),
+			delivered.poll(5, TimeUnit.SECONDS), "Field changes to one task are merged");
+
+		task.setEstimate(TimeEstimate.Hour);
+		assertEquals(List.of(new ChangeEvent.TaskChanged(task, EnumSet.of(ChangeEvent.Field.Estimate))),
+			delivered.poll(5, TimeUnit.SECONDS), "A change outside a transaction is delivered by itself");
+
+		tasks.inTransaction(() -> {
+			task.setName("doomed");
+			tasks.removeIteration(iteration.getId());
+			tasks.removeTask(task.getIdentifier());
+		});
+		assertEquals(List.of(new ChangeEvent.IterationRemoved(iteration.getId()),
+				new ChangeEvent.TaskRemoved(task.getIdentifier())),
+			delivered.poll(5, TimeUnit.SECONDS), "Changes to what is then removed are dropped");
+		assertEquals(new TaskDatabase().getDigest(), tasks.getDigest(), "Removals undo additions in the digest");
+	}
+
+	@Test
+	public void testSeparateDelivery() throws InterruptedException {
+		final TaskDatabase slow = new TaskDatabase();
+		final TaskDatabase fast = new TaskDatabase();
+		final CountDownLatch release = new CountDownLatch(1);
+		final BlockingQueue<List<ChangeEvent>> delivered = new LinkedBlockingQueue<>();
+		slow.addChangeListener(events -> {
+			try {
+				release.await();
+			} catch (final InterruptedException except) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		fast.addChangeListener(delivered::add);
+		slow.addTask(new Task(new TaskIdentifier("testing", "slow"), "slow task"));
+		final Task task = new Task(new TaskIdentifier("testing", "fast"), "fast task");
+		fast.addTask(task);
+		fast.awaitChangeDelivery();
+		final List<ChangeEvent> events = delivered.poll();
+		assertEquals(List.of(new ChangeEvent.TaskAdded(task)), events,
+			"One database's slow listener does not hold up another database's events");
+		assertNotSame(task, ((ChangeEvent.TaskAdded) events.getFirst()).task(),
+			"Listeners get a copy of the task, not the live object");
+		release.countDown();
+		slow.awaitChangeDelivery();
+	}
+}
@@ -0,0 +1,120 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test diffing and merging databases.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestDatabaseDiff {
+	private static final UUID ITERATION = UUID.fromString("b8c6d3e3-d5a8-4d99-b17e-d5f0fd2fe8dd");
+
+	/**
+	 * A fresh copy of the same base database each time.
+	 */
+	private static TaskDatabase base() {
+		final TaskDatabase retval = new TaskDatabase();
+		retval.addIteration(new Iteration(ITERATION, "test iteration", LocalDate.parse("2024-09-09"),
+			LocalDate.parse("2024-09-20")));
+		for (int i = 0; i < 5; i++) {
+			retval.addTask(new Task(new TaskIdentifier("testing", "id" + i), "task " + i, "description " + i));
+		}
+		retval.assignToIteration(new TaskIdentifier("testing", "id0"), ITERATION);
+		return retval;
+	}
+
+	private static TaskIdentifier id(final int number) {
+		return new TaskIdentifier("testing", "id" + number);
+	}
+
+	@Test
+	public void testDiff() {
+		final TaskDatabase before = base();
+		final TaskDatabase after = base();
+		after.getTask(id(1)).setName("renamed");
+		after.getTask(id(1)).setStatus(TaskStatus.InProgress);
+		after.assignToDate(id(0), LocalDate.parse("2024-09-10"));
+		after.addTask(new Task(id(9), "new task"));
+		final List<DatabaseDiff.Change> changes = new ArrayList<>();
+		DatabaseDiff.diff(before, after, changes::add);
+		assertEquals(List.of(new DatabaseDiff.DateChanged(id(0), null, LocalDate.parse("2024-09-10")),
+				new DatabaseDiff.FieldChanged(id(1), ChangeEvent.Field.Name, "task 1", "renamed"),
+				new DatabaseDiff.FieldChanged(id(1), ChangeEvent.Field.Status, TaskStatus.Unscheduled,
+					TaskStatus.InProgress),
+				new DatabaseDiff.TaskAdded(after.getTask(id(9)))),
+			changes, "Field-level changes, dates, and additions are reported");
+		changes.clear();
+		DatabaseDiff.diff(before, base(), changes::add);
+		assertEquals(List.of(), changes, "Equal databases have no differences");
+	}
+
+	@Test
+	public void testMerge() {
+		final TaskDatabase ours = base();
+		final TaskDatabase theirs = base();
+		ours.getTask(id(1)).setName("our name");
+		theirs.getTask(id(1)).setStatus(TaskStatus.Completed);
+		ours.getTask(id(2)).setName("our other name");
+		theirs.getTask(id(2)).setName("their other name");
+		theirs.assignToDate(id(0), LocalDate.parse("2024-09-12"));
+		ours.addTask(new Task(id(8), "our new task"));
+		theirs.addTask(new Task(id(9), "their new task"));
+		final DatabaseDiff.MergeResult result = DatabaseDiff.merge(base(), ours, theirs);
+		final TaskDatabase merged = result.merged();
+		assertEquals("our name", merged.getTask(id(1)).getName(), "Our change is kept");
+		assertEquals(TaskStatus.Completed, merged.getTask(id(1)).getStatus(),
+			"Their change to another field of the same task is kept");
+		assertEquals(LocalDate.parse("2024-09-12"), merged.getAssignedDate(id(0)), "Their scheduling is kept");
+		assertEquals("our new task", merged.getTask(id(8)).getName(), "Our additions are kept");
+		assertEquals("their new task", merged.getTask(id(9)).getName(), "Their additions are kept");
+		assertEquals("our other name", merged.getTask(id(2)).getName(), "Ours wins a conflict");
+		assertEquals(List.of(new DatabaseDiff.Conflict(id(2), "Name", "task 2", "our other name",
+			"their other name")), result.conflicts(), "Conflicts are reported");
+	}
+
+	@Test
+	public void testMergeDeletion() {
+		final TaskDatabase ours = base();
+		final TaskDatabase theirs = new TaskDatabase();
+		final TaskDatabase shrunk = new TaskDatabase();
+		for (final TaskDatabase side : List.of(theirs, shrunk)) {
+			side.addIteration(new Iteration(ITERATION, "test iteration", LocalDate.parse("2024-09-09"),
+				LocalDate.parse("2024-09-20")));
+			side.addTask(new Task(id(0), "task 0", "description 0"));
+			side.assignToIteration(id(0), ITERATION);
+		}
+		ours.getTask(id(3)).setName("changed before their deletion");
+		final DatabaseDiff.MergeResult result = DatabaseDiff.merge(base(), ours, theirs);
+		assertNull(result.merged().getTask(id(1)), "Tasks only they deleted are deleted");
+		assertEquals("changed before their deletion", result.merged().getTask(id(3)).getName(),
+			"Tasks we changed are kept");
+		assertEquals(1, result.conflicts().size(), "Deleting what the other side changed is a conflict");
+		assertEquals(shrunk, DatabaseDiff.merge(base(), shrunk, theirs).merged(),
+			"Deletions on both sides merge cleanly");
+	}
+
+	@Test
+	public void testMergeIterationDates() {
+		final TaskDatabase ours = base();
+		final TaskDatabase theirs = base();
+		ours.addIteration(new Iteration(ITERATION, "test iteration", LocalDate.parse("2024-09-16"),
+			LocalDate.parse("2024-09-20")));
+		theirs.addIteration(new Iteration(ITERATION, "test iteration", LocalDate.parse("2024-09-09"),
+			LocalDate.parse("2024-09-13")));
+		final DatabaseDiff.MergeResult result = DatabaseDiff.merge(base(), ours, theirs);
+		final Iteration merged = result.merged().getIterationById(ITERATION);
+		assertEquals(LocalDate.parse("2024-09-16"), merged.getStartDate(),
+			"Our dates are kept when the merged ones would end before they start");
+		assertEquals(LocalDate.parse("2024-09-20"), merged.getEndDate(), "Our end date is kept too");
+		assertEquals(List.of(new DatabaseDiff.Conflict(ITERATION, "dates", null, "2024-09-16 to 2024-09-20",
+			"2024-09-16 to 2024-09-13")), result.conflicts(), "The invalid combination is reported");
+	}
+}
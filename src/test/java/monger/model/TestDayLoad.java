@@ -0,0 +1,94 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test multi-day scheduling and the per-day load of iterations.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestDayLoad {
+	private static final LocalDate MONDAY = LocalDate.parse("2024-09-09");
+
+	private static Task task(final TaskDatabase tasks, final String id, final TimeEstimate estimate,
+							 final Iteration iteration) {
+		final Task task = new Task(new TaskIdentifier("testing", id), "Task " + id);
+		task.setEstimate(estimate);
+		tasks.addTask(task);
+		tasks.assignToIteration(task.getIdentifier(), iteration);
+		return task;
+	}
+
+	@Test
+	public void testLoad() {
+		final TaskDatabase tasks = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "Sprint", MONDAY, MONDAY.plusDays(4));
+		final Iteration other = new Iteration(UUID.randomUUID(), "Next", MONDAY.plusDays(7), MONDAY.plusDays(11));
+		tasks.addIteration(iteration);
+		tasks.addIteration(other);
+		final Task big = task(tasks, "big", TimeEstimate.TwoDays, iteration);
+		final Task small = task(tasks, "small", TimeEstimate.Hour, iteration);
+		tasks.assignToDates(big.getIdentifier(), MONDAY, MONDAY.plusDays(2));
+		tasks.assignToDate(small.getIdentifier(), MONDAY.plusDays(1));
+		assertEquals(MONDAY.plusDays(2), tasks.getAssignedEndDate(big.getIdentifier()), "Ranges are kept");
+		assertEquals(MONDAY.plusDays(1), tasks.getAssignedEndDate(small.getIdentifier()),
+			"A one-day task ends on its day");
+		assertThrows(IllegalArgumentException.class,
+			() -> tasks.assignToDates(small.getIdentifier(), MONDAY.plusDays(3), MONDAY.plusDays(5)),
+			"Ranges must be within the iteration");
+		assertThrows(IllegalArgumentException.class,
+			() -> tasks.assignToDates(small.getIdentifier(), MONDAY.plusDays(3), MONDAY.plusDays(2)),
+			"Ranges must not end before they start");
+
+		final DayLoad load = tasks.getLoad(iteration);
+		assertSame(load, tasks.getLoad(iteration), "The load is built once");
+		assertEquals(22, load.getLoad(MONDAY), "The remainder of a spread budget goes to the first days");
+		assertEquals(25, load.getLoad(MONDAY.plusDays(1)), "Spread and one-day budgets add up");
+		assertEquals(21, load.getLoad(MONDAY.plusDays(2)), "Budgets are spread over the whole range");
+		assertEquals(0, load.getLoad(MONDAY.plusDays(3)), "Days after the range are unaffected");
+		assertEquals(68, load.getLoad(MONDAY, MONDAY.plusDays(4)), "The whole iteration has every budget");
+		assertEquals(25, load.getPeak(MONDAY, MONDAY.plusDays(4)), "The busiest day is found");
+		assertTrue(load.isOverCapacity(24), "Overloaded days are found");
+		assertFalse(load.isOverCapacity(25), "Days at capacity are not overloaded");
+		assertEquals(MONDAY.plusDays(1), load.getFirstOverCapacity(22), "The first overloaded day is found");
+		assertNull(load.getFirstOverCapacity(32), "No day is over a generous capacity");
+
+		big.setEstimate(TimeEstimate.AllDay);
+		assertEquals(11, load.getLoad(MONDAY), "Re-estimating updates the load");
+		assertEquals(36, load.getLoad(MONDAY, MONDAY.plusDays(4)), "Re-estimating updates the load");
+		tasks.assignToDates(big.getIdentifier(), MONDAY.plusDays(3), MONDAY.plusDays(4));
+		assertEquals(0, load.getLoad(MONDAY), "Rescheduling moves the load");
+		assertEquals(16, load.getLoad(MONDAY.plusDays(4)), "Rescheduling moves the load");
+		tasks.assignToIteration(small.getIdentifier(), other);
+		assertEquals(32, load.getLoad(MONDAY, MONDAY.plusDays(4)), "Tasks moved out no longer count");
+		small.setEstimate(TimeEstimate.Epic);
+		assertEquals(0, tasks.getLoad(other).getLoad(MONDAY.plusDays(7), MONDAY.plusDays(11)),
+			"Tasks without a date, or too big to budget, do not count");
+
+		iteration.setEndDate(MONDAY.plusDays(3));
+		assertEquals(16, tasks.getLoad(iteration).getLoad(MONDAY, MONDAY.plusDays(3)),
+			"Changing the iteration's dates rebuilds its load, dropping days outside it");
+	}
+
+	@Test
+	public void testPlannerCountsRanges() {
+		final TaskDatabase tasks = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "Sprint", MONDAY, MONDAY.plusDays(1));
+		tasks.addIteration(iteration);
+		final Task big = task(tasks, "big", TimeEstimate.TwoDays, iteration);
+		tasks.assignToDates(big.getIdentifier(), MONDAY, MONDAY.plusDays(1));
+		final Task unplanned = task(tasks, "unplanned", TimeEstimate.Hour, iteration);
+		final Planner.Plan plan = Planner.plan(tasks, iteration, 32);
+		assertTrue(plan.unplaced().contains(unplanned.getIdentifier()),
+			"A task spread over every day leaves no room on any of them");
+	}
+}
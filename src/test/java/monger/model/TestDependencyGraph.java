@@ -0,0 +1,141 @@
+package monger.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the task dependency graph.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestDependencyGraph {
+	private static TaskIdentifier id(final String identifier) {
+		return new TaskIdentifier("testing", identifier);
+	}
+
+	private static void assertOrdered(final DependencyGraph graph, final List<TaskIdentifier> tasks) {
+		final List<TaskIdentifier> order = graph.topologicalOrder();
+		final Map<TaskIdentifier, Integer> positions = new HashMap<>();
+		for (int i = 0; i < order.size(); i++) {
+			positions.put(order.get(i), i);
+		}
+		for (final TaskIdentifier task : tasks) {
+			for (final TaskIdentifier prerequisite : graph.getPrerequisites(task)) {
+				assertTrue(positions.get(prerequisite) < positions.get(task),
+					"%s is ordered before %s, which depends on it".formatted(prerequisite, task));
+			}
+		}
+	}
+
+	@Test
+	public void testGraph() {
+		final TaskDatabase tasks = new TaskDatabase();
+		for (final String name : List.of("design", "build", "test", "document", "release")) {
+			tasks.addTask(new Task(id(name), name));
+		}
+		tasks.getTask(id("design")).setEstimate(TimeEstimate.FourHours);
+		tasks.getTask(id("build")).setEstimate(TimeEstimate.AllDay);
+		tasks.getTask(id("test")).setEstimate(TimeEstimate.TwoHours);
+		tasks.getTask(id("document")).setEstimate(TimeEstimate.Hour);
+		tasks.getTask(id("release")).setEstimate(TimeEstimate.QuarterHour);
+		final DependencyGraph graph = new DependencyGraph();
+		// Added out of order, so that the tasks must be re-ranked.
+		assertTrue(graph.addDependency(id("release"), id("test")), "New dependencies are added");
+		assertTrue(graph.addDependency(id("release"), id("document")), "New dependencies are added");
+		assertTrue(graph.addDependency(id("document"), id("design")), "New dependencies are added");
+		assertTrue(graph.addDependency(id("build"), id("design")), "New dependencies are added");
+		assertTrue(graph.addDependency(id("test"), id("build")), "New dependencies are added");
+		assertFalse(graph.addDependency(id("test"), id("build")), "Duplicate dependencies are ignored");
+		assertEquals(5, graph.size(), "Each dependency is counted once");
+		assertThrows(IllegalArgumentException.class, () -> graph.addDependency(id("design"), id("release")),
+			"Indirect cycles are rejected");
+		assertThrows(IllegalArgumentException.class, () -> graph.addDependency(id("build"), id("build")),
+			"Tasks cannot depend on themselves");
+		assertEquals(5, graph.size(), "Rejected dependencies are not added");
+		assertOrdered(graph, graph.topologicalOrder());
+
+		final DependencyGraph.CriticalPath path = graph.criticalPath(tasks);
+		assertEquals(List.of(id("design"), id("build"), id("test"), id("release")), path.tasks(),
+			"The critical path follows the longest chain");
+		assertEquals(16 + 32 + 8 + 1, path.quarterHours(), "The critical path's length is its tasks' estimates");
+
+		assertEquals(Set.of(id("build"), id("document"), id("test"), id("release")),
+			Set.copyOf(graph.blocked(tasks)), "Everything but the first task is blocked");
+		tasks.getTask(id("design")).setStatus(TaskStatus.Completed);
+		tasks.getTask(id("document")).setStatus(TaskStatus.Completed);
+		assertEquals(List.of(id("test"), id("release")), graph.blocked(tasks),
+			"Tasks whose prerequisites are all completed are not blocked");
+
+		assertTrue(graph.removeDependency(id("test"), id("build")), "Dependencies can be removed");
+		assertFalse(graph.removeDependency(id("test"), id("build")), "Removed dependencies are gone");
+		assertEquals(List.of(id("release")), graph.blocked(tasks), "Removed dependencies do not block");
+		assertTrue(graph.addDependency(id("build"), id("test")), "Removal can make way for the reverse");
+		assertEquals(Set.of(id("design"), id("test")), Set.copyOf(graph.getPrerequisites(id("build"))),
+			"Prerequisites are listed");
+		assertEquals(Set.of(id("build"), id("release")), Set.copyOf(graph.getDependents(id("test"))),
+			"Dependents are listed");
+		assertOrdered(graph, graph.topologicalOrder());
+	}
+
+	@Test
+	public void testLargeGraph() {
+		final DependencyGraph graph = new DependencyGraph();
+		final TaskDatabase tasks = new TaskDatabase();
+		final int count = 100_000;
+		final TaskIdentifier[] ids = new TaskIdentifier[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = id("task" + i);
+			final Task task = new Task(ids[i], "Task " + i);
+			task.setEstimate(TimeEstimate.QuarterHour);
+			tasks.addTask(task);
+		}
+		// A long chain, built from both ends, and random edges consistent with it.
+		for (int i = count / 2; i > 0; i--) {
+			graph.addDependency(ids[i], ids[i - 1]);
+		}
+		for (int i = count / 2 + 1; i < count; i++) {
+			graph.addDependency(ids[i], ids[i - 1]);
+		}
+		final Random random = new Random(42);
+		for (int i = 0; i < count * 3; i++) {
+			final int one = random.nextInt(count);
+			final int two = random.nextInt(count);
+			if (one != two) {
+				graph.addDependency(ids[Math.max(one, two)], ids[Math.min(one, two)]);
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> graph.addDependency(ids[0], ids[count - 1]),
+			"Cycles through the whole graph are caught");
+		final List<TaskIdentifier> order = graph.topologicalOrder();
+		for (int i = 0; i < count; i++) {
+			assertEquals(ids[i], order.get(i), "The only topological order of a chain is found");
+		}
+		assertEquals(count, graph.criticalPath(tasks).quarterHours(), "The critical path is the chain");
+
+		// A hub with many edges each way, losing ones from the middle of its lists.
+		final TaskIdentifier hub = id("hub");
+		for (int i = 0; i < 1000; i++) {
+			graph.addDependency(hub, ids[i]);
+			graph.addDependency(ids[count - 1 - i], hub);
+		}
+		final int size = graph.size();
+		for (int i = 1; i < 1000; i += 2) {
+			assertTrue(graph.removeDependency(hub, ids[i]), "Prerequisites can be removed");
+			assertTrue(graph.removeDependency(ids[count - 1 - i], hub), "Dependents can be removed");
+		}
+		assertEquals(size - 1000, graph.size(), "Each removal is counted");
+		assertEquals(500, graph.getPrerequisites(hub).size(), "The other prerequisites are kept");
+		assertEquals(500, graph.getDependents(hub).size(), "The other dependents are kept");
+		assertFalse(graph.getPrerequisites(hub).contains(ids[1]), "Removed prerequisites are gone");
+		assertTrue(graph.addDependency(hub, ids[1]), "Removed dependencies can be added again");
+	}
+}
@@ -0,0 +1,128 @@
+package monger.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the incrementally-maintained database digest.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestDigest {
+	private static final UUID FIRST = UUID.fromString("4f3c3e2a-2f7e-4c53-8f0c-6c1f0a9e3d11");
+	private static final UUID SECOND = UUID.fromString("9a1b2c3d-4e5f-4a6b-8c7d-9e0f1a2b3c4d");
+
+	private static TaskIdentifier id(final int number) {
+		return new TaskIdentifier("testing", "id" + number);
+	}
+
+	private static TaskDatabase base() {
+		final TaskDatabase retval = new TaskDatabase();
+		retval.addIteration(new Iteration(FIRST, "first", LocalDate.parse("2024-09-09"),
+			LocalDate.parse("2024-09-20")));
+		retval.addIteration(new Iteration(SECOND, "second", LocalDate.parse("2024-09-23"),
+			LocalDate.parse("2024-10-04")));
+		for (int i = 0; i < 3; i++) {
+			retval.addTask(new Task(id(i), "task " + i, "description " + i));
+		}
+		retval.assignToIteration(id(0), FIRST);
+		retval.assignToDates(id(0), LocalDate.parse("2024-09-10"), LocalDate.parse("2024-09-11"));
+		return retval;
+	}
+
+	/**
+	 * Every kind of change, each applied to a fresh database, must move the digest away from the base's and from
+	 * every other change's, and make the database unequal to the base.
+	 */
+	@Test
+	public void testEveryChange() {
+		final List<Consumer<TaskDatabase>> changes = List.of(
+			tasks -> tasks.getTask(id(1)).setName("renamed"),
+			tasks -> tasks.getTask(id(1)).setDescription("described differently"),
+			tasks -> tasks.getTask(id(1)).setLazyDescription(() -> "lazily described",
+				Fingerprint.of("lazily described")),
+			tasks -> tasks.getTask(id(1)).setEstimate(TimeEstimate.Hour),
+			tasks -> tasks.getTask(id(1)).setStatus(TaskStatus.InProgress),
+			tasks -> tasks.getTask(id(1)).setUpstreamURL("https://example.com/1"),
+			tasks -> tasks.getIterationById(FIRST).setName("renamed iteration"),
+			tasks -> tasks.getIterationById(SECOND).setEndDate(LocalDate.parse("2024-10-05")),
+			tasks -> tasks.addIteration(new Iteration(UUID.fromString("00000000-0000-4000-8000-000000000001"),
+				"third", LocalDate.parse("2024-10-07"), LocalDate.parse("2024-10-18"))),
+			tasks -> tasks.addTask(new Task(id(9), "new task")),
+			tasks -> tasks.assignToIteration(id(1), FIRST),
+			tasks -> tasks.assignToIteration(id(0), SECOND),
+			tasks -> {
+				tasks.assignToIteration(id(1), FIRST);
+				tasks.assignToDate(id(1), LocalDate.parse("2024-09-12"));
+			},
+			tasks -> tasks.assignToDates(id(0), LocalDate.parse("2024-09-10"), LocalDate.parse("2024-09-12")),
+			tasks -> tasks.assignToDates(id(0), LocalDate.parse("2024-09-09"), LocalDate.parse("2024-09-11")),
+			tasks -> tasks.clearDate(id(0)),
+			tasks -> tasks.unassign(id(0)),
+			tasks -> tasks.addIteration(new Iteration(FIRST, "replaced", LocalDate.parse("2024-09-09"),
+				LocalDate.parse("2024-09-20"))));
+		final TaskDatabase unchanged = base();
+		final Set<Long> digests = new HashSet<>();
+		digests.add(unchanged.getDigest());
+		for (int i = 0; i < changes.size(); i++) {
+			final TaskDatabase changed = base();
+			changes.get(i).accept(changed);
+			assertTrue(digests.add(changed.getDigest()), "Change " + i + " gives a digest of its own");
+			assertNotEquals(unchanged, changed, "Change " + i + " makes the database differ");
+		}
+		final TaskDatabase reverted = base();
+		reverted.getTask(id(1)).setName("renamed");
+		reverted.getTask(id(1)).setName("task 1");
+		assertEquals(unchanged.getDigest(), reverted.getDigest(), "Undoing a change restores the digest");
+		assertEquals(unchanged, reverted, "Undoing a change restores equality");
+		final TaskDatabase replaced = base();
+		replaced.addIteration(new Iteration(FIRST, "first", LocalDate.parse("2024-09-09"),
+			LocalDate.parse("2024-09-20")));
+		assertEquals(unchanged, replaced, "Replacing an iteration with an equal one changes nothing");
+		assertEquals(LocalDate.parse("2024-09-10"), replaced.getAssignedDate(id(0)),
+			"Tasks in a replaced iteration keep their dates");
+	}
+
+	@Test
+	public void testOrderIndependence() {
+		final TaskDatabase expected = base();
+		final Random random = new Random(7);
+		for (int round = 0; round < 20; round++) {
+			final List<Runnable> steps = new ArrayList<>();
+			final TaskDatabase shuffled = new TaskDatabase();
+			steps.add(() -> shuffled.addIteration(new Iteration(SECOND, "second", LocalDate.parse("2024-09-23"),
+				LocalDate.parse("2024-10-04"))));
+			for (int i = 2; i >= 0; i--) {
+				final int number = i;
+				steps.add(() -> shuffled.addTask(new Task(id(number), "task " + number, "description " + number)));
+			}
+			Collections.shuffle(steps, random);
+			shuffled.addIteration(new Iteration(FIRST, "first", LocalDate.parse("2024-09-09"),
+				LocalDate.parse("2024-09-20")));
+			steps.forEach(Runnable::run);
+			if (random.nextBoolean()) {
+				// Reach the same assignment by way of a different one.
+				shuffled.assignToIteration(id(0), SECOND);
+				shuffled.assignToDate(id(0), LocalDate.parse("2024-09-30"));
+			}
+			shuffled.assignToIteration(id(0), FIRST);
+			shuffled.assignToDates(id(0), LocalDate.parse("2024-09-10"), LocalDate.parse("2024-09-11"));
+			assertEquals(expected.getDigest(), shuffled.getDigest(),
+				"The digest does not depend on the order of additions");
+			assertEquals(expected, shuffled, "Databases built in different orders are equal");
+		}
+		assertEquals(expected.getDigest(), expected.copy().getDigest(), "Copies have the same digest");
+	}
+}
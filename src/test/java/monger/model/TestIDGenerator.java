@@ -0,0 +1,93 @@
+package monger.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the block-allocating ID generator.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestIDGenerator {
+	@Test
+	public void testRegister() {
+		final IDGenerator generator = new IDGenerator(0L, 4);
+		generator.register(100L);
+		generator.register(50L);
+		assertEquals(101L, generator.getHighWaterMark(), "Registering raises the high-water mark, never lowers it");
+		assertEquals(101L, generator.getId(), "IDs start above registered ones");
+		assertEquals(105L, generator.getHighWaterMark(), "A whole block is reserved at once");
+		assertEquals(102L, generator.getId(), "IDs come from the reserved block");
+		assertThrows(IllegalArgumentException.class, () -> new IDGenerator(0L, 0), "Blocks cannot be empty");
+	}
+
+	@Test
+	public void testSaveAndLoad(final @TempDir Path dir) throws IOException {
+		final Path file = dir.resolve("ids");
+		assertEquals(0L, IDGenerator.load(file).getHighWaterMark(), "A missing file starts from zero");
+		final IDGenerator generator = new IDGenerator();
+		final Set<Long> issued = new HashSet<>();
+		for (int i = 0; i < 10; i++) {
+			issued.add(generator.getId());
+		}
+		generator.save(file);
+		final IDGenerator reloaded = IDGenerator.load(file);
+		assertEquals(generator.getHighWaterMark(), reloaded.getHighWaterMark(), "The high-water mark is kept");
+		for (int i = 0; i < 1000; i++) {
+			assertFalse(issued.contains(reloaded.getId()), "A reloaded generator never repeats an ID");
+		}
+		Files.writeString(file, "not a number");
+		assertThrows(IOException.class, () -> IDGenerator.load(file), "A malformed file is reported");
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final IDGenerator generator = new IDGenerator(0L, 16);
+		final Set<Long> issued = ConcurrentHashMap.newKeySet();
+		final int threads = 8;
+		final int perThread = 10_000;
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Thread> workers = new ArrayList<>();
+		final boolean[] duplicate = {false};
+		for (int i = 0; i < threads; i++) {
+			workers.add(Thread.ofPlatform().start(() -> {
+				try {
+					start.await();
+				} catch (final InterruptedException except) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				for (int j = 0; j < perThread; j++) {
+					if (!issued.add(generator.getId())) {
+						synchronized (duplicate) {
+							duplicate[0] = true;
+						}
+					}
+				}
+			}));
+		}
+		start.countDown();
+		for (final Thread worker : workers) {
+			worker.join();
+		}
+		synchronized (duplicate) {
+			assertFalse(duplicate[0], "No ID is handed out twice");
+		}
+		assertEquals(threads * perThread, issued.size(), "Every ID is distinct");
+		assertTrue(generator.getHighWaterMark() >= threads * perThread, "Every ID is below the high-water mark");
+	}
+}
@@ -0,0 +1,60 @@
+package monger.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test the primitive long-to-int map.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestLongIntMap {
+	@Test
+	public void testBasics() {
+		final LongIntMap map = new LongIntMap();
+		assertEquals(LongIntMap.ABSENT, map.put(1L, 0), "Nothing was stored before");
+		assertEquals(LongIntMap.ABSENT, map.put(-1L, 7), "Negative keys are distinct");
+		assertEquals(0, map.get(1L), "Zero is a value like any other");
+		assertEquals(7, map.get(-1L), "Stored values are found");
+		assertEquals(LongIntMap.ABSENT, map.get(2L), "Missing keys are not found");
+		assertEquals(0, map.put(1L, 3), "Replacing returns the previous value");
+		assertEquals(2, map.size(), "Replacing does not change the size");
+		assertEquals(3, map.remove(1L), "Removing returns the removed value");
+		assertEquals(LongIntMap.ABSENT, map.remove(1L), "Removing a missing key does nothing");
+		assertEquals(1, map.size(), "Removing changes the size");
+		assertThrows(IllegalArgumentException.class, () -> map.put(5L, -2), "Negative values are rejected");
+	}
+
+	/**
+	 * Random puts and removes over few enough keys that probe runs collide, through several resizes, checked
+	 * against a HashMap after every step.
+	 */
+	@Test
+	public void testAgainstHashMap() {
+		final Random random = new Random(42);
+		final LongIntMap map = new LongIntMap();
+		final Map<Long, Integer> expected = new HashMap<>();
+		for (int step = 0; step < 20000; step++) {
+			final long key = ((long) random.nextInt(64) << 32) | random.nextInt(64);
+			if (random.nextInt(3) == 0) {
+				assertEquals((int) expected.getOrDefault(key, LongIntMap.ABSENT), map.remove(key),
+					"Removing returns what was stored");
+				expected.remove(key);
+			} else {
+				final int value = random.nextInt(1000);
+				assertEquals((int) expected.getOrDefault(key, LongIntMap.ABSENT), map.put(key, value),
+					"Putting returns what was stored");
+				expected.put(key, value);
+			}
+			assertEquals(expected.size(), map.size(), "Sizes match");
+		}
+		for (final Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			assertEquals((int) entry.getValue(), map.get(entry.getKey()), "Every entry is found");
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package monger.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the primitive-keyed task map.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestLongTaskMap {
+	private static Task task(final long id) {
+		return new Task(new TaskIdentifier("testing", "id" + id), "Task " + id);
+	}
+
+	@Test
+	public void testBasics() {
+		final LongTaskMap map = new LongTaskMap();
+		final Task first = task(1);
+		final Task second = task(2);
+		assertNull(map.put(1L, first), "Nothing was stored before");
+		assertNull(map.put(-1L, second), "Negative keys are distinct");
+		assertSame(first, map.get(1L), "Stored tasks are found");
+		assertSame(second, map.get(-1L), "Stored tasks are found");
+		assertNull(map.get(2L), "Missing keys are not found");
+		assertSame(first, map.put(1L, second), "Replacing returns the previous task");
+		assertEquals(2, map.size(), "Replacing does not change the size");
+		assertSame(second, map.remove(1L), "Removing returns the removed task");
+		assertNull(map.remove(1L), "Removing a missing key does nothing");
+		assertFalse(map.containsKey(1L), "Removed keys are gone");
+		assertTrue(map.containsKey(-1L), "Other keys are kept");
+		assertEquals(1, map.size(), "Removing changes the size");
+	}
+
+	/**
+	 * Enough keys in a small enough table that probe runs collide and wrap around, removed in random order, so
+	 * that backward-shift deletion has to move entries across the end of the table and past entries it must not
+	 * move; checked against a HashMap after every step.
+	 */
+	@Test
+	public void testCollisions() {
+		final Random random = new Random(42);
+		for (int round = 0; round < 50; round++) {
+			final LongTaskMap map = new LongTaskMap();
+			final Map<Long, Task> expected = new HashMap<>();
+			final List<Long> keys = new ArrayList<>();
+			for (int i = 0; i < 12; i++) {
+				final long key = random.nextInt(1000) - 500;
+				final Task task = task(key);
+				map.put(key, task);
+				if (expected.put(key, task) == null) {
+					keys.add(key);
+				}
+			}
+			while (!keys.isEmpty()) {
+				final long key = keys.remove(random.nextInt(keys.size()));
+				assertSame(expected.remove(key), map.remove(key), "Removal returns the task stored under the key");
+				assertEquals(expected.size(), map.size(), "Size is kept up to date");
+				for (final Map.Entry<Long, Task> entry : expected.entrySet()) {
+					assertSame(entry.getValue(), map.get(entry.getKey()), "Remaining keys are still reachable");
+				}
+				assertNull(map.get(key), "Removed keys are not found");
+			}
+		}
+	}
+
+	@Test
+	public void testGrowth() {
+		final LongTaskMap map = new LongTaskMap();
+		final Map<Long, Task> expected = new HashMap<>();
+		for (long key = 0; key < 10_000; key++) {
+			final Task task = task(key);
+			map.put(key * 1024, task);
+			expected.put(key * 1024, task);
+		}
+		for (long key = 0; key < 10_000; key += 3) {
+			map.remove(key * 1024);
+			expected.remove(key * 1024);
+		}
+		assertEquals(expected.size(), map.size(), "Size survives resizing");
+		final Map<Long, Task> actual = new HashMap<>();
+		map.forEach(actual::put);
+		assertEquals(expected, actual, "Every entry survives resizing and removal");
+		assertEquals(expected.size(), map.values().count(), "Values are streamed");
+	}
+}
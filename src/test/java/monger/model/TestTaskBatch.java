@@ -0,0 +1,115 @@
+package monger.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test applying batches of changes.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestTaskBatch {
+	private static final UUID ITERATION = UUID.fromString("0b5f6a7e-1c1e-4a53-9c38-2d7e5d1f3a10");
+
+	private static TaskIdentifier id(final int number) {
+		return new TaskIdentifier("testing", "id" + number);
+	}
+
+	/**
+	 * A store in memory that fails to store one task, as a store on disk would if it failed to read the task's
+	 * previous version.
+	 */
+	private static final class FailingStore implements TaskStore {
+		private final Map<TaskIdentifier, Task> tasks = new HashMap<>();
+		private @Nullable Task failing = null;
+
+		@Override
+		public @Nullable Task get(final @NotNull TaskIdentifier identifier) {
+			return tasks.get(identifier);
+		}
+
+		@Override
+		public @Nullable Task put(final @NotNull Task task) {
+			if (task == failing) {
+				throw new UncheckedIOException(new IOException("Failed to read from scratch file"));
+			}
+			return tasks.put(task.getIdentifier(), task);
+		}
+
+		@Override
+		public boolean remove(final @NotNull TaskIdentifier identifier) {
+			return tasks.remove(identifier) != null;
+		}
+
+		@Override
+		public boolean contains(final @NotNull TaskIdentifier identifier) {
+			return tasks.containsKey(identifier);
+		}
+
+		@Override
+		public int size() {
+			return tasks.size();
+		}
+
+		@Override
+		public @NotNull Iterable<Task> tasks() {
+			return tasks.values();
+		}
+	}
+
+	@Test
+	public void testFailedStore() {
+		final FailingStore store = new FailingStore();
+		final TaskDatabase tasks = new TaskDatabase(store);
+		tasks.addIteration(new Iteration(ITERATION, "iteration", LocalDate.parse("2024-09-09"),
+			LocalDate.parse("2024-09-20")));
+		final Task original = new Task(id(0), "original");
+		tasks.addTask(original);
+		final DayLoad load = tasks.getLoad(tasks.getIterationById(ITERATION));
+		final TaskDatabase expected = tasks.copy();
+		final long digest = tasks.getDigest();
+
+		final TaskBatch batch = new TaskBatch();
+		batch.addTask(new Task(id(0), "replacement"));
+		for (int i = 1; i < 5; i++) {
+			final Task task = new Task(id(i), "new " + i);
+			task.setEstimate(TimeEstimate.Hour);
+			batch.addTask(task);
+			if (i == 3) {
+				store.failing = task;
+			}
+			batch.assignToIteration(id(i), ITERATION);
+			batch.assignToDate(id(i), LocalDate.parse("2024-09-10"));
+		}
+		assertThrows(UncheckedIOException.class, () -> tasks.apply(batch), "The store's failure is reported");
+		assertEquals(digest, tasks.getDigest(), "A failed batch leaves the digest as it was");
+		assertEquals(expected, tasks, "A failed batch changes nothing");
+		assertSame(original, tasks.getTask(id(0)), "A task the batch replaced is put back");
+		assertNull(tasks.getTask(id(1)), "Tasks the batch added are taken out again");
+		assertEquals(1, store.size(), "The store holds only what it did before");
+		assertSame(load, tasks.getLoad(tasks.getIterationById(ITERATION)), "Loads are kept");
+
+		store.failing = null;
+		original.setName("changed");
+		assertNotEquals(digest, tasks.getDigest(), "The original task is still tracked after the failed batch");
+		original.setName("original");
+		tasks.apply(batch);
+		assertEquals(5, store.size(), "The batch applies once the store works again");
+		assertEquals(4 * TimeEstimate.Hour.getBudget(),
+			tasks.getLoad(tasks.getIterationById(ITERATION)).getLoad(LocalDate.parse("2024-09-10")),
+			"Loads reflect the batch");
+	}
+}
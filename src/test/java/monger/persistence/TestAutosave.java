@@ -0,0 +1,88 @@
+package monger.persistence;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TimeEstimate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test saving databases in the background.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestAutosave {
+	@Test
+	public void testBurst(final @TempDir Path dir) throws PersistenceException, InterruptedException {
+		final Path file = dir.resolve("tasks.xml");
+		final TaskDatabase tasks = new TaskDatabase();
+		try (final Autosave autosave = new Autosave(tasks, file, Duration.ofMinutes(1))) {
+			tasks.addIteration(new Iteration(UUID.randomUUID(), "Sprint"));
+			for (int i = 0; i < 1000; i++) {
+				final Task task = new Task(new TaskIdentifier("testing", "id" + i), "Task " + i);
+				tasks.addTask(task);
+				task.setEstimate(TimeEstimate.Hour);
+			}
+			assertEquals(0, autosave.getSaveCount(), "Nothing is saved before the quiet period ends");
+			autosave.flush();
+			assertEquals(1, autosave.getSaveCount(), "A burst of changes is saved once");
+			assertEquals(tasks, PersistenceHelper.readFromFile(file), "What is saved is the database");
+			autosave.flush();
+			assertEquals(1, autosave.getSaveCount(), "Nothing is saved when nothing has changed");
+		}
+
+		final TaskDatabase later = PersistenceHelper.readFromFile(file);
+		try (final Autosave autosave = new Autosave(later, file, Duration.ofMillis(20))) {
+			later.getTask(new TaskIdentifier("testing", "id7")).setName("renamed");
+			for (int i = 0; i < 500 && autosave.getSaveCount() == 0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, autosave.getSaveCount(), "Changes are saved once the quiet period has passed");
+			assertEquals(later, PersistenceHelper.readFromFile(file), "What is saved is the database");
+		}
+	}
+
+	/**
+	 * Saving works from a copy kept up to date as changes are committed, so every kind of change must reach it,
+	 * including several to the same task in one transaction, in an order that only works applied as a whole.
+	 */
+	@Test
+	public void testMirror(final @TempDir Path dir) throws PersistenceException {
+		final Path file = dir.resolve("tasks.xml");
+		final TaskDatabase tasks = new TaskDatabase();
+		final Iteration first = new Iteration(UUID.randomUUID(), "First", LocalDate.parse("2024-09-02"),
+			LocalDate.parse("2024-09-13"));
+		final Iteration second = new Iteration(UUID.randomUUID(), "Second", LocalDate.parse("2024-09-16"),
+			LocalDate.parse("2024-09-27"));
+		tasks.addIteration(first);
+		final TaskIdentifier id = new TaskIdentifier("testing", "moved");
+		tasks.addTask(new Task(id, "Moved"));
+		tasks.assignToIteration(id, first);
+		tasks.assignToDate(id, LocalDate.parse("2024-09-03"));
+		try (final Autosave autosave = new Autosave(tasks, file, Duration.ofMinutes(1))) {
+			tasks.addIteration(second);
+			tasks.inTransaction(() -> {
+				tasks.clearDate(id);
+				tasks.getTask(id).setEstimate(TimeEstimate.Hour);
+				tasks.assignToIteration(id, second);
+				tasks.assignToDates(id, LocalDate.parse("2024-09-17"), LocalDate.parse("2024-09-18"));
+			});
+			first.setName("Renamed");
+			tasks.addTask(new Task(new TaskIdentifier("testing", "unassigned"), "Unassigned"));
+			autosave.flush();
+			assertEquals(tasks, PersistenceHelper.readFromFile(file), "Every change is saved");
+			tasks.unassign(id);
+			autosave.flush();
+			assertEquals(tasks, PersistenceHelper.readFromFile(file), "Unassigning is saved");
+			assertEquals(2, autosave.getSaveCount(), "Each flush with changes saves once");
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test locking database files and rejecting stale writes.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestDatabaseLock {
+	private static final TaskIdentifier ID = new TaskIdentifier("testing", "id");
+
+	@Test
+	public void testStaleWrites(final @TempDir Path dir) throws PersistenceException {
+		final Path file = dir.resolve("tasks.xml");
+		final TaskDatabase original = new TaskDatabase();
+		original.addTask(new Task(ID, "a task"));
+		PersistenceHelper.writeToFile(file, original);
+
+		final TaskDatabase first = PersistenceHelper.readFromFile(file);
+		final TaskDatabase second = PersistenceHelper.readFromFile(file);
+		first.getTask(ID).setStatus(TaskStatus.InProgress);
+		second.getTask(ID).setStatus(TaskStatus.Completed);
+		PersistenceHelper.writeToFile(file, first);
+		assertThrows(StaleDatabaseException.class, () -> PersistenceHelper.writeToFile(file, second),
+			"A writer whose copy is older than the file is rejected");
+		assertEquals(TaskStatus.InProgress, PersistenceHelper.readFromFile(file).getTask(ID).getStatus(),
+			"The rejected write changed nothing");
+
+		final TaskDatabase rebased = PersistenceHelper.readFromFile(file);
+		rebased.getTask(ID).setName("renamed");
+		PersistenceHelper.writeToFile(file, rebased);
+		PersistenceHelper.writeToFile(file, first.copy());
+		assertThrows(StaleDatabaseException.class, () -> PersistenceHelper.writeToFile(file, first),
+			"A writer's base moves only when it writes");
+		assertEquals(first, PersistenceHelper.readFromFile(file), "Databases not read from the file overwrite it");
+	}
+
+	/**
+	 * Write the same database repeatedly, checking each time whether the file was rewritten.
+	 */
+	@Test
+	public void testSkippedWrites(final @TempDir Path dir) throws PersistenceException, IOException {
+		final Path file = dir.resolve("tasks.xml");
+		final TaskDatabase tasks = new TaskDatabase();
+		tasks.addTask(new Task(ID, "a task"));
+		PersistenceHelper.writeToFile(file, tasks);
+		final long revision = revision(file);
+		final FileTime marker = FileTime.fromMillis(0L);
+		Files.setLastModifiedTime(file, marker);
+		// That made the file look changed, so the next write is rejected; read it again to accept the new time.
+		assertThrows(StaleDatabaseException.class, () -> PersistenceHelper.writeToFile(file, tasks),
+			"A file whose modification time changed is treated as changed");
+		final TaskDatabase reread = PersistenceHelper.readFromFile(file);
+		PersistenceHelper.writeToFile(file, reread);
+		assertEquals(marker, Files.getLastModifiedTime(file), "An unchanged database is not rewritten");
+		assertEquals(revision, revision(file), "An unchanged database does not bump the revision");
+
+		reread.getTask(ID).setName("renamed");
+		reread.getTask(ID).setName("a task");
+		PersistenceHelper.writeToFile(file, reread);
+		assertEquals(marker, Files.getLastModifiedTime(file), "A change that was undone is not written");
+
+		reread.getTask(ID).setStatus(TaskStatus.Completed);
+		PersistenceHelper.writeToFile(file, reread);
+		assertNotEquals(marker, Files.getLastModifiedTime(file), "A changed database is written");
+		assertEquals(revision + 1, revision(file), "Writing bumps the revision");
+
+		final TaskDatabase other = reread.copy();
+		PersistenceHelper.writeToFile(file, other);
+		assertEquals(revision + 2, revision(file), "A database not read from the file is always written");
+	}
+
+	private static long revision(final Path file) throws PersistenceException {
+		try (final DatabaseLock lock = DatabaseLock.shared(file)) {
+			return lock.getRevision();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("try") // The locks are held only to block each other.
+	public void testLocks(final @TempDir Path dir) throws Exception {
+		final Path file = dir.resolve("tasks.xml");
+		try (final ExecutorService executor = Executors.newCachedThreadPool()) {
+			final CountDownLatch bothReading = new CountDownLatch(2);
+			final CountDownLatch done = new CountDownLatch(1);
+			final Future<?> reader = executor.submit(() -> {
+				try (final DatabaseLock lock = DatabaseLock.shared(file)) {
+					bothReading.countDown();
+					done.await();
+				}
+				return null;
+			});
+			try (final DatabaseLock lock = DatabaseLock.shared(file)) {
+				bothReading.countDown();
+				assertTrue(bothReading.await(10, TimeUnit.SECONDS), "Readers do not block each other");
+				final Future<Long> writer = executor.submit(() -> {
+					try (final DatabaseLock exclusive = DatabaseLock.exclusive(file)) {
+						exclusive.setRevision(exclusive.getRevision() + 1);
+						return exclusive.getRevision();
+					}
+				});
+				assertThrows(TimeoutException.class, () -> writer.get(100, TimeUnit.MILLISECONDS),
+					"Writers wait for readers");
+				assertEquals(0L, lock.getRevision(), "Nothing is written while reading");
+				done.countDown();
+				reader.get();
+				assertFalse(writer.isDone(), "Writers wait for every reader");
+			}
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "The writer finishes once the readers do");
+		}
+		try (final DatabaseLock lock = DatabaseLock.shared(file)) {
+			assertEquals(1L, lock.getRevision(), "The writer's revision is kept");
+		}
+	}
+
+	/**
+	 * Convert two files into each other at the same time, repeatedly; each takes a shared lock on its source and
+	 * an exclusive one on its destination, which deadlocks unless both take them in the same order.
+	 */
+	@Test
+	public void testCrossedConverts(final @TempDir Path dir) throws Exception {
+		final Path first = dir.resolve("first.xml");
+		final Path second = dir.resolve("second.xml");
+		final TaskDatabase tasks = new TaskDatabase();
+		tasks.addTask(new Task(ID, "a task"));
+		PersistenceHelper.writeToFile(first, tasks);
+		PersistenceHelper.writeToFile(second, tasks);
+		// Daemon threads, so that a deadlock fails the test rather than hanging the JVM.
+		final ExecutorService executor = Executors.newCachedThreadPool(Thread.ofPlatform().daemon().factory());
+		try {
+			for (int i = 0; i < 500; i++) {
+				final Future<?> forward = executor.submit(() -> {
+					FormatRegistry.convert(first, second);
+					return null;
+				});
+				final Future<?> backward = executor.submit(() -> {
+					FormatRegistry.convert(second, first);
+					return null;
+				});
+				forward.get(10, TimeUnit.SECONDS);
+				backward.get(10, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(tasks, PersistenceHelper.readFromFile(first), "Both conversions complete");
+	}
+}
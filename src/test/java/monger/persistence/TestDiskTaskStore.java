@@ -0,0 +1,123 @@
+package monger.persistence;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import monger.model.TimeEstimate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test keeping a database's tasks on disk.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestDiskTaskStore {
+	private static TaskIdentifier id(final int i) {
+		return new TaskIdentifier("testing", "id" + i);
+	}
+
+	@Test
+	public void testStore(final @TempDir Path dir) throws PersistenceException {
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "Sprint",
+			LocalDate.parse("2024-09-02"), LocalDate.parse("2024-09-13"));
+		original.addIteration(iteration);
+		for (int i = 0; i < 100; i++) {
+			final Task task = new Task(id(i), "task number " + i, "A description of task number " + i);
+			task.setEstimate(TimeEstimate.Hour);
+			original.addTask(task);
+			if (i % 2 == 0) {
+				original.assignToIteration(task.getIdentifier(), iteration);
+				original.assignToDate(task.getIdentifier(), LocalDate.parse("2024-09-03").plusDays(i % 7));
+			}
+		}
+		final Path file = dir.resolve("tasks.xml");
+		PersistenceHelper.writeToFile(file, original);
+
+		final Path scratch = dir.resolve("scratch");
+		try (final DiskTaskStore store = new DiskTaskStore(scratch, 10)) {
+			final TaskDatabase tasks = PersistenceHelper.readFromFile(file, store);
+			assertFalse(tasks.isInMemory(), "The database knows its tasks are on disk");
+			assertTrue(store.getCachedCount() <= 10, "The cache is bounded");
+			assertEquals(original, tasks, "Every task is read into the store");
+			assertEquals(original.getDigest(), tasks.getDigest(), "The digest is kept as usual");
+			assertEquals(original.getTask(id(42)).getDescription(), tasks.getTask(id(42)).getDescription(),
+				"Descriptions are read back");
+
+			tasks.getTask(id(3)).setStatus(TaskStatus.InProgress);
+			tasks.getTask(id(4)).setEstimate(TimeEstimate.FourHours);
+			for (int i = 50; i < 100; i++) {
+				tasks.getTask(id(i));
+			}
+			assertTrue(store.getCachedCount() <= 10, "Reading evicts the least recently used tasks");
+			assertEquals(TaskStatus.InProgress, tasks.getTask(id(3)).getStatus(), "Evicted changes are written back");
+			assertEquals(TimeEstimate.FourHours, tasks.getTask(id(4)).getEstimate(),
+				"Evicted changes are written back");
+			assertEquals(4 * 49 + 16, tasks.getLoad(iteration).getLoad(LocalDate.parse("2024-09-02"),
+				LocalDate.parse("2024-09-13")), "Changes to tasks no longer in memory still update loads");
+
+			final List<Task> inIteration = new ArrayList<>();
+			tasks.getTasksInIteration(iteration).forEach(inIteration::add);
+			assertEquals(50, inIteration.size(), "Tasks in an iteration are streamed from the store");
+			int count = 0;
+			for (final Task task : tasks.getTasks()) {
+				count++;
+			}
+			assertEquals(100, count, "All tasks are streamed from the store");
+			assertTrue(store.getCachedCount() <= 10, "Streaming does not fill the cache");
+
+			final Task detached = tasks.getTask(id(5));
+			for (int i = 50; i < 100; i++) {
+				tasks.getTask(id(i));
+			}
+			assertSame(detached, tasks.getTask(id(5)), "A task still in use is handed out again, not copied");
+			for (int i = 50; i < 100; i++) {
+				tasks.getTask(id(i));
+			}
+			detached.setName("renamed");
+			assertEquals("renamed", tasks.getTask(id(5)).getName(), "Changes to evicted copies are kept");
+			Task streamed = null;
+			for (final Task task : tasks.getTasks()) {
+				if (task.getIdentifier().equals(id(6))) {
+					streamed = task;
+				}
+			}
+			assertSame(streamed, tasks.getTask(id(6)), "Tasks handed out while streaming are not copied either");
+			streamed.setStatus(TaskStatus.Completed);
+			store.flush();
+			original.getTask(id(3)).setStatus(TaskStatus.InProgress);
+			original.getTask(id(4)).setEstimate(TimeEstimate.FourHours);
+			original.getTask(id(5)).setName("renamed");
+			original.getTask(id(6)).setStatus(TaskStatus.Completed);
+			assertEquals(original, tasks, "The store matches the same changes made in memory");
+			assertEquals(original.getDigest(), tasks.getDigest(), "Each change is counted in the digest once");
+			assertNull(tasks.getTask(id(1000)), "Unknown tasks are not found");
+
+			final Task last = tasks.getTask(id(99));
+			assertTrue(store.remove(id(7)), "Stored tasks can be removed");
+			assertFalse(store.remove(id(7)), "Removing twice does nothing");
+			assertFalse(store.contains(id(7)), "Removed tasks are gone");
+			assertEquals(99, store.size(), "Removing shrinks the store");
+			for (int i = 0; i < 30; i++) {
+				tasks.getTask(id(i));
+			}
+			assertEquals(last, store.get(id(99)), "The task moved into the removed one's place is still found");
+		}
+		assertFalse(Files.exists(scratch), "The scratch file is deleted on close");
+	}
+}
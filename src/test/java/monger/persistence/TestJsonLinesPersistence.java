@@ -0,0 +1,113 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test JSON Lines persistence
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestJsonLinesPersistence {
+	private final JsonLinesWriter writer = new JsonLinesWriter();
+	private final JsonLinesReader reader = new JsonLinesReader();
+
+	@Test
+	public void testPersistence(final @TempDir Path dir) throws PersistenceException, IOException {
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "test \"iteration\"",
+			LocalDate.now(), LocalDate.now().plusDays(14));
+		original.addIteration(iteration);
+		original.addTask(new Task(new TaskIdentifier("testing", "special"), "special characters",
+			"Quotes \", backslashes \\, tabs\t, newlines\n, control \u0001 and Ünïcödé 😀"));
+		// Enough tasks that the file is parsed in several chunks.
+		for (int i = 0; i < 5000; i++) {
+			final Task task = new Task(new TaskIdentifier("testing", "id" + i), "task number " + i,
+				"A description of task number " + i);
+			original.addTask(task);
+			original.assignToIteration(task.getIdentifier(), iteration);
+			if (i % 3 == 0) {
+				original.assignToDate(task.getIdentifier(), LocalDate.now().plusDays(i % 14));
+			} else if (i % 7 == 0) {
+				original.assignToDates(task.getIdentifier(), LocalDate.now().plusDays(i % 12),
+					LocalDate.now().plusDays(i % 12 + 2));
+			}
+		}
+		assertEquals(original, reader.readTasksFromString(writer.writeTasksToString(original)),
+			"Database round-trips through a string");
+		final Path file = dir.resolve("tasks.jsonl");
+		PersistenceHelper.writeToFile(file, original);
+		assertTrue(FormatRegistry.forReading(file) instanceof JsonLinesFormat, "Format is detected");
+		assertEquals(original, reader.readTasks(file), "Database round-trips through a file");
+		assertThrows(PersistenceException.class, () -> reader.readTasksFromString("{\"type\":\"task\"}\n"),
+			"Header is required");
+	}
+
+	@Test
+	public void testAppend(final @TempDir Path dir) throws PersistenceException {
+		final Path file = dir.resolve("tasks.jsonl");
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "test iteration",
+			LocalDate.now(), LocalDate.now().plusDays(14));
+		final Task task = new Task(new TaskIdentifier("testing", "id"), "name for testing");
+		try (final TaskRecordSink sink = writer.appendRecords(file)) {
+			sink.iteration(iteration);
+			sink.task(task, null, null);
+		}
+		final Task updated = new Task(new TaskIdentifier("testing", "id"), "name for testing");
+		updated.setStatus(TaskStatus.values()[TaskStatus.values().length - 1]);
+		try (final TaskRecordSink sink = writer.appendRecords(file)) {
+			sink.task(updated, iteration.getId(), LocalDate.now().plusDays(1));
+		}
+		final TaskDatabase expected = new TaskDatabase();
+		expected.addIteration(iteration);
+		expected.addTask(updated);
+		expected.assignToIteration(updated.getIdentifier(), iteration);
+		expected.assignToDate(updated.getIdentifier(), LocalDate.now().plusDays(1));
+		assertEquals(expected, reader.readTasks(file), "Later records replace earlier ones");
+
+		final Iteration moved = new Iteration(iteration.getId(), "moved iteration", LocalDate.now().plusDays(7),
+			LocalDate.now().plusDays(21));
+		try (final TaskRecordSink sink = writer.appendRecords(file)) {
+			sink.iteration(moved);
+			sink.task(updated, iteration.getId(), null);
+		}
+		final TaskDatabase unscheduled = new TaskDatabase();
+		unscheduled.addIteration(moved);
+		unscheduled.addTask(updated);
+		unscheduled.assignToIteration(updated.getIdentifier(), moved);
+		final TaskDatabase read = reader.readTasks(file);
+		assertEquals(unscheduled, read,
+			"A later record without a date unschedules the task, and a later iteration record replaces the earlier");
+		final List<Iteration> iterations = new ArrayList<>();
+		read.getIterations().forEach(iterations::add);
+		assertEquals(List.of(moved), iterations, "Iterations are not duplicated");
+
+		try (final TaskRecordSink sink = writer.appendRecords(file)) {
+			sink.task(updated, null, null);
+		}
+		final TaskDatabase unassigned = new TaskDatabase();
+		unassigned.addIteration(moved);
+		unassigned.addTask(updated);
+		assertEquals(unassigned, reader.readTasks(file), "A later record without an iteration unassigns the task");
+		try (final DiskTaskStore store = DiskTaskStore.temporary(10)) {
+			assertEquals(unassigned, PersistenceHelper.readFromFile(file, store),
+				"Later records replace earlier ones when read into a store on disk too");
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package monger.persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.stream.Stream;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test sharded directory storage.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestShardedStore {
+	private static Path shardFile(final Path dir, final Iteration iteration) throws PersistenceException {
+		return dir.resolve(ShardedStore.open(dir).getShards().stream()
+			.filter(shard -> iteration.getId().equals(shard.iteration())).findAny().orElseThrow().file());
+	}
+
+	/**
+	 * @return how many files other than hidden ones, such as the lock's sidecar, are in the directory
+	 */
+	private static long fileCount(final Path dir) throws IOException {
+		try (final Stream<Path> files = Files.list(dir)) {
+			return files.filter(file -> !file.getFileName().toString().startsWith(".")).count();
+		}
+	}
+
+	@Test
+	public void testShards(final @TempDir Path dir) throws PersistenceException, IOException {
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration first = new Iteration(UUID.randomUUID(), "first",
+			LocalDate.parse("2024-09-02"), LocalDate.parse("2024-09-13"));
+		final Iteration second = new Iteration(UUID.randomUUID(), "second",
+			LocalDate.parse("2024-09-16"), LocalDate.parse("2024-09-27"));
+		original.addIteration(first);
+		original.addIteration(second);
+		for (int i = 0; i < 30; i++) {
+			final Task task = new Task(new TaskIdentifier("testing", "id" + i), "task number " + i,
+				"A description of task number " + i);
+			original.addTask(task);
+			if (i % 3 == 1) {
+				original.assignToIteration(task.getIdentifier(), first);
+				original.assignToDate(task.getIdentifier(), LocalDate.parse("2024-09-03"));
+			} else if (i % 3 == 2) {
+				original.assignToIteration(task.getIdentifier(), second);
+			}
+		}
+		PersistenceHelper.writeToFile(dir, original);
+		assertEquals(3, ShardedStore.open(dir).getShards().size(), "One shard per iteration, plus unassigned");
+		assertEquals(original, PersistenceHelper.readFromFile(dir), "Database round-trips through shards");
+
+		final Path secondShard = shardFile(dir, second);
+		final FileTime old = FileTime.fromMillis(0L);
+		Files.setLastModifiedTime(secondShard, old);
+		final TaskDatabase partial = PersistenceHelper.readIteration(dir, "first");
+		assertNull(partial.getTask(new TaskIdentifier("testing", "id2")), "Other iterations' shards are not read");
+		assertNotNull(partial.getTask(new TaskIdentifier("testing", "id0")), "Unassigned tasks are read");
+		partial.getTask(new TaskIdentifier("testing", "id1")).setStatus(TaskStatus.InProgress);
+		partial.assignToIteration(new TaskIdentifier("testing", "id0"), first);
+		PersistenceHelper.writeToFile(dir, partial);
+		assertEquals(old, Files.getLastModifiedTime(secondShard), "Unchanged shards are not rewritten");
+
+		final TaskDatabase reread = PersistenceHelper.readFromFile(dir);
+		assertEquals(30, reread.getTasks().spliterator().getExactSizeIfKnown(), "No tasks were lost");
+		assertEquals(TaskStatus.InProgress, reread.getTask(new TaskIdentifier("testing", "id1")).getStatus(),
+			"Changes to a partial database are saved");
+		assertEquals(first, reread.getIteration(new TaskIdentifier("testing", "id0")), "Reassignments are saved");
+		assertEquals(second, reread.getIteration(new TaskIdentifier("testing", "id2")),
+			"Shards not loaded are kept");
+		final Path firstShard = shardFile(dir, first);
+		Files.setLastModifiedTime(firstShard, old);
+		reread.getTask(new TaskIdentifier("testing", "id2")).setName("renamed");
+		PersistenceHelper.writeToFile(dir, reread);
+		assertEquals(old, Files.getLastModifiedTime(firstShard), "Loaded but unchanged shards are not rewritten");
+		assertEquals(firstShard, shardFile(dir, first), "Unchanged shards keep their files");
+		final Path rewritten = shardFile(dir, second);
+		assertNotEquals(secondShard, rewritten, "Changed shards are written to new files");
+		assertFalse(Files.exists(secondShard), "Replaced shards are deleted once the manifest is");
+		assertEquals(4, fileCount(dir), "Only the manifest and the shards it lists remain");
+
+		Files.writeString(rewritten, Files.readString(rewritten).replace("renamed", "changed"));
+		assertThrows(PersistenceException.class, () -> ShardedStore.open(dir).read(),
+			"Shards changed behind our back are detected");
+		assertNotEquals(0, ShardedStore.open(dir).readIteration("first").getDigest(),
+			"Other shards are still readable");
+	}
+
+	/**
+	 * Sharded databases are locked, and stale or unchanged writes are caught, as for a database in one file.
+	 */
+	@Test
+	public void testStaleWrites(final @TempDir Path dir) throws PersistenceException, IOException {
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "first",
+			LocalDate.parse("2024-09-02"), LocalDate.parse("2024-09-13"));
+		original.addIteration(iteration);
+		final TaskIdentifier id = new TaskIdentifier("testing", "id");
+		original.addTask(new Task(id, "a task"));
+		original.assignToIteration(id, iteration);
+		PersistenceHelper.writeToFile(dir, original);
+		assertTrue(Files.exists(dir.resolve(".manifest.xml.lock")), "The lock is kept beside the manifest");
+
+		final TaskDatabase whole = PersistenceHelper.readFromFile(dir);
+		final TaskDatabase partial = PersistenceHelper.readIteration(dir, "first");
+		final FileTime old = FileTime.fromMillis(0L);
+		Files.setLastModifiedTime(ShardedStore.manifest(dir), old);
+		assertThrows(StaleDatabaseException.class, () -> PersistenceHelper.writeToFile(dir, whole),
+			"A manifest whose modification time changed is treated as changed");
+		final TaskDatabase reread = PersistenceHelper.readFromFile(dir);
+		PersistenceHelper.writeToFile(dir, reread);
+		assertEquals(old, Files.getLastModifiedTime(ShardedStore.manifest(dir)),
+			"An unchanged database is not rewritten");
+
+		reread.getTask(id).setStatus(TaskStatus.InProgress);
+		PersistenceHelper.writeToFile(dir, reread);
+		partial.getTask(id).setStatus(TaskStatus.Completed);
+		assertThrows(StaleDatabaseException.class, () -> PersistenceHelper.writeToFile(dir, partial),
+			"A writer whose shards are older than the directory's is rejected");
+		assertEquals(TaskStatus.InProgress, PersistenceHelper.readFromFile(dir).getTask(id).getStatus(),
+			"The rejected write changed nothing");
+	}
+}
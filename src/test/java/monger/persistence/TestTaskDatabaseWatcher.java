@@ -0,0 +1,152 @@
+package monger.persistence;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.StreamSupport;
+import monger.model.ChangeEvent;
+import monger.model.DatabaseDiff;
+import monger.model.Iteration;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.model.TaskStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test keeping a live database up to date with its file.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestTaskDatabaseWatcher {
+	private static TaskIdentifier id(final int i) {
+		return new TaskIdentifier("testing", "id" + i);
+	}
+
+	@Test
+	@SuppressWarnings("try") // The watcher works on its own thread until closed.
+	public void testWatcher(final @TempDir Path dir) throws PersistenceException, InterruptedException {
+		final Path file = dir.resolve("tasks.xml");
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "Sprint",
+			LocalDate.parse("2024-09-02"), LocalDate.parse("2024-09-13"));
+		original.addIteration(iteration);
+		for (int i = 0; i < 10; i++) {
+			original.addTask(new Task(id(i), "Task " + i));
+		}
+		PersistenceHelper.writeToFile(file, original);
+
+		final TaskDatabase live = PersistenceHelper.readFromFile(file);
+		final Task kept = live.getTask(id(1));
+		final List<List<ChangeEvent>> batches = new CopyOnWriteArrayList<>();
+		live.addChangeListener(batches::add);
+		final List<DatabaseDiff.Conflict> conflicts = new ArrayList<>();
+		try (final TaskDatabaseWatcher watcher = new TaskDatabaseWatcher(live, file, Runnable::run,
+				found -> {
+					synchronized (conflicts) {
+						conflicts.addAll(found);
+					}
+				})) {
+			final TaskDatabase other = PersistenceHelper.readFromFile(file);
+			other.getTask(id(1)).setStatus(TaskStatus.InProgress);
+			other.addTask(new Task(id(10), "Task 10"));
+			other.assignToIteration(id(2), iteration.getId());
+			other.assignToDates(id(2), LocalDate.parse("2024-09-03"), LocalDate.parse("2024-09-04"));
+			PersistenceHelper.writeToFile(file, other);
+			// Delivered once the whole reload's transaction is over.
+			for (int i = 0; i < 500 && batches.isEmpty(); i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(other, live, "Changes to the file are made to the live database");
+			assertSame(kept, live.getTask(id(1)), "Only the differences are applied");
+			live.awaitChangeDelivery();
+			assertEquals(1, batches.size(), "Each reload is one transaction");
+
+			final TaskDatabase smaller = new TaskDatabase();
+			smaller.addIteration(new Iteration(iteration.getId(), "Renamed", iteration.getStartDate(),
+				iteration.getEndDate()));
+			smaller.addTask(new Task(id(1), "Task 1"));
+			final List<DatabaseDiff.Change> notMade = DatabaseDiff.update(live, smaller);
+			assertTrue(notMade.isEmpty(), "Every change is made");
+			assertEquals(smaller, live, "Removals are made too");
+			assertEquals("Renamed", live.getIterationById(iteration.getId()).getName(),
+				"Iteration changes are made");
+			assertEquals(TaskStatus.Unscheduled, kept.getStatus(), "Field changes are made");
+		}
+		synchronized (conflicts) {
+			assertTrue(conflicts.isEmpty(), "Nothing in the file conflicted");
+		}
+	}
+
+	/**
+	 * Changes made to the live database but not yet saved survive a reload, and conflicting changes in the file
+	 * are reported rather than made.
+	 */
+	@Test
+	public void testLocalChanges(final @TempDir Path dir) throws PersistenceException {
+		final Path file = dir.resolve("tasks.xml");
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "Sprint",
+			LocalDate.parse("2024-09-02"), LocalDate.parse("2024-09-13"));
+		original.addIteration(iteration);
+		for (int i = 0; i < 10; i++) {
+			original.addTask(new Task(id(i), "Task " + i));
+		}
+		original.assignToIteration(id(4), iteration.getId());
+		original.assignToDate(id(4), LocalDate.parse("2024-09-03"));
+		PersistenceHelper.writeToFile(file, original);
+
+		final TaskDatabase live = PersistenceHelper.readFromFile(file);
+		// Only reloaded explicitly, so the watching thread can't race the test.
+		try (final TaskDatabaseWatcher watcher = new TaskDatabaseWatcher(live, file, command -> {}, found -> {})) {
+			live.getTask(id(3)).setName("Local");
+			final TaskDatabase other = PersistenceHelper.readFromFile(file);
+			other.removeTask(id(4));
+			other.getTask(id(5)).setStatus(TaskStatus.InProgress);
+			other.assignToIteration(id(6), iteration.getId());
+			PersistenceHelper.writeToFile(file, other);
+
+			assertTrue(watcher.reload().isEmpty(), "Changes to different tasks don't conflict");
+			assertEquals("Local", live.getTask(id(3)).getName(), "Unsaved changes are kept");
+			assertNull(live.getTask(id(4)), "Tasks removed in the file are removed");
+			assertEquals(TaskStatus.InProgress, live.getTask(id(5)).getStatus(), "Field changes are made");
+			assertEquals(iteration.getId(), live.getIteration(id(6)).getId(), "Assignments are made");
+			PersistenceHelper.writeToFile(file, live);
+			assertTrue(watcher.reload().isEmpty(), "Our own write is nothing new");
+			assertEquals("Local", PersistenceHelper.readFromFile(file).getTask(id(3)).getName(),
+				"The merged database can be saved");
+
+			final TaskDatabase third = PersistenceHelper.readFromFile(file);
+			third.getTask(id(3)).setName("Theirs");
+			third.addIteration(new Iteration(iteration.getId(), "Renamed", iteration.getStartDate(),
+				LocalDate.parse("2024-09-20")));
+			PersistenceHelper.writeToFile(file, third);
+			live.getTask(id(3)).setName("Ours");
+			final Iteration before = live.getIterationById(iteration.getId());
+			final List<DatabaseDiff.Conflict> conflicts = watcher.reload();
+			assertEquals(List.of(new DatabaseDiff.Conflict(id(3), "Name", "Local", "Ours", "Theirs")), conflicts,
+				"Conflicting changes are reported");
+			assertEquals("Ours", live.getTask(id(3)).getName(), "Our side of a conflict is kept");
+			final Iteration after = live.getIterationById(iteration.getId());
+			assertNotSame(before, after, "Changed iterations are replaced, not changed in place");
+			assertEquals("Sprint", before.getName(), "The old iteration is untouched");
+			assertEquals("Renamed", after.getName(), "The replacement has the new name");
+			assertEquals(List.of(after), StreamSupport.stream(live.getIterations().spliterator(), false).toList(),
+				"The iteration is in the database once");
+			assertSame(after, live.getIteration(id(6)), "Tasks are moved to the replacement");
+			assertThrows(StaleDatabaseException.class, () -> PersistenceHelper.writeToFile(file, live),
+				"After a conflict the database is not taken to be up to date with the file");
+		}
+	}
+}
@@ -1,15 +1,27 @@
 package monger.persistence;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.UUID;
+import java.util.stream.Stream;
 import monger.model.Iteration;
 import monger.model.Task;
 import monger.model.TaskDatabase;
 import monger.model.TaskIdentifier;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test XML persistence
@@ -51,4 +63,230 @@ public class TestXmlPersistence {
 		final TaskDatabase copy = reader.readTasksFromString(xml);
 		assertEquals(original, copy, "Slightly-complex database serializes");
 	}
+
+	@Test
+	public void testInconsistentRecords() throws PersistenceException {
+		final TaskDatabase original = new TaskDatabase();
+		final Task task = new Task(new TaskIdentifier("testing", "id"), "name for testing");
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "test iteration",
+			LocalDate.now(), LocalDate.now().plusDays(14));
+		original.addTask(task);
+		original.addIteration(iteration);
+		original.assignToIteration(task.getIdentifier(), iteration);
+		final String xml = writer.writeTasksToString(original).replaceAll("<iterations>.*</iterations>", "");
+		assertThrows(PersistenceException.class, () -> reader.readTasksFromString(xml),
+			"Task in an iteration that is not in the file is rejected");
+	}
+
+	@Test
+	public void testLazyDescriptions(final @TempDir Path dir) throws PersistenceException, IOException {
+		final TaskDatabase original = new TaskDatabase();
+		final Task first = new Task(new TaskIdentifier("testing", "one"), "first task",
+			"A description with <markup> & \"quotes\",\nover two lines");
+		final Task second = new Task(new TaskIdentifier("testing", "two"), "second task", "");
+		final Task third = new Task(new TaskIdentifier("testing", "three"), "third task", "Ünïcödé text");
+		original.addTask(first);
+		original.addTask(second);
+		original.addTask(third);
+		final Path file = dir.resolve("tasks.xml");
+		writer.writeTasks(file, original);
+		final TaskDatabase copy = PersistenceHelper.readFromFile(file);
+		for (final Task task : copy.getTasks()) {
+			assertFalse(task.isDescriptionLoaded(), "Descriptions are not read at load time");
+		}
+		assertEquals(original, copy, "Lazily-read descriptions match the originals");
+		writer.writeTasks(file, copy);
+		assertEquals(original, copy, "Descriptions still read after their database's file is rewritten");
+		assertEquals(original, PersistenceHelper.readFromFile(file), "Database survives being rewritten in place");
+		final TaskDatabase eager = reader.readTasks(file);
+		for (final Task task : eager.getTasks()) {
+			assertTrue(task.isDescriptionLoaded(), "The XML reader itself reads descriptions eagerly");
+		}
+		assertEquals(original, eager, "Eager reading still works");
+	}
+
+	@Test
+	public void testEscaping() throws PersistenceException {
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "tab\tnewline\ncarriage return\r\nend",
+			LocalDate.now(), LocalDate.now().plusDays(14));
+		original.addIteration(iteration);
+		final Task task = new Task(new TaskIdentifier("testing\t\"provider\"", "id\r\nwith <line> & ends"),
+			"name with \uD83D\uDE00 and \uD834\uDD1E", "description\r\nwith\tevery\rkind\n of whitespace");
+		original.addTask(task);
+		original.assignToIteration(task.getIdentifier(), iteration);
+		final String xml = writer.writeTasksToString(original);
+		assertFalse(xml.contains("\r"), "Carriage returns are always escaped");
+		assertTrue(xml.contains("tab&#9;newline&#10;carriage return&#13;&#10;end"),
+			"Tabs and newlines in attributes are escaped");
+		assertTrue(xml.contains("with\tevery&#13;kind\n of"), "Tabs and newlines in text are left alone");
+		assertTrue(xml.contains("\uD83D\uDE00"), "Supplementary characters are encoded as such");
+		assertEquals(original, reader.readTasksFromString(xml), "Whitespace and markup in text and attributes survive");
+		assertEquals(original, new MappedXmlReader().readTasksFromString(xml),
+			"Whitespace and markup survive the mapped reader too");
+
+		final TaskDatabase unpaired = new TaskDatabase();
+		unpaired.addTask(new Task(new TaskIdentifier("testing", "lone"), "high \uD83D alone, low \uDE00 alone",
+			"reversed \uDE00\uD83D pair at the end \uD83D"));
+		final Task read = reader.readTasksFromString(writer.writeTasksToString(unpaired))
+								  .getTask(new TaskIdentifier("testing", "lone"));
+		assertEquals("high ? alone, low ? alone", read.getName(), "Unpaired surrogates are replaced");
+		assertEquals("reversed ?? pair at the end ?", read.getDescription(),
+			"Surrogates out of order, or cut off at the end, are replaced");
+	}
+
+	/**
+	 * A description loaded while the database is written may itself write a database on the same thread, which must
+	 * not share the first write's buffer.
+	 */
+	@Test
+	public void testReentrantWrite() throws PersistenceException {
+		final TaskDatabase inner = new TaskDatabase();
+		inner.addTask(new Task(new TaskIdentifier("testing", "inner"), "inner task", "x".repeat(100_000)));
+		final String innerXml = writer.writeTasksToString(inner);
+		final TaskDatabase outer = new TaskDatabase();
+		final String before = "y".repeat(40_000);
+		outer.addTask(new Task(new TaskIdentifier("testing", "a"), "first", before));
+		final Task task = new Task(new TaskIdentifier("testing", "b"), "second");
+		task.setLazyDescription(() -> {
+			try {
+				return Integer.toString(writer.writeTasksToString(inner).length());
+			} catch (final PersistenceException except) {
+				throw new IllegalStateException(except);
+			}
+		}, 0L);
+		outer.addTask(task);
+		final TaskDatabase read = reader.readTasksFromString(writer.writeTasksToString(outer));
+		assertEquals(before, read.getTask(new TaskIdentifier("testing", "a")).getDescription(),
+			"Text buffered before the nested write is intact");
+		assertEquals(Integer.toString(innerXml.length()),
+			read.getTask(new TaskIdentifier("testing", "b")).getDescription(), "The nested write is intact");
+		assertEquals(innerXml, writer.writeTasksToString(inner), "The buffers are still usable afterwards");
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"tasks.xml.gz", "tasks.xml.bgz"})
+	public void testCompressedPersistence(final String filename, final @TempDir Path dir)
+			throws PersistenceException, IOException {
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "test iteration",
+			LocalDate.now(), LocalDate.now().plusDays(14));
+		original.addIteration(iteration);
+		// Enough tasks that the output spans several compression blocks.
+		for (int i = 0; i < 5000; i++) {
+			final Task task = new Task(new TaskIdentifier("testing", "id" + i), "task number " + i,
+				"A description of task number %d, which repeats itself a good deal".formatted(i));
+			original.addTask(task);
+			original.assignToIteration(task.getIdentifier(), iteration);
+		}
+		final Path file = dir.resolve(filename);
+		PersistenceHelper.writeToFile(file, original);
+		assertTrue(Files.size(file) * 4 < writer.writeTasksToString(original).length(),
+			"Compressed file is substantially smaller");
+		assertEquals(original, PersistenceHelper.readFromFile(file), "Compressed database round-trips");
+	}
+
+	@Test
+	public void testParseCache(final @TempDir Path dir) throws PersistenceException, IOException {
+		final TaskDatabase original = new TaskDatabase();
+		final Task task = new Task(new TaskIdentifier("testing", "id"), "name for testing", "a description");
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "test iteration",
+			LocalDate.now(), LocalDate.now().plusDays(14));
+		original.addTask(task);
+		original.addIteration(iteration);
+		original.assignToIteration(task.getIdentifier(), iteration);
+		original.assignToDate(task.getIdentifier(), LocalDate.now().plusDays(5));
+		final Path file = dir.resolve("tasks.xml");
+		Files.writeString(file, writer.writeTasksToString(original));
+		assertEquals(original, PersistenceHelper.readFromFile(file), "Database read when cache is absent");
+		assertTrue(Files.exists(ParseCache.cacheFile(file)), "Reading a database writes its parse cache");
+		assertEquals(original, PersistenceHelper.readFromFile(file), "Database read from cache");
+		original.getTasks().forEach(t -> t.setName("changed name"));
+		Files.writeString(file, writer.writeTasksToString(original));
+		assertEquals(original, PersistenceHelper.readFromFile(file), "Stale cache is not used");
+	}
+
+	@Test
+	public void testConvertAndSniff(final @TempDir Path dir) throws PersistenceException, IOException {
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "test iteration",
+			LocalDate.now(), LocalDate.now().plusDays(14));
+		original.addIteration(iteration);
+		for (int i = 0; i < 100; i++) {
+			final Task task = new Task(new TaskIdentifier("testing", "id" + i), "task number " + i);
+			original.addTask(task);
+			original.assignToIteration(task.getIdentifier(), iteration);
+		}
+		final Path source = dir.resolve("tasks.xml");
+		writer.writeTasks(source, original);
+		final Path compressed = dir.resolve("tasks.xml.gz");
+		FormatRegistry.convert(source, compressed);
+		final Path unnamed = dir.resolve("tasks.dat");
+		Files.copy(compressed, unnamed);
+		assertTrue(FormatRegistry.forReading(unnamed) instanceof XmlFormat, "Format is detected from contents");
+		assertEquals(original, PersistenceHelper.readFromFile(unnamed), "Converted database round-trips");
+
+		final Path broken = dir.resolve("broken.xml");
+		Files.writeString(broken, writer.writeTasksToString(original).replaceAll("<iterations>.*</iterations>", ""));
+		final byte[] before = Files.readAllBytes(compressed);
+		assertThrows(PersistenceException.class, () -> FormatRegistry.convert(broken, compressed),
+			"Inconsistent input fails to convert");
+		assertEquals(ByteBuffer.wrap(before), ByteBuffer.wrap(Files.readAllBytes(compressed)),
+			"A failed conversion leaves the destination as it was");
+		try (final Stream<Path> files = Files.list(dir)) {
+			assertFalse(files.anyMatch(f -> f.getFileName().toString().startsWith(".replace-")),
+				"A failed conversion leaves no temporary file behind");
+		}
+	}
+
+	@Test
+	public void testMappedReader(final @TempDir Path dir) throws Exception {
+		final TaskDatabase original = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.randomUUID(), "<test> & \"iteration\"\tone",
+			LocalDate.now(), LocalDate.now().plusDays(14));
+		original.addIteration(iteration);
+		final Task task = new Task(new TaskIdentifier("testing", "special"), "special characters",
+			"Markup <&>, line ends \r\n and \r, tabs\t and Ünïcödé 😀");
+		original.addTask(task);
+		original.assignToIteration(task.getIdentifier(), iteration);
+		original.assignToDate(task.getIdentifier(), LocalDate.now().plusDays(3));
+		original.addTask(new Task(new TaskIdentifier("testing", "plain"), "plain task", ""));
+		final Task multiDay = new Task(new TaskIdentifier("testing", "multi-day"), "multi-day task");
+		original.addTask(multiDay);
+		original.assignToIteration(multiDay.getIdentifier(), iteration);
+		original.assignToDates(multiDay.getIdentifier(), LocalDate.now().plusDays(4), LocalDate.now().plusDays(6));
+		final Path file = dir.resolve("tasks.xml");
+		writer.writeTasks(file, original);
+		final DatabaseBuilder builder = new DatabaseBuilder();
+		new MappedXmlParser(ByteBuffer.wrap(Files.readAllBytes(file))).parse(builder);
+		assertEquals(original, builder.getDatabase(), "Our own output parses without falling back");
+		assertEquals(original, new MappedXmlReader().readTasks(file), "Database round-trips through a mapped file");
+
+		final String handWritten = """
+			<?xml version='1.0' encoding='utf-8'?>
+			<monger xmlns="%s" xmlns:x="%s" x:monger-version='0'>
+				<tasks>
+					<task>
+						<name>hand &#x2014; written</name>
+						<task-identifier x:identifier="hand" x:provider="testing" />
+						<status>InProgress</status>
+					</task>
+				</tasks>
+			</monger>
+			""".formatted(XmlWriter.NAMESPACE, XmlWriter.NAMESPACE);
+		final DatabaseBuilder handBuilder = new DatabaseBuilder();
+		new MappedXmlParser(ByteBuffer.wrap(handWritten.getBytes(StandardCharsets.UTF_8))).parse(handBuilder);
+		assertEquals(reader.readTasksFromString(handWritten), handBuilder.getDatabase(),
+			"Whitespace, other orders and prefixes, and references are understood without falling back");
+
+		final String commented = writer.writeTasksToString(original).replace("<tasks>", "<!-- comment --><tasks>");
+		assertThrows(MappedXmlParser.Fallback.class,
+			() -> new MappedXmlParser(ByteBuffer.wrap(commented.getBytes(StandardCharsets.UTF_8)))
+					  .parse(new DatabaseBuilder()), "Comments are left to StAX");
+		assertEquals(original, new MappedXmlReader().readTasksFromString(commented),
+			"Input the fast parser doesn't handle is still read");
+		assertThrows(PersistenceException.class, () -> new MappedXmlReader().readTasksFromString(
+			writer.writeTasksToString(original).replace("InProgress", "Bogus").replace("Unscheduled", "Bogus")),
+			"Invalid input is still rejected");
+	}
 }
@@ -0,0 +1,86 @@
+package monger.search;
+
+import java.util.List;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the full-text search index.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestSearchIndex {
+	private static List<String> search(final SearchIndex index, final String query, final int limit) {
+		return index.search(query, limit).stream().map(hit -> hit.task().identifier()).toList();
+	}
+
+	@Test
+	public void testSearch() throws InterruptedException {
+		final TaskDatabase tasks = new TaskDatabase();
+		tasks.addTask(new Task(new TaskIdentifier("testing", "one"), "Fix the parser",
+			"The XML parser rejects empty descriptions"));
+		tasks.addTask(new Task(new TaskIdentifier("testing", "two"), "Write documentation",
+			"Document the parser's handling of dates"));
+		tasks.addTask(new Task(new TaskIdentifier("testing", "three"), "Parsing, parsers, and parse trees",
+			"Parse everything"));
+		for (int i = 0; i < 50; i++) {
+			tasks.addTask(new Task(new TaskIdentifier("filler", "task" + i), "Filler task " + i, "Nothing much"));
+		}
+		final SearchIndex index = SearchIndex.attach(tasks);
+		assertEquals(53, index.size(), "Every task is indexed");
+		assertEquals(List.of("three", "one", "two"), search(index, "pars", 10),
+			"Prefixes match, with matches in names and repeated matches ranked higher");
+		assertEquals(List.of("three"), search(index, "pars", 1), "Only the best results are returned");
+		assertEquals(List.of("one"), search(index, "PARSER xml", 10), "Every word must match, in any case");
+		assertEquals(List.of(), search(index, "parser nonexistent", 10), "A word matching nothing matches nothing");
+		assertEquals(5, index.search("filler", 5).size(), "Common words are limited too");
+
+		final Task renamed = tasks.getTask(new TaskIdentifier("filler", "task7"));
+		renamed.setName("Replace the XML parser");
+		tasks.awaitChangeDelivery();
+		assertEquals(List.of("task7"), search(index, "replace", 10), "Renamed tasks are re-indexed");
+		assertTrue(search(index, "filler", 100).stream().noneMatch("task7"::equals), "Old names are forgotten");
+		assertEquals(List.of("task7", "one"), search(index, "xml parser", 10),
+			"Matches in the new name rank above matches in descriptions");
+	}
+
+	/**
+	 * A task matching a word through several terms can outscore one matching it through one heavier term, so the
+	 * search can't stop as soon as no single term could catch up.
+	 */
+	@Test
+	public void testSeveralTermsPerWord() {
+		final SearchIndex index = new SearchIndex();
+		index.index(new Task(new TaskIdentifier("t", "one"), "zed zed", "foo"));
+		index.index(new Task(new TaskIdentifier("t", "two"), "zed", "foa fob foc fod foe fof fog foh"));
+		assertEquals(List.of("two"), search(index, "zed fo", 1), "The best match is found with a limit of one");
+		assertEquals(List.of("two", "one"), search(index, "zed fo", 2), "And ranked first with a larger limit");
+	}
+
+	/**
+	 * Re-index one task until its generation wraps around, while an old posting of it survives in a term's list
+	 * kept from being compacted by other tasks' postings.
+	 */
+	@Test
+	public void testGenerationWrap() {
+		final SearchIndex index = new SearchIndex();
+		for (int i = 0; i < 10; i++) {
+			index.index(new Task(new TaskIdentifier("testing", "other" + i), "alpha beta"));
+		}
+		final Task task = new Task(new TaskIdentifier("testing", "wrapping"), "alpha");
+		index.index(task);
+		task.setName("beta");
+		for (int i = 0; i < 0x10000; i++) {
+			index.index(task);
+		}
+		assertTrue(search(index, "alpha", 100).stream().noneMatch("wrapping"::equals),
+			"Old postings don't come back to life when the generation wraps");
+		assertTrue(search(index, "beta", 100).contains("wrapping"), "The current posting is live");
+		assertEquals(11, search(index, "beta", 100).size(), "Each task is found once");
+	}
+}
@@ -0,0 +1,135 @@
+package monger.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import monger.model.Task;
+import monger.model.TaskDatabase;
+import monger.model.TaskIdentifier;
+import monger.persistence.JsonLinesWriter;
+import monger.persistence.PersistenceException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the sync engine against a stub HTTP server.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TestSyncEngine {
+	private static final int PAGES = 100;
+	private static final int PAGE_SIZE = 500;
+	private static final int MAX_CONCURRENCY = 4;
+
+	/**
+	 * Serves {@link #PAGES} pages of tasks, tagging each with an ETag that changes when the page is regenerated.
+	 */
+	private static final class StubServer implements AutoCloseable {
+		private final HttpServer server;
+		private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		private final String[] pages = new String[PAGES];
+		private final AtomicIntegerArray versions = new AtomicIntegerArray(PAGES);
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicInteger maxInFlight = new AtomicInteger();
+
+		StubServer() throws IOException, PersistenceException {
+			for (int page = 0; page < PAGES; page++) {
+				generate(page, "task");
+			}
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+			server.setExecutor(executor);
+			server.createContext("/tasks", this::handle);
+			server.start();
+		}
+
+		void generate(final int page, final String prefix) throws PersistenceException {
+			final TaskDatabase tasks = new TaskDatabase();
+			for (int i = 0; i < PAGE_SIZE; i++) {
+				final int number = page * PAGE_SIZE + i;
+				tasks.addTask(new Task(new TaskIdentifier("stub", "id" + number), prefix + " number " + number,
+					"Upstream description of task " + number));
+			}
+			pages[page] = new JsonLinesWriter().writeTasksToString(tasks);
+			versions.incrementAndGet(page);
+		}
+
+		URI getURI() {
+			return URI.create("http://localhost:%d/tasks".formatted(server.getAddress().getPort()));
+		}
+
+		private void handle(final HttpExchange exchange) throws IOException {
+			final int current = inFlight.incrementAndGet();
+			maxInFlight.accumulateAndGet(current, Math::max);
+			try (exchange) {
+				final int page = Integer.parseInt(exchange.getRequestURI().getQuery().replace("page=", ""));
+				final String etag = "\"%d-%d\"".formatted(page, versions.get(page));
+				exchange.getResponseHeaders().add("ETag", etag);
+				exchange.getResponseHeaders().add("X-Page-Count", Integer.toString(PAGES));
+				if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					final byte[] body = pages[page].getBytes(StandardCharsets.UTF_8);
+					exchange.sendResponseHeaders(200, body.length);
+					try (final OutputStream out = exchange.getResponseBody()) {
+						out.write(body);
+					}
+				}
+			} finally {
+				inFlight.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void close() {
+			server.stop(0);
+			executor.close();
+		}
+	}
+
+	@Test
+	public void testSync() throws IOException, PersistenceException, SyncException {
+		try (final StubServer server = new StubServer()) {
+			final SyncEngine engine = new SyncEngine();
+			final List<SyncProvider> providers =
+				List.of(new JsonLinesSyncProvider("stub", server.getURI(), MAX_CONCURRENCY));
+			final TaskDatabase tasks = new TaskDatabase();
+			final SyncResult first = engine.sync(tasks, providers);
+			assertEquals(PAGES * PAGE_SIZE, first.tasks().size(), "Every upstream task is fetched");
+			assertEquals(PAGES, first.requests(), "Each page is fetched once");
+			assertEquals(PAGES * PAGE_SIZE, first.applyTo(new TaskDatabase()), "Every task is new");
+			assertTrue(server.maxInFlight.get() <= MAX_CONCURRENCY, "Per-provider concurrency limit is respected");
+
+			final SyncResult second = engine.sync(tasks, providers);
+			assertEquals(PAGES, second.notModified(), "Unchanged pages are not fetched again");
+			assertEquals(0, second.applyTo(tasks), "Nothing changes if upstream did not");
+
+			server.generate(7, "renamed task");
+			final SyncResult third = engine.fetch(providers);
+			assertEquals(PAGES - 1, third.notModified(), "Only the changed page is fetched again");
+			assertEquals(PAGE_SIZE, third.applyTo(tasks), "Changed tasks are applied");
+			assertEquals("renamed task number 3500",
+				tasks.getTask(new TaskIdentifier("stub", "id3500")).getName(), "Changes are applied");
+
+			final TaskDatabase untouched = new TaskDatabase();
+			assertThrows(SyncException.class, () -> engine.sync(untouched,
+				List.of(new JsonLinesSyncProvider("other", server.getURI(), MAX_CONCURRENCY))),
+				"Tasks from the wrong provider are rejected");
+			assertFalse(untouched.getTasks().iterator().hasNext(),
+				"A failed sync changes nothing");
+		}
+	}
+}
@@ -1,16 +1,27 @@
 package monger.view.cli;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import monger.model.FederatedView;
 import monger.model.Iteration;
 import monger.model.Task;
 import monger.model.TaskDatabase;
 import monger.model.TaskIdentifier;
+import monger.model.TimeEstimate;
+import monger.persistence.PersistenceException;
+import monger.persistence.PersistenceHelper;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test the pipe CLI.
@@ -55,4 +66,127 @@ public class TestPipeCLI {
 			""";
 		assertEquals(expected, output, "Verbose list-all should produce expected output");
 	}
+
+	@Test
+	public void testPlan() {
+		final TaskDatabase tasks = new TaskDatabase();
+		final Iteration iteration =
+			new Iteration(UUID.fromString("b8c6d3e3-d5a8-4d99-b17e-d5f0fd2fe8dd"),
+				"test iteration", LocalDate.parse("2024-09-09"),
+				LocalDate.parse("2024-09-10"));
+		tasks.addIteration(iteration);
+		final TimeEstimate[] estimates = {TimeEstimate.AllDay, TimeEstimate.FourHours, TimeEstimate.ThreeHours,
+			TimeEstimate.Hour, TimeEstimate.Hour, TimeEstimate.Epic, TimeEstimate.Unestimated};
+		for (int i = 0; i < estimates.length; i++) {
+			final Task task = new Task(new TaskIdentifier("testing", "id" + i), "task " + i);
+			task.setEstimate(estimates[i]);
+			tasks.addTask(task);
+		}
+		final PipeCLI cli = new PipeCLI();
+		assertEquals("Planned 4 tasks; 1 did not fit%n".formatted(), cli.plan(tasks, "test iteration", 32),
+			"Plan should fill both days, leaving one task over");
+		assertEquals(LocalDate.parse("2024-09-09"), tasks.getAssignedDate(new TaskIdentifier("testing", "id0")),
+			"Largest task goes on the first day");
+		assertEquals(LocalDate.parse("2024-09-10"), tasks.getAssignedDate(new TaskIdentifier("testing", "id3")),
+			"Smaller tasks fill the second day");
+		assertNull(tasks.getAssignedDate(new TaskIdentifier("testing", "id5")), "Epics are not planned");
+		assertNull(tasks.getAssignedDate(new TaskIdentifier("testing", "id6")), "Unestimated tasks are not planned");
+	}
+
+	@Test
+	public void testListPages() throws IOException {
+		final TaskDatabase tasks = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.fromString("b8c6d3e3-d5a8-4d99-b17e-d5f0fd2fe8dd"),
+			"sprint", LocalDate.parse("2024-09-09"), LocalDate.parse("2024-09-20"));
+		tasks.addIteration(iteration);
+		for (int i = 0; i < 7; i++) {
+			final Task task = new Task(new TaskIdentifier("testing", "id" + i), "task " + i);
+			tasks.addTask(task);
+			tasks.assignToIteration(task.getIdentifier(), iteration);
+			if (i != 3) {
+				tasks.assignToDate(task.getIdentifier(), LocalDate.parse("2024-09-20").minusDays(i));
+			}
+		}
+		final PipeCLI cli = new PipeCLI();
+		final FederatedView view = FederatedView.of("", tasks);
+		final String first = cli.listTasks(false, view, List.of(), PipeCLI.SortKey.Date, 3, null);
+		final String[] lines = first.split("\n");
+		assertEquals(5, lines.length, "A page has a header, the tasks, and a cursor");
+		assertTrue(lines[1].startsWith("testing:id6 ") && lines[3].startsWith("testing:id4 "),
+			"The earliest scheduled tasks come first");
+		assertTrue(lines[4].startsWith("Next page: --after "), "A cursor is given when there are more tasks");
+		final String cursor = lines[4].substring("Next page: --after ".length());
+		assertEquals("""
+				testing:id2 | task 2 | Unscheduled | Unestimated | sprint | 2024-09-18
+				testing:id1 | task 1 | Unscheduled | Unestimated | sprint | 2024-09-19
+				testing:id0 | task 0 | Unscheduled | Unestimated | sprint | 2024-09-20
+				""", cli.listTasks(true, view, List.of(), PipeCLI.SortKey.Date, 3, cursor),
+			"The next page starts after the cursor");
+		final String last = cli.listTasks(false, view, List.of(), PipeCLI.SortKey.Date, 10, cursor);
+		assertTrue(last.contains("testing:id3 ") && !last.contains("Next page"),
+			"Unscheduled tasks come last, and the last page has no cursor");
+		assertEquals(List.of(tasks.getTask(new TaskIdentifier("testing", "id3")),
+				tasks.getTask(new TaskIdentifier("testing", "id6"))), tasks.getTasksInIteration(iteration, 2),
+			"The first tasks of an iteration can be chosen without sorting them all");
+	}
+
+	/**
+	 * Paging by names with line breaks in them, and ties broken by identifier.
+	 */
+	@Test
+	public void testListPageTies() throws IOException {
+		final TaskDatabase tasks = new TaskDatabase();
+		final Iteration iteration = new Iteration(UUID.fromString("b8c6d3e3-d5a8-4d99-b17e-d5f0fd2fe8dd"),
+			"sprint", LocalDate.parse("2024-09-09"), LocalDate.parse("2024-09-20"));
+		tasks.addIteration(iteration);
+		for (final String id : List.of("c", "a:\n1", "b")) {
+			final Task task = new Task(new TaskIdentifier("testing", id), "two\nlines");
+			tasks.addTask(task);
+			tasks.assignToIteration(task.getIdentifier(), iteration);
+			tasks.assignToDate(task.getIdentifier(), LocalDate.parse("2024-09-10"));
+		}
+		final PipeCLI cli = new PipeCLI();
+		final FederatedView view = FederatedView.of("", tasks);
+		final List<String> seen = new ArrayList<>();
+		String cursor = null;
+		for (int page = 0; page < 3; page++) {
+			final String listing = cli.listTasks(false, view, List.of(), PipeCLI.SortKey.Name, 1, cursor);
+			seen.add(listing.substring(listing.indexOf("testing:"), listing.indexOf(" | two")));
+			cursor = listing.contains("Next page: --after ") ?
+						 listing.substring(listing.indexOf("Next page: --after ") + 19).strip() : null;
+		}
+		assertEquals(List.of("testing:a:\n1", "testing:b", "testing:c"), seen,
+			"Cursors survive line breaks in names and identifiers, and pages neither repeat nor skip tasks");
+		assertNull(cursor, "The last page has no cursor");
+		assertEquals(List.of(tasks.getTask(new TaskIdentifier("testing", "a:\n1")),
+				tasks.getTask(new TaskIdentifier("testing", "b"))), tasks.getTasksInIteration(iteration, 2),
+			"Tasks on the same day are chosen by identifier");
+	}
+
+	@Test
+	public void testListFederated(final @TempDir Path dir) throws IOException, PersistenceException {
+		final TaskDatabase first = new TaskDatabase();
+		first.addTask(new Task(new TaskIdentifier("testing", "shared"), "first team's task"));
+		first.addTask(new Task(new TaskIdentifier("testing", "first"), "only in first"));
+		final TaskDatabase second = new TaskDatabase();
+		second.addTask(new Task(new TaskIdentifier("testing", "shared"), "second team's task"));
+		PersistenceHelper.writeToFile(dir.resolve("abc.xml"), first);
+		PersistenceHelper.writeToFile(dir.resolve("b.jsonl"), second);
+		final TaskDatabase third = new TaskDatabase();
+		third.addTask(new Task(new TaskIdentifier("testing", "shared"), "third team's task"));
+		Files.createDirectory(dir.resolve("cde.xml"));
+		PersistenceHelper.writeToFile(dir.resolve("cde.xml"), third);
+		Files.copy(dir.resolve("abc.xml"), dir.resolve(".abc.xml"));
+		Files.createDirectory(dir.resolve("empty.xml"));
+		final PipeCLI cli = new PipeCLI();
+		final String output = cli.listTasks(List.of(dir + "/**.{xml,jsonl}"), true, null, null, null,
+			new String[]{"testing:shared"});
+		final String expected = """
+			%s | testing:shared | first team's task  | Unscheduled | Unestimated | <none> | <none>
+			%s | testing:shared | second team's task | Unscheduled | Unestimated | <none> | <none>
+			%s | testing:shared | third team's task  | Unscheduled | Unestimated | <none> | <none>
+			""".formatted(dir.resolve("abc.xml"), dir.resolve("b.jsonl"), dir.resolve("cde.xml"));
+		assertEquals(expected, output, "Tasks with the same identifier in different databases are all listed, and hidden files, shards, and" +
+				" other directories are skipped");
+	}
 }